@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+import org.tensorflow.lite.examples.detection.pipeline.StageLatencyTable;
+import org.tensorflow.lite.examples.detection.pipeline.StageProfiler;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+
+/**
+ * Latency regression test of the detection stages on the device, with the real model. Replays
+ * the same frames of the golden test image through each stage and fails when a stage is over the
+ * budget in {@code perf_budgets.txt}, or regressed from a baseline. Instrumentation arguments:
+ *
+ * <ul>
+ *   <li>{@code perfBaseline}: the baseline file, relative to the app's external files directory.
+ *       Written when missing; not checked when unset.
+ *   <li>{@code perfUpdateBaseline}: overwrite the baseline with this run.
+ *   <li>{@code perfMaxRegressionPercent}: how much slower than the baseline a stage may be.
+ * </ul>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StageLatencyTest {
+  private static final String TAG = "StageLatencyTest";
+  private static final int MODEL_INPUT_SIZE = 300;
+  private static final boolean IS_MODEL_QUANTIZED = true;
+  private static final String MODEL_FILE = "detect.tflite";
+  private static final String LABELS_FILE = "file:///android_asset/labelmap.txt";
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final int FRAMES = 8;
+  private static final int WARMUP_FRAMES = 20;
+  private static final int MEASURED_FRAMES = 60;
+  private static final String DEFAULT_MAX_REGRESSION_PERCENT = "25";
+  private static final long REGRESSION_SLACK_MICROS = 500;
+
+  private TFLiteObjectDetectionAPIModel detector;
+  private final byte[][] frames = new byte[FRAMES][];
+  private final int[] argb = new int[WIDTH * HEIGHT];
+  private Bitmap rgbFrameBitmap;
+  private Bitmap croppedBitmap;
+  private Canvas cropCanvas;
+  private Matrix frameToCropTransform;
+  private final Matrix cropToFrameTransform = new Matrix();
+  private final int[] pixels = new int[MODEL_INPUT_SIZE * MODEL_INPUT_SIZE];
+  private ByteBuffer input;
+  private List<Recognition> results;
+  private final List<RectF> mapped = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    final AssetManager assetManager =
+        InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+    detector =
+        TFLiteObjectDetectionAPIModel.create(
+            assetManager, MODEL_FILE, LABELS_FILE, MODEL_INPUT_SIZE, IS_MODEL_QUANTIZED);
+    input = detector.allocateInputBuffer();
+    rgbFrameBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888);
+    croppedBitmap = Bitmap.createBitmap(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, Config.ARGB_8888);
+    cropCanvas = new Canvas(croppedBitmap);
+    frameToCropTransform =
+        ImageUtils.getTransformationMatrix(
+            WIDTH, HEIGHT, MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, 0, false);
+    frameToCropTransform.invert(cropToFrameTransform);
+
+    // The golden image panning sideways, as NV21 camera frames.
+    final Bitmap image;
+    try (InputStream stream = assetManager.open("table.jpg")) {
+      image = BitmapFactory.decodeStream(stream);
+    }
+    final Bitmap frameBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888);
+    final Canvas frameCanvas = new Canvas(frameBitmap);
+    final Matrix imageToFrame =
+        ImageUtils.getTransformationMatrix(
+            image.getWidth(), image.getHeight(), WIDTH, HEIGHT, 0, false);
+    for (int i = 0; i < FRAMES; ++i) {
+      frameCanvas.save();
+      frameCanvas.translate(8 * i - 4 * FRAMES, 0);
+      frameCanvas.drawBitmap(image, imageToFrame, null);
+      frameCanvas.restore();
+      frameBitmap.getPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+      frames[i] = toNv21(argb, WIDTH, HEIGHT);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    detector.close();
+  }
+
+  /** Encodes ARGB pixels as NV21 with the BT.601 video range coefficients. */
+  private static byte[] toNv21(final int[] argb, final int width, final int height) {
+    final byte[] nv21 = new byte[YuvConversions.getYUVByteSize(width, height)];
+    final int frameSize = width * height;
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        final int pixel = argb[y * width + x];
+        final int r = (pixel >> 16) & 0xFF;
+        final int g = (pixel >> 8) & 0xFF;
+        final int b = pixel & 0xFF;
+        nv21[y * width + x] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+        if ((x & 1) == 0 && (y & 1) == 0) {
+          final int uv = frameSize + (y >> 1) * width + x;
+          nv21[uv] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+          nv21[uv + 1] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+        }
+      }
+    }
+    return nv21;
+  }
+
+  private StageProfiler createProfiler() {
+    return new StageProfiler()
+        .addStage(
+            "convert",
+            frame -> {
+              YuvConversions.convertYUV420SPToARGB8888(frames[frame], WIDTH, HEIGHT, argb);
+              rgbFrameBitmap.setPixels(argb, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            })
+        .addStage(
+            "crop", frame -> cropCanvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null))
+        .addStage("preprocess", frame -> detector.preprocess(croppedBitmap, pixels, input))
+        .addStage("detect", frame -> results = detector.recognize(input))
+        .addStage(
+            "map",
+            frame -> {
+              mapped.clear();
+              for (final Recognition result : results) {
+                final RectF location = new RectF(result.getLocation());
+                cropToFrameTransform.mapRect(location);
+                mapped.add(location);
+              }
+            });
+  }
+
+  private static StageLatencyTable read(final InputStream stream) throws IOException {
+    try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+      return StageLatencyTable.read(reader);
+    }
+  }
+
+  @Test
+  public void stagesStayWithinBudgetAndBaseline() throws Exception {
+    final StageProfiler.Result[] results =
+        createProfiler().run(FRAMES, WARMUP_FRAMES, MEASURED_FRAMES);
+    for (final StageProfiler.Result result : results) {
+      Log.i(TAG, result.toString());
+    }
+    final Context context = InstrumentationRegistry.getInstrumentation().getContext();
+    final List<String> failures =
+        new ArrayList<>(read(context.getAssets().open("perf_budgets.txt")).findOverBudget(results));
+
+    final Bundle arguments = InstrumentationRegistry.getArguments();
+    final String baselineName = arguments.getString("perfBaseline");
+    if (baselineName != null) {
+      final Context targetContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+      final File baselineFile = new File(targetContext.getExternalFilesDir(null), baselineName);
+      if (baselineFile.exists()
+          && !Boolean.parseBoolean(arguments.getString("perfUpdateBaseline"))) {
+        final double maxPercent =
+            Double.parseDouble(
+                arguments.getString("perfMaxRegressionPercent", DEFAULT_MAX_REGRESSION_PERCENT));
+        failures.addAll(
+            read(new FileInputStream(baselineFile))
+                .findRegressions(results, maxPercent, REGRESSION_SLACK_MICROS));
+      } else {
+        try (Writer writer =
+            new OutputStreamWriter(new FileOutputStream(baselineFile), StandardCharsets.UTF_8)) {
+          StageLatencyTable.of(results).write(writer);
+        }
+        Log.i(TAG, "Wrote the baseline to " + baselineFile);
+      }
+    }
+    assertWithMessage(TextUtils.join("\n", failures)).that(failures).isEmpty();
+  }
+}
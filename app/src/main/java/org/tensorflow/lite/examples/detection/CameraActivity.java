@@ -31,8 +31,7 @@ import android.media.ImageReader;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.os.Trace;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -49,9 +48,19 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBuffer;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBufferPool;
+import org.tensorflow.lite.examples.detection.pipeline.FrameRecorder;
 
 public abstract class CameraActivity extends AppCompatActivity
     implements OnImageAvailableListener,
@@ -63,18 +72,23 @@ public abstract class CameraActivity extends AppCompatActivity
   private static final int PERMISSIONS_REQUEST = 1;
 
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // One frame being captured, one being processed and one being presented.
+  private static final int DEFAULT_NUM_FRAME_BUFFERS = 3;
+  // Records the captured frames to the recordings directory in the app's external files.
+  private static final boolean RECORD_FRAMES = false;
+  // About a second of 640x480 frames waiting to be written.
+  private static final int RECORDER_BUFFERS = 30;
+  private static final long RECORDING_SEGMENT_BYTES = 256L << 20;
+  // The name of a recording to replay in place of the camera, or null to use the camera.
+  private static final String REPLAY_RECORDING = null;
+  // Replays at the recorded frame rate, or as fast as the pipeline takes frames.
+  private static final boolean REPLAY_REALTIME = true;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private boolean debug = false;
-  private Handler handler;
-  private HandlerThread handlerThread;
   private boolean useCamera2API;
-  private boolean isProcessingFrame = false;
-  private byte[][] yuvBytes = new byte[3][];
-  private int[] rgbBytes = null;
-  private int yRowStride;
-  private Runnable postInferenceCallback;
-  private Runnable imageConverter;
+  private volatile FrameBufferPool frameBuffers;
+  private volatile FrameRecorder frameRecorder;
 
   private LinearLayout bottomSheetLayout;
   private LinearLayout gestureLayout;
@@ -169,62 +183,69 @@ public abstract class CameraActivity extends AppCompatActivity
     minusImageView.setOnClickListener(this);
   }
 
-  protected int[] getRgbBytes() {
-    imageConverter.run();
+  /** Converts a captured frame to ARGB, into the frame's own ARGB buffer. */
+  protected int[] getRgbBytes(final FrameBuffer frame) {
+    final int[] rgbBytes = frame.getArgb();
+    final byte[][] yuvBytes = frame.getPlanes();
+    if (frame.getFormat() == FrameBuffer.FORMAT_NV21) {
+      YuvConversions.convertYUV420SPToARGB8888(
+          yuvBytes[0], frame.getWidth(), frame.getHeight(), rgbBytes);
+    } else {
+      YuvConversions.convertYUV420ToARGB8888(
+          yuvBytes[0],
+          yuvBytes[1],
+          yuvBytes[2],
+          frame.getWidth(),
+          frame.getHeight(),
+          frame.getYRowStride(),
+          frame.getUvRowStride(),
+          frame.getUvPixelStride(),
+          rgbBytes);
+    }
     return rgbBytes;
   }
 
-  protected int getLuminanceStride() {
-    return yRowStride;
-  }
-
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  /** Returns the pool captured frames are copied into; null until the preview size is known. */
+  protected FrameBufferPool getFrameBufferPool() {
+    return frameBuffers;
   }
 
   /** Callback for android.hardware.Camera API */
   @Override
   public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-    if (isProcessingFrame) {
-      LOGGER.w("Dropping frame!");
-      return;
-    }
-
     try {
-      // Initialize the storage bitmaps once when the resolution is known.
-      if (rgbBytes == null) {
+      // Initialize the frame buffers when the resolution is known, or has changed.
+      if (frameBuffers == null
+          || bytes.length != YuvConversions.getYUVByteSize(previewWidth, previewHeight)) {
         Camera.Size previewSize = camera.getParameters().getPreviewSize();
-        previewHeight = previewSize.height;
-        previewWidth = previewSize.width;
-        rgbBytes = new int[previewWidth * previewHeight];
-        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
+        setPreviewSize(new Size(previewSize.width, previewSize.height), 90);
+        startRecording("legacy", 90);
       }
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
+      camera.addCallbackBuffer(bytes);
       return;
     }
 
-    isProcessingFrame = true;
-    yuvBytes[0] = bytes;
-    yRowStride = previewWidth;
+    final FrameBuffer frame = frameBuffers.acquire();
+    if (frame == null) {
+      onFrameBufferUnavailable();
+      camera.addCallbackBuffer(bytes);
+      return;
+    }
 
-    imageConverter =
-        new Runnable() {
-          @Override
-          public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-          }
-        };
+    // Copy the frame so the camera buffer can be handed back right away.
+    final byte[][] yuvBytes = frame.getPlanes();
+    if (yuvBytes[0] == null || yuvBytes[0].length != bytes.length) {
+      yuvBytes[0] = new byte[bytes.length];
+    }
+    System.arraycopy(bytes, 0, yuvBytes[0], 0, bytes.length);
+    camera.addCallbackBuffer(bytes);
+    frame.setFormat(FrameBuffer.FORMAT_NV21, previewWidth, previewHeight, previewWidth, 0, 0);
+    frame.setTimestampNanos(System.nanoTime());
 
-    postInferenceCallback =
-        new Runnable() {
-          @Override
-          public void run() {
-            camera.addCallbackBuffer(bytes);
-            isProcessingFrame = false;
-          }
-        };
-    processImage();
+    record(frame);
+    processImage(frame);
   }
 
   /** Callback for Camera2 API */
@@ -234,9 +255,6 @@ public abstract class CameraActivity extends AppCompatActivity
     if (previewWidth == 0 || previewHeight == 0) {
       return;
     }
-    if (rgbBytes == null) {
-      rgbBytes = new int[previewWidth * previewHeight];
-    }
     try {
       final Image image = reader.acquireLatestImage();
 
@@ -244,45 +262,28 @@ public abstract class CameraActivity extends AppCompatActivity
         return;
       }
 
-      if (isProcessingFrame) {
+      final FrameBuffer frame = frameBuffers.acquire();
+      if (frame == null) {
+        onFrameBufferUnavailable();
         image.close();
         return;
       }
-      isProcessingFrame = true;
       Trace.beginSection("imageAvailable");
+      // Copy the frame so the image can be handed back to the reader right away.
       final Plane[] planes = image.getPlanes();
-      fillBytes(planes, yuvBytes);
-      yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
-
-      imageConverter =
-          new Runnable() {
-            @Override
-            public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
-                  yuvBytes[0],
-                  yuvBytes[1],
-                  yuvBytes[2],
-                  previewWidth,
-                  previewHeight,
-                  yRowStride,
-                  uvRowStride,
-                  uvPixelStride,
-                  rgbBytes);
-            }
-          };
-
-      postInferenceCallback =
-          new Runnable() {
-            @Override
-            public void run() {
-              image.close();
-              isProcessingFrame = false;
-            }
-          };
-
-      processImage();
+      fillBytes(planes, frame.getPlanes());
+      frame.setFormat(
+          FrameBuffer.FORMAT_YUV_420_888,
+          previewWidth,
+          previewHeight,
+          planes[0].getRowStride(),
+          planes[1].getRowStride(),
+          planes[1].getPixelStride());
+      frame.setTimestampNanos(toNanoTime(image.getTimestamp()));
+      image.close();
+
+      record(frame);
+      processImage(frame);
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
       Trace.endSection();
@@ -291,6 +292,19 @@ public abstract class CameraActivity extends AppCompatActivity
     Trace.endSection();
   }
 
+  /**
+   * Converts a camera2 sensor timestamp to the time base of System.nanoTime(). Depending on the
+   * device, sensor timestamps either already are, or are in the time base of elapsedRealtimeNanos.
+   */
+  private static long toNanoTime(final long sensorTimestampNanos) {
+    final long nowNanos = System.nanoTime();
+    final long realtimeOffsetNanos = SystemClock.elapsedRealtimeNanos() - nowNanos;
+    final long realtimeNanos = sensorTimestampNanos - realtimeOffsetNanos;
+    return Math.abs(sensorTimestampNanos - nowNanos) <= Math.abs(realtimeNanos - nowNanos)
+        ? sensorTimestampNanos
+        : realtimeNanos;
+  }
+
   @Override
   public synchronized void onStart() {
     LOGGER.d("onStart " + this);
@@ -301,25 +315,12 @@ public abstract class CameraActivity extends AppCompatActivity
   public synchronized void onResume() {
     LOGGER.d("onResume " + this);
     super.onResume();
-
-    handlerThread = new HandlerThread("inference");
-    handlerThread.start();
-    handler = new Handler(handlerThread.getLooper());
   }
 
   @Override
   public synchronized void onPause() {
     LOGGER.d("onPause " + this);
-
-    handlerThread.quitSafely();
-    try {
-      handlerThread.join();
-      handlerThread = null;
-      handler = null;
-    } catch (final InterruptedException e) {
-      LOGGER.e(e, "Exception!");
-    }
-
+    stopRecording();
     super.onPause();
   }
 
@@ -335,12 +336,6 @@ public abstract class CameraActivity extends AppCompatActivity
     super.onDestroy();
   }
 
-  protected synchronized void runInBackground(final Runnable r) {
-    if (handler != null) {
-      handler.post(r);
-    }
-  }
-
   @Override
   public void onRequestPermissionsResult(
       final int requestCode, final String[] permissions, final int[] grantResults) {
@@ -431,7 +426,90 @@ public abstract class CameraActivity extends AppCompatActivity
     return null;
   }
 
+  private File getRecordingsDirectory() {
+    return new File(getExternalFilesDir(null), "recordings");
+  }
+
+  /** Starts a new recording of the captured frames, if enabled. */
+  private void startRecording(final String api, final int rotation) {
+    stopRecording();
+    if (!RECORD_FRAMES) {
+      return;
+    }
+    final Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+    metadata.put("sdk", Integer.toString(Build.VERSION.SDK_INT));
+    metadata.put("api", api);
+    metadata.put("rotation", Integer.toString(rotation));
+    final String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+    try {
+      frameRecorder =
+          new FrameRecorder(
+              getRecordingsDirectory(),
+              name,
+              metadata,
+              RECORDER_BUFFERS,
+              RECORDING_SEGMENT_BYTES);
+      LOGGER.i("Recording frames to %s", name);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Cannot start recording %s", name);
+    }
+  }
+
+  private void record(final FrameBuffer frame) {
+    final FrameRecorder recorder = frameRecorder;
+    if (recorder != null) {
+      recorder.record(frame);
+    }
+  }
+
+  private void stopRecording() {
+    final FrameRecorder recorder = frameRecorder;
+    if (recorder == null) {
+      return;
+    }
+    frameRecorder = null;
+    try {
+      recorder.close();
+    } catch (final IOException e) {
+      LOGGER.e(e, "Recording failed");
+    }
+    LOGGER.i(
+        "Recorded %d frames, dropped %d, %d bytes in %d segments",
+        recorder.getRecordedCount(),
+        recorder.getDroppedCount(),
+        recorder.getBytesWritten(),
+        recorder.getSegmentCount());
+  }
+
   protected void setFragment() {
+    if (REPLAY_RECORDING != null) {
+      final ReplayFragment replayFragment =
+          new ReplayFragment(
+              getRecordingsDirectory(),
+              REPLAY_RECORDING,
+              REPLAY_REALTIME,
+              getLayoutId(),
+              new ReplayFragment.Callback() {
+                @Override
+                public void onPreviewSizeChosen(final Size size, final int rotation) {
+                  setPreviewSize(size, rotation);
+                }
+
+                @Override
+                public FrameBuffer acquireFrame() {
+                  return frameBuffers.acquire();
+                }
+
+                @Override
+                public void onFrame(final FrameBuffer frame) {
+                  processImage(frame);
+                }
+              });
+      getFragmentManager().beginTransaction().replace(R.id.container, replayFragment).commit();
+      return;
+    }
+
     String cameraId = chooseCamera();
 
     Fragment fragment;
@@ -441,9 +519,8 @@ public abstract class CameraActivity extends AppCompatActivity
               new CameraConnectionFragment.ConnectionCallback() {
                 @Override
                 public void onPreviewSizeChosen(final Size size, final int rotation) {
-                  previewHeight = size.getHeight();
-                  previewWidth = size.getWidth();
-                  CameraActivity.this.onPreviewSizeChosen(size, rotation);
+                  setPreviewSize(size, rotation);
+                  startRecording("camera2", rotation);
                 }
               },
               this,
@@ -460,12 +537,29 @@ public abstract class CameraActivity extends AppCompatActivity
     getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
   }
 
+  /**
+   * Switches to a new preview size. Frames still being processed are given the chance to finish
+   * with the old size and frame buffers first.
+   */
+  private void setPreviewSize(final Size size, final int rotation) {
+    onPreviewSizeChanging();
+    previewHeight = size.getHeight();
+    previewWidth = size.getWidth();
+    frameBuffers = new FrameBufferPool(getNumFrameBuffers());
+    onPreviewSizeChosen(size, rotation);
+  }
+
+  /** Reopens the camera, e.g. after the desired preview frame size has changed. */
+  protected void restartCamera() {
+    setFragment();
+  }
+
   protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
     // Because of the variable row stride it's not possible to know in
     // advance the actual necessary dimensions of the yuv planes.
     for (int i = 0; i < planes.length; ++i) {
       final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
+      if (yuvBytes[i] == null || yuvBytes[i].length != buffer.capacity()) {
         LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
         yuvBytes[i] = new byte[buffer.capacity()];
       }
@@ -477,10 +571,12 @@ public abstract class CameraActivity extends AppCompatActivity
     return debug;
   }
 
-  protected void readyForNextImage() {
-    if (postInferenceCallback != null) {
-      postInferenceCallback.run();
-    }
+  /**
+   * Returns the number of frames that can be captured ahead of the ones still held. A frame is
+   * dropped when all of them are in use.
+   */
+  protected int getNumFrameBuffers() {
+    return DEFAULT_NUM_FRAME_BUFFERS;
   }
 
   protected int getScreenOrientation() {
@@ -536,7 +632,21 @@ public abstract class CameraActivity extends AppCompatActivity
     inferenceTimeTextView.setText(inferenceTime);
   }
 
-  protected abstract void processImage();
+  protected void showNumThreads(int numThreads) {
+    threadsTextView.setText(String.valueOf(numThreads));
+  }
+
+  /**
+   * Called on the camera thread with a newly captured frame. The implementation takes over the
+   * frame's reference and must release it once done with it.
+   */
+  protected abstract void processImage(final FrameBuffer frame);
+
+  /** Called on the camera thread when a frame is dropped because every frame buffer is in use. */
+  protected void onFrameBufferUnavailable() {}
+
+  /** Called before the preview size and the frame buffers change. */
+  protected void onPreviewSizeChanging() {}
 
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
 
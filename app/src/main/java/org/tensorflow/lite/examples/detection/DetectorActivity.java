@@ -28,16 +28,48 @@ import android.graphics.Typeface;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.os.SystemClock;
 import android.util.Size;
+import android.os.Bundle;
+import android.os.Environment;
 import android.util.TypedValue;
 import android.widget.Toast;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
+import org.tensorflow.lite.examples.detection.customview.OverlayView.AnimationCallback;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
+import org.tensorflow.lite.examples.detection.env.AffineTransform;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.PngImageWriter;
+import org.tensorflow.lite.examples.detection.pipeline.FrameAdmissionController;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBuffer;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBufferPool;
+import org.tensorflow.lite.examples.detection.pipeline.FrameDumper;
+import org.tensorflow.lite.examples.detection.pipeline.FramePipeline;
+import org.tensorflow.lite.examples.detection.pipeline.FrameTracer;
+import org.tensorflow.lite.examples.detection.pipeline.IdleController;
+import org.tensorflow.lite.examples.detection.pipeline.LatencyStats;
+import org.tensorflow.lite.examples.detection.pipeline.MotionDetector;
+import org.tensorflow.lite.examples.detection.pipeline.NonMaxSuppression;
+import org.tensorflow.lite.examples.detection.pipeline.QualityController;
+import org.tensorflow.lite.examples.detection.pipeline.QualityController.Knob;
+import org.tensorflow.lite.examples.detection.pipeline.RegionPlanner;
+import org.tensorflow.lite.examples.detection.pipeline.TileGrid;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
@@ -59,31 +91,235 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
   private static final boolean MAINTAIN_ASPECT = false;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
+  // Consecutive detection passes without results after which detection slows down to save power,
+  // and how many frames apart it runs then, unless there is motion. Frames skipped by motion
+  // gating count as passes that found what the previous one did.
+  private static final int IDLE_AFTER_EMPTY_PASSES = 90;
+  private static final int IDLE_CADENCE = 30;
+  // Distance between the luminance samples compared for motion, the side of the compared blocks in
+  // samples, the mean absolute difference from the background that counts as motion in a block,
+  // and how slowly the background follows the scene.
+  private static final int MOTION_SAMPLE_STEP = 4;
+  private static final int MOTION_BLOCK_SIZE = 8;
+  private static final int MOTION_THRESHOLD = 12;
+  private static final int MOTION_BACKGROUND_SHIFT = 3;
+  // Whether to skip detection, keeping the previous results, while nothing moves, and after how
+  // many such frames to detect anyway.
+  private static final boolean MOTION_GATING = true;
+  private static final int MAX_UNCHANGED_FRAMES = 30;
+  // Whether to detect only in square crops around the changed blocks, when they are small enough,
+  // keeping the previous detections elsewhere. Every Nth pass still covers the whole frame.
+  private static final boolean MOTION_REGIONS = true;
+  private static final int MAX_MOTION_REGIONS = 3;
+  private static final int FULL_FRAME_INTERVAL = 10;
+  // Smallest crop side, so crops are upscaled at most twice, and the share of the frame above which
+  // the whole frame is cheaper.
+  private static final int MIN_REGION_SIZE = TF_OD_API_INPUT_SIZE / 2;
+  private static final float MAX_REGION_COVERAGE = 0.5f;
+  // Overlap above which detections of the same class from different crops are merged.
+  private static final float CROP_NMS_THRESHOLD = 0.5f;
+  // Whether to detect on a grid of overlapping tiles of a high resolution preview, which finds
+  // objects too small to survive downscaling the whole frame to the model input.
+  private static final boolean TILED = false;
+  private static final Size TILED_PREVIEW_SIZE = new Size(1280, 720);
+  // The rows follow from the preview's aspect ratio, so that the tiles are close to square: 3x2 on
+  // 16:9 and 4:3 previews.
+  private static final int TILE_COLUMNS = 3;
+  private static final int TILE_MAX_ROWS = 2;
+  private static final float TILE_OVERLAP = 0.1f;
+  // Number of interpreters the tiles are spread over, each on its own thread.
+  private static final int TILE_INTERPRETERS = 2;
+  private static final int MAX_CROPS =
+      TILED ? TILE_COLUMNS * TILE_MAX_ROWS : MOTION_REGIONS ? MAX_MOTION_REGIONS : 0;
+  // Whether to adjust the thread count, detection cadence and preview size to keep up with the
+  // camera frame rate.
+  private static final boolean ADAPTIVE_QUALITY = true;
+  // The camera frame interval the adaptive quality controller aims for.
+  private static final long TARGET_FRAME_INTERVAL_NANOS = 1000000000L / 30;
+  // Number of frames the controller averages over, and its hysteresis.
+  private static final int QUALITY_WINDOW = 30;
+  private static final float QUALITY_DEGRADE_MARGIN = 0.1f;
+  private static final float QUALITY_UPGRADE_MARGIN = 0.2f;
+  private static final int QUALITY_UPGRADE_WINDOWS = 3;
+  // Dumps the model input of each frame to external storage, on a background thread.
   private static final boolean SAVE_PREVIEW_BITMAP = false;
+  // Dumps uncompressed ARGB rather than PNG, which keeps up with more frames.
+  private static final boolean DUMP_RAW = false;
+  // The most dumps waiting to be written; older ones are dropped for newer ones beyond this.
+  private static final int DUMP_QUEUE_SIZE = 4;
   private static final float TEXT_SIZE_DIP = 10;
+  // Whether to run conversion, preprocessing, inference, tracking and publishing each on its own
+  // worker, so that consecutive frames overlap. Otherwise all steps run back to back on a single
+  // worker with one frame in flight, which is useful as a baseline for comparison.
+  private static final boolean PIPELINED = true;
+  // Number of frames processed at once when pipelined.
+  private static final int MAX_FRAMES_IN_FLIGHT = 2;
+  // Which captured frames to process; the others are dropped.
+  private static final FrameAdmissionController.Policy ADMISSION_POLICY =
+      FrameAdmissionController.Policy.latestWins();
+  // Number of frames over which end to end latency and throughput are computed.
+  private static final int FRAME_STATS_WINDOW = 128;
+  // Pipeline statistics are logged every this many frames.
+  private static final int STATS_LOG_INTERVAL = 100;
+  // Events traced for every frame. Each names the span that ends at it, from capture to the
+  // overlay draw that first shows the frame's detections.
+  private static final String[] TRACE_EVENTS = {
+    "capture",
+    "delivery",
+    "admission",
+    "convert queue",
+    "convert",
+    "preprocess queue",
+    "preprocess",
+    "infer queue",
+    "infer",
+    "track queue",
+    "track",
+    "publish queue",
+    "publish",
+    "draw"
+  };
+  private static final int TRACE_DELIVERY = 1;
+  private static final int TRACE_ADMISSION = 2;
+  private static final int TRACE_CONVERT = 4;
+  private static final int TRACE_PREPROCESS = 6;
+  private static final int TRACE_INFER = 8;
+  private static final int TRACE_TRACK = 10;
+  private static final int TRACE_PUBLISH = 12;
+  private static final int TRACE_DRAW = 13;
+  // Number of most recent frames traced.
+  private static final int TRACE_CAPACITY = 256;
+  // Whether to save the frame traces as Chrome trace JSON when the pipeline stops.
+  private static final boolean SAVE_FRAME_TRACE = false;
+  // Placeholder for no pending setting change.
+  private static final int NO_REQUEST = -1;
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
 
-  private Classifier detector;
+  private TFLiteObjectDetectionAPIModel detector;
+  // Additional interpreters for tiles, and the threads that run them.
+  private TFLiteObjectDetectionAPIModel[] tileDetectors = new TFLiteObjectDetectionAPIModel[0];
+  private ExecutorService tileExecutor;
+  // Tiles detected, and the time spent in inference on them. Only used by the inference stage.
+  private long tilesDetected = 0;
+  private long tileInferenceNanos = 0;
+  // Set once the preview size is known and the frame transforms are ready.
+  private boolean previewReady = false;
+  // Time the activity was created, for measuring startup.
+  private long createTimeMs;
+  private long detectorReadyTimeMs;
+  private long previewReadyTimeMs;
+  private volatile boolean firstDetectionReported = false;
+
+  // Knobs of the adaptive quality controller, in the order they are turned down.
+  private final Knob threadsKnob = new Knob("threads", 2, 4);
+  // Only every Nth camera frame is passed to the detector; the tracker covers the others.
+  private final Knob cadenceKnob = new Knob("cadence", 1, 2, 3);
+  // Preview heights, at the aspect ratio of the desired preview size.
+  private final Knob previewKnob = new Knob("preview", 480, 360, 240);
+  private QualityController qualityController;
+  private final IdleController idleController =
+      new IdleController(
+          IDLE_AFTER_EMPTY_PASSES, IDLE_CADENCE, FrameAdmissionController.SYSTEM_CLOCK);
+  // Only used on the camera thread.
+  private final MotionDetector motionDetector =
+      new MotionDetector(
+          MOTION_SAMPLE_STEP, MOTION_BLOCK_SIZE, MOTION_THRESHOLD, MOTION_BACKGROUND_SHIFT);
+  // Frames since the last detection that saw no motion, and all frames skipped for that reason.
+  private int unchangedFrames = 0;
+  private volatile long unchangedFramesSkipped = 0;
+  // Number of detections of the newest pass, repeated for frames skipped as unchanged.
+  private volatile int lastDetectionCount = 0;
+  // Set when the pipeline starts, as the motion detector has no background to compare against.
+  private volatile boolean detectNextFrame = true;
+  // Only used on the camera thread.
+  private final RegionPlanner regionPlanner =
+      new RegionPlanner(MAX_MOTION_REGIONS, MIN_REGION_SIZE, MAX_REGION_COVERAGE);
+  private int passesSinceFullFrame = 0;
+  private volatile int cadence = 1;
+  private volatile Size desiredPreviewSize = TILED ? TILED_PREVIEW_SIZE : DESIRED_PREVIEW_SIZE;
 
   private long lastProcessingTimeMs;
-  private Bitmap rgbFrameBitmap = null;
-  private Bitmap croppedBitmap = null;
   private Bitmap cropCopyBitmap = null;
 
-  private boolean computingDetection = false;
-
   private long timestamp = 0;
 
+  // Per-slot processing state, indexed by frame buffer slot.
+  private Frame[] frames;
+  private volatile FramePipeline<Frame> pipeline;
+  private FrameAdmissionController<Frame> admission;
+  private final FrameTracer tracer = new FrameTracer(TRACE_EVENTS, TRACE_CAPACITY);
+  // Sequence number of the newest published frame, and of the newest one drawn.
+  private volatile long publishedFrame = -1;
+  private long drawnFrame = -1;
+  // Time from the start of processImage to the frame being published.
+  private final LatencyStats frameLatency = new LatencyStats(FRAME_STATS_WINDOW);
+  // Interpreter settings requested from the UI, applied by the inference stage.
+  private final AtomicInteger requestedNumThreads = new AtomicInteger(NO_REQUEST);
+  private final AtomicInteger requestedUseNNAPI = new AtomicInteger(NO_REQUEST);
+
   private Matrix frameToCropTransform;
-  private Matrix cropToFrameTransform;
+  private AffineTransform cropToFrameTransform;
+  // Detection boxes as (left, top, right, bottom) runs, mapped to the frame in one batch.
+  private float[] detectionBoxes = new float[0];
+  // Scores, class ids and kept indices for merging the detections of several crops, and the
+  // detections of the previous pass in frame coordinates. Only used by the tracking stage.
+  private float[] detectionScores = new float[0];
+  private int[] detectionClasses = new int[0];
+  private int[] detectionKeep = new int[0];
+  private final Map<String, Integer> classIds = new HashMap<String, Integer>();
+  private List<Classifier.Recognition> previousResults = Collections.emptyList();
 
   private MultiBoxTracker tracker;
+  // Only set when dumping model inputs.
+  private volatile FrameDumper frameDumper;
 
   private BorderedText borderedText;
 
+  private final DrawCallback drawCallback =
+      new DrawCallback() {
+        @Override
+        public void drawCallback(final Canvas canvas) {
+          tracker.draw(canvas);
+          if (isDebug()) {
+            tracker.drawDebug(canvas);
+          }
+          traceDrawn();
+        }
+      };
+  // Boxes are animated at the display rate, independent of how often detection completes.
+  private final AnimationCallback animationCallback =
+      new AnimationCallback() {
+        @Override
+        public boolean animate(final long frameTimeMs, final int width, final int height) {
+          final boolean changed = tracker.animate(frameTimeMs, width, height);
+          if (!changed) {
+            // Nothing changed on screen, so the newest detections are already shown.
+            traceDrawn();
+          }
+          return changed;
+        }
+      };
+
   @Override
-  public void onPreviewSizeChosen(final Size size, final int rotation) {
+  protected void onCreate(final Bundle savedInstanceState) {
+    createTimeMs = SystemClock.uptimeMillis();
+    qualityController =
+        new QualityController(
+            TARGET_FRAME_INTERVAL_NANOS,
+            // Tiling needs the high resolution preview.
+            TILED
+                ? Arrays.asList(threadsKnob, cadenceKnob)
+                : Arrays.asList(threadsKnob, cadenceKnob, previewKnob),
+            this::onQualityChanged,
+            QUALITY_WINDOW,
+            QUALITY_DEGRADE_MARGIN,
+            QUALITY_UPGRADE_MARGIN,
+            QUALITY_UPGRADE_WINDOWS);
+    // Load the model while the camera is being opened.
+    new Thread(this::loadDetector, "load-detector").start();
+    super.onCreate(savedInstanceState);
+
     final float textSizePx =
         TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
@@ -91,139 +327,730 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     borderedText.setTypeface(Typeface.MONOSPACE);
 
     tracker = new MultiBoxTracker(this);
+  }
 
-    int cropSize = TF_OD_API_INPUT_SIZE;
-
+  /** Maps the model, creates the interpreter and warms it up. Runs on a background thread. */
+  private void loadDetector() {
+    final TFLiteObjectDetectionAPIModel[] loaded =
+        new TFLiteObjectDetectionAPIModel[TILED ? TILE_INTERPRETERS : 1];
     try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-      cropSize = TF_OD_API_INPUT_SIZE;
+      for (int i = 0; i < loaded.length; ++i) {
+        loaded[i] =
+            TFLiteObjectDetectionAPIModel.create(
+                getAssets(),
+                TF_OD_API_MODEL_FILE,
+                TF_OD_API_LABELS_FILE,
+                TF_OD_API_INPUT_SIZE,
+                TF_OD_API_IS_QUANTIZED);
+        if (ADAPTIVE_QUALITY) {
+          // Warm up with the thread count the first frames run with, not the model's default.
+          loaded[i].setNumThreads(threadsKnob.getValue());
+        }
+        loaded[i].warmUp();
+      }
     } catch (final IOException e) {
       e.printStackTrace();
       LOGGER.e(e, "Exception initializing classifier!");
-      Toast toast =
-          Toast.makeText(
-              getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
-      toast.show();
-      finish();
+      runOnUiThread(
+          () -> {
+            Toast toast =
+                Toast.makeText(
+                    getApplicationContext(),
+                    "Classifier could not be initialized",
+                    Toast.LENGTH_SHORT);
+            toast.show();
+            finish();
+          });
+      return;
     }
+    runOnUiThread(() -> onDetectorLoaded(loaded));
+  }
+
+  private synchronized void onDetectorLoaded(final TFLiteObjectDetectionAPIModel[] loaded) {
+    detector = loaded[0];
+    tileDetectors = Arrays.copyOfRange(loaded, 1, loaded.length);
+    if (tileDetectors.length > 0) {
+      tileExecutor = Executors.newFixedThreadPool(tileDetectors.length);
+    }
+    detectorReadyTimeMs = SystemClock.uptimeMillis();
+    LOGGER.i("Detector ready after %dms", detectorReadyTimeMs - createTimeMs);
+    if (ADAPTIVE_QUALITY) {
+      // The interpreters already use the knob's thread count, set before the warm-up.
+      showNumThreads(threadsKnob.getValue());
+    }
+    startPipeline();
+  }
 
-    previewWidth = size.getWidth();
-    previewHeight = size.getHeight();
+  @Override
+  protected synchronized void onPreviewSizeChanging() {
+    // Frames in flight still refer to the old size, transforms and frame buffers.
+    stopPipeline();
+    previewReady = false;
+  }
+
+  @Override
+  public synchronized void onPreviewSizeChosen(final Size size, final int rotation) {
+    if (SAVE_PREVIEW_BITMAP && frameDumper == null) {
+      frameDumper =
+          new FrameDumper(
+              new File(Environment.getExternalStorageDirectory(), "tensorflow/dumps"),
+              DUMP_RAW ? FrameDumper.RAW : new PngImageWriter(),
+              DUMP_QUEUE_SIZE);
+    }
+
+    final int cropSize = TF_OD_API_INPUT_SIZE;
 
     sensorOrientation = rotation - getScreenOrientation();
     LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
 
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
-    rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
 
-    frameToCropTransform =
-        ImageUtils.getTransformationMatrix(
+    final AffineTransform frameToCrop =
+        AffineTransform.getTransformation(
             previewWidth, previewHeight,
             cropSize, cropSize,
             sensorOrientation, MAINTAIN_ASPECT);
+    frameToCropTransform = ImageUtils.toMatrix(frameToCrop);
 
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
-
-    trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
-    trackingOverlay.addCallback(
-        new DrawCallback() {
-          @Override
-          public void drawCallback(final Canvas canvas) {
-            tracker.draw(canvas);
-            if (isDebug()) {
-              tracker.drawDebug(canvas);
-            }
-          }
-        });
+    cropToFrameTransform = new AffineTransform();
+    frameToCrop.invert(cropToFrameTransform);
 
+    // Each camera fragment inflates its own overlay; the tracker and its tracks are kept.
+    final OverlayView overlay = (OverlayView) findViewById(R.id.tracking_overlay);
+    if (overlay != trackingOverlay) {
+      trackingOverlay = overlay;
+      trackingOverlay.addCallback(drawCallback);
+      trackingOverlay.addAnimationCallback(animationCallback);
+    }
     tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+
+    // The frame size may have changed.
+    frames = null;
+    previousResults = Collections.emptyList();
+    previewReady = true;
+    if (previewReadyTimeMs == 0) {
+      previewReadyTimeMs = SystemClock.uptimeMillis();
+      LOGGER.i("Preview ready after %dms", previewReadyTimeMs - createTimeMs);
+    }
+    startPipeline();
+  }
+
+  @Override
+  public synchronized void onResume() {
+    super.onResume();
+    // The legacy camera does not choose the preview size again on resume.
+    startPipeline();
+  }
+
+  @Override
+  public synchronized void onPause() {
+    stopPipeline();
+    super.onPause();
+  }
+
+  @Override
+  public synchronized void onDestroy() {
+    if (tileExecutor != null) {
+      tileExecutor.shutdown();
+    }
+    if (frameDumper != null) {
+      frameDumper.close();
+      LOGGER.i("Dumps: %s", frameDumper.getSummary());
+      frameDumper = null;
+    }
+    super.onDestroy();
   }
 
   @Override
-  protected void processImage() {
+  protected int getNumFrameBuffers() {
+    // One more frame waiting for admission, and one more being captured.
+    return getMaxFramesInFlight() + 2;
+  }
+
+  private static int getMaxFramesInFlight() {
+    return PIPELINED ? MAX_FRAMES_IN_FLIGHT : 1;
+  }
+
+  /** Starts processing frames, once both the detector and the preview are ready. */
+  private synchronized void startPipeline() {
+    if (pipeline != null || detector == null || !previewReady) {
+      return;
+    }
+    final FrameBufferPool pool = getFrameBufferPool();
+    final int depth = pool.getSize();
+    if (frames == null) {
+      frames = new Frame[depth];
+      for (int i = 0; i < depth; ++i) {
+        frames[i] = new Frame(previewWidth, previewHeight, detector);
+      }
+    }
+    for (int i = 0; i < depth; ++i) {
+      if (pool.get(i).getInput() == null) {
+        pool.get(i).setInput(detector.allocateInputBuffer());
+      }
+    }
+
+    // Every stage can queue all the slots, so handing frames on never blocks.
+    final FramePipeline<Frame> newPipeline = new FramePipeline<Frame>("detector", depth);
+    if (PIPELINED) {
+      newPipeline
+          .addStage("convert", traced(TRACE_CONVERT, this::convert))
+          .addStage("preprocess", traced(TRACE_PREPROCESS, this::preprocess))
+          .addStage("infer", traced(TRACE_INFER, this::infer))
+          .addStage("track", traced(TRACE_TRACK, this::track))
+          .addStage("publish", this::publish);
+    } else {
+      final FramePipeline.Stage<Frame> convert = traced(TRACE_CONVERT, this::convert);
+      final FramePipeline.Stage<Frame> preprocess = traced(TRACE_PREPROCESS, this::preprocess);
+      final FramePipeline.Stage<Frame> infer = traced(TRACE_INFER, this::infer);
+      final FramePipeline.Stage<Frame> track = traced(TRACE_TRACK, this::track);
+      newPipeline.addStage(
+          "inference",
+          frame -> {
+            convert.process(frame);
+            preprocess.process(frame);
+            infer.process(frame);
+            track.process(frame);
+            publish(frame);
+          });
+    }
+    newPipeline.start();
+    admission =
+        new FrameAdmissionController<Frame>(
+            ADMISSION_POLICY,
+            getMaxFramesInFlight(),
+            FrameAdmissionController.SYSTEM_CLOCK,
+            (frame, reason) -> frame.release());
+    // A static scene would otherwise wait for the unchanged frame limit before being detected.
+    detectNextFrame = true;
+    pipeline = newPipeline;
+  }
+
+  private synchronized void stopPipeline() {
+    final FramePipeline<Frame> currentPipeline = pipeline;
+    if (currentPipeline == null) {
+      return;
+    }
+    pipeline = null;
+    admission.close();
+    currentPipeline.stop(frame -> frame.release());
+    LOGGER.i(
+        "Pipeline stopped: %s\n%s", admission.getStatString(), currentPipeline.getStatString());
+    LOGGER.i("Frame latency: %s", tracer.getSummary());
+    LOGGER.i(
+        "Power: %s, skipped unchanged=%d", idleController.getStatString(), unchangedFramesSkipped);
+    if (frameDumper != null) {
+      LOGGER.i("Dumps: %s", frameDumper.getSummary());
+    }
+    if (SAVE_FRAME_TRACE) {
+      saveFrameTrace();
+    }
+  }
+
+  /**
+   * Wraps a stage so that it traces when a frame is picked up, ending the preceding queue span,
+   * and when it is finished.
+   */
+  private FramePipeline.Stage<Frame> traced(
+      final int event, final FramePipeline.Stage<Frame> stage) {
+    return frame -> {
+      final long id = frame.timestamp;
+      final long startNanos = System.nanoTime();
+      tracer.mark(id, event - 1, startNanos);
+      stage.process(frame);
+      final long endNanos = System.nanoTime();
+      tracer.mark(id, event, endNanos);
+      // The slowest stage limits throughput when pipelined; otherwise the stages add up.
+      final long stageNanos = endNanos - startNanos;
+      frame.costNanos =
+          PIPELINED ? Math.max(frame.costNanos, stageNanos) : frame.costNanos + stageNanos;
+    };
+  }
+
+  /** Applies a knob changed by the quality controller. Called on the publish stage. */
+  private void onQualityChanged(final Knob knob) {
+    LOGGER.i("Quality changed: %s", qualityController);
+    if (knob == threadsKnob) {
+      setNumThreads(knob.getValue());
+      runOnUiThread(() -> showNumThreads(knob.getValue()));
+    } else if (knob == cadenceKnob) {
+      cadence = knob.getValue();
+    } else if (knob == previewKnob) {
+      final int height = knob.getValue();
+      desiredPreviewSize =
+          new Size(
+              height * DESIRED_PREVIEW_SIZE.getWidth() / DESIRED_PREVIEW_SIZE.getHeight(), height);
+      // The camera picks the closest supported size that is at least as large.
+      runOnUiThread(this::restartCamera);
+    }
+  }
+
+  /** Marks the newest published frame as drawn, once. Called on the UI thread. */
+  private void traceDrawn() {
+    final long frame = publishedFrame;
+    if (frame >= 0 && frame != drawnFrame) {
+      tracer.mark(frame, TRACE_DRAW);
+      drawnFrame = frame;
+    }
+  }
+
+  private void saveFrameTrace() {
+    final String root =
+        Environment.getExternalStorageDirectory().getAbsolutePath() + File.separator + "tensorflow";
+    final File dir = new File(root);
+    if (!dir.mkdirs()) {
+      LOGGER.i("Make dir failed");
+    }
+    final File file = new File(dir, "frame_trace.json");
+    LOGGER.i("Saving frame trace to %s.", file);
+    try (final Writer writer = new FileWriter(file)) {
+      tracer.writeChromeTrace(writer);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+    }
+  }
+
+  @Override
+  protected void processImage(final FrameBuffer buffer) {
     ++timestamp;
     final long currTimestamp = timestamp;
-    trackingOverlay.postInvalidate();
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
-      readyForNextImage();
+    final FramePipeline<Frame> currentPipeline = pipeline;
+    if (currentPipeline == null) {
+      buffer.release();
       return;
     }
-    computingDetection = true;
-    LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
+    // Cheap enough to run on every frame, which keeps the background current.
+    final boolean motion =
+        motionDetector.update(
+            buffer.getPlanes()[0], buffer.getWidth(), buffer.getHeight(), buffer.getYRowStride());
+    final boolean detect = idleController.onFrame(motion);
+    if (!detect || (!idleController.isIdle() && currTimestamp % cadence != 0)) {
+      buffer.release();
+      return;
+    }
+    // The tracker keeps showing the previous results while the scene does not change.
+    if (MOTION_GATING
+        && !motion
+        && !detectNextFrame
+        && !idleController.isIdle()
+        && ++unchangedFrames < MAX_UNCHANGED_FRAMES) {
+      ++unchangedFramesSkipped;
+      // The skipped frame would have found what the previous pass did, so it counts towards idling.
+      idleController.onDetections(lastDetectionCount);
+      buffer.release();
+      return;
+    }
+    unchangedFrames = 0;
+    detectNextFrame = false;
+    final Frame frame = frames[buffer.getIndex()];
+    frame.cropCount = 0;
+    if (TILED) {
+      frame.cropCount =
+          TileGrid.plan(
+              buffer.getWidth(),
+              buffer.getHeight(),
+              TILE_COLUMNS,
+              Math.min(
+                  TILE_MAX_ROWS,
+                  TileGrid.rowsFor(buffer.getWidth(), buffer.getHeight(), TILE_COLUMNS)),
+              TILE_OVERLAP,
+              frame.crops);
+    } else if (MOTION_REGIONS && motion && ++passesSinceFullFrame < FULL_FRAME_INTERVAL) {
+      frame.cropCount =
+          regionPlanner.plan(
+              motionDetector.getChangedBlocks(),
+              motionDetector.getBlockColumns(),
+              motionDetector.getBlockRows(),
+              motionDetector.getBlockSizePixels(),
+              buffer.getWidth(),
+              buffer.getHeight(),
+              frame.crops);
+    }
+    if (frame.cropCount == 0 || TILED) {
+      passesSinceFullFrame = 0;
+    }
+    frame.buffer = buffer;
+    frame.timestamp = currTimestamp;
+    frame.frameTimeMs = SystemClock.uptimeMillis();
+    frame.startNanos = System.nanoTime();
+    frame.pipeline = currentPipeline;
+    frame.admission = admission;
+    frame.costNanos = 0;
+    tracer.begin(currTimestamp, buffer.getTimestampNanos());
+    tracer.mark(currTimestamp, TRACE_DELIVERY, frame.startNanos);
+
+    final Frame admitted = frame.admission.onFrameCaptured(frame, buffer.getTimestampNanos());
+    if (admitted != null) {
+      submit(admitted);
+    }
+  }
+
+  @Override
+  protected void onFrameBufferUnavailable() {
+    if (pipeline != null) {
+      admission.onFrameDropped(FrameAdmissionController.DropReason.NO_BUFFER);
+    }
+  }
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+  private void submit(final Frame frame) {
+    LOGGER.i("Preparing image " + frame.timestamp + " for detection in bg thread.");
+    frame.admitNanos = System.nanoTime();
+    tracer.mark(frame.timestamp, TRACE_ADMISSION, frame.admitNanos);
+    if (!frame.pipeline.submit(frame)) {
+      // The pipeline was stopped concurrently.
+      frame.admission.onFrameCompleted(0);
+      frame.release();
+    }
+  }
 
-    readyForNextImage();
+  /** Converts the captured frame to ARGB. */
+  private void convert(final Frame frame) {
+    // The preview size fields already change while frames of the old size are still in flight
+    // during a camera restart, so the size comes from the frame itself.
+    final int width = frame.buffer.getWidth();
+    final int height = frame.buffer.getHeight();
+    if (frame.rgbFrameBitmap.getWidth() != width || frame.rgbFrameBitmap.getHeight() != height) {
+      frame.rgbFrameBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+    }
+    frame.rgbFrameBitmap.setPixels(getRgbBytes(frame.buffer), 0, width, 0, 0, width, height);
+  }
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+  /** Crops the frame to the model input and packs it into the frame's input buffer. */
+  private void preprocess(final Frame frame) {
+    if (frame.cropCount > 0) {
+      preprocessCrops(frame);
+      return;
+    }
+    frame.cropCanvas.drawBitmap(frame.rgbFrameBitmap, frameToCropTransform, null);
+    detector.preprocess(frame.croppedBitmap, frame.pixels, frame.buffer.getInput());
     // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+    dumpInput("preview", frame.pixels);
+  }
+
+  private void dumpInput(final String name, final int[] pixels) {
+    final FrameDumper dumper = frameDumper;
+    if (dumper != null) {
+      dumper.dump(name, pixels, detector.getInputSize(), detector.getInputSize());
+    }
+  }
+
+  /** Scales each of the frame's crops to the model input and packs it. */
+  private void preprocessCrops(final Frame frame) {
+    final int cropSize = detector.getInputSize();
+    for (int i = 0; i < frame.cropCount; ++i) {
+      final int left = frame.crops[4 * i];
+      final int top = frame.crops[4 * i + 1];
+      final AffineTransform frameToCrop =
+          AffineTransform.getTransformation(
+              frame.crops[4 * i + 2] - left,
+              frame.crops[4 * i + 3] - top,
+              cropSize,
+              cropSize,
+              sensorOrientation,
+              false);
+      frame.cropOffset.reset();
+      frame.cropOffset.postTranslate(-left, -top);
+      frameToCrop.preConcat(frame.cropOffset);
+      frameToCrop.invert(frame.cropToFrame[i]);
+      frameToCrop.getValues(frame.matrixValues);
+      frame.cropMatrix.setValues(frame.matrixValues);
+      frame.cropCanvas.drawBitmap(frame.rgbFrameBitmap, frame.cropMatrix, null);
+      detector.preprocess(frame.croppedBitmap, frame.pixels, frame.cropInputs[i]);
+      dumpInput("crop" + i, frame.pixels);
+    }
+  }
+
+  private void infer(final Frame frame) {
+    // The tile interpreters are idle in between frames, so they can be changed too.
+    final int numThreads = requestedNumThreads.getAndSet(NO_REQUEST);
+    if (numThreads != NO_REQUEST) {
+      detector.setNumThreads(numThreads);
+      for (final TFLiteObjectDetectionAPIModel tileDetector : tileDetectors) {
+        tileDetector.setNumThreads(numThreads);
+      }
+    }
+    final int useNNAPI = requestedUseNNAPI.getAndSet(NO_REQUEST);
+    if (useNNAPI != NO_REQUEST) {
+      detector.setUseNNAPI(useNNAPI == 1);
+      for (final TFLiteObjectDetectionAPIModel tileDetector : tileDetectors) {
+        tileDetector.setUseNNAPI(useNNAPI == 1);
+      }
+    }
+
+    LOGGER.i("Running detection on image " + frame.timestamp);
+    final long startTime = SystemClock.uptimeMillis();
+    if (frame.cropCount > 0) {
+      inferCrops(frame);
+    } else {
+      frame.results = detector.recognize(frame.buffer.getInput());
+    }
+    frame.inferenceTimeMs = SystemClock.uptimeMillis() - startTime;
+  }
+
+  /**
+   * Runs the model on each of the frame's crops. It takes one image at a time, so the crops are
+   * spread over the interpreters, each running its share back to back.
+   */
+  private void inferCrops(final Frame frame) {
+    final long startNanos = System.nanoTime();
+    frame.cropResults.clear();
+    for (int i = 0; i < frame.cropCount; ++i) {
+      frame.cropResults.add(null);
+    }
+    final int stride = 1 + tileDetectors.length;
+    final List<Future<?>> pending = new ArrayList<Future<?>>(tileDetectors.length);
+    for (int i = 1; i < stride && i < frame.cropCount; ++i) {
+      final TFLiteObjectDetectionAPIModel tileDetector = tileDetectors[i - 1];
+      final int first = i;
+      pending.add(tileExecutor.submit(() -> recognizeCrops(tileDetector, frame, first, stride)));
+    }
+    recognizeCrops(detector, frame, 0, stride);
+    boolean interrupted = false;
+    for (final Future<?> future : pending) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (final InterruptedException e) {
+          // The results are needed regardless.
+          interrupted = true;
+        } catch (final ExecutionException e) {
+          throw new IllegalStateException("Tile detection failed.", e.getCause());
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    tilesDetected += frame.cropCount;
+    tileInferenceNanos += System.nanoTime() - startNanos;
+  }
+
+  /** Detects on every stride-th crop, from the first. */
+  private static void recognizeCrops(
+      final TFLiteObjectDetectionAPIModel detector,
+      final Frame frame,
+      final int first,
+      final int stride) {
+    for (int i = first; i < frame.cropCount; i += stride) {
+      frame.cropResults.set(i, detector.recognize(frame.cropInputs[i]));
+    }
+  }
+
+  /** Returns the crops detected per second of inference. */
+  private float getTilesPerSecond() {
+    return tileInferenceNanos > 0 ? tilesDetected * 1e9f / tileInferenceNanos : 0.0f;
+  }
+
+  /** Filters the detections, maps them to frame coordinates and updates the tracker. */
+  private void track(final Frame frame) {
+    cropCopyBitmap = Bitmap.createBitmap(frame.croppedBitmap);
+    final Canvas canvas = new Canvas(cropCopyBitmap);
+    final Paint paint = new Paint();
+    paint.setColor(Color.RED);
+    paint.setStyle(Style.STROKE);
+    paint.setStrokeWidth(2.0f);
+
+    float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+    switch (MODE) {
+      case TF_OD_API:
+        minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        break;
+    }
+
+    final List<Classifier.Recognition> mappedRecognitions;
+    if (frame.cropCount > 0) {
+      mappedRecognitions = mergeCrops(frame, minimumConfidence);
+    } else {
+      mappedRecognitions = mapFullFrame(frame.results, minimumConfidence, canvas, paint);
+    }
+    previousResults = mappedRecognitions;
+
+    tracker.trackResults(mappedRecognitions, frame.timestamp, frame.frameTimeMs);
+    trackingOverlay.postInvalidateState();
+    lastDetectionCount = mappedRecognitions.size();
+    idleController.onDetections(lastDetectionCount);
+    if (isDebug()) {
+      // The debug overlay is not animated, so it needs a full redraw.
+      trackingOverlay.postInvalidate();
+    }
+  }
+
+  /** Filters the detections on the whole frame and maps them to frame coordinates. */
+  private List<Classifier.Recognition> mapFullFrame(
+      final List<Classifier.Recognition> results,
+      final float minimumConfidence,
+      final Canvas canvas,
+      final Paint paint) {
+    final List<Classifier.Recognition> mappedRecognitions =
+        new ArrayList<Classifier.Recognition>(results.size());
+
+    for (final Classifier.Recognition result : results) {
+      final RectF location = result.getLocation();
+      if (location != null && result.getConfidence() >= minimumConfidence) {
+        canvas.drawRect(location, paint);
+        mappedRecognitions.add(result);
+      }
+    }
+
+    // Map all the kept boxes from crop to frame coordinates in a single batch.
+    final int count = mappedRecognitions.size();
+    ensureDetectionCapacity(count);
+    for (int i = 0; i < count; ++i) {
+      setDetectionBox(i, mappedRecognitions.get(i).getLocation());
+    }
+    cropToFrameTransform.mapRects(detectionBoxes, 0, count);
+    for (int i = 0; i < count; ++i) {
+      mappedRecognitions
+          .get(i)
+          .setLocation(
+              new RectF(
+                  detectionBoxes[4 * i],
+                  detectionBoxes[4 * i + 1],
+                  detectionBoxes[4 * i + 2],
+                  detectionBoxes[4 * i + 3]));
+    }
+    return mappedRecognitions;
+  }
+
+  /**
+   * Maps the detections of every crop to frame coordinates, adds the previous detections outside
+   * the crops, and merges duplicates where crops overlap.
+   */
+  private List<Classifier.Recognition> mergeCrops(
+      final Frame frame, final float minimumConfidence) {
+    final List<Classifier.Recognition> candidates = new ArrayList<Classifier.Recognition>();
+    for (int i = 0; i < frame.cropCount; ++i) {
+      final int first = candidates.size();
+      for (final Classifier.Recognition result : frame.cropResults.get(i)) {
+        if (result.getLocation() != null && result.getConfidence() >= minimumConfidence) {
+          candidates.add(result);
+        }
+      }
+      ensureDetectionCapacity(candidates.size());
+      for (int j = first; j < candidates.size(); ++j) {
+        setDetectionBox(j, candidates.get(j).getLocation());
+      }
+      frame.cropToFrame[i].mapRects(detectionBoxes, 4 * first, candidates.size() - first);
+    }
+    final int mapped = candidates.size();
+    for (final Classifier.Recognition previous : previousResults) {
+      final RectF location = previous.getLocation();
+      if (!frame.containsInCrop(location.centerX(), location.centerY())) {
+        candidates.add(previous);
+      }
+    }
+    final int count = candidates.size();
+    ensureDetectionCapacity(count);
+    for (int i = 0; i < count; ++i) {
+      final Classifier.Recognition candidate = candidates.get(i);
+      if (i >= mapped) {
+        setDetectionBox(i, candidate.getLocation());
+      }
+      detectionScores[i] = candidate.getConfidence();
+      Integer classId = classIds.get(candidate.getTitle());
+      if (classId == null) {
+        classId = classIds.size();
+        classIds.put(candidate.getTitle(), classId);
+      }
+      detectionClasses[i] = classId;
     }
 
-    runInBackground(
+    final int kept =
+        NonMaxSuppression.select(
+            detectionBoxes,
+            detectionScores,
+            detectionClasses,
+            count,
+            CROP_NMS_THRESHOLD,
+            detectionKeep);
+    final List<Classifier.Recognition> merged = new ArrayList<Classifier.Recognition>(kept);
+    for (int i = 0; i < kept; ++i) {
+      final int index = detectionKeep[i];
+      final Classifier.Recognition result = candidates.get(index);
+      if (index < mapped) {
+        result.setLocation(
+            new RectF(
+                detectionBoxes[4 * index],
+                detectionBoxes[4 * index + 1],
+                detectionBoxes[4 * index + 2],
+                detectionBoxes[4 * index + 3]));
+      }
+      merged.add(result);
+    }
+    return merged;
+  }
+
+  private void ensureDetectionCapacity(final int count) {
+    if (detectionScores.length < count) {
+      final int capacity = Math.max(count, 2 * detectionScores.length);
+      detectionBoxes = Arrays.copyOf(detectionBoxes, 4 * capacity);
+      detectionScores = new float[capacity];
+      detectionClasses = new int[capacity];
+      detectionKeep = new int[capacity];
+    }
+  }
+
+  private void setDetectionBox(final int i, final RectF location) {
+    detectionBoxes[4 * i] = location.left;
+    detectionBoxes[4 * i + 1] = location.top;
+    detectionBoxes[4 * i + 2] = location.right;
+    detectionBoxes[4 * i + 3] = location.bottom;
+  }
+
+  /** Reports the frame's statistics and releases its frame buffer. */
+  private void publish(final Frame frame) {
+    // Traced here rather than by a wrapper, since the frame is recycled before this returns.
+    final long id = frame.timestamp;
+    tracer.mark(id, TRACE_PUBLISH - 1);
+    final long endNanos = System.nanoTime();
+    frameLatency.record(endNanos - frame.startNanos, endNanos);
+    lastProcessingTimeMs = frame.inferenceTimeMs;
+    if (frameLatency.getCount() % STATS_LOG_INTERVAL == 0) {
+      LOGGER.i("Frames (%s): %s", PIPELINED ? "pipelined" : "serial", frameLatency.getSummary());
+      LOGGER.i(
+          "Stages: %s\n%s", frame.admission.getStatString(), frame.pipeline.getStatString());
+      LOGGER.i("Frame latency: %s", tracer.getSummary());
+      LOGGER.i("Crops: %d, %.1f/s", tilesDetected, getTilesPerSecond());
+      LOGGER.i(
+          "Power: %s, skipped unchanged=%d",
+          idleController.getStatString(),
+          unchangedFramesSkipped);
+      if (frameDumper != null) {
+        LOGGER.i("Dumps: %s", frameDumper.getSummary());
+      }
+    }
+
+    // Detection is deliberately slow while idle, which says nothing about the load.
+    if (ADAPTIVE_QUALITY && !idleController.isIdle()) {
+      // Only one in every cadence camera frames is processed.
+      qualityController.onFrame(frame.costNanos / cadenceKnob.getValue());
+    }
+
+    final Frame next = frame.admission.onFrameCompleted(endNanos - frame.admitNanos);
+    frame.release();
+    if (next != null) {
+      submit(next);
+    }
+    tracer.mark(id, TRACE_PUBLISH);
+    publishedFrame = id;
+    if (!firstDetectionReported) {
+      firstDetectionReported = true;
+      LOGGER.i(
+          "Time to first detection: %dms (detector ready after %dms, preview after %dms)",
+          SystemClock.uptimeMillis() - createTimeMs,
+          detectorReadyTimeMs - createTimeMs,
+          previewReadyTimeMs - createTimeMs);
+    }
+
+    runOnUiThread(
         new Runnable() {
           @Override
           public void run() {
-            LOGGER.i("Running detection on image " + currTimestamp);
-            final long startTime = SystemClock.uptimeMillis();
-            final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
-            lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-
-            cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-            final Canvas canvas = new Canvas(cropCopyBitmap);
-            final Paint paint = new Paint();
-            paint.setColor(Color.RED);
-            paint.setStyle(Style.STROKE);
-            paint.setStrokeWidth(2.0f);
-
-            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-            switch (MODE) {
-              case TF_OD_API:
-                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                break;
-            }
-
-            final List<Classifier.Recognition> mappedRecognitions =
-                new LinkedList<Classifier.Recognition>();
-
-            for (final Classifier.Recognition result : results) {
-              final RectF location = result.getLocation();
-              if (location != null && result.getConfidence() >= minimumConfidence) {
-                canvas.drawRect(location, paint);
-
-                cropToFrameTransform.mapRect(location);
-
-                result.setLocation(location);
-                mappedRecognitions.add(result);
-              }
-            }
-
-            tracker.trackResults(mappedRecognitions, currTimestamp);
-            trackingOverlay.postInvalidate();
-
-            computingDetection = false;
-
-            runOnUiThread(
-                new Runnable() {
-                  @Override
-                  public void run() {
-                    showFrameInfo(previewWidth + "x" + previewHeight);
-                    showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-                    showInference(lastProcessingTimeMs + "ms");
-                  }
-                });
+            showFrameInfo(previewWidth + "x" + previewHeight);
+            showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
+            showInference(lastProcessingTimeMs + "ms");
           }
         });
   }
@@ -235,7 +1062,7 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
   @Override
   protected Size getDesiredPreviewFrameSize() {
-    return DESIRED_PREVIEW_SIZE;
+    return desiredPreviewSize;
   }
 
   // Which detection model to use: by default uses Tensorflow Object Detection API frozen
@@ -246,11 +1073,80 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    requestedUseNNAPI.set(isChecked ? 1 : 0);
   }
 
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    requestedNumThreads.set(numThreads);
+  }
+
+  /** The bitmaps and processing state that go with one frame buffer slot. */
+  private static class Frame {
+    // Recreated when a frame of another size arrives.
+    Bitmap rgbFrameBitmap;
+    final Bitmap croppedBitmap;
+    final Canvas cropCanvas;
+    final int[] pixels;
+
+    FrameBuffer buffer;
+    FramePipeline<Frame> pipeline;
+    FrameAdmissionController<Frame> admission;
+    long timestamp;
+    long frameTimeMs;
+    long startNanos;
+    long admitNanos;
+    // Time the frame took in the slowest stage, or in all stages when not pipelined.
+    long costNanos;
+    List<Classifier.Recognition> results;
+    long inferenceTimeMs;
+    // Frame regions or tiles to detect in, as (left, top, right, bottom) runs, instead of the whole
+    // frame, and the input, transform back to the frame and detections of each.
+    final int[] crops = new int[4 * MAX_CROPS];
+    int cropCount;
+    final ByteBuffer[] cropInputs;
+    final AffineTransform[] cropToFrame = new AffineTransform[MAX_CROPS];
+    final List<List<Classifier.Recognition>> cropResults =
+        new ArrayList<List<Classifier.Recognition>>(MAX_CROPS);
+    final AffineTransform cropOffset = new AffineTransform();
+    final Matrix cropMatrix = new Matrix();
+    final float[] matrixValues = new float[9];
+
+    Frame(final int width, final int height, final TFLiteObjectDetectionAPIModel detector) {
+      rgbFrameBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+      final int cropSize = detector.getInputSize();
+      croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+      cropCanvas = new Canvas(croppedBitmap);
+      pixels = new int[cropSize * cropSize];
+      cropInputs = new ByteBuffer[MAX_CROPS];
+      for (int i = 0; i < cropInputs.length; ++i) {
+        cropInputs[i] = detector.allocateInputBuffer();
+      }
+      for (int i = 0; i < cropToFrame.length; ++i) {
+        cropToFrame[i] = new AffineTransform();
+      }
+    }
+
+    /** Returns whether a frame point lies in one of the crops. */
+    boolean containsInCrop(final float x, final float y) {
+      for (int i = 0; i < cropCount; ++i) {
+        if (x >= crops[4 * i]
+            && y >= crops[4 * i + 1]
+            && x < crops[4 * i + 2]
+            && y < crops[4 * i + 3]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Drops the pipeline's reference to the frame buffer, recycling the slot. */
+    void release() {
+      results = null;
+      cropResults.clear();
+      final FrameBuffer released = buffer;
+      buffer = null;
+      released.release();
+    }
   }
 }
@@ -33,8 +33,8 @@ import android.view.ViewGroup;
 import java.io.IOException;
 import java.util.List;
 import org.tensorflow.lite.examples.detection.customview.AutoFitTextureView;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
 
 public class LegacyCameraConnectionFragment extends Fragment {
   private static final Logger LOGGER = new Logger();
@@ -178,7 +178,7 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
     camera.setPreviewCallbackWithBuffer(imageListener);
     Camera.Size s = camera.getParameters().getPreviewSize();
-    camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+    camera.addCallbackBuffer(new byte[YuvConversions.getYUVByteSize(s.height, s.width)]);
 
     textureView.setAspectRatio(s.height, s.width);
 
@@ -24,8 +24,11 @@ import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.nio.MappedByteBuffer
 import java.nio.channels.FileChannel
-import kotlin.math.exp
 import org.tensorflow.lite.Interpreter
+import org.tensorflow.lite.examples.detection.pose.PoseDecoder
+import org.tensorflow.lite.examples.detection.tflite.InferenceBackend
+import org.tensorflow.lite.examples.detection.tflite.InputPacker
+import org.tensorflow.lite.examples.detection.tflite.TfLiteBackend
 import org.tensorflow.lite.gpu.GpuDelegate
 
 enum class BodyPart {
@@ -73,19 +76,20 @@ enum class Device {
 class Posenet(
   val context: Context,
   val filename: String = "posenet_model.tflite",
-  val device: Device = Device.NNAPI
+  val device: Device = Device.NNAPI,
+  /** Runs the model instead of a TFLite interpreter on [filename], if given. */
+  private var backend: InferenceBackend? = null
 ) : AutoCloseable {
   var lastInferenceTimeNanos: Long = -1
     private set
 
-  /** An Interpreter for the TFLite model.   */
-  private var interpreter: Interpreter? = null
   private var gpuDelegate: GpuDelegate? = null
   private val NUM_LITE_THREADS = 4
 
-  private fun getInterpreter(): Interpreter {
-    if (interpreter != null) {
-      return interpreter!!
+  /** Returns the backend, creating a TFLite one for the model on first use. */
+  private fun getBackend(): InferenceBackend {
+    if (backend != null) {
+      return backend!!
     }
     val options = Interpreter.Options()
     options.setNumThreads(NUM_LITE_THREADS)
@@ -97,22 +101,17 @@ class Posenet(
       }
       Device.NNAPI -> options.setUseNNAPI(true)
     }
-    interpreter = Interpreter(loadModelFile(filename, context), options)
-    return interpreter!!
+    backend = TfLiteBackend(loadModelFile(filename, context), options)
+    return backend!!
   }
 
   override fun close() {
-    interpreter?.close()
-    interpreter = null
+    backend?.close()
+    backend = null
     gpuDelegate?.close()
     gpuDelegate = null
   }
 
-  /** Returns value within [0,1].   */
-  private fun sigmoid(x: Float): Float {
-    return (1.0f / (1.0f + exp(-x)))
-  }
-
   /**
    * Scale the image to a byteBuffer of [-1,1] values.
    */
@@ -130,11 +129,7 @@ class Posenet(
     val std = 128.0f
     val intValues = IntArray(bitmap.width * bitmap.height)
     bitmap.getPixels(intValues, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
-    for (pixelValue in intValues) {
-      inputBuffer.putFloat(((pixelValue shr 16 and 0xFF) - mean) / std)
-      inputBuffer.putFloat(((pixelValue shr 8 and 0xFF) - mean) / std)
-      inputBuffer.putFloat(((pixelValue and 0xFF) - mean) / std)
-    }
+    InputPacker.packFloat(intValues, intValues.size, mean, std, inputBuffer)
     return inputBuffer
   }
 
@@ -150,11 +145,11 @@ class Posenet(
   /**
    * Initializes an outputMap of 1 * x * y * z FloatArrays for the model processing to populate.
    */
-  private fun initOutputMap(interpreter: Interpreter): HashMap<Int, Any> {
+  private fun initOutputMap(backend: InferenceBackend): HashMap<Int, Any> {
     val outputMap = HashMap<Int, Any>()
 
     // 1 * 9 * 9 * 17 contains heatmaps
-    val heatmapsShape = interpreter.getOutputTensor(0).shape()
+    val heatmapsShape = backend.getOutputSpec(0).shape
     outputMap[0] = Array(heatmapsShape[0]) {
       Array(heatmapsShape[1]) {
         Array(heatmapsShape[2]) { FloatArray(heatmapsShape[3]) }
@@ -162,13 +157,13 @@ class Posenet(
     }
 
     // 1 * 9 * 9 * 34 contains offsets
-    val offsetsShape = interpreter.getOutputTensor(1).shape()
+    val offsetsShape = backend.getOutputSpec(1).shape
     outputMap[1] = Array(offsetsShape[0]) {
       Array(offsetsShape[1]) { Array(offsetsShape[2]) { FloatArray(offsetsShape[3]) } }
     }
 
     // 1 * 9 * 9 * 32 contains forward displacements
-    val displacementsFwdShape = interpreter.getOutputTensor(2).shape()
+    val displacementsFwdShape = backend.getOutputSpec(2).shape
     outputMap[2] = Array(offsetsShape[0]) {
       Array(displacementsFwdShape[1]) {
         Array(displacementsFwdShape[2]) { FloatArray(displacementsFwdShape[3]) }
@@ -176,7 +171,7 @@ class Posenet(
     }
 
     // 1 * 9 * 9 * 32 contains backward displacements
-    val displacementsBwdShape = interpreter.getOutputTensor(3).shape()
+    val displacementsBwdShape = backend.getOutputSpec(3).shape
     outputMap[3] = Array(displacementsBwdShape[0]) {
       Array(displacementsBwdShape[1]) {
         Array(displacementsBwdShape[2]) { FloatArray(displacementsBwdShape[3]) }
@@ -205,10 +200,10 @@ class Posenet(
       )
     )
 
-    val outputMap = initOutputMap(getInterpreter())
+    val outputMap = initOutputMap(getBackend())
 
     val inferenceStartTimeNanos = SystemClock.elapsedRealtimeNanos()
-    getInterpreter().runForMultipleInputsOutputs(inputArray, outputMap)
+    getBackend().run(inputArray, outputMap)
     lastInferenceTimeNanos = SystemClock.elapsedRealtimeNanos() - inferenceStartTimeNanos
     Log.i(
       "posenet",
@@ -218,60 +213,27 @@ class Posenet(
     val heatmaps = outputMap[0] as Array<Array<Array<FloatArray>>>
     val offsets = outputMap[1] as Array<Array<Array<FloatArray>>>
 
-    val height = heatmaps[0].size
-    val width = heatmaps[0][0].size
     val numKeypoints = heatmaps[0][0][0].size
 
-    // Finds the (row, col) locations of where the keypoints are most likely to be.
-    val keypointPositions = Array(numKeypoints) { Pair(0, 0) }
-    for (keypoint in 0 until numKeypoints) {
-      var maxVal = heatmaps[0][0][0][keypoint]
-      var maxRow = 0
-      var maxCol = 0
-      for (row in 0 until height) {
-        for (col in 0 until width) {
-          if (heatmaps[0][row][col][keypoint] > maxVal) {
-            maxVal = heatmaps[0][row][col][keypoint]
-            maxRow = row
-            maxCol = col
-          }
-        }
-      }
-      keypointPositions[keypoint] = Pair(maxRow, maxCol)
-    }
-
-    // Calculating the x and y coordinates of the keypoints with offset adjustment.
+    // Finds the most likely location of each keypoint, adjusted by its offset.
     val xCoords = IntArray(numKeypoints)
     val yCoords = IntArray(numKeypoints)
     val confidenceScores = FloatArray(numKeypoints)
-    keypointPositions.forEachIndexed { idx, position ->
-      val positionY = keypointPositions[idx].first
-      val positionX = keypointPositions[idx].second
-      yCoords[idx] = (
-        position.first / (height - 1).toFloat() * bitmap.height +
-          offsets[0][positionY][positionX][idx]
-        ).toInt()
-      xCoords[idx] = (
-        position.second / (width - 1).toFloat() * bitmap.width +
-          offsets[0][positionY]
-          [positionX][idx + numKeypoints]
-        ).toInt()
-      confidenceScores[idx] = sigmoid(heatmaps[0][positionY][positionX][idx])
-    }
+    val meanScore = PoseDecoder.decodeSinglePose(
+      heatmaps[0], offsets[0], bitmap.width, bitmap.height, xCoords, yCoords, confidenceScores
+    )
 
     val person = Person()
     val keypointList = Array(numKeypoints) { KeyPoint() }
-    var totalScore = 0.0f
     enumValues<BodyPart>().forEachIndexed { idx, it ->
       keypointList[idx].bodyPart = it
       keypointList[idx].position.x = xCoords[idx]
       keypointList[idx].position.y = yCoords[idx]
       keypointList[idx].score = confidenceScores[idx]
-      totalScore += confidenceScores[idx]
     }
 
     person.keyPoints = keypointList.toList()
-    person.score = totalScore / numKeypoints
+    person.score = meanScore
 
     return person
   }
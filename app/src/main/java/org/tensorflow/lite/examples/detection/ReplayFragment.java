@@ -0,0 +1,153 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection;
+
+import android.app.Fragment;
+import android.os.Bundle;
+import android.util.Size;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.io.File;
+import java.io.IOException;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBuffer;
+import org.tensorflow.lite.examples.detection.pipeline.FrameReplaySource;
+
+/**
+ * Feeds the frames of a recording into the pipeline in place of the camera, so that performance
+ * problems recorded in the field can be reproduced exactly. Frames are replayed at the recorded
+ * speed, dropping those the pipeline has no buffer for like the camera would, or as fast as the
+ * pipeline frees buffers.
+ */
+public class ReplayFragment extends Fragment {
+  private static final Logger LOGGER = new Logger();
+  // The sensor orientation of recordings that do not say.
+  private static final int DEFAULT_ROTATION = 90;
+
+  /** Receives the replayed frames. */
+  public interface Callback {
+    /** Called on the UI thread before the first frame of each replay. */
+    void onPreviewSizeChosen(Size size, int rotation);
+
+    /** Returns a free frame buffer, or null if all are in use. */
+    FrameBuffer acquireFrame();
+
+    /** Called on the replay thread with a frame, which the callee takes over. */
+    void onFrame(FrameBuffer frame);
+  }
+
+  private final File directory;
+  private final String name;
+  private final boolean realtime;
+  private final int layout;
+  private final Callback callback;
+  private FrameReplaySource source;
+  private Thread replayThread;
+
+  public ReplayFragment(
+      final File directory,
+      final String name,
+      final boolean realtime,
+      final int layout,
+      final Callback callback) {
+    this.directory = directory;
+    this.name = name;
+    this.realtime = realtime;
+    this.layout = layout;
+    this.callback = callback;
+  }
+
+  @Override
+  public View onCreateView(
+      final LayoutInflater inflater, final ViewGroup container, final Bundle savedInstanceState) {
+    return inflater.inflate(layout, container, false);
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    try {
+      source = FrameReplaySource.open(directory, name);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Cannot open recording %s", name);
+      return;
+    }
+    if (source.getFrameCount() == 0) {
+      LOGGER.w("Recording %s has no frames", name);
+      return;
+    }
+    final String rotation = source.getMetadata().get("rotation");
+    callback.onPreviewSizeChosen(
+        new Size(source.getWidth(0), source.getHeight(0)),
+        rotation != null ? Integer.parseInt(rotation) : DEFAULT_ROTATION);
+    replayThread = new Thread(this::replay, "replay");
+    replayThread.start();
+  }
+
+  @Override
+  public void onPause() {
+    if (replayThread != null) {
+      replayThread.interrupt();
+      try {
+        replayThread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      replayThread = null;
+    }
+    if (source != null) {
+      source.close();
+      source = null;
+    }
+    super.onPause();
+  }
+
+  private void replay() {
+    final int frameCount = source.getFrameCount();
+    final long startNanos = System.nanoTime();
+    int dropped = 0;
+    for (int i = 0; i < frameCount; ++i) {
+      FrameBuffer frame;
+      try {
+        if (realtime) {
+          source.awaitFrame(i, 0, startNanos);
+        }
+        frame = callback.acquireFrame();
+        while (frame == null && !realtime) {
+          Thread.sleep(1);
+          frame = callback.acquireFrame();
+        }
+      } catch (final InterruptedException e) {
+        return;
+      }
+      if (frame == null) {
+        ++dropped;
+        continue;
+      }
+      source.read(i, frame);
+      // Latency is measured from the time the frame entered the pipeline.
+      frame.setTimestampNanos(System.nanoTime());
+      callback.onFrame(frame);
+    }
+    LOGGER.i(
+        "Replayed %d frames of %s in %.1fs, dropped %d",
+        frameCount - dropped,
+        name,
+        (System.nanoTime() - startNanos) / 1e9,
+        dropped);
+  }
+}
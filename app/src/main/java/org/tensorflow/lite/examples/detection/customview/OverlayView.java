@@ -18,13 +18,32 @@ package org.tensorflow.lite.examples.detection.customview;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
-/** A simple View providing a render callback to other classes. */
-public class OverlayView extends View {
+/**
+ * A simple View providing a render callback to other classes. While attached to a window and its
+ * {@link AnimationCallback}s have something to animate, it also runs a render loop tied to the
+ * display vsync, letting them advance their state every display frame. The loop stops once
+ * nothing changes on screen, and {@link #postInvalidateState()} restarts it when there is new
+ * state to show, so an idle overlay does not wake the UI thread.
+ */
+public class OverlayView extends View implements Choreographer.FrameCallback {
   private final List<DrawCallback> callbacks = new LinkedList<DrawCallback>();
+  private final List<AnimationCallback> animationCallbacks = new ArrayList<AnimationCallback>();
+  private final Runnable armRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          arm();
+        }
+      };
+  // Only accessed on the UI thread.
+  private boolean attached = false;
+  private boolean armed = false;
 
   public OverlayView(final Context context, final AttributeSet attrs) {
     super(context, attrs);
@@ -34,6 +53,67 @@ public class OverlayView extends View {
     callbacks.add(callback);
   }
 
+  /** Must be called on the UI thread. */
+  public void addAnimationCallback(final AnimationCallback callback) {
+    animationCallbacks.add(callback);
+  }
+
+  /**
+   * Signals that the animation callbacks have new state to show, restarting the render loop if it
+   * stopped. May be called from any thread.
+   */
+  public void postInvalidateState() {
+    post(armRunnable);
+  }
+
+  private void arm() {
+    if (attached && !armed) {
+      armed = true;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+  }
+
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    attached = true;
+    arm();
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    attached = false;
+    armed = false;
+    Choreographer.getInstance().removeFrameCallback(this);
+    removeCallbacks(armRunnable);
+    super.onDetachedFromWindow();
+  }
+
+  @Override
+  protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    arm();
+  }
+
+  @Override
+  public void doFrame(final long frameTimeNanos) {
+    armed = false;
+    if (!attached) {
+      return;
+    }
+    // Choreographer frame times share the monotonic time base of SystemClock.uptimeMillis().
+    final long frameTimeMs = frameTimeNanos / 1000000;
+    boolean changed = false;
+    for (int i = 0; i < animationCallbacks.size(); ++i) {
+      changed |= animationCallbacks.get(i).animate(frameTimeMs, getWidth(), getHeight());
+    }
+    if (changed) {
+      // Partial invalidation is ignored by hardware accelerated views, so redraw all of it.
+      invalidate();
+      arm();
+    }
+  }
+
   @Override
   public synchronized void draw(final Canvas canvas) {
     for (final DrawCallback callback : callbacks) {
@@ -45,4 +125,18 @@ public class OverlayView extends View {
   public interface DrawCallback {
     public void drawCallback(final Canvas canvas);
   }
+
+  /** Interface defining the per display frame callback for client classes. */
+  public interface AnimationCallback {
+    /**
+     * Advances the client's render state to the given display frame time.
+     *
+     * @param frameTimeMs The display frame time, on the SystemClock.uptimeMillis() time base.
+     * @param width The width of the view.
+     * @param height The height of the view.
+     * @return Whether anything the client draws changed, so that the view has to be redrawn and
+     *     the render loop keep running.
+     */
+    public boolean animate(final long frameTimeMs, final int width, final int height);
+  }
 }
@@ -28,6 +28,8 @@ import java.util.Vector;
 public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
+  // Reused for label backgrounds so that drawing a label does not allocate a Paint.
+  private final Paint backgroundPaint = new Paint();
 
   private final float textSize;
 
@@ -83,14 +85,19 @@ public class BorderedText {
 
     float width = exteriorPaint.measureText(text);
     float textSize = exteriorPaint.getTextSize();
-    Paint paint = new Paint(bgPaint);
-    paint.setStyle(Paint.Style.FILL);
-    paint.setAlpha(160);
-    canvas.drawRect(posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, paint);
+    backgroundPaint.set(bgPaint);
+    backgroundPaint.setStyle(Paint.Style.FILL);
+    backgroundPaint.setAlpha(160);
+    canvas.drawRect(posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, backgroundPaint);
 
     canvas.drawText(text, posX, (posY + textSize), interiorPaint);
   }
 
+  /** Returns the width of the given text as drawn by {@link #drawText}. */
+  public float measureText(final String text) {
+    return exteriorPaint.measureText(text);
+  }
+
   public void drawLines(Canvas canvas, final float posX, final float posY, Vector<String> lines) {
     int lineNum = 0;
     for (final String line : lines) {
@@ -121,6 +128,10 @@ public class BorderedText {
     interiorPaint.getTextBounds(line, index, count, lineBounds);
   }
 
+  public void getFontMetrics(final Paint.FontMetrics metrics) {
+    interiorPaint.getFontMetrics(metrics);
+  }
+
   public void setTextAlign(final Align align) {
     interiorPaint.setTextAlign(align);
     exteriorPaint.setTextAlign(align);
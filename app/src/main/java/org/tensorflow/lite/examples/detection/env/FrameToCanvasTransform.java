@@ -0,0 +1,72 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * The transform from camera frame coordinates to overlay canvas coordinates. It is only
+ * recomputed when the canvas size or the frame configuration changes, and can be shared by all
+ * renderers drawing onto the same overlay.
+ */
+public class FrameToCanvasTransform {
+  private AffineTransform transform = new AffineTransform();
+  private int frameWidth;
+  private int frameHeight;
+  private int sensorOrientation;
+  // Canvas dimensions the matrix was last computed for; -1 forces a recompute.
+  private int canvasWidth = -1;
+  private int canvasHeight = -1;
+
+  public synchronized void setFrameConfiguration(
+      final int width, final int height, final int sensorOrientation) {
+    frameWidth = width;
+    frameHeight = height;
+    this.sensorOrientation = sensorOrientation;
+    canvasWidth = -1;
+    canvasHeight = -1;
+  }
+
+  /**
+   * Makes the transform target a canvas of the given size, recomputing it if needed.
+   *
+   * @return True if the transform changed.
+   */
+  public synchronized boolean update(final int width, final int height) {
+    if (width == canvasWidth && height == canvasHeight) {
+      return false;
+    }
+    final boolean rotated = sensorOrientation % 180 == 90;
+    final float multiplier =
+        Math.min(
+            height / (float) (rotated ? frameWidth : frameHeight),
+            width / (float) (rotated ? frameHeight : frameWidth));
+    transform =
+        AffineTransform.getTransformation(
+            frameWidth,
+            frameHeight,
+            (int) (multiplier * (rotated ? frameHeight : frameWidth)),
+            (int) (multiplier * (rotated ? frameWidth : frameHeight)),
+            sensorOrientation,
+            false);
+    canvasWidth = width;
+    canvasHeight = height;
+    return true;
+  }
+
+  /** Returns the transform as of the last {@link #update}. Callers must not modify it. */
+  public synchronized AffineTransform getTransform() {
+    return transform;
+  }
+}
@@ -0,0 +1,211 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of rendered {@link BorderedText} labels. Each distinct label (text and background color)
+ * is rasterized once into a shared atlas bitmap; later draws of the same label just blit its
+ * sub-rectangle of the atlas.
+ *
+ * <p>The atlas is split into rows of label height, filled left to right. Its size is bounded by
+ * the byte budget given at construction; when it is full, the least recently used row is cleared
+ * and its labels are evicted. Labels wider than the atlas are drawn directly.
+ *
+ * <p>Not thread-safe; meant to be used from the thread that draws the overlay.
+ */
+public class LabelAtlas {
+  private static final int ATLAS_WIDTH = 512;
+  private static final int BYTES_PER_PIXEL = 4;
+  private static final int PADDING = 1;
+
+  private final BorderedText borderedText;
+  private final Bitmap atlas;
+  private final Canvas atlasCanvas;
+  private final int rowHeight;
+  private final int labelHeight;
+  private final Row[] rows;
+  private final Map<LabelKey, Entry> entries = new HashMap<LabelKey, Entry>();
+  // Reused for lookups so that a cache hit does not allocate.
+  private final LabelKey lookupKey = new LabelKey();
+  private final Paint rasterPaint = new Paint();
+  private final Paint blitPaint = new Paint();
+  private final RectF destination = new RectF();
+  private long useCount = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * @param borderedText The text style to render labels with.
+   * @param maxBytes The maximum size of the atlas bitmap, in bytes.
+   */
+  public LabelAtlas(final BorderedText borderedText, final int maxBytes) {
+    this.borderedText = borderedText;
+
+    final Paint.FontMetrics metrics = new Paint.FontMetrics();
+    borderedText.getFontMetrics(metrics);
+    labelHeight = (int) Math.ceil(borderedText.getTextSize() + metrics.descent);
+    rowHeight = labelHeight + PADDING;
+
+    final int numRows = Math.max(1, maxBytes / (ATLAS_WIDTH * BYTES_PER_PIXEL * rowHeight));
+    atlas = Bitmap.createBitmap(ATLAS_WIDTH, numRows * rowHeight, Config.ARGB_8888);
+    atlasCanvas = new Canvas(atlas);
+    rows = new Row[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      rows[i] = new Row(i * rowHeight);
+    }
+  }
+
+  /**
+   * Draws a label exactly like {@link BorderedText#drawText(Canvas, float, float, String, Paint)},
+   * rasterizing it first if it is not in the atlas yet.
+   */
+  public void drawText(
+      final Canvas canvas, final float posX, final float posY, final String text, Paint bgPaint) {
+    lookupKey.text = text;
+    lookupKey.color = bgPaint.getColor();
+    Entry entry = entries.get(lookupKey);
+    if (entry == null) {
+      entry = rasterize(text, bgPaint);
+      if (entry == null) {
+        borderedText.drawText(canvas, posX, posY, text, bgPaint);
+        return;
+      }
+      ++misses;
+    } else {
+      ++hits;
+    }
+    entry.row.lastUse = ++useCount;
+
+    destination.set(posX, posY, posX + entry.bounds.width(), posY + entry.bounds.height());
+    canvas.drawBitmap(atlas, entry.bounds, destination, blitPaint);
+  }
+
+  /** Returns a summary of the cache effectiveness, for debug output. */
+  public String getStatString() {
+    return String.format(
+        "labels: %d, hits: %d, misses: %d, evictions: %d",
+        entries.size(), hits, misses, evictions);
+  }
+
+  private Entry rasterize(final String text, final Paint bgPaint) {
+    final int width = (int) Math.ceil(borderedText.measureText(text)) + PADDING;
+    if (width > ATLAS_WIDTH) {
+      return null;
+    }
+
+    Row row = null;
+    Row leastRecentlyUsed = rows[0];
+    for (final Row candidate : rows) {
+      if (ATLAS_WIDTH - candidate.usedWidth >= width) {
+        row = candidate;
+        break;
+      }
+      if (candidate.lastUse < leastRecentlyUsed.lastUse) {
+        leastRecentlyUsed = candidate;
+      }
+    }
+    if (row == null) {
+      row = leastRecentlyUsed;
+      evict(row);
+    }
+
+    final Entry entry = new Entry(new LabelKey(text, bgPaint.getColor()), row);
+    entry.bounds.set(row.usedWidth, row.top, row.usedWidth + width - PADDING, row.top + labelHeight);
+    row.usedWidth += width;
+    row.entries.add(entry);
+    entries.put(entry.key, entry);
+
+    rasterPaint.set(bgPaint);
+    borderedText.drawText(atlasCanvas, entry.bounds.left, entry.bounds.top, text, rasterPaint);
+    return entry;
+  }
+
+  private void evict(final Row row) {
+    for (final Entry entry : row.entries) {
+      entries.remove(entry.key);
+    }
+    evictions += row.entries.size();
+    row.entries.clear();
+    row.usedWidth = 0;
+
+    atlasCanvas.save();
+    atlasCanvas.clipRect(0, row.top, ATLAS_WIDTH, row.top + rowHeight);
+    atlasCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+    atlasCanvas.restore();
+  }
+
+  private static final class Row {
+    final int top;
+    final List<Entry> entries = new ArrayList<Entry>();
+    int usedWidth = 0;
+    long lastUse = 0;
+
+    Row(final int top) {
+      this.top = top;
+    }
+  }
+
+  private static final class Entry {
+    final LabelKey key;
+    final Row row;
+    final Rect bounds = new Rect();
+
+    Entry(final LabelKey key, final Row row) {
+      this.key = key;
+      this.row = row;
+    }
+  }
+
+  private static final class LabelKey {
+    String text;
+    int color;
+
+    LabelKey() {}
+
+    LabelKey(final String text, final int color) {
+      this.text = text;
+      this.color = color;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof LabelKey)) {
+        return false;
+      }
+      final LabelKey otherKey = (LabelKey) other;
+      return color == otherKey.color && text.equals(otherKey.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return text.hashCode() * 31 + color;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.tensorflow.lite.examples.detection.pipeline.FrameDumper;
+
+/** Encodes dumped images as PNG through one reused bitmap. */
+public class PngImageWriter implements FrameDumper.ImageWriter {
+  private Bitmap bitmap;
+
+  @Override
+  public String getExtension() {
+    return "png";
+  }
+
+  @Override
+  public void write(
+      final int[] argb, final int width, final int height, final OutputStream output)
+      throws IOException {
+    if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+      if (bitmap != null) {
+        bitmap.recycle();
+      }
+      bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+    }
+    bitmap.setPixels(argb, 0, width, 0, 0, width, height);
+    // PNG is lossless; the quality is ignored.
+    if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, output)) {
+      throw new IOException("Could not encode " + width + "x" + height + " image");
+    }
+  }
+}
@@ -30,10 +30,10 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.detection.env.Logger;
 
@@ -57,27 +57,18 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;
   private boolean isModelQuantized;
+  private int numBytesPerChannel;
   // Config values.
   private int inputSize;
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
+  // The boxes, classes, scores and number of detections, reused by every run.
+  private SsdOutputs outputs;
 
   private ByteBuffer imgData;
 
-  private Interpreter tfLite;
+  private InferenceBackend backend;
 
   private TFLiteObjectDetectionAPIModel() {}
 
@@ -92,8 +83,25 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
+  /** Reads the label file, one label per line. */
+  private static Vector<String> loadLabels(AssetManager assets, String labelFilename)
+      throws IOException {
+    final Vector<String> labels = new Vector<String>();
+    String actualFilename = labelFilename.split("file:///android_asset/")[1];
+    InputStream labelsInput = assets.open(actualFilename);
+    BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
+    String line;
+    while ((line = br.readLine()) != null) {
+      labels.add(line);
+    }
+    br.close();
+    LOGGER.i("Loaded %d labels from %s", labels.size(), actualFilename);
+    return labels;
+  }
+
   /**
-   * Initializes a native TensorFlow session for classifying images.
+   * Initializes a native TensorFlow session for classifying images. The labels are parsed on a
+   * separate thread while the model is mapped and the interpreter is created.
    *
    * @param assetManager The asset manager to be used to load assets.
    * @param modelFilename The filepath of the model GraphDef protocol buffer.
@@ -101,33 +109,59 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
    * @param inputSize The size of image input
    * @param isQuantized Boolean representing model is quantized or not
    */
-  public static Classifier create(
+  public static TFLiteObjectDetectionAPIModel create(
       final AssetManager assetManager,
       final String modelFilename,
       final String labelFilename,
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
-    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
-
-    String actualFilename = labelFilename.split("file:///android_asset/")[1];
-    InputStream labelsInput = assetManager.open(actualFilename);
-    BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
-    String line;
-    while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
-      d.labels.add(line);
-    }
-    br.close();
-
-    d.inputSize = inputSize;
+    final FutureTask<Vector<String>> labelsTask =
+        new FutureTask<Vector<String>>(() -> loadLabels(assetManager, labelFilename));
+    new Thread(labelsTask, "load-labels").start();
 
+    final InferenceBackend backend;
     try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+      backend =
+          new TfLiteBackend(
+              loadModelFile(assetManager, modelFilename), new Interpreter.Options());
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
 
+    final Vector<String> labels;
+    try {
+      labels = labelsTask.get();
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading labels", e);
+    }
+    return create(backend, labels, inputSize, isQuantized);
+  }
+
+  /**
+   * Creates a detector that runs on the given backend, such as a {@link SyntheticBackend} for
+   * measuring the pipeline without a model.
+   *
+   * @param backend A backend with the inputs and outputs of the SSD model. Owned by the detector.
+   * @param labels The class labels, starting with the background class.
+   * @param inputSize The size of image input
+   * @param isQuantized Boolean representing model is quantized or not
+   */
+  public static TFLiteObjectDetectionAPIModel create(
+      final InferenceBackend backend,
+      final List<String> labels,
+      final int inputSize,
+      final boolean isQuantized) {
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    d.backend = backend;
+    d.labels = new Vector<String>(labels);
+    d.inputSize = inputSize;
     d.isModelQuantized = isQuantized;
     // Pre-allocate buffers.
     int numBytesPerChannel;
@@ -136,83 +170,95 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     } else {
       numBytesPerChannel = 4; // Floating point
     }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
+    d.numBytesPerChannel = numBytesPerChannel;
+    d.imgData = d.allocateInputBuffer();
     d.intValues = new int[d.inputSize * d.inputSize];
 
-    d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
+    d.backend.setNumThreads(NUM_THREADS);
+    d.outputs = new SsdOutputs(NUM_DETECTIONS);
     return d;
   }
 
+  /**
+   * Returns a new buffer sized for the model input. Callers that preprocess frames concurrently
+   * with inference keep one per frame in flight.
+   */
+  public ByteBuffer allocateInputBuffer() {
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(1 * inputSize * inputSize * 3 * numBytesPerChannel);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  /**
+   * Runs the model once on a blank input, so that the first real frame does not pay for lazy
+   * tensor allocation and cold caches.
+   */
+  public void warmUp() {
+    Trace.beginSection("warmUp");
+    // Direct buffers start out zeroed.
+    recognize(allocateInputBuffer());
+    Trace.endSection(); // "warmUp"
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    preprocess(bitmap, intValues, imgData);
+    final List<Recognition> recognitions = recognize(imgData);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
 
+  /**
+   * Packs a bitmap of the model input size into a model input buffer. Only touches the given
+   * buffers, so it may run concurrently with {@link #recognize} on a different input buffer.
+   *
+   * @param bitmap The input image, inputSize x inputSize.
+   * @param pixels Scratch space for inputSize * inputSize pixels.
+   * @param input A buffer from {@link #allocateInputBuffer}.
+   */
+  public void preprocess(final Bitmap bitmap, final int[] pixels, final ByteBuffer input) {
     Trace.beginSection("preprocessBitmap");
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-    imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
-      }
+    bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+    if (isModelQuantized) {
+      InputPacker.packQuantized(pixels, inputSize * inputSize, input);
+    } else {
+      InputPacker.packFloat(pixels, inputSize * inputSize, IMAGE_MEAN, IMAGE_STD, input);
     }
     Trace.endSection(); // preprocessBitmap
+  }
 
-    // Copy the input data into TensorFlow.
-    Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
-    Trace.endSection();
-
+  /**
+   * Runs the model on a buffer filled by {@link #preprocess} and decodes its detections. Must not
+   * be called concurrently with itself.
+   */
+  public List<Recognition> recognize(final ByteBuffer input) {
     // Run the inference call.
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    // Only as many detections as the model reports are valid; some output fewer than they have
+    // room for.
+    final int count = outputs.run(backend, input);
     Trace.endSection();
 
-    // Show the best detections.
-    // after scaling them back to the input size.
-      
-    // You need to use the number of detections from the output and not the NUM_DETECTONS variable declared on top
-      // because on some models, they don't always output the same total number of detections
-      // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
-      // If you don't use the output's numDetections, you'll get nonsensical data
-    int numDetectionsOutput = Math.min(NUM_DETECTIONS, (int) numDetections[0]); // cast from float to integer, use min for safety
-      
-    final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
-    for (int i = 0; i < numDetectionsOutput; ++i) {
+    // Show the best detections, after scaling them back to the input size. Only the results
+    // handed to the caller are allocated per call.
+    final ArrayList<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
       final RectF detection =
           new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
+              outputs.getLeft(i) * inputSize,
+              outputs.getTop(i) * inputSize,
+              outputs.getRight(i) * inputSize,
+              outputs.getBottom(i) * inputSize);
       // SSD Mobilenet V1 Model assumes class 0 is background class
       // in label file and class labels start from 1 to number_of_classes+1,
       // while outputClasses correspond to class index from 0 to number_of_classes
@@ -220,11 +266,10 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       recognitions.add(
           new Recognition(
               "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
+              labels.get(outputs.getClassIndex(i) + labelOffset),
+              outputs.getScore(i),
               detection));
     }
-    Trace.endSection(); // "recognizeImage"
     return recognitions;
   }
 
@@ -237,14 +282,19 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    if (backend != null) {
+      backend.close();
+      backend = null;
+    }
+  }
 
   public void setNumThreads(int num_threads) {
-    if (tfLite != null) tfLite.setNumThreads(num_threads);
+    if (backend != null) backend.setNumThreads(num_threads);
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    if (backend != null) backend.setUseNNAPI(isChecked);
   }
 }
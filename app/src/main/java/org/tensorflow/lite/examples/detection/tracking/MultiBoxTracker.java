@@ -18,27 +18,36 @@ package org.tensorflow.lite.examples.detection.tracking;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Cap;
 import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Pair;
 import android.util.TypedValue;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import org.tensorflow.lite.examples.detection.env.AffineTransform;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.FrameToCanvasTransform;
+import org.tensorflow.lite.examples.detection.env.LabelAtlas;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
 
 /** A tracker that handles non-max suppression and matches existing objects to new detections. */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
+  // Memory budget for the cache of rendered labels.
+  private static final int LABEL_ATLAS_MAX_BYTES = 1024 * 1024;
   private static final float MIN_SIZE = 16.0f;
+  // Minimum overlap for a new detection to be considered a continuation of an existing track.
+  private static final float MIN_MATCH_IOU = 0.3f;
+  // How far past the newest detection a track's motion may be extrapolated.
+  private static final long MAX_EXTRAPOLATION_MS = 250;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -56,19 +65,45 @@ public class MultiBoxTracker {
     Color.parseColor("#AA33AA"),
     Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
+  final List<Pair<String, RectF>> screenRects = new ArrayList<Pair<String, RectF>>();
   private final Logger logger = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  private final List<TrackedRecognition> trackedObjects =
+      new ArrayList<TrackedRecognition>(COLORS.length);
+  // Recycled between result batches so that per-track label text survives across frames.
+  private final TrackedRecognition[] recognitionPool = new TrackedRecognition[COLORS.length];
+  // Snapshot of the previous batch of tracks, used to match them against new detections.
+  private final TrackMatcher matcher = new TrackMatcher(COLORS.length, MIN_MATCH_IOU);
+  // Boxes of all tracks as (left, top, right, bottom) runs, mapped to the canvas in one batch.
+  private final float[] canvasBoxes = new float[4 * COLORS.length];
+  // Scratch buffer for mapping a batch of results to the canvas; grown as needed.
+  private float[] resultBoxes = new float[4 * COLORS.length];
+  // Canvas regions covered by each track slot at the last animation frame.
+  private final RectF[] drawnBounds = new RectF[COLORS.length];
+  private final RectF nextBounds = new RectF();
+  private int drawnCount = 0;
+  private long renderTimeMs = 0;
   private final Paint boxPaint = new Paint();
+  private final Paint debugTextPaint = new Paint();
+  private final Paint debugBoxPaint = new Paint();
+  // Scratch rect reused by draw() so that mapping a box to the canvas does not allocate.
+  private final RectF trackedPos = new RectF();
   private final float textSizePx;
   private final BorderedText borderedText;
-  private Matrix frameToCanvasMatrix;
-  private int frameWidth;
-  private int frameHeight;
-  private int sensorOrientation;
+  private final LabelAtlas labelAtlas;
+  private final FrameToCanvasTransform frameToCanvas;
 
   public MultiBoxTracker(final Context context) {
+    this(context, new FrameToCanvasTransform());
+  }
+
+  /**
+   * @param context The context used to resolve display metrics.
+   * @param frameToCanvas The frame to canvas transform, which may be shared with other renderers
+   *     drawing onto the same overlay.
+   */
+  public MultiBoxTracker(final Context context, final FrameToCanvasTransform frameToCanvas) {
+    this.frameToCanvas = frameToCanvas;
     for (final int color : COLORS) {
       availableColors.add(color);
     }
@@ -80,99 +115,201 @@ public class MultiBoxTracker {
     boxPaint.setStrokeJoin(Join.ROUND);
     boxPaint.setStrokeMiter(100);
 
+    debugTextPaint.setColor(Color.WHITE);
+    debugTextPaint.setTextSize(60.0f);
+
+    debugBoxPaint.setColor(Color.RED);
+    debugBoxPaint.setAlpha(200);
+    debugBoxPaint.setStyle(Style.STROKE);
+
+    for (int i = 0; i < recognitionPool.length; ++i) {
+      recognitionPool[i] = new TrackedRecognition();
+      drawnBounds[i] = new RectF();
+    }
+
     textSizePx =
         TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, context.getResources().getDisplayMetrics());
     borderedText = new BorderedText(textSizePx);
+    labelAtlas = new LabelAtlas(borderedText, LABEL_ATLAS_MAX_BYTES);
   }
 
   public synchronized void setFrameConfiguration(
       final int width, final int height, final int sensorOrientation) {
-    frameWidth = width;
-    frameHeight = height;
-    this.sensorOrientation = sensorOrientation;
+    frameToCanvas.setFrameConfiguration(width, height, sensorOrientation);
   }
 
   public synchronized void drawDebug(final Canvas canvas) {
-    final Paint textPaint = new Paint();
-    textPaint.setColor(Color.WHITE);
-    textPaint.setTextSize(60.0f);
-
-    final Paint boxPaint = new Paint();
-    boxPaint.setColor(Color.RED);
-    boxPaint.setAlpha(200);
-    boxPaint.setStyle(Style.STROKE);
-
-    for (final Pair<Float, RectF> detection : screenRects) {
+    for (int i = 0; i < screenRects.size(); ++i) {
+      final Pair<String, RectF> detection = screenRects.get(i);
       final RectF rect = detection.second;
-      canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+      canvas.drawRect(rect, debugBoxPaint);
+      canvas.drawText(detection.first, rect.left, rect.top, debugTextPaint);
+      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), detection.first);
     }
   }
 
   public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
+    trackResults(results, timestamp, SystemClock.uptimeMillis());
+  }
+
+  /**
+   * Updates the tracked objects with a new batch of detections.
+   *
+   * @param results The detections, in frame coordinates.
+   * @param timestamp The sequence number of the frame the detections were made on.
+   * @param frameTimeMs The {@link SystemClock#uptimeMillis()} time the frame was captured at, used
+   *     to interpolate box positions between detections.
+   */
+  public synchronized void trackResults(
+      final List<Recognition> results, final long timestamp, final long frameTimeMs) {
     logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+    processResults(results, frameTimeMs);
+  }
+
+  private AffineTransform getFrameToCanvasTransform() {
+    return frameToCanvas.getTransform();
+  }
+
+  /**
+   * Advances the render state to the given display time.
+   *
+   * @param timeMs The display frame time, on the {@link SystemClock#uptimeMillis()} time base.
+   * @param width The width of the canvas that will be drawn to.
+   * @param height The height of the canvas that will be drawn to.
+   * @return Whether any box moved, appeared or disappeared, so that the canvas has to be redrawn.
+   */
+  public synchronized boolean animate(final long timeMs, final int width, final int height) {
+    frameToCanvas.update(width, height);
+    renderTimeMs = timeMs;
+
+    computeCanvasBoxes(timeMs);
+    final int count = trackedObjects.size();
+    final int slots = Math.max(count, drawnCount);
+    boolean changed = false;
+    for (int i = 0; i < slots; ++i) {
+      if (i < count) {
+        computeCanvasBounds(trackedObjects.get(i), i, nextBounds);
+      } else {
+        nextBounds.setEmpty();
+      }
+      final RectF previousBounds = drawnBounds[i];
+      if (!previousBounds.equals(nextBounds)) {
+        changed = true;
+        previousBounds.set(nextBounds);
+      }
+    }
+    drawnCount = count;
+    return changed;
+  }
+
+  /**
+   * Computes the interpolated (or, past the newest detection, extrapolated) position of a track in
+   * frame coordinates at the given time, storing it as (left, top, right, bottom) at {@code index}.
+   */
+  private static void interpolate(
+      final TrackedRecognition recognition, final long timeMs, final float[] out, final int index) {
+    final long spanMs = recognition.timeMs - recognition.previousTimeMs;
+    final RectF from = recognition.previousLocation;
+    final RectF to = recognition.location;
+    float alpha = 1.0f;
+    if (spanMs > 0) {
+      final long clampedMs = Math.min(timeMs, recognition.timeMs + MAX_EXTRAPOLATION_MS);
+      alpha = Math.max(0.0f, (clampedMs - recognition.previousTimeMs) / (float) spanMs);
+    }
+    out[index] = from.left + alpha * (to.left - from.left);
+    out[index + 1] = from.top + alpha * (to.top - from.top);
+    out[index + 2] = from.right + alpha * (to.right - from.right);
+    out[index + 3] = from.bottom + alpha * (to.bottom - from.bottom);
   }
 
-  private Matrix getFrameToCanvasMatrix() {
-    return frameToCanvasMatrix;
+  /** Fills canvasBoxes with the positions of all tracks at the given time, in canvas space. */
+  private void computeCanvasBoxes(final long timeMs) {
+    final int count = trackedObjects.size();
+    for (int i = 0; i < count; ++i) {
+      interpolate(trackedObjects.get(i), timeMs, canvasBoxes, 4 * i);
+    }
+    getFrameToCanvasTransform().mapRects(canvasBoxes, 0, count);
+  }
+
+  /** Computes the canvas region the track in slot {@code index} covers, label included. */
+  private void computeCanvasBounds(
+      final TrackedRecognition recognition, final int index, final RectF out) {
+    out.set(
+        canvasBoxes[4 * index],
+        canvasBoxes[4 * index + 1],
+        canvasBoxes[4 * index + 2],
+        canvasBoxes[4 * index + 3]);
+
+    final String labelString = recognition.getLabelString();
+    if (recognition.measuredLabelString != labelString) {
+      recognition.labelWidth = borderedText.measureText(labelString);
+      recognition.measuredLabelString = labelString;
+    }
+    final float cornerSize = Math.min(out.width(), out.height()) / 8.0f;
+    final float labelLeft = out.left + cornerSize;
+    out.union(labelLeft, out.top, labelLeft + recognition.labelWidth, out.top + textSizePx);
+
+    // Leave room for the rounded stroke and antialiasing.
+    final float margin = boxPaint.getStrokeWidth() / 2.0f + 1.0f;
+    out.inset(-margin, -margin);
   }
 
   public synchronized void draw(final Canvas canvas) {
-    final boolean rotated = sensorOrientation % 180 == 90;
-    final float multiplier =
-        Math.min(
-            canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-            canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
-        ImageUtils.getTransformationMatrix(
-            frameWidth,
-            frameHeight,
-            (int) (multiplier * (rotated ? frameHeight : frameWidth)),
-            (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-            sensorOrientation,
-            false);
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
-
-      getFrameToCanvasMatrix().mapRect(trackedPos);
+    frameToCanvas.update(canvas.getWidth(), canvas.getHeight());
+    computeCanvasBoxes(renderTimeMs != 0 ? renderTimeMs : SystemClock.uptimeMillis());
+    for (int i = 0; i < trackedObjects.size(); ++i) {
+      final TrackedRecognition recognition = trackedObjects.get(i);
+      trackedPos.set(
+          canvasBoxes[4 * i], canvasBoxes[4 * i + 1], canvasBoxes[4 * i + 2], canvasBoxes[4 * i + 3]);
+
       boxPaint.setColor(recognition.color);
 
       float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
       canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
 
-      final String labelString =
-          !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
-      //            borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top,
-      // labelString);
-      borderedText.drawText(
-          canvas, trackedPos.left + cornerSize, trackedPos.top, labelString + "%", boxPaint);
+      labelAtlas.drawText(
+          canvas,
+          trackedPos.left + cornerSize,
+          trackedPos.top,
+          recognition.getLabelString(),
+          boxPaint);
     }
   }
 
-  private void processResults(final List<Recognition> results) {
+  private void processResults(final List<Recognition> results, final long frameTimeMs) {
     final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
 
     screenRects.clear();
-    final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
 
-    for (final Recognition result : results) {
-      if (result.getLocation() == null) {
-        continue;
-      }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
+    // Map all result boxes to the screen in a single batch.
+    if (resultBoxes.length < 4 * results.size()) {
+      resultBoxes = new float[4 * results.size()];
+    }
+    for (int i = 0; i < results.size(); ++i) {
+      final RectF location = results.get(i).getLocation();
+      resultBoxes[4 * i] = location.left;
+      resultBoxes[4 * i + 1] = location.top;
+      resultBoxes[4 * i + 2] = location.right;
+      resultBoxes[4 * i + 3] = location.bottom;
+    }
+    getFrameToCanvasTransform().mapRects(resultBoxes, 0, results.size());
+
+    for (int i = 0; i < results.size(); ++i) {
+      final Recognition result = results.get(i);
+      final RectF detectionFrameRect = result.getLocation();
 
-      final RectF detectionScreenRect = new RectF();
-      rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
+      final RectF detectionScreenRect =
+          new RectF(
+              resultBoxes[4 * i],
+              resultBoxes[4 * i + 1],
+              resultBoxes[4 * i + 2],
+              resultBoxes[4 * i + 3]);
 
       logger.v(
           "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
 
-      screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
+      screenRects.add(new Pair<String, RectF>("" + result.getConfidence(), detectionScreenRect));
 
       if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
         logger.w("Degenerate rectangle! " + detectionFrameRect);
@@ -182,6 +319,19 @@ public class MultiBoxTracker {
       rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
     }
 
+    // Remember where the current tracks were so that the new ones can be animated from there.
+    matcher.clear();
+    for (final TrackedRecognition previous : trackedObjects) {
+      final RectF location = previous.location;
+      matcher.addPrevious(
+          previous.title,
+          location.left,
+          location.top,
+          location.right,
+          location.bottom,
+          previous.timeMs);
+    }
+
     trackedObjects.clear();
     if (rectsToTrack.isEmpty()) {
       logger.v("Nothing to track, aborting.");
@@ -189,11 +339,33 @@ public class MultiBoxTracker {
     }
 
     for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
+      final TrackedRecognition trackedRecognition = recognitionPool[trackedObjects.size()];
       trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
+      trackedRecognition.location.set(potential.second.getLocation());
       trackedRecognition.title = potential.second.getTitle();
       trackedRecognition.color = COLORS[trackedObjects.size()];
+      trackedRecognition.timeMs = frameTimeMs;
+
+      final RectF location = trackedRecognition.location;
+      final int match =
+          matcher.match(
+              trackedRecognition.title,
+              location.left,
+              location.top,
+              location.right,
+              location.bottom);
+      if (match >= 0) {
+        final float[] previousBoxes = matcher.getPreviousBoxes();
+        trackedRecognition.previousLocation.set(
+            previousBoxes[4 * match],
+            previousBoxes[4 * match + 1],
+            previousBoxes[4 * match + 2],
+            previousBoxes[4 * match + 3]);
+        trackedRecognition.previousTimeMs = matcher.getPreviousTimeMs(match);
+      } else {
+        trackedRecognition.previousLocation.set(trackedRecognition.location);
+        trackedRecognition.previousTimeMs = frameTimeMs;
+      }
       trackedObjects.add(trackedRecognition);
 
       if (trackedObjects.size() >= COLORS.length) {
@@ -203,9 +375,42 @@ public class MultiBoxTracker {
   }
 
   private static class TrackedRecognition {
-    RectF location;
+    final RectF location = new RectF();
+    // The matched location from the previous batch of detections, animated from.
+    final RectF previousLocation = new RectF();
+    long timeMs;
+    long previousTimeMs;
     float detectionConfidence;
     int color;
     String title;
+
+    // Width of measuredLabelString when drawn, used to compute the region to invalidate.
+    String measuredLabelString;
+    float labelWidth;
+
+    // Cached label text and the inputs it was built from.
+    private String labelString;
+    private String labelTitle;
+    private int labelConfidence = -1;
+
+    /**
+     * Returns the label drawn next to the box, regenerating it only when the title or the
+     * confidence bucket has changed. Confidences are bucketed to whole percents, which keeps the
+     * number of distinct labels small enough for them to stay cached in the label atlas.
+     */
+    String getLabelString() {
+      final int roundedConfidence = Math.round(100 * detectionConfidence);
+      if (labelString == null
+          || roundedConfidence != labelConfidence
+          || !TextUtils.equals(title, labelTitle)) {
+        labelString =
+            !TextUtils.isEmpty(title)
+                ? String.format("%s %d%%", title, roundedConfidence)
+                : String.format("%d%%", roundedConfidence);
+        labelTitle = title;
+        labelConfidence = roundedConfidence;
+      }
+      return labelString;
+    }
   }
 }
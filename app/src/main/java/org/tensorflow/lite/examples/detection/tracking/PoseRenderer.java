@@ -0,0 +1,208 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Style;
+import android.util.TypedValue;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.BodyPart;
+import org.tensorflow.lite.examples.detection.KeyPoint;
+import org.tensorflow.lite.examples.detection.Person;
+import org.tensorflow.lite.examples.detection.env.AffineTransform;
+import org.tensorflow.lite.examples.detection.env.FrameToCanvasTransform;
+
+/**
+ * Draws the keypoints and skeletons of PoseNet results. All limbs of one color, across all
+ * persons, are drawn with a single batched {@link Canvas#drawLines} call, and all keypoints with a
+ * single {@link Canvas#drawPoints} call.
+ */
+public class PoseRenderer {
+  private static final float LINE_WIDTH_DIP = 3;
+  private static final float POINT_SIZE_DIP = 8;
+  // Keypoints and persons scoring below these are not drawn.
+  private static final float MIN_KEYPOINT_SCORE = 0.5f;
+  private static final float MIN_PERSON_SCORE = 0.2f;
+  // Number of persons the buffers are initially sized for; they grow if more are seen.
+  private static final int INITIAL_PERSON_CAPACITY = 4;
+
+  private static final int LEFT = 0;
+  private static final int RIGHT = 1;
+  private static final int CENTER = 2;
+  private static final int[] GROUP_COLORS = {Color.GREEN, Color.MAGENTA, Color.YELLOW};
+  private static final int POINT_COLOR = Color.RED;
+
+  private static final BodyPart[][] EDGES = {
+    {BodyPart.LEFT_WRIST, BodyPart.LEFT_ELBOW},
+    {BodyPart.LEFT_ELBOW, BodyPart.LEFT_SHOULDER},
+    {BodyPart.LEFT_SHOULDER, BodyPart.LEFT_HIP},
+    {BodyPart.LEFT_HIP, BodyPart.LEFT_KNEE},
+    {BodyPart.LEFT_KNEE, BodyPart.LEFT_ANKLE},
+    {BodyPart.RIGHT_WRIST, BodyPart.RIGHT_ELBOW},
+    {BodyPart.RIGHT_ELBOW, BodyPart.RIGHT_SHOULDER},
+    {BodyPart.RIGHT_SHOULDER, BodyPart.RIGHT_HIP},
+    {BodyPart.RIGHT_HIP, BodyPart.RIGHT_KNEE},
+    {BodyPart.RIGHT_KNEE, BodyPart.RIGHT_ANKLE},
+    {BodyPart.LEFT_SHOULDER, BodyPart.RIGHT_SHOULDER},
+    {BodyPart.LEFT_HIP, BodyPart.RIGHT_HIP}
+  };
+  private static final int[] EDGE_GROUPS = {
+    LEFT, LEFT, LEFT, LEFT, LEFT, RIGHT, RIGHT, RIGHT, RIGHT, RIGHT, CENTER, CENTER
+  };
+  private static final int NUM_KEYPOINTS = BodyPart.values().length;
+
+  private final FrameToCanvasTransform frameToCanvas;
+  private final Paint[] linePaints = new Paint[GROUP_COLORS.length];
+  private final Paint pointPaint = new Paint();
+
+  // Line segments per color group as (x0, y0, x1, y1) runs, in frame and in canvas coordinates.
+  private final float[][] frameLines = new float[GROUP_COLORS.length][];
+  private final float[][] canvasLines = new float[GROUP_COLORS.length][];
+  private final int[] lineValueCounts = new int[GROUP_COLORS.length];
+  // Keypoints as (x, y) pairs, in frame and in canvas coordinates.
+  private float[] framePoints;
+  private float[] canvasPoints;
+  private int pointValueCount;
+  private int personCapacity;
+
+  public PoseRenderer(final Context context, final FrameToCanvasTransform frameToCanvas) {
+    this.frameToCanvas = frameToCanvas;
+
+    final float lineWidthPx =
+        TypedValue.applyDimension(
+            TypedValue.COMPLEX_UNIT_DIP, LINE_WIDTH_DIP, context.getResources().getDisplayMetrics());
+    final float pointSizePx =
+        TypedValue.applyDimension(
+            TypedValue.COMPLEX_UNIT_DIP, POINT_SIZE_DIP, context.getResources().getDisplayMetrics());
+
+    for (int i = 0; i < GROUP_COLORS.length; ++i) {
+      final Paint paint = new Paint();
+      paint.setColor(GROUP_COLORS[i]);
+      paint.setStyle(Style.STROKE);
+      paint.setStrokeWidth(lineWidthPx);
+      paint.setStrokeCap(Cap.ROUND);
+      paint.setAntiAlias(true);
+      linePaints[i] = paint;
+    }
+
+    pointPaint.setColor(POINT_COLOR);
+    pointPaint.setStrokeWidth(pointSizePx);
+    pointPaint.setStrokeCap(Cap.ROUND);
+    pointPaint.setAntiAlias(true);
+
+    ensureCapacity(INITIAL_PERSON_CAPACITY);
+  }
+
+  /**
+   * Replaces the poses to draw. The key points of each person are expected in {@link BodyPart}
+   * order, as returned by Posenet.
+   *
+   * @param persons The detected poses.
+   * @param inputToFrame Maps key point positions into frame coordinates, or null if they already
+   *     are in frame coordinates.
+   */
+  public synchronized void trackResults(
+      final List<Person> persons, final AffineTransform inputToFrame) {
+    ensureCapacity(persons.size());
+    for (int group = 0; group < GROUP_COLORS.length; ++group) {
+      lineValueCounts[group] = 0;
+    }
+    pointValueCount = 0;
+
+    for (int p = 0; p < persons.size(); ++p) {
+      final Person person = persons.get(p);
+      if (person.getScore() < MIN_PERSON_SCORE) {
+        continue;
+      }
+      final List<KeyPoint> keyPoints = person.getKeyPoints();
+
+      for (int e = 0; e < EDGES.length; ++e) {
+        final KeyPoint from = keyPoints.get(EDGES[e][0].ordinal());
+        final KeyPoint to = keyPoints.get(EDGES[e][1].ordinal());
+        if (from.getScore() < MIN_KEYPOINT_SCORE || to.getScore() < MIN_KEYPOINT_SCORE) {
+          continue;
+        }
+        final int group = EDGE_GROUPS[e];
+        final float[] lines = frameLines[group];
+        int index = lineValueCounts[group];
+        lines[index++] = from.getPosition().getX();
+        lines[index++] = from.getPosition().getY();
+        lines[index++] = to.getPosition().getX();
+        lines[index++] = to.getPosition().getY();
+        lineValueCounts[group] = index;
+      }
+
+      for (int k = 0; k < keyPoints.size(); ++k) {
+        final KeyPoint keyPoint = keyPoints.get(k);
+        if (keyPoint.getScore() >= MIN_KEYPOINT_SCORE) {
+          framePoints[pointValueCount++] = keyPoint.getPosition().getX();
+          framePoints[pointValueCount++] = keyPoint.getPosition().getY();
+        }
+      }
+    }
+
+    if (inputToFrame != null) {
+      for (int group = 0; group < GROUP_COLORS.length; ++group) {
+        inputToFrame.mapPoints(frameLines[group], 0, lineValueCounts[group] / 2);
+      }
+      inputToFrame.mapPoints(framePoints, 0, pointValueCount / 2);
+    }
+  }
+
+  public synchronized void setFrameConfiguration(
+      final int width, final int height, final int sensorOrientation) {
+    frameToCanvas.setFrameConfiguration(width, height, sensorOrientation);
+  }
+
+  public synchronized void draw(final Canvas canvas) {
+    frameToCanvas.update(canvas.getWidth(), canvas.getHeight());
+    final AffineTransform transform = frameToCanvas.getTransform();
+
+    for (int group = 0; group < GROUP_COLORS.length; ++group) {
+      final int count = lineValueCounts[group];
+      if (count > 0) {
+        transform.mapPoints(canvasLines[group], 0, frameLines[group], 0, count / 2);
+        canvas.drawLines(canvasLines[group], 0, count, linePaints[group]);
+      }
+    }
+    if (pointValueCount > 0) {
+      transform.mapPoints(canvasPoints, 0, framePoints, 0, pointValueCount / 2);
+      canvas.drawPoints(canvasPoints, 0, pointValueCount, pointPaint);
+    }
+  }
+
+  /** Grows the segment and point buffers so that they can hold the given number of persons. */
+  private void ensureCapacity(final int persons) {
+    if (persons <= personCapacity) {
+      return;
+    }
+    personCapacity = Math.max(persons, 2 * personCapacity);
+    final int[] edgesPerGroup = new int[GROUP_COLORS.length];
+    for (final int group : EDGE_GROUPS) {
+      ++edgesPerGroup[group];
+    }
+    for (int group = 0; group < GROUP_COLORS.length; ++group) {
+      frameLines[group] = new float[personCapacity * edgesPerGroup[group] * 4];
+      canvasLines[group] = new float[frameLines[group].length];
+    }
+    framePoints = new float[personCapacity * NUM_KEYPOINTS * 2];
+    canvasPoints = new float[framePoints.length];
+  }
+}
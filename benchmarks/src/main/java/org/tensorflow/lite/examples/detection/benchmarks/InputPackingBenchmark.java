@@ -0,0 +1,76 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.tflite.InputPacker;
+
+/**
+ * Packing a model input, as done for every detection and for every tile. The work depends on the
+ * model input size rather than the camera resolution: 257 for PoseNet, 300 for the SSD detector.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputPackingBenchmark {
+  @Param({"257", "300"})
+  public int inputSize;
+
+  private int[] pixels;
+  private ByteBuffer quantizedInput;
+  private ByteBuffer floatInput;
+
+  @Setup
+  public void setUp() {
+    final int count = inputSize * inputSize;
+    pixels = new int[count];
+    final Random random = new Random(0);
+    for (int i = 0; i < count; ++i) {
+      pixels[i] = random.nextInt();
+    }
+    quantizedInput = ByteBuffer.allocateDirect(3 * count).order(ByteOrder.nativeOrder());
+    floatInput = ByteBuffer.allocateDirect(4 * 3 * count).order(ByteOrder.nativeOrder());
+  }
+
+  @Benchmark
+  public ByteBuffer quantized() {
+    InputPacker.packQuantized(pixels, pixels.length, quantizedInput);
+    return quantizedInput;
+  }
+
+  @Benchmark
+  public ByteBuffer normalizedFloat() {
+    InputPacker.packFloat(pixels, pixels.length, 127.5f, 127.5f, floatInput);
+    return floatInput;
+  }
+}
@@ -0,0 +1,67 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.pipeline.MotionDetector;
+
+/** The motion check that runs on every camera frame, alternating between two noisy frames. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MotionDetectorBenchmark {
+  @Param({Resolutions.VGA, Resolutions.HD, Resolutions.FULL_HD})
+  public String resolution;
+
+  private int width;
+  private int height;
+  private final byte[][] frames = new byte[2][];
+  private int next = 0;
+  // The settings of the detector activity.
+  private final MotionDetector detector = new MotionDetector(4, 8, 12, 3);
+
+  @Setup
+  public void setUp() {
+    width = Resolutions.width(resolution);
+    height = Resolutions.height(resolution);
+    final Random random = new Random(0);
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = new byte[width * height];
+      random.nextBytes(frames[i]);
+    }
+  }
+
+  @Benchmark
+  public boolean update() {
+    next ^= 1;
+    return detector.update(frames[next], width, height, width);
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.pose.PoseDecoder;
+
+/**
+ * Decoding a single pose from PoseNet heatmaps and offsets. Grids of 9, 17 and 33 cells match
+ * 257 and 513 pixel inputs at an output stride of 32, and 513 pixels at a stride of 16.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PoseDecodeBenchmark {
+  private static final int NUM_KEYPOINTS = 17;
+
+  @Param({"9", "17", "33"})
+  public int gridSize;
+
+  private float[][][] heatmaps;
+  private float[][][] offsets;
+  private int imageSize;
+  private final int[] xs = new int[NUM_KEYPOINTS];
+  private final int[] ys = new int[NUM_KEYPOINTS];
+  private final float[] scores = new float[NUM_KEYPOINTS];
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(0);
+    heatmaps = new float[gridSize][gridSize][NUM_KEYPOINTS];
+    offsets = new float[gridSize][gridSize][2 * NUM_KEYPOINTS];
+    for (int row = 0; row < gridSize; ++row) {
+      for (int col = 0; col < gridSize; ++col) {
+        for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+          heatmaps[row][col][k] = (float) random.nextGaussian() * 4;
+          offsets[row][col][k] = (float) random.nextGaussian() * 8;
+          offsets[row][col][k + NUM_KEYPOINTS] = (float) random.nextGaussian() * 8;
+        }
+      }
+    }
+    imageSize = gridSize == 9 ? 257 : 513;
+  }
+
+  @Benchmark
+  public float decodeSinglePose() {
+    return PoseDecoder.decodeSinglePose(heatmaps, offsets, imageSize, imageSize, xs, ys, scores);
+  }
+}
@@ -0,0 +1,33 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+/** The camera resolutions the frame benchmarks run at, as JMH parameter values. */
+final class Resolutions {
+  static final String VGA = "640x480";
+  static final String HD = "1280x720";
+  static final String FULL_HD = "1920x1080";
+
+  private Resolutions() {}
+
+  static int width(final String resolution) {
+    return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+  }
+
+  static int height(final String resolution) {
+    return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+  }
+}
@@ -0,0 +1,121 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.pipeline.NonMaxSuppression;
+import org.tensorflow.lite.examples.detection.tracking.TrackMatcher;
+
+/**
+ * Matching a batch of detections to the previous tracks, and merging overlapping detections of
+ * crops or tiles, at several object counts. The detections are the previous boxes, jittered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrackerBenchmark {
+  private static final String[] TITLES = {"person", "car", "dog", "bicycle"};
+  private static final float FRAME_WIDTH = 1280;
+  private static final float FRAME_HEIGHT = 720;
+
+  @Param({"5", "15", "50"})
+  public int objects;
+
+  private TrackMatcher matcher;
+  private float[] previousBoxes;
+  private float[] boxes;
+  private String[] titles;
+  // Every object detected twice, as by two overlapping tiles.
+  private float[] duplicatedBoxes;
+  private float[] scores;
+  private int[] classes;
+  private int[] keep;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(0);
+    matcher = new TrackMatcher(objects, 0.3f);
+    previousBoxes = new float[4 * objects];
+    boxes = new float[4 * objects];
+    titles = new String[objects];
+    duplicatedBoxes = new float[8 * objects];
+    scores = new float[2 * objects];
+    classes = new int[2 * objects];
+    keep = new int[2 * objects];
+    for (int i = 0; i < objects; ++i) {
+      final float size = 32 + random.nextFloat() * 128;
+      final float left = random.nextFloat() * (FRAME_WIDTH - size);
+      final float top = random.nextFloat() * (FRAME_HEIGHT - size);
+      previousBoxes[4 * i] = left;
+      previousBoxes[4 * i + 1] = top;
+      previousBoxes[4 * i + 2] = left + size;
+      previousBoxes[4 * i + 3] = top + size;
+      titles[i] = TITLES[random.nextInt(TITLES.length)];
+      for (int j = 0; j < 4; ++j) {
+        boxes[4 * i + j] = previousBoxes[4 * i + j] + random.nextFloat() * 8 - 4;
+        duplicatedBoxes[8 * i + j] = boxes[4 * i + j];
+        duplicatedBoxes[8 * i + 4 + j] = previousBoxes[4 * i + j];
+      }
+      scores[2 * i] = random.nextFloat();
+      scores[2 * i + 1] = random.nextFloat();
+      classes[2 * i] = classes[2 * i + 1] = random.nextInt(TITLES.length);
+    }
+  }
+
+  @Benchmark
+  public int matchTracks() {
+    matcher.clear();
+    for (int i = 0; i < objects; ++i) {
+      matcher.addPrevious(
+          titles[i],
+          previousBoxes[4 * i],
+          previousBoxes[4 * i + 1],
+          previousBoxes[4 * i + 2],
+          previousBoxes[4 * i + 3],
+          i);
+    }
+    int matched = 0;
+    for (int i = 0; i < objects; ++i) {
+      final int match =
+          matcher.match(
+              titles[i], boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]);
+      if (match >= 0) {
+        ++matched;
+      }
+    }
+    return matched;
+  }
+
+  @Benchmark
+  public int nonMaxSuppression() {
+    return NonMaxSuppression.select(duplicatedBoxes, scores, classes, 2 * objects, 0.5f, keep);
+  }
+}
@@ -0,0 +1,82 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+
+/** Converting a camera frame to ARGB, from the legacy camera's NV21 and from camera2's planes. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class YuvConversionBenchmark {
+  @Param({Resolutions.VGA, Resolutions.HD, Resolutions.FULL_HD})
+  public String resolution;
+
+  private int width;
+  private int height;
+  private byte[] nv21;
+  private byte[] y;
+  private byte[] u;
+  private byte[] v;
+  private int yRowStride;
+  private int[] argb;
+
+  @Setup
+  public void setUp() {
+    width = Resolutions.width(resolution);
+    height = Resolutions.height(resolution);
+    final Random random = new Random(0);
+    nv21 = new byte[YuvConversions.getYUVByteSize(width, height)];
+    random.nextBytes(nv21);
+    // Camera2 pads rows, and interleaves the chroma planes two bytes apart.
+    yRowStride = (width + 63) / 64 * 64;
+    y = new byte[yRowStride * height];
+    u = new byte[yRowStride * height / 2];
+    v = new byte[yRowStride * height / 2];
+    random.nextBytes(y);
+    random.nextBytes(u);
+    random.nextBytes(v);
+    argb = new int[width * height];
+  }
+
+  @Benchmark
+  public int[] nv21() {
+    YuvConversions.convertYUV420SPToARGB8888(nv21, width, height, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] yuv420() {
+    YuvConversions.convertYUV420ToARGB8888(y, u, v, width, height, yRowStride, yRowStride, 2, argb);
+    return argb;
+  }
+}
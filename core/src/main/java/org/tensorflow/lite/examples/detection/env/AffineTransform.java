@@ -0,0 +1,335 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/**
+ * A 2D affine transform over plain floats, mapping (x, y) to
+ *
+ * <pre>
+ *   x' = scaleX * x + skewX * y + transX
+ *   y' = skewY * x + scaleY * y + transY
+ * </pre>
+ *
+ * <p>This is the subset of {@code android.graphics.Matrix} used by the frame processing pipeline.
+ * It maps whole batches of points and rectangles stored in {@code float[]} arrays in one call, and
+ * has no platform dependencies, so the coordinate pipeline can be tested on a plain JVM.
+ */
+public final class AffineTransform {
+  private float scaleX;
+  private float skewX;
+  private float transX;
+  private float skewY;
+  private float scaleY;
+  private float transY;
+
+  /** Creates an identity transform. */
+  public AffineTransform() {
+    reset();
+  }
+
+  public AffineTransform(final AffineTransform other) {
+    set(other);
+  }
+
+  /**
+   * Returns a transformation from one reference frame into another. Handles cropping (if
+   * maintaining aspect ratio is desired) and rotation. This is the equivalent of {@code
+   * ImageUtils.getTransformationMatrix} in the app.
+   *
+   * @param srcWidth Width of source frame.
+   * @param srcHeight Height of source frame.
+   * @param dstWidth Width of destination frame.
+   * @param dstHeight Height of destination frame.
+   * @param applyRotation Amount of rotation to apply from one frame to another. Should be a
+   *     multiple of 90.
+   * @param maintainAspectRatio If true, will ensure that scaling in x and y remains constant,
+   *     cropping the image if necessary.
+   * @return The transformation fulfilling the desired requirements.
+   */
+  public static AffineTransform getTransformation(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int applyRotation,
+      final boolean maintainAspectRatio) {
+    final AffineTransform transform = new AffineTransform();
+
+    if (applyRotation != 0) {
+      // Translate so center of image is at origin.
+      transform.postTranslate(-srcWidth / 2.0f, -srcHeight / 2.0f);
+
+      // Rotate around origin.
+      transform.postRotate(applyRotation);
+    }
+
+    // Account for the already applied rotation, if any, and then determine how
+    // much scaling is needed for each axis.
+    final boolean transpose = (Math.abs(applyRotation) + 90) % 180 == 0;
+
+    final int inWidth = transpose ? srcHeight : srcWidth;
+    final int inHeight = transpose ? srcWidth : srcHeight;
+
+    // Apply scaling if necessary.
+    if (inWidth != dstWidth || inHeight != dstHeight) {
+      final float scaleFactorX = dstWidth / (float) inWidth;
+      final float scaleFactorY = dstHeight / (float) inHeight;
+
+      if (maintainAspectRatio) {
+        // Scale by minimum factor so that dst is filled completely while
+        // maintaining the aspect ratio. Some image may fall off the edge.
+        final float scaleFactor = Math.max(scaleFactorX, scaleFactorY);
+        transform.postScale(scaleFactor, scaleFactor);
+      } else {
+        // Scale exactly to fill dst from src.
+        transform.postScale(scaleFactorX, scaleFactorY);
+      }
+    }
+
+    if (applyRotation != 0) {
+      // Translate back from origin centered reference to destination frame.
+      transform.postTranslate(dstWidth / 2.0f, dstHeight / 2.0f);
+    }
+
+    return transform;
+  }
+
+  public void reset() {
+    setValues(1, 0, 0, 0, 1, 0);
+  }
+
+  public void set(final AffineTransform other) {
+    setValues(
+        other.scaleX, other.skewX, other.transX, other.skewY, other.scaleY, other.transY);
+  }
+
+  public void setValues(
+      final float scaleX,
+      final float skewX,
+      final float transX,
+      final float skewY,
+      final float scaleY,
+      final float transY) {
+    this.scaleX = scaleX;
+    this.skewX = skewX;
+    this.transX = transX;
+    this.skewY = skewY;
+    this.scaleY = scaleY;
+    this.transY = transY;
+  }
+
+  /**
+   * Copies the transform into the first 9 values of {@code values}, in the row-major 3x3 layout
+   * used by {@code android.graphics.Matrix#setValues}.
+   */
+  public void getValues(final float[] values) {
+    values[0] = scaleX;
+    values[1] = skewX;
+    values[2] = transX;
+    values[3] = skewY;
+    values[4] = scaleY;
+    values[5] = transY;
+    values[6] = 0;
+    values[7] = 0;
+    values[8] = 1;
+  }
+
+  public void postTranslate(final float dx, final float dy) {
+    transX += dx;
+    transY += dy;
+  }
+
+  public void postScale(final float sx, final float sy) {
+    scaleX *= sx;
+    skewX *= sx;
+    transX *= sx;
+    skewY *= sy;
+    scaleY *= sy;
+    transY *= sy;
+  }
+
+  /** Rotates by the given degrees about the origin. Multiples of 90 are applied exactly. */
+  public void postRotate(final float degrees) {
+    final float cos;
+    final float sin;
+    final float normalized = ((degrees % 360) + 360) % 360;
+    if (normalized == 0) {
+      return;
+    } else if (normalized == 90) {
+      cos = 0;
+      sin = 1;
+    } else if (normalized == 180) {
+      cos = -1;
+      sin = 0;
+    } else if (normalized == 270) {
+      cos = 0;
+      sin = -1;
+    } else {
+      final double radians = Math.toRadians(degrees);
+      cos = (float) Math.cos(radians);
+      sin = (float) Math.sin(radians);
+    }
+    postConcat(cos, -sin, 0, sin, cos, 0);
+  }
+
+  /** Sets this transform to {@code other * this}, i.e. applies {@code other} after this one. */
+  public void postConcat(final AffineTransform other) {
+    postConcat(
+        other.scaleX, other.skewX, other.transX, other.skewY, other.scaleY, other.transY);
+  }
+
+  /** Sets this transform to {@code this * other}, i.e. applies {@code other} before this one. */
+  public void preConcat(final AffineTransform other) {
+    final float newScaleX = scaleX * other.scaleX + skewX * other.skewY;
+    final float newSkewX = scaleX * other.skewX + skewX * other.scaleY;
+    final float newTransX = scaleX * other.transX + skewX * other.transY + transX;
+    final float newSkewY = skewY * other.scaleX + scaleY * other.skewY;
+    final float newScaleY = skewY * other.skewX + scaleY * other.scaleY;
+    final float newTransY = skewY * other.transX + scaleY * other.transY + transY;
+    setValues(newScaleX, newSkewX, newTransX, newSkewY, newScaleY, newTransY);
+  }
+
+  private void postConcat(
+      final float sx, final float kx, final float tx, final float ky, final float sy, final float ty) {
+    final float newScaleX = sx * scaleX + kx * skewY;
+    final float newSkewX = sx * skewX + kx * scaleY;
+    final float newTransX = sx * transX + kx * transY + tx;
+    final float newSkewY = ky * scaleX + sy * skewY;
+    final float newScaleY = ky * skewX + sy * scaleY;
+    final float newTransY = ky * transX + sy * transY + ty;
+    setValues(newScaleX, newSkewX, newTransX, newSkewY, newScaleY, newTransY);
+  }
+
+  /**
+   * Stores the inverse of this transform in {@code inverse}, which may be this transform.
+   *
+   * @return False, leaving {@code inverse} untouched, if this transform cannot be inverted.
+   */
+  public boolean invert(final AffineTransform inverse) {
+    final float determinant = scaleX * scaleY - skewX * skewY;
+    if (determinant == 0 || Float.isNaN(determinant) || Float.isInfinite(determinant)) {
+      return false;
+    }
+    final float invDeterminant = 1.0f / determinant;
+    final float newScaleX = scaleY * invDeterminant;
+    final float newSkewX = -skewX * invDeterminant;
+    final float newSkewY = -skewY * invDeterminant;
+    final float newScaleY = scaleX * invDeterminant;
+    final float newTransX = -(newScaleX * transX + newSkewX * transY);
+    final float newTransY = -(newSkewY * transX + newScaleY * transY);
+    inverse.setValues(newScaleX, newSkewX, newTransX, newSkewY, newScaleY, newTransY);
+    return true;
+  }
+
+  /**
+   * Maps {@code pointCount} (x, y) pairs from {@code src} into {@code dst}. The arrays may be the
+   * same, in which case the points are mapped in place.
+   */
+  public void mapPoints(
+      final float[] dst,
+      final int dstIndex,
+      final float[] src,
+      final int srcIndex,
+      final int pointCount) {
+    for (int i = 0; i < 2 * pointCount; i += 2) {
+      final float x = src[srcIndex + i];
+      final float y = src[srcIndex + i + 1];
+      dst[dstIndex + i] = scaleX * x + skewX * y + transX;
+      dst[dstIndex + i + 1] = skewY * x + scaleY * y + transY;
+    }
+  }
+
+  /** Maps {@code pointCount} (x, y) pairs in place. */
+  public void mapPoints(final float[] points, final int index, final int pointCount) {
+    mapPoints(points, index, points, index, pointCount);
+  }
+
+  /**
+   * Maps {@code rectCount} (left, top, right, bottom) rectangles from {@code src} into {@code dst},
+   * storing the bounds of each mapped rectangle. The arrays may be the same, in which case the
+   * rectangles are mapped in place.
+   */
+  public void mapRects(
+      final float[] dst,
+      final int dstIndex,
+      final float[] src,
+      final int srcIndex,
+      final int rectCount) {
+    for (int i = 0; i < 4 * rectCount; i += 4) {
+      final float left = src[srcIndex + i];
+      final float top = src[srcIndex + i + 1];
+      final float right = src[srcIndex + i + 2];
+      final float bottom = src[srcIndex + i + 3];
+
+      // Each coordinate is linear in x and y, so the extremes over the rectangle can be found
+      // term by term.
+      final float xFromLeft = scaleX * left;
+      final float xFromRight = scaleX * right;
+      final float xFromTop = skewX * top;
+      final float xFromBottom = skewX * bottom;
+      final float yFromLeft = skewY * left;
+      final float yFromRight = skewY * right;
+      final float yFromTop = scaleY * top;
+      final float yFromBottom = scaleY * bottom;
+
+      dst[dstIndex + i] =
+          Math.min(xFromLeft, xFromRight) + Math.min(xFromTop, xFromBottom) + transX;
+      dst[dstIndex + i + 1] =
+          Math.min(yFromLeft, yFromRight) + Math.min(yFromTop, yFromBottom) + transY;
+      dst[dstIndex + i + 2] =
+          Math.max(xFromLeft, xFromRight) + Math.max(xFromTop, xFromBottom) + transX;
+      dst[dstIndex + i + 3] =
+          Math.max(yFromLeft, yFromRight) + Math.max(yFromTop, yFromBottom) + transY;
+    }
+  }
+
+  /** Maps {@code rectCount} (left, top, right, bottom) rectangles in place. */
+  public void mapRects(final float[] rects, final int index, final int rectCount) {
+    mapRects(rects, index, rects, index, rectCount);
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (!(other instanceof AffineTransform)) {
+      return false;
+    }
+    final AffineTransform o = (AffineTransform) other;
+    return scaleX == o.scaleX
+        && skewX == o.skewX
+        && transX == o.transX
+        && skewY == o.skewY
+        && scaleY == o.scaleY
+        && transY == o.transY;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Float.floatToIntBits(scaleX);
+    result = 31 * result + Float.floatToIntBits(skewX);
+    result = 31 * result + Float.floatToIntBits(transX);
+    result = 31 * result + Float.floatToIntBits(skewY);
+    result = 31 * result + Float.floatToIntBits(scaleY);
+    result = 31 * result + Float.floatToIntBits(transY);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "AffineTransform[%f, %f, %f][%f, %f, %f]",
+        scaleX, skewX, transX, skewY, scaleY, transY);
+  }
+}
@@ -0,0 +1,76 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+/** Scales ARGB images held in primitive arrays. */
+public final class ImageScaler {
+  private ImageScaler() {}
+
+  /**
+   * Scales an image to the given size by nearest neighbour sampling, like drawing a bitmap through
+   * a scaling matrix without filtering.
+   *
+   * @param src The source pixels, row by row.
+   * @param dst Receives dstWidth * dstHeight pixels, row by row.
+   * @param columns Scratch space for dstWidth source columns, or null to allocate it.
+   */
+  public static void scaleNearest(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight,
+      final int[] columns) {
+    scaleNearest(src, srcWidth, 0, 0, srcWidth, srcHeight, dst, dstWidth, dstHeight, columns);
+  }
+
+  /**
+   * Scales a region of an image to the given size by nearest neighbour sampling, like {@link
+   * #scaleNearest(int[], int, int, int[], int, int, int[])} on a crop of the image.
+   *
+   * @param srcStride The number of pixels per source row.
+   * @param left The left edge of the region in the source.
+   * @param top The top edge of the region in the source.
+   */
+  public static void scaleNearest(
+      final int[] src,
+      final int srcStride,
+      final int left,
+      final int top,
+      final int srcWidth,
+      final int srcHeight,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight,
+      int[] columns) {
+    if (columns == null) {
+      columns = new int[dstWidth];
+    }
+    for (int x = 0; x < dstWidth; ++x) {
+      // Sample at the center of each destination pixel.
+      columns[x] = left + Math.min(srcWidth - 1, (int) ((x + 0.5f) * srcWidth / dstWidth));
+    }
+    for (int y = 0; y < dstHeight; ++y) {
+      final int srcRow = top + Math.min(srcHeight - 1, (int) ((y + 0.5f) * srcHeight / dstHeight));
+      final int srcStart = srcRow * srcStride;
+      final int dstStart = y * dstWidth;
+      for (int x = 0; x < dstWidth; ++x) {
+        dst[dstStart + x] = src[srcStart + columns[x]];
+      }
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures how much memory each stage of the frame pipeline allocates per frame, for allocation
+ * budget tests: what the frame loop allocates in steady state is what the garbage collector has
+ * to reclaim, in pauses that drop frames. Like {@link StageProfiler}, every frame runs through
+ * the stages in order on the calling thread after some warm-up frames, so only the allocations
+ * of that thread are counted; stages must not hand work to other threads.
+ *
+ * <p>Budgets are in bytes per frame, read from text like:
+ *
+ * <pre>{@code
+ * # stage bytes_per_frame
+ * convert 0
+ * detect 512
+ * }</pre>
+ */
+public final class AllocationProfiler {
+  /** Reads how much the calling thread allocated, e.g. from the JVM's thread MXBean. */
+  public interface AllocationCounter {
+    /** Returns the bytes the calling thread allocated so far. */
+    long getAllocatedBytes();
+  }
+
+  /** The measured allocations of one stage. */
+  public static final class Result {
+    private final String name;
+    private final int frames;
+    private final long totalBytes;
+    private final long maxBytes;
+
+    Result(final String name, final int frames, final long totalBytes, final long maxBytes) {
+      this.name = name;
+      this.frames = frames;
+      this.totalBytes = totalBytes;
+      this.maxBytes = maxBytes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getFrames() {
+      return frames;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    /** Returns the mean bytes allocated per frame, rounded up so that rare allocations show. */
+    public long getBytesPerFrame() {
+      return frames > 0 ? (totalBytes + frames - 1) / frames : 0;
+    }
+
+    /** Returns the most bytes allocated by one frame. */
+    public long getMaxBytes() {
+      return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s: n=%d bytes/frame=%d max=%d total=%d",
+          name,
+          frames,
+          getBytesPerFrame(),
+          maxBytes,
+          totalBytes);
+    }
+  }
+
+  private final AllocationCounter counter;
+  private final List<String> names = new ArrayList<>();
+  private final List<StageProfiler.Stage> stages = new ArrayList<>();
+  // Sites that allocate per frame but cannot run here, with why, so the report does not show them
+  // as clean.
+  private final Map<String, String> unmeasured = new LinkedHashMap<>();
+
+  public AllocationProfiler(final AllocationCounter counter) {
+    this.counter = counter;
+  }
+
+  /** Appends a stage, returning this profiler. */
+  public AllocationProfiler addStage(final String name, final StageProfiler.Stage stage) {
+    if (names.contains(name)) {
+      throw new IllegalArgumentException("Duplicate stage: " + name);
+    }
+    names.add(name);
+    stages.add(stage);
+    return this;
+  }
+
+  /**
+   * Records a site of the frame loop that cannot be measured here, such as code that needs the
+   * Android framework, returning this profiler. It is listed in the {@link #rank} report.
+   */
+  public AllocationProfiler addUnmeasured(final String site, final String reason) {
+    unmeasured.put(site, reason);
+    return this;
+  }
+
+  /**
+   * Returns what reading the counter allocates itself, the least of a few back to back reads, so
+   * that it can be taken off every measurement.
+   */
+  private long measureOverhead() {
+    long overhead = Long.MAX_VALUE;
+    for (int i = 0; i < 32; ++i) {
+      final long before = counter.getAllocatedBytes();
+      overhead = Math.min(overhead, counter.getAllocatedBytes() - before);
+    }
+    return overhead;
+  }
+
+  /**
+   * Runs the frames through the stages on the calling thread, cycling through them as often as
+   * needed.
+   *
+   * @param frameCount The number of distinct frames.
+   * @param warmupFrames The number of frames run before measuring, so that the stages have
+   *     allocated their buffers and the JIT has compiled them.
+   * @param measuredFrames The number of frames measured.
+   * @return The results of the stages, in order.
+   */
+  public Result[] run(final int frameCount, final int warmupFrames, final int measuredFrames)
+      throws Exception {
+    final int stageCount = stages.size();
+    final long[] totalBytes = new long[stageCount];
+    final long[] maxBytes = new long[stageCount];
+    long overhead = 0;
+    for (int i = 0; i < warmupFrames + measuredFrames; ++i) {
+      if (i == warmupFrames) {
+        overhead = measureOverhead();
+      }
+      final int frame = i % frameCount;
+      for (int s = 0; s < stageCount; ++s) {
+        final long before = counter.getAllocatedBytes();
+        stages.get(s).run(frame);
+        final long bytes = Math.max(0, counter.getAllocatedBytes() - before - overhead);
+        if (i >= warmupFrames) {
+          totalBytes[s] += bytes;
+          maxBytes[s] = Math.max(maxBytes[s], bytes);
+        }
+      }
+    }
+    final Result[] results = new Result[stageCount];
+    for (int s = 0; s < stageCount; ++s) {
+      results[s] = new Result(names.get(s), measuredFrames, totalBytes[s], maxBytes[s]);
+    }
+    return results;
+  }
+
+  /** Reads budgets in bytes per frame by stage, ignoring blank lines and {@code #} comments. */
+  public static Map<String, Long> readBudgets(final Reader reader) throws IOException {
+    final Map<String, Long> budgets = new LinkedHashMap<>();
+    final BufferedReader lines = new BufferedReader(reader);
+    String line;
+    int number = 0;
+    while ((line = lines.readLine()) != null) {
+      ++number;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      final String[] fields = line.split("\\s+");
+      if (fields.length != 2) {
+        throw new IOException("Expected a stage and a byte count on line " + number + ": " + line);
+      }
+      try {
+        budgets.put(fields[0], Long.parseLong(fields[1]));
+      } catch (final NumberFormatException e) {
+        throw new IOException("Bad byte count on line " + number + ": " + line, e);
+      }
+    }
+    return budgets;
+  }
+
+  /**
+   * Checks the results against budgets in bytes per frame.
+   *
+   * @return A description of each stage over its budget, and of each budgeted stage that was not
+   *     measured; empty if all are within budget.
+   */
+  public static List<String> findOverBudget(
+      final Map<String, Long> budgets, final Result[] results) {
+    final List<String> failures = new ArrayList<>();
+    final Set<String> measured = new HashSet<>();
+    for (final Result result : results) {
+      measured.add(result.getName());
+      final Long budget = budgets.get(result.getName());
+      if (budget != null && result.getBytesPerFrame() > budget) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s over budget: %d bytes/frame (budget %d), at most %d in one frame",
+                result.getName(),
+                result.getBytesPerFrame(),
+                budget,
+                result.getMaxBytes()));
+      }
+    }
+    for (final String stage : budgets.keySet()) {
+      if (!measured.contains(stage)) {
+        failures.add(stage + " has a budget but was not measured");
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Returns a report of the stages that allocate, most bytes per frame first, with their share of
+   * the frame's allocations and the allocation rate they cause at the given frame rate, followed
+   * by the sites that were not measured.
+   */
+  public String rank(final Result[] results, final double framesPerSecond) {
+    final Result[] sorted = results.clone();
+    Arrays.sort(sorted, (a, b) -> Long.compare(b.getBytesPerFrame(), a.getBytesPerFrame()));
+    long frameBytes = 0;
+    for (final Result result : sorted) {
+      frameBytes += result.getBytesPerFrame();
+    }
+    final StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            Locale.US,
+            "%d bytes/frame, %.1f KB/s at %.0f fps\n",
+            frameBytes,
+            frameBytes * framesPerSecond / 1024,
+            framesPerSecond));
+    int rank = 0;
+    for (final Result result : sorted) {
+      if (result.getBytesPerFrame() == 0) {
+        break;
+      }
+      report.append(
+          String.format(
+              Locale.US,
+              "%2d. %-12s %8d bytes/frame %5.1f%% max=%d\n",
+              ++rank,
+              result.getName(),
+              result.getBytesPerFrame(),
+              100.0 * result.getBytesPerFrame() / frameBytes,
+              result.getMaxBytes()));
+    }
+    if (rank == 0) {
+      report.append("No measured stage allocates in steady state.\n");
+    }
+    if (!unmeasured.isEmpty()) {
+      report.append("Not measured:\n");
+      for (final Map.Entry<String, String> site : unmeasured.entrySet()) {
+        report.append("    ").append(site.getKey()).append(": ").append(site.getValue());
+        report.append('\n');
+      }
+    }
+    return report.toString();
+  }
+}
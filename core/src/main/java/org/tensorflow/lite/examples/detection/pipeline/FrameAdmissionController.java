@@ -0,0 +1,371 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides which captured frames enter the pipeline, according to a {@link Policy}, and keeps
+ * counts of frames captured, admitted, dropped (per {@link DropReason}) and completed.
+ *
+ * <p>At most {@code maxInFlight} frames are admitted at a time. {@link #onFrameCaptured} must
+ * always be called from the same thread; {@link #onFrameCompleted} may be called from any thread.
+ * Dropped frames are handed to the {@link Recycler} on the thread that dropped them.
+ */
+public final class FrameAdmissionController<T> {
+  /** Why a captured frame was not processed. */
+  public enum DropReason {
+    /** The maximum number of frames was already in flight. */
+    BUSY,
+    /** A newer frame arrived while this one was waiting to be admitted. */
+    SUPERSEDED,
+    /** Not one of every N frames. */
+    SKIPPED,
+    /** Arrived sooner after the last admitted frame than the target frame rate allows. */
+    RATE_LIMITED,
+    /** Would not have finished within its deadline. */
+    DEADLINE,
+    /** The controller was closed. */
+    STOPPED,
+    /** No frame buffer was free to copy the frame into, so it was never offered. */
+    NO_BUFFER
+  }
+
+  /** A source of monotonic time, replaceable for tests. */
+  public interface Clock {
+    long nanoTime();
+  }
+
+  /** Takes back frames that were dropped. */
+  public interface Recycler<T> {
+    void recycle(T frame, DropReason reason);
+  }
+
+  public static final Clock SYSTEM_CLOCK =
+      new Clock() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+      };
+
+  /** Selects which frames to admit. Policies are immutable and may be shared. */
+  public static final class Policy {
+    private enum Kind {
+      LATEST_WINS,
+      EVERY_NTH,
+      TARGET_FPS,
+      DEADLINE
+    }
+
+    private final Kind kind;
+    private final long parameter;
+
+    private Policy(final Kind kind, final long parameter) {
+      this.kind = kind;
+      this.parameter = parameter;
+    }
+
+    /**
+     * Admits frames whenever there is room. While the pipeline is full, the newest frame waits to
+     * be admitted as soon as a frame completes, replacing any older waiting frame.
+     */
+    public static Policy latestWins() {
+      return new Policy(Kind.LATEST_WINS, 0);
+    }
+
+    /** Only considers the first of every {@code n} captured frames. */
+    public static Policy everyNth(final int n) {
+      if (n <= 0) {
+        throw new IllegalArgumentException("N must be positive: " + n);
+      }
+      return new Policy(Kind.EVERY_NTH, n);
+    }
+
+    /** Admits frames no faster than the given rate, following a fixed schedule. */
+    public static Policy targetFps(final double fps) {
+      if (!(fps > 0)) {
+        throw new IllegalArgumentException("Frame rate must be positive: " + fps);
+      }
+      return new Policy(Kind.TARGET_FPS, Math.round(1e9 / fps));
+    }
+
+    /**
+     * Drops frames whose age at admission, plus the recent average processing time, exceeds the
+     * given time from capture to completion.
+     */
+    public static Policy deadline(final long deadlineNanos) {
+      if (deadlineNanos <= 0) {
+        throw new IllegalArgumentException("Deadline must be positive: " + deadlineNanos);
+      }
+      return new Policy(Kind.DEADLINE, deadlineNanos);
+    }
+
+    @Override
+    public String toString() {
+      switch (kind) {
+        case EVERY_NTH:
+          return "every " + parameter + " frames";
+        case TARGET_FPS:
+          return String.format("%.1f fps", 1e9 / parameter);
+        case DEADLINE:
+          return String.format("deadline %.1fms", parameter / 1e6);
+        default:
+          return "latest wins";
+      }
+    }
+  }
+
+  // Weight of the most recent processing time in its moving average, as a power of two.
+  private static final int LATENCY_AVERAGE_SHIFT = 3;
+  // Fraction of the frame interval by which a frame may arrive early under a target frame rate.
+  private static final int RATE_TOLERANCE_DIVISOR = 8;
+
+  private final Policy policy;
+  private final int maxInFlight;
+  private final Clock clock;
+  private final Recycler<T> recycler;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // A frame waiting for room under the latest wins policy.
+  private final AtomicReference<T> pending = new AtomicReference<T>();
+  private final AtomicLong latencyAverageNanos = new AtomicLong();
+
+  private final AtomicLong captured = new AtomicLong();
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLongArray dropped = new AtomicLongArray(DropReason.values().length);
+
+  private volatile boolean closed = false;
+  // Only accessed from the capture thread.
+  private long nextAdmitNanos;
+  private boolean hasAdmitted = false;
+
+  public FrameAdmissionController(
+      final Policy policy, final int maxInFlight, final Clock clock, final Recycler<T> recycler) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("At least one frame must be allowed in flight.");
+    }
+    this.policy = policy;
+    this.maxInFlight = maxInFlight;
+    this.clock = clock;
+    this.recycler = recycler;
+  }
+
+  /**
+   * Offers a newly captured frame.
+   *
+   * @param captureTimeNanos The capture time of the frame, in the time base of the clock.
+   * @return The frame to process now, or null if the frame was dropped or is waiting for room.
+   */
+  public T onFrameCaptured(final T frame, final long captureTimeNanos) {
+    captured.incrementAndGet();
+    if (closed) {
+      drop(frame, DropReason.STOPPED);
+      return null;
+    }
+    final long nowNanos = clock.nanoTime();
+
+    final DropReason reason = checkPolicy(nowNanos, captureTimeNanos);
+    if (reason != null) {
+      drop(frame, reason);
+      return null;
+    }
+
+    if (policy.kind == Policy.Kind.LATEST_WINS) {
+      final T older = pending.getAndSet(frame);
+      if (older != null) {
+        drop(older, DropReason.SUPERSEDED);
+      }
+      if (closed) {
+        dropPending();
+        return null;
+      }
+      // Completion may have freed room before the frame was parked, without seeing it.
+      return admitPending();
+    }
+
+    if (!tryAcquire()) {
+      drop(frame, DropReason.BUSY);
+      return null;
+    }
+    onAdmitted(nowNanos);
+    return frame;
+  }
+
+  /**
+   * Counts a captured frame that was dropped before it could be offered, e.g. for lack of a frame
+   * buffer. There is no frame to hand to the recycler.
+   */
+  public void onFrameDropped(final DropReason reason) {
+    captured.incrementAndGet();
+    dropped.incrementAndGet(reason.ordinal());
+  }
+
+  /**
+   * Reports that an admitted frame has left the pipeline.
+   *
+   * @param processingNanos The time the frame took from admission to completion.
+   * @return A waiting frame to process now, or null.
+   */
+  public T onFrameCompleted(final long processingNanos) {
+    completed.incrementAndGet();
+    long average;
+    do {
+      average = latencyAverageNanos.get();
+    } while (!latencyAverageNanos.compareAndSet(
+        average,
+        average == 0
+            ? processingNanos
+            : average + ((processingNanos - average) >> LATENCY_AVERAGE_SHIFT)));
+    inFlight.decrementAndGet();
+    return admitPending();
+  }
+
+  /**
+   * Drops any frame waiting for admission, and every frame captured from now on. Frames in flight
+   * are still expected to complete or be discarded by the caller.
+   */
+  public void close() {
+    closed = true;
+    dropPending();
+  }
+
+  private void dropPending() {
+    final T frame = pending.getAndSet(null);
+    if (frame != null) {
+      drop(frame, DropReason.STOPPED);
+    }
+  }
+
+  private DropReason checkPolicy(final long nowNanos, final long captureTimeNanos) {
+    switch (policy.kind) {
+      case EVERY_NTH:
+        return (captured.get() - 1) % policy.parameter == 0 ? null : DropReason.SKIPPED;
+      case TARGET_FPS:
+        if (hasAdmitted && nowNanos < nextAdmitNanos - policy.parameter / RATE_TOLERANCE_DIVISOR) {
+          return DropReason.RATE_LIMITED;
+        }
+        return null;
+      case DEADLINE:
+        final long expectedNanos = nowNanos - captureTimeNanos + latencyAverageNanos.get();
+        return expectedNanos > policy.parameter ? DropReason.DEADLINE : null;
+      default:
+        return null;
+    }
+  }
+
+  private T admitPending() {
+    while (pending.get() != null && tryAcquire()) {
+      final T frame = pending.getAndSet(null);
+      if (frame != null) {
+        admitted.incrementAndGet();
+        return frame;
+      }
+      // Another thread admitted it first.
+      inFlight.decrementAndGet();
+    }
+    return null;
+  }
+
+  private boolean tryAcquire() {
+    while (true) {
+      final int count = inFlight.get();
+      if (count >= maxInFlight) {
+        return false;
+      }
+      if (inFlight.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void onAdmitted(final long nowNanos) {
+    admitted.incrementAndGet();
+    if (policy.kind == Policy.Kind.TARGET_FPS) {
+      // Follow the schedule, unless it fell behind, e.g. while the pipeline was busy.
+      nextAdmitNanos =
+          hasAdmitted
+              ? Math.max(
+                  nextAdmitNanos + policy.parameter,
+                  nowNanos + policy.parameter - policy.parameter / RATE_TOLERANCE_DIVISOR)
+              : nowNanos + policy.parameter;
+    }
+    hasAdmitted = true;
+  }
+
+  private void drop(final T frame, final DropReason reason) {
+    dropped.incrementAndGet(reason.ordinal());
+    recycler.recycle(frame, reason);
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  public long getCapturedCount() {
+    return captured.get();
+  }
+
+  public long getAdmittedCount() {
+    return admitted.get();
+  }
+
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  public long getDroppedCount(final DropReason reason) {
+    return dropped.get(reason.ordinal());
+  }
+
+  public long getDroppedCount() {
+    long total = 0;
+    for (int i = 0; i < dropped.length(); ++i) {
+      total += dropped.get(i);
+    }
+    return total;
+  }
+
+  /** Returns the counters on one line, e.g. for logging. */
+  public String getStatString() {
+    final StringBuilder builder =
+        new StringBuilder()
+            .append(policy)
+            .append(": captured=")
+            .append(captured.get())
+            .append(" admitted=")
+            .append(admitted.get())
+            .append(" completed=")
+            .append(completed.get())
+            .append(" dropped=")
+            .append(getDroppedCount());
+    for (final DropReason reason : DropReason.values()) {
+      final long count = dropped.get(reason.ordinal());
+      if (count > 0) {
+        builder.append(' ').append(reason.name().toLowerCase()).append('=').append(count);
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,162 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One slot of a {@link FrameBufferPool}: the YUV planes of a captured camera frame, together with
+ * an optional ARGB copy and model input buffer derived from it.
+ *
+ * <p>A slot is reference counted. Whoever acquires it from the pool holds the first reference;
+ * every additional consumer must {@link #retain} it and {@link #release} it when done. The slot
+ * goes back to the pool once the last reference is released, and must not be touched after that.
+ */
+public final class FrameBuffer {
+  /** Semi-planar NV21, as delivered by the legacy camera API, stored in the first plane. */
+  public static final int FORMAT_NV21 = 0;
+  /** Three YUV 4:2:0 planes with row and pixel strides, as delivered by camera2. */
+  public static final int FORMAT_YUV_420_888 = 1;
+
+  private final FrameBufferPool pool;
+  private final int index;
+  private final AtomicInteger refCount = new AtomicInteger();
+  private final byte[][] planes = new byte[3][];
+
+  private int format;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private long timestampNanos;
+  private int[] argb;
+  private ByteBuffer input;
+
+  FrameBuffer(final FrameBufferPool pool, final int index) {
+    this.pool = pool;
+    this.index = index;
+  }
+
+  /** Returns the position of this slot in its pool, from 0 to the pool size exclusive. */
+  public int getIndex() {
+    return index;
+  }
+
+  /** Adds a reference for another consumer. The caller must already hold one. */
+  public void retain() {
+    while (true) {
+      final int count = refCount.get();
+      if (count <= 0) {
+        throw new IllegalStateException("Retained a frame buffer that was already recycled.");
+      }
+      if (refCount.compareAndSet(count, count + 1)) {
+        return;
+      }
+    }
+  }
+
+  /** Drops a reference, recycling the slot if it was the last one. */
+  public void release() {
+    final int remaining = refCount.decrementAndGet();
+    if (remaining == 0) {
+      pool.recycle(this);
+    } else if (remaining < 0) {
+      throw new IllegalStateException("Released a frame buffer more often than it was retained.");
+    }
+  }
+
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  void onAcquired() {
+    refCount.set(1);
+  }
+
+  /** Returns the plane arrays, which the capture code may (re)allocate to fit the frame. */
+  public byte[][] getPlanes() {
+    return planes;
+  }
+
+  /** Describes the layout of the data that was just captured into the planes. */
+  public void setFormat(
+      final int format,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+  }
+
+  public int getFormat() {
+    return format;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+
+  /** Returns the capture time of the frame, in the time base of {@link System#nanoTime}. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  public void setTimestampNanos(final long timestampNanos) {
+    this.timestampNanos = timestampNanos;
+  }
+
+  /** Returns the ARGB buffer of this slot, allocated on first use to fit the frame. */
+  public int[] getArgb() {
+    final int size = width * height;
+    if (argb == null || argb.length != size) {
+      argb = new int[size];
+    }
+    return argb;
+  }
+
+  /** Returns the model input buffer attached to this slot, or null if there is none. */
+  public ByteBuffer getInput() {
+    return input;
+  }
+
+  public void setInput(final ByteBuffer input) {
+    this.input = input;
+  }
+}
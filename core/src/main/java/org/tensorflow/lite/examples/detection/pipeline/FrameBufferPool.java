@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of reference counted {@link FrameBuffer} slots. Capture fills a free slot while
+ * earlier slots are still being processed or drawn, and a slot is only reused once every consumer
+ * has released it. With three slots this gives triple buffering: one frame being captured, one
+ * being processed and one being presented.
+ *
+ * <p>{@link #acquire} and recycling are lock-free and do not allocate, and may be called from any
+ * thread.
+ */
+public final class FrameBufferPool {
+  /** The maximum number of slots, one per bit of the free mask. */
+  public static final int MAX_SIZE = 64;
+
+  private final FrameBuffer[] buffers;
+  // Bit i is set while slot i is free.
+  private final AtomicLong freeMask = new AtomicLong();
+
+  public FrameBufferPool(final int size) {
+    if (size <= 0 || size > MAX_SIZE) {
+      throw new IllegalArgumentException(
+          "Pool size must be between 1 and " + MAX_SIZE + ": " + size);
+    }
+    buffers = new FrameBuffer[size];
+    for (int i = 0; i < size; ++i) {
+      buffers[i] = new FrameBuffer(this, i);
+    }
+    freeMask.set(size == MAX_SIZE ? -1L : (1L << size) - 1);
+  }
+
+  /**
+   * Takes a free slot, holding its first reference.
+   *
+   * @return The slot, or null if every slot is still in use.
+   */
+  public FrameBuffer acquire() {
+    while (true) {
+      final long free = freeMask.get();
+      if (free == 0) {
+        return null;
+      }
+      final long lowest = free & -free;
+      if (freeMask.compareAndSet(free, free & ~lowest)) {
+        final FrameBuffer buffer = buffers[Long.numberOfTrailingZeros(lowest)];
+        buffer.onAcquired();
+        return buffer;
+      }
+    }
+  }
+
+  void recycle(final FrameBuffer buffer) {
+    final long bit = 1L << buffer.getIndex();
+    while (true) {
+      final long free = freeMask.get();
+      if (freeMask.compareAndSet(free, free | bit)) {
+        return;
+      }
+    }
+  }
+
+  /** Returns the slot at the given index, e.g. to attach per-slot buffers up front. */
+  public FrameBuffer get(final int index) {
+    return buffers[index];
+  }
+
+  public int getSize() {
+    return buffers.length;
+  }
+
+  public int getFreeCount() {
+    return Long.bitCount(freeMask.get());
+  }
+}
@@ -0,0 +1,257 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Writes debug images, such as the model input of each frame, on a low priority thread so the
+ * frame path only pays for copying the pixels.
+ *
+ * <p>At most a fixed number of images wait to be written, in buffers that are reused. When the
+ * writer falls behind, the oldest waiting image is dropped in favour of the newest, so the files
+ * on disk show the most recent frames.
+ *
+ * <p>{@link #dump} may be called from any thread.
+ */
+public final class FrameDumper implements Closeable {
+  /** Encodes an ARGB_8888 image into a file. Only called from the writer thread. */
+  public interface ImageWriter {
+    /** Returns the file name extension, without the dot. */
+    String getExtension();
+
+    void write(int[] argb, int width, int height, OutputStream output) throws IOException;
+  }
+
+  /**
+   * Writes the pixels uncompressed, as the big endian int width and height followed by the
+   * ARGB_8888 pixels as big endian ints, which is the cheapest to write.
+   */
+  public static final ImageWriter RAW =
+      new ImageWriter() {
+        @Override
+        public String getExtension() {
+          return "argb";
+        }
+
+        @Override
+        public void write(
+            final int[] argb, final int width, final int height, final OutputStream output)
+            throws IOException {
+          final byte[] bytes = new byte[4 * Math.max(2, width)];
+          putInt(bytes, 0, width);
+          putInt(bytes, 4, height);
+          output.write(bytes, 0, 8);
+          for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+              putInt(bytes, 4 * x, argb[y * width + x]);
+            }
+            output.write(bytes, 0, 4 * width);
+          }
+        }
+      };
+
+  private static void putInt(final byte[] bytes, final int offset, final int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static final class Dump {
+    int[] pixels = new int[0];
+    int width;
+    int height;
+    String name;
+    long sequence;
+  }
+
+  private final File directory;
+  private final ImageWriter imageWriter;
+  private final int capacity;
+  // Guarded by this.
+  private final ArrayDeque<Dump> queued;
+  private final ArrayDeque<Dump> free;
+  private final Thread writer;
+  private boolean closing = false;
+  private long sequence = 0;
+  private long queuedCount = 0;
+  private long writtenCount = 0;
+  private long droppedCount = 0;
+  private long failedCount = 0;
+
+  /**
+   * @param directory The directory to write the images to; created if missing.
+   * @param capacity The most images waiting to be written.
+   */
+  public FrameDumper(final File directory, final ImageWriter imageWriter, final int capacity) {
+    this.directory = directory;
+    this.imageWriter = imageWriter;
+    this.capacity = capacity;
+    queued = new ArrayDeque<>(capacity);
+    // One more than can wait, for the one being written.
+    free = new ArrayDeque<>(capacity + 1);
+    for (int i = 0; i < capacity + 1; ++i) {
+      free.add(new Dump());
+    }
+    writer = new Thread(this::write, "frame-dumper");
+    writer.setPriority(Thread.MIN_PRIORITY);
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queues a copy of an image, dropping the oldest waiting image if the queue is full.
+   *
+   * @param name The file name prefix; the image's sequence number and extension are appended.
+   * @param argb The ARGB_8888 pixels, row by row.
+   * @return False if the dumper is closed.
+   */
+  public boolean dump(final String name, final int[] argb, final int width, final int height) {
+    final Dump dump;
+    synchronized (this) {
+      if (closing) {
+        return false;
+      }
+      ++queuedCount;
+      if (queued.size() == capacity || (free.isEmpty() && !queued.isEmpty())) {
+        free.add(queued.removeFirst());
+        ++droppedCount;
+      }
+      if (free.isEmpty()) {
+        // Every buffer is being filled by other threads or written.
+        ++droppedCount;
+        return true;
+      }
+      dump = free.removeFirst();
+      dump.sequence = sequence++;
+    }
+
+    final int size = width * height;
+    if (dump.pixels.length < size) {
+      dump.pixels = new int[size];
+    }
+    System.arraycopy(argb, 0, dump.pixels, 0, size);
+    dump.width = width;
+    dump.height = height;
+    dump.name = name;
+
+    synchronized (this) {
+      queued.addLast(dump);
+      notifyAll();
+    }
+    return true;
+  }
+
+  private void write() {
+    directory.mkdirs();
+    while (true) {
+      final Dump dump;
+      synchronized (this) {
+        while (queued.isEmpty() && !closing) {
+          try {
+            wait();
+          } catch (final InterruptedException e) {
+            return;
+          }
+        }
+        if (queued.isEmpty()) {
+          notifyAll();
+          return;
+        }
+        dump = queued.removeFirst();
+      }
+
+      final File file =
+          new File(
+              directory,
+              String.format(
+                  Locale.US, "%s-%06d.%s", dump.name, dump.sequence, imageWriter.getExtension()));
+      boolean written = false;
+      try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+        imageWriter.write(dump.pixels, dump.width, dump.height, output);
+        written = true;
+      } catch (final IOException e) {
+        // Counted; debug dumps must not disturb the app.
+      }
+
+      synchronized (this) {
+        if (written) {
+          ++writtenCount;
+        } else {
+          ++failedCount;
+        }
+        free.addLast(dump);
+      }
+    }
+  }
+
+  /** Returns the number of images queued so far, including the dropped ones. */
+  public synchronized long getQueuedCount() {
+    return queuedCount;
+  }
+
+  public synchronized long getWrittenCount() {
+    return writtenCount;
+  }
+
+  /** Returns the number of images dropped to make room for newer ones. */
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  public synchronized long getFailedCount() {
+    return failedCount;
+  }
+
+  /** Returns the number of images waiting to be written. */
+  public synchronized int getPendingCount() {
+    return queued.size();
+  }
+
+  /** Returns a one line summary of the counters. */
+  public synchronized String getSummary() {
+    return String.format(
+        Locale.US,
+        "queued=%d written=%d dropped=%d failed=%d pending=%d",
+        queuedCount,
+        writtenCount,
+        droppedCount,
+        failedCount,
+        queued.size());
+  }
+
+  /** Writes the images still waiting and stops the writer. */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closing = true;
+      notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
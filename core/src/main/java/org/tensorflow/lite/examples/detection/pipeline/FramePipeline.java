@@ -0,0 +1,233 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs frames through a fixed sequence of stages, each on its own worker thread. Consecutive
+ * stages are connected by bounded {@link SpscRingBuffer}s, so while one frame is in a slow stage
+ * (e.g. inference) the next frames can already go through the stages before it.
+ *
+ * <p>Frames are processed in submission order by every stage. Stages are added with {@link
+ * #addStage} before {@link #start}; the last stage is responsible for recycling frames.
+ */
+public final class FramePipeline<T> {
+  /** A unit of work applied to every frame. */
+  public interface Stage<T> {
+    void process(T frame);
+  }
+
+  // Number of samples per-stage statistics are computed over.
+  private static final int STATS_WINDOW = 128;
+
+  private final String name;
+  private final int capacity;
+  private final List<Worker> workers = new ArrayList<Worker>();
+  private volatile boolean running = false;
+  private boolean started = false;
+
+  /**
+   * @param name Prefix for the names of the worker threads.
+   * @param capacity The maximum number of frames queued in front of each stage.
+   */
+  public FramePipeline(final String name, final int capacity) {
+    this.name = name;
+    this.capacity = capacity;
+  }
+
+  public synchronized FramePipeline<T> addStage(final String stageName, final Stage<T> stage) {
+    if (started) {
+      throw new IllegalStateException("Stages must be added before the pipeline is started.");
+    }
+    final Worker worker = new Worker(stageName, stage, new SpscRingBuffer<T>(capacity));
+    if (!workers.isEmpty()) {
+      final Worker previous = workers.get(workers.size() - 1);
+      previous.next = worker;
+      worker.previous = previous;
+    }
+    workers.add(worker);
+    return this;
+  }
+
+  public synchronized void start() {
+    if (started) {
+      throw new IllegalStateException("The pipeline can only be started once.");
+    }
+    if (workers.isEmpty()) {
+      throw new IllegalStateException("The pipeline has no stages.");
+    }
+    started = true;
+    running = true;
+    for (final Worker worker : workers) {
+      worker.thread = new Thread(worker, name + "-" + worker.stageName);
+    }
+    for (final Worker worker : workers) {
+      worker.thread.start();
+    }
+  }
+
+  /**
+   * Submits a frame to the first stage without blocking. Calls from different threads are
+   * serialized.
+   *
+   * @return False if the pipeline is not running or the first stage's queue is full, in which case
+   *     the caller keeps ownership of the frame.
+   */
+  public synchronized boolean submit(final T frame) {
+    if (!running) {
+      return false;
+    }
+    final Worker first = workers.get(0);
+    if (!first.input.offer(frame)) {
+      return false;
+    }
+    LockSupport.unpark(first.thread);
+    return true;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Stops all workers, waiting for the stage each is running to finish, and hands every frame still
+   * in the pipeline to {@code discard} on the calling thread.
+   */
+  public void stop(final Stage<T> discard) {
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+    }
+    for (final Worker worker : workers) {
+      LockSupport.unpark(worker.thread);
+    }
+    boolean interrupted = false;
+    for (final Worker worker : workers) {
+      while (worker.thread.isAlive()) {
+        try {
+          worker.thread.join();
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    // Frames further down the pipeline are older, so discarding from the back keeps them in order.
+    for (int i = workers.size() - 1; i >= 0; --i) {
+      final SpscRingBuffer<T> input = workers.get(i).input;
+      for (T frame = input.poll(); frame != null; frame = input.poll()) {
+        discard.process(frame);
+      }
+      if (i > 0 && workers.get(i - 1).held != null) {
+        discard.process(workers.get(i - 1).held);
+        workers.get(i - 1).held = null;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Returns the service time statistics of the stage at the given index. */
+  public LatencyStats getStageStats(final int index) {
+    return workers.get(index).stats;
+  }
+
+  public int getStageCount() {
+    return workers.size();
+  }
+
+  public String getStageName(final int index) {
+    return workers.get(index).stageName;
+  }
+
+  /** Returns a summary of the service time and queue depth of every stage. */
+  public String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final Worker worker : workers) {
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder
+          .append(worker.stageName)
+          .append(": queued=")
+          .append(worker.input.size())
+          .append(' ')
+          .append(worker.stats.getSummary());
+    }
+    return builder.toString();
+  }
+
+  private final class Worker implements Runnable {
+    final String stageName;
+    final Stage<T> stage;
+    final SpscRingBuffer<T> input;
+    final LatencyStats stats = new LatencyStats(STATS_WINDOW);
+    Worker previous;
+    Worker next;
+    volatile Thread thread;
+    // A processed frame that could not be passed on before the pipeline stopped.
+    T held;
+
+    Worker(final String stageName, final Stage<T> stage, final SpscRingBuffer<T> input) {
+      this.stageName = stageName;
+      this.stage = stage;
+      this.input = input;
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        final T frame = input.poll();
+        if (frame == null) {
+          // Woken up by the producer once a frame is queued, or by stop().
+          LockSupport.park(this);
+          continue;
+        }
+        if (previous != null) {
+          // A slot was freed for a producer that may be waiting on a full queue.
+          LockSupport.unpark(previous.thread);
+        }
+
+        final long startNanos = System.nanoTime();
+        stage.process(frame);
+        final long endNanos = System.nanoTime();
+        stats.record(endNanos - startNanos, endNanos);
+
+        if (next != null && !handOff(frame)) {
+          held = frame;
+          return;
+        }
+      }
+    }
+
+    /** Passes a frame to the next stage, waiting while its queue is full. */
+    private boolean handOff(final T frame) {
+      while (!next.input.offer(frame)) {
+        if (!running) {
+          return false;
+        }
+        LockSupport.park(this);
+      }
+      LockSupport.unpark(next.thread);
+      return true;
+    }
+  }
+}
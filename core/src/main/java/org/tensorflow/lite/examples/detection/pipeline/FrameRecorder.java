@@ -0,0 +1,299 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends captured frames, with their layout and capture time, to a recording that a {@link
+ * FrameReplaySource} can replay exactly.
+ *
+ * <p>{@link #record} copies the planes into one of a bounded number of buffers and hands it to a
+ * writer thread, so the frame path never waits for storage. When every buffer is waiting to be
+ * written the frame is dropped, and the gap shows in the recorded sequence numbers.
+ *
+ * <p>A recording is a series of segment files named {@code <name>-<n>.frames}, each starting with
+ * a header holding the recording's metadata, followed by records of the form:
+ *
+ * <pre>
+ * int magic, int record size, long sequence, long timestamp,
+ * int format, int width, int height, int y row stride, int uv row stride, int uv pixel stride,
+ * int plane count, int[plane count] plane sizes, the plane bytes
+ * </pre>
+ *
+ * All values are big endian. A new segment is started when the current one would grow past the
+ * maximum size, so that each can be memory mapped.
+ */
+public final class FrameRecorder implements Closeable {
+  static final long SEGMENT_MAGIC = 0x54464c4652414d31L; // "TFLFRAM1"
+  static final int RECORD_MAGIC = 0x46524d45; // "FRME"
+  static final int RECORD_HEADER_BYTES = 52;
+  static final String SEGMENT_SUFFIX = ".frames";
+
+  private final File directory;
+  private final String name;
+  private final byte[] metadata;
+  private final long maxSegmentBytes;
+  private final int maxBuffers;
+  // Empty buffers, handed back by the writer.
+  private final SpscRingBuffer<ByteBuffer> free;
+  // Filled buffers, in recording order.
+  private final SpscRingBuffer<ByteBuffer> filled;
+  private final Thread writer;
+
+  // Only touched by the recording thread.
+  private int allocatedBuffers = 0;
+  private long sequence = 0;
+
+  // Only touched by the writer thread.
+  private FileChannel channel;
+  private long segmentBytes;
+  private long segmentHeaderBytes;
+
+  private volatile boolean closing = false;
+  private volatile IOException error;
+  private volatile long recordedCount = 0;
+  private volatile long droppedCount = 0;
+  private volatile long bytesWritten = 0;
+  private volatile int segmentCount = 0;
+
+  /**
+   * @param directory The directory to write the segments to; created if missing.
+   * @param name The prefix of the segment file names.
+   * @param metadata Describes the recording, e.g. the device and sensor orientation.
+   * @param maxBuffers The most frames waiting to be written before frames are dropped.
+   * @param maxSegmentBytes The size segments are kept under, at most 2GB.
+   */
+  public FrameRecorder(
+      final File directory,
+      final String name,
+      final Map<String, String> metadata,
+      final int maxBuffers,
+      final long maxSegmentBytes)
+      throws IOException {
+    if (maxSegmentBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Segments must be memory mappable: " + maxSegmentBytes);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    this.directory = directory;
+    this.name = name;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxBuffers = maxBuffers;
+    final StringBuilder text = new StringBuilder();
+    for (final Map.Entry<String, String> entry : metadata.entrySet()) {
+      text.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    this.metadata = text.toString().getBytes(StandardCharsets.UTF_8);
+    free = new SpscRingBuffer<>(maxBuffers);
+    filled = new SpscRingBuffer<>(maxBuffers);
+
+    openSegment();
+    writer = new Thread(this::write, "frame-recorder");
+    writer.setPriority(Thread.MIN_PRIORITY);
+    writer.start();
+  }
+
+  /** Returns the segments of a recording, in order. */
+  public static File[] listSegments(final File directory, final String name) {
+    final String prefix = name + "-";
+    final File[] segments =
+        directory.listFiles(
+            (dir, file) -> file.startsWith(prefix) && file.endsWith(SEGMENT_SUFFIX));
+    if (segments == null) {
+      return new File[0];
+    }
+    // The segment numbers are zero padded, so they sort by name.
+    Arrays.sort(segments);
+    return segments;
+  }
+
+  /**
+   * Queues a copy of a frame for writing. Must always be called from the same thread. The caller
+   * keeps its reference to the frame.
+   *
+   * @return False if the frame was dropped because the writer is behind or has failed.
+   */
+  public boolean record(final FrameBuffer frame) {
+    final long frameSequence = sequence++;
+    if (closing || error != null) {
+      ++droppedCount;
+      return false;
+    }
+    ByteBuffer buffer = free.poll();
+    if (buffer == null) {
+      if (allocatedBuffers == maxBuffers) {
+        ++droppedCount;
+        return false;
+      }
+      // Allocated below, to fit the frame.
+      ++allocatedBuffers;
+    }
+
+    final byte[][] planes = frame.getPlanes();
+    int planeCount = 0;
+    int size = RECORD_HEADER_BYTES;
+    while (planeCount < planes.length && planes[planeCount] != null) {
+      // NV21 frames only use the first plane.
+      if (frame.getFormat() == FrameBuffer.FORMAT_NV21 && planeCount == 1) {
+        break;
+      }
+      size += 4 + planes[planeCount].length;
+      ++planeCount;
+    }
+    if (buffer == null || buffer.capacity() < size) {
+      buffer = ByteBuffer.allocateDirect(size);
+    }
+    buffer.clear();
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    buffer.putInt(RECORD_MAGIC);
+    buffer.putInt(size);
+    buffer.putLong(frameSequence);
+    buffer.putLong(frame.getTimestampNanos());
+    buffer.putInt(frame.getFormat());
+    buffer.putInt(frame.getWidth());
+    buffer.putInt(frame.getHeight());
+    buffer.putInt(frame.getYRowStride());
+    buffer.putInt(frame.getUvRowStride());
+    buffer.putInt(frame.getUvPixelStride());
+    buffer.putInt(planeCount);
+    for (int i = 0; i < planeCount; ++i) {
+      buffer.putInt(planes[i].length);
+    }
+    for (int i = 0; i < planeCount; ++i) {
+      buffer.put(planes[i]);
+    }
+    buffer.flip();
+    // Cannot fail, as there are never more buffers than slots.
+    filled.offer(buffer);
+    LockSupport.unpark(writer);
+    return true;
+  }
+
+  private void openSegment() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+    final File file =
+        new File(
+            directory, String.format(Locale.US, "%s-%05d%s", name, segmentCount, SEGMENT_SUFFIX));
+    // Not FileChannel.open, which needs API 26 on Android. Closing the channel closes the stream.
+    channel = new FileOutputStream(file).getChannel();
+    final ByteBuffer header = ByteBuffer.allocate(12 + metadata.length);
+    header.putLong(SEGMENT_MAGIC);
+    header.putInt(metadata.length);
+    header.put(metadata);
+    header.flip();
+    writeFully(header);
+    segmentHeaderBytes = header.capacity();
+    segmentBytes = segmentHeaderBytes;
+    ++segmentCount;
+  }
+
+  private void writeFully(final ByteBuffer buffer) throws IOException {
+    final int size = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    bytesWritten += size;
+  }
+
+  private void write() {
+    try {
+      while (true) {
+        final ByteBuffer buffer = filled.poll();
+        if (buffer == null) {
+          if (closing) {
+            break;
+          }
+          LockSupport.park(this);
+          continue;
+        }
+        if (error == null) {
+          if (segmentBytes + buffer.remaining() > maxSegmentBytes
+              && segmentBytes > segmentHeaderBytes) {
+            openSegment();
+          }
+          segmentBytes += buffer.remaining();
+          writeFully(buffer);
+          ++recordedCount;
+        }
+        free.offer(buffer);
+      }
+    } catch (final IOException e) {
+      error = e;
+    }
+  }
+
+  /** Returns the number of frames written so far. */
+  public long getRecordedCount() {
+    return recordedCount;
+  }
+
+  /** Returns the number of frames dropped so far. */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /** Returns the error that stopped the writer, or null. */
+  public IOException getError() {
+    return error;
+  }
+
+  /**
+   * Writes the frames still queued and closes the recording. Must be called from the recording
+   * thread, or once it no longer records.
+   *
+   * @throws IOException If writing failed at any point.
+   */
+  @Override
+  public void close() throws IOException {
+    closing = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while finishing the recording");
+    } finally {
+      channel.close();
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+}
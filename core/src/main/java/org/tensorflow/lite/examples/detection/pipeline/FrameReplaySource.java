@@ -0,0 +1,227 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a recording written by a {@link FrameRecorder}. The segments are memory mapped and
+ * indexed up front; frames are then read straight from the mappings, in any order and from any
+ * thread. A truncated last record, e.g. from a crash while recording, is ignored.
+ */
+public final class FrameReplaySource implements Closeable {
+  private final MappedByteBuffer[] segments;
+  private final Map<String, String> metadata;
+  private int frameCount = 0;
+  private int[] frameSegments = new int[64];
+  private int[] frameOffsets = new int[64];
+
+  /** Opens the segments of a recording, in order. */
+  public FrameReplaySource(final File[] segmentFiles) throws IOException {
+    if (segmentFiles.length == 0) {
+      throw new IOException("No segments to replay");
+    }
+    segments = new MappedByteBuffer[segmentFiles.length];
+    Map<String, String> firstMetadata = null;
+    for (int i = 0; i < segmentFiles.length; ++i) {
+      try (FileChannel channel = new RandomAccessFile(segmentFiles[i], "r").getChannel()) {
+        // The mapping stays valid after the channel is closed.
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      segments[i].order(ByteOrder.BIG_ENDIAN);
+      final Map<String, String> segmentMetadata = index(i, segmentFiles[i]);
+      if (firstMetadata == null) {
+        firstMetadata = segmentMetadata;
+      }
+    }
+    metadata = Collections.unmodifiableMap(firstMetadata);
+  }
+
+  /** Opens a recording by the directory and name it was recorded with. */
+  public static FrameReplaySource open(final File directory, final String name)
+      throws IOException {
+    return new FrameReplaySource(FrameRecorder.listSegments(directory, name));
+  }
+
+  private Map<String, String> index(final int segment, final File file) throws IOException {
+    final ByteBuffer buffer = segments[segment];
+    if (buffer.capacity() < 12 || buffer.getLong(0) != FrameRecorder.SEGMENT_MAGIC) {
+      throw new IOException("Not a frame recording: " + file);
+    }
+    final int metadataBytes = buffer.getInt(8);
+    final byte[] text = new byte[metadataBytes];
+    final ByteBuffer metadataBuffer = buffer.duplicate();
+    metadataBuffer.position(12);
+    metadataBuffer.get(text);
+    final Map<String, String> values = new LinkedHashMap<>();
+    for (final String line : new String(text, StandardCharsets.UTF_8).split("\n")) {
+      final int separator = line.indexOf('=');
+      if (separator > 0) {
+        values.put(line.substring(0, separator), line.substring(separator + 1));
+      }
+    }
+
+    int offset = 12 + metadataBytes;
+    while (offset + FrameRecorder.RECORD_HEADER_BYTES <= buffer.capacity()) {
+      final int size = buffer.getInt(offset + 4);
+      if (buffer.getInt(offset) != FrameRecorder.RECORD_MAGIC
+          || size < FrameRecorder.RECORD_HEADER_BYTES
+          || offset + size > buffer.capacity()) {
+        break;
+      }
+      if (frameCount == frameOffsets.length) {
+        frameSegments = Arrays.copyOf(frameSegments, 2 * frameCount);
+        frameOffsets = Arrays.copyOf(frameOffsets, 2 * frameCount);
+      }
+      frameSegments[frameCount] = segment;
+      frameOffsets[frameCount] = offset;
+      ++frameCount;
+      offset += size;
+    }
+    return values;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Returns the metadata the recording was started with. */
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+  private ByteBuffer segment(final int index) {
+    return segments[frameSegments[index]];
+  }
+
+  private int field(final int index, final int fieldOffset) {
+    return segment(index).getInt(frameOffsets[index] + fieldOffset);
+  }
+
+  /** Returns the position of the frame among all frames offered to the recorder. */
+  public long getSequence(final int index) {
+    return segment(index).getLong(frameOffsets[index] + 8);
+  }
+
+  /** Returns the capture time of the frame, in the time base of the recording device. */
+  public long getTimestampNanos(final int index) {
+    return segment(index).getLong(frameOffsets[index] + 16);
+  }
+
+  /** Returns the {@link FrameBuffer} format of the frame. */
+  public int getFormat(final int index) {
+    return field(index, 24);
+  }
+
+  public int getWidth(final int index) {
+    return field(index, 28);
+  }
+
+  public int getHeight(final int index) {
+    return field(index, 32);
+  }
+
+  public int getYRowStride(final int index) {
+    return field(index, 36);
+  }
+
+  public int getUvRowStride(final int index) {
+    return field(index, 40);
+  }
+
+  public int getUvPixelStride(final int index) {
+    return field(index, 44);
+  }
+
+  public int getPlaneCount(final int index) {
+    return field(index, 48);
+  }
+
+  /** Returns a read-only view of a plane of the frame, straight from the mapping. */
+  public ByteBuffer getPlane(final int index, final int plane) {
+    final int planeCount = getPlaneCount(index);
+    if (plane < 0 || plane >= planeCount) {
+      throw new IndexOutOfBoundsException("Plane " + plane + " of " + planeCount);
+    }
+    int offset = frameOffsets[index] + FrameRecorder.RECORD_HEADER_BYTES + 4 * planeCount;
+    for (int i = 0; i < plane; ++i) {
+      offset += field(index, FrameRecorder.RECORD_HEADER_BYTES + 4 * i);
+    }
+    final ByteBuffer view = segment(index).asReadOnlyBuffer();
+    view.position(offset);
+    view.limit(offset + field(index, FrameRecorder.RECORD_HEADER_BYTES + 4 * plane));
+    return view.slice();
+  }
+
+  /**
+   * Copies a frame into a frame buffer, like the camera callbacks do, (re)allocating its planes
+   * to fit. The timestamp is the recorded one.
+   */
+  public void read(final int index, final FrameBuffer frame) {
+    final byte[][] planes = frame.getPlanes();
+    final int planeCount = getPlaneCount(index);
+    for (int i = 0; i < planeCount; ++i) {
+      final ByteBuffer plane = getPlane(index, i);
+      if (planes[i] == null || planes[i].length != plane.remaining()) {
+        planes[i] = new byte[plane.remaining()];
+      }
+      plane.get(planes[i]);
+    }
+    frame.setFormat(
+        getFormat(index),
+        getWidth(index),
+        getHeight(index),
+        getYRowStride(index),
+        getUvRowStride(index),
+        getUvPixelStride(index));
+    frame.setTimestampNanos(getTimestampNanos(index));
+  }
+
+  /**
+   * Waits until a frame is due when replaying at the recorded speed.
+   *
+   * @param index The frame to wait for.
+   * @param first The frame the replay started with.
+   * @param startNanos The {@link System#nanoTime} the first frame was replayed at.
+   */
+  public void awaitFrame(final int index, final int first, final long startNanos)
+      throws InterruptedException {
+    final long dueNanos = startNanos + getTimestampNanos(index) - getTimestampNanos(first);
+    final long waitNanos = dueNanos - System.nanoTime();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /** Drops the references to the mappings, which are unmapped once collected. */
+  @Override
+  public void close() {
+    Arrays.fill(segments, null);
+  }
+}
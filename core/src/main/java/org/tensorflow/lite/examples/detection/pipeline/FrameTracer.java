@@ -0,0 +1,199 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records, for each of the most recent frames, the monotonic time at which it crossed each of a
+ * fixed list of events, e.g. capture, the start and end of every stage, and the draw that shows
+ * its result. Records live in a fixed-size ring indexed by frame sequence number, so tracing never
+ * allocates and the oldest frames are overwritten.
+ *
+ * <p>Events may be marked from any thread. The traces can be exported in the Chrome trace event
+ * format, which both chrome://tracing and Perfetto open, and summarized as percentiles of the
+ * latency from the first to the last event.
+ */
+public final class FrameTracer {
+  private static final long UNSET = Long.MIN_VALUE;
+  private static final long NO_FRAME = -1;
+
+  private final String[] eventNames;
+  private final int capacity;
+  // Frame sequence number of each record, or NO_FRAME while it is being reset.
+  private final AtomicLongArray frameIds;
+  // Event times of record i at [i * eventNames.length, (i + 1) * eventNames.length).
+  private final AtomicLongArray eventNanos;
+
+  /**
+   * @param eventNames The events of a frame, in the order frames cross them. The first is set by
+   *     {@link #begin}.
+   * @param capacity The number of most recent frames to keep.
+   */
+  public FrameTracer(final String[] eventNames, final int capacity) {
+    if (eventNames.length < 2) {
+      throw new IllegalArgumentException("A trace needs at least two events.");
+    }
+    this.eventNames = eventNames.clone();
+    this.capacity = capacity;
+    frameIds = new AtomicLongArray(capacity);
+    eventNanos = new AtomicLongArray(capacity * eventNames.length);
+    for (int i = 0; i < capacity; ++i) {
+      frameIds.set(i, NO_FRAME);
+    }
+  }
+
+  /** Starts the record of a frame, overwriting the oldest one. */
+  public void begin(final long frameId, final long firstEventNanos) {
+    final int record = (int) (frameId % capacity);
+    frameIds.set(record, NO_FRAME);
+    final int base = record * eventNames.length;
+    eventNanos.set(base, firstEventNanos);
+    for (int i = 1; i < eventNames.length; ++i) {
+      eventNanos.set(base + i, UNSET);
+    }
+    frameIds.set(record, frameId);
+  }
+
+  /** Records the time a frame crossed an event, unless its record was already overwritten. */
+  public void mark(final long frameId, final int event, final long nanos) {
+    final int record = (int) (frameId % capacity);
+    if (frameIds.get(record) == frameId) {
+      eventNanos.set(record * eventNames.length + event, nanos);
+    }
+  }
+
+  /** Records the current time for an event. */
+  public void mark(final long frameId, final int event) {
+    mark(frameId, event, System.nanoTime());
+  }
+
+  public int getEventCount() {
+    return eventNames.length;
+  }
+
+  /**
+   * Copies the consistent records that reached the last event.
+   *
+   * @param frameIdsOut Receives the frame sequence numbers, one per record.
+   * @param eventNanosOut Receives the event times, {@link #getEventCount} per record.
+   * @return The number of records copied.
+   */
+  public int snapshot(final long[] frameIdsOut, final long[] eventNanosOut) {
+    final int numEvents = eventNames.length;
+    int count = 0;
+    for (int record = 0; record < capacity && count < frameIdsOut.length; ++record) {
+      final long frameId = frameIds.get(record);
+      if (frameId == NO_FRAME) {
+        continue;
+      }
+      final int base = record * numEvents;
+      for (int i = 0; i < numEvents; ++i) {
+        eventNanosOut[count * numEvents + i] = eventNanos.get(base + i);
+      }
+      // Skip records that were overwritten while being copied, or that are still in flight.
+      if (frameIds.get(record) != frameId
+          || eventNanosOut[count * numEvents + numEvents - 1] == UNSET) {
+        continue;
+      }
+      frameIdsOut[count++] = frameId;
+    }
+    return count;
+  }
+
+  /** Returns percentiles of the time from the first to the last event of completed frames. */
+  public String getSummary() {
+    final int numEvents = eventNames.length;
+    final long[] ids = new long[capacity];
+    final long[] times = new long[capacity * numEvents];
+    final int count = snapshot(ids, times);
+    if (count == 0) {
+      return "n=0";
+    }
+    final long[] latencies = new long[count];
+    for (int i = 0; i < count; ++i) {
+      latencies[i] = times[i * numEvents + numEvents - 1] - times[i * numEvents];
+    }
+    Arrays.sort(latencies);
+    return String.format(
+        Locale.US,
+        "%s to %s: n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+        eventNames[0],
+        eventNames[numEvents - 1],
+        count,
+        percentile(latencies, 0.5) / 1e6,
+        percentile(latencies, 0.9) / 1e6,
+        percentile(latencies, 0.99) / 1e6,
+        latencies[count - 1] / 1e6);
+  }
+
+  private static long percentile(final long[] sorted, final double fraction) {
+    return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+  }
+
+  /**
+   * Writes the completed frames as Chrome trace events. Each span between two consecutive events
+   * that were crossed becomes a slice named after the later event, on a track of its own, with
+   * the frame number as argument.
+   */
+  public void writeChromeTrace(final Writer writer) throws IOException {
+    final int numEvents = eventNames.length;
+    final long[] ids = new long[capacity];
+    final long[] times = new long[capacity * numEvents];
+    final int count = snapshot(ids, times);
+
+    writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+    boolean first = true;
+    for (int event = 1; event < numEvents; ++event) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writer.write(
+          String.format(
+              Locale.US,
+              "\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,"
+                  + "\"args\":{\"name\":\"%s\"}}",
+              event,
+              eventNames[event]));
+    }
+    for (int i = 0; i < count; ++i) {
+      long startNanos = times[i * numEvents];
+      for (int event = 1; event < numEvents; ++event) {
+        final long endNanos = times[i * numEvents + event];
+        if (endNanos == UNSET) {
+          continue;
+        }
+        writer.write(
+            String.format(
+                Locale.US,
+                ",\n{\"name\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f,"
+                    + "\"args\":{\"frame\":%d}}",
+                eventNames[event],
+                event,
+                startNanos / 1e3,
+                (endNanos - startNanos) / 1e3,
+                ids[i]));
+        startNanos = endNanos;
+      }
+    }
+    writer.write("\n]}\n");
+  }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Duty-cycles detection while nothing is in view. After a number of consecutive detection passes
+ * that found nothing, it switches to an idle mode in which only one in every {@code idleCadence}
+ * frames is detected on, unless motion is seen. Motion or any detection switches back to running
+ * on every frame right away.
+ *
+ * <p>Time spent in each mode is accumulated for reporting. Methods may be called from different
+ * threads.
+ */
+public final class IdleController {
+  /** The detection rate. */
+  public enum Mode {
+    ACTIVE,
+    IDLE
+  }
+
+  private final int emptyPassesToIdle;
+  private final int idleCadence;
+  private final FrameAdmissionController.Clock clock;
+
+  private Mode mode = Mode.ACTIVE;
+  private long modeStartNanos;
+  private final long[] timeInModeNanos = new long[Mode.values().length];
+  private int emptyPasses = 0;
+  private int framesSinceIdleDetection = 0;
+  private int idleEntries = 0;
+
+  /**
+   * @param emptyPassesToIdle The number of consecutive empty detection passes before going idle.
+   * @param idleCadence While idle and without motion, one in this many frames is detected on.
+   */
+  public IdleController(
+      final int emptyPassesToIdle,
+      final int idleCadence,
+      final FrameAdmissionController.Clock clock) {
+    if (emptyPassesToIdle <= 0 || idleCadence <= 0) {
+      throw new IllegalArgumentException("Frame counts must be positive.");
+    }
+    this.emptyPassesToIdle = emptyPassesToIdle;
+    this.idleCadence = idleCadence;
+    this.clock = clock;
+    modeStartNanos = clock.nanoTime();
+  }
+
+  public synchronized Mode getMode() {
+    return mode;
+  }
+
+  public synchronized boolean isIdle() {
+    return mode == Mode.IDLE;
+  }
+
+  /**
+   * Called for every captured frame.
+   *
+   * @param motion Whether motion was seen in the frame. Only needs to be computed while idle.
+   * @return Whether to run detection on the frame.
+   */
+  public synchronized boolean onFrame(final boolean motion) {
+    if (mode == Mode.ACTIVE) {
+      return true;
+    }
+    if (motion) {
+      setMode(Mode.ACTIVE);
+      return true;
+    }
+    if (++framesSinceIdleDetection >= idleCadence) {
+      framesSinceIdleDetection = 0;
+      return true;
+    }
+    return false;
+  }
+
+  /** Reports the number of detections found by one detection pass. */
+  public synchronized void onDetections(final int count) {
+    if (count > 0) {
+      emptyPasses = 0;
+      if (mode == Mode.IDLE) {
+        setMode(Mode.ACTIVE);
+      }
+    } else if (mode == Mode.ACTIVE && ++emptyPasses >= emptyPassesToIdle) {
+      setMode(Mode.IDLE);
+    }
+  }
+
+  private void setMode(final Mode newMode) {
+    final long nowNanos = clock.nanoTime();
+    timeInModeNanos[mode.ordinal()] += nowNanos - modeStartNanos;
+    modeStartNanos = nowNanos;
+    mode = newMode;
+    emptyPasses = 0;
+    framesSinceIdleDetection = 0;
+    if (newMode == Mode.IDLE) {
+      ++idleEntries;
+    }
+  }
+
+  /** Returns the total time spent in a mode, including the current stretch. */
+  public synchronized long getTimeInModeNanos(final Mode queried) {
+    long total = timeInModeNanos[queried.ordinal()];
+    if (queried == mode) {
+      total += clock.nanoTime() - modeStartNanos;
+    }
+    return total;
+  }
+
+  public synchronized String getStatString() {
+    final long activeNanos = getTimeInModeNanos(Mode.ACTIVE);
+    final long idleNanos = getTimeInModeNanos(Mode.IDLE);
+    return String.format(
+        Locale.US,
+        "mode=%s active=%.1fs idle=%.1fs (%.0f%%) idle entries=%d",
+        mode,
+        activeNanos / 1e9,
+        idleNanos / 1e9,
+        100.0 * idleNanos / Math.max(1, activeNanos + idleNanos),
+        idleEntries);
+  }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Latency percentiles and event rate over a sliding window of the most recent samples. Recording
+ * a sample does not allocate.
+ */
+public class LatencyStats {
+  private final long[] latenciesNanos;
+  private final long[] timesNanos;
+  private final long[] sortScratch;
+  private long count = 0;
+
+  /** @param windowSize The number of most recent samples statistics are computed over. */
+  public LatencyStats(final int windowSize) {
+    latenciesNanos = new long[windowSize];
+    timesNanos = new long[windowSize];
+    sortScratch = new long[windowSize];
+  }
+
+  /** Records a sample, taking the current time as the time it completed at. */
+  public void record(final long latencyNanos) {
+    record(latencyNanos, System.nanoTime());
+  }
+
+  /**
+   * Records a sample.
+   *
+   * @param latencyNanos The latency of the sample.
+   * @param completionTimeNanos The {@link System#nanoTime()} the sample completed at.
+   */
+  public synchronized void record(final long latencyNanos, final long completionTimeNanos) {
+    final int index = (int) (count % latenciesNanos.length);
+    latenciesNanos[index] = latencyNanos;
+    timesNanos[index] = completionTimeNanos;
+    ++count;
+  }
+
+  /** Returns the total number of samples recorded. */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  private int windowCount() {
+    return (int) Math.min(count, latenciesNanos.length);
+  }
+
+  /** Returns the given percentile, in [0, 100], of the windowed latencies. */
+  public synchronized long getPercentileNanos(final double percentile) {
+    final int n = windowCount();
+    if (n == 0) {
+      return 0;
+    }
+    System.arraycopy(latenciesNanos, 0, sortScratch, 0, n);
+    Arrays.sort(sortScratch, 0, n);
+    final int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+    return sortScratch[Math.max(0, Math.min(n - 1, rank))];
+  }
+
+  public synchronized double getMeanNanos() {
+    final int n = windowCount();
+    if (n == 0) {
+      return 0;
+    }
+    long sum = 0;
+    for (int i = 0; i < n; ++i) {
+      sum += latenciesNanos[i];
+    }
+    return sum / (double) n;
+  }
+
+  /** Returns the rate, in samples per second, at which the windowed samples completed. */
+  public synchronized double getRatePerSecond() {
+    final int n = windowCount();
+    if (n < 2) {
+      return 0;
+    }
+    final int newest = (int) ((count - 1) % timesNanos.length);
+    final int oldest = (int) ((count - n) % timesNanos.length);
+    final long spanNanos = timesNanos[newest] - timesNanos[oldest];
+    return spanNanos > 0 ? (n - 1) * 1e9 / spanNanos : 0;
+  }
+
+  /** Returns a one line summary of the statistics, with latencies in milliseconds. */
+  public String getSummary() {
+    return String.format(
+        "n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms rate=%.1f/s",
+        getCount(),
+        getMeanNanos() / 1e6,
+        getPercentileNanos(50) / 1e6,
+        getPercentileNanos(90) / 1e6,
+        getPercentileNanos(99) / 1e6,
+        getRatePerSecond());
+  }
+}
@@ -0,0 +1,165 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * Detects which parts of the frame changed, by comparing a downsampled luminance plane against a
+ * running background, block by block. The background follows the scene with an exponential moving
+ * average, so slow lighting changes fade into it while moving objects stand out.
+ *
+ * <p>All state lives in primitive arrays that are reused as long as the frame size stays the same,
+ * so {@link #update} does not allocate. Not thread-safe.
+ */
+public final class MotionDetector {
+  // Fractional bits of the fixed point background.
+  private static final int BACKGROUND_FRACTION_BITS = 8;
+
+  private final int step;
+  private final int blockSize;
+  private final int threshold;
+  private final int backgroundShift;
+
+  private int width = -1;
+  private int height = -1;
+  private int sampledWidth;
+  private int sampledHeight;
+  private int blockColumns;
+  private int blockRows;
+  // Background luminance of each sampled pixel, in fixed point.
+  private int[] background = new int[0];
+  // Block column of each sampled column.
+  private int[] columnToBlock = new int[0];
+  private int[] blockSums = new int[0];
+  private int[] blockSampleCounts = new int[0];
+  private boolean[] changedBlocks = new boolean[0];
+  private int changedBlockCount = 0;
+  private boolean hasBackground = false;
+
+  /**
+   * @param step The distance in pixels between sampled pixels, in both directions.
+   * @param blockSize The side of a block, in sampled pixels.
+   * @param threshold The mean absolute luminance difference from the background, from 0 to 255,
+   *     above which a block counts as changed.
+   * @param backgroundShift The background moves 1 / 2^backgroundShift of the way towards each new
+   *     frame.
+   */
+  public MotionDetector(
+      final int step, final int blockSize, final int threshold, final int backgroundShift) {
+    if (step <= 0 || blockSize <= 0) {
+      throw new IllegalArgumentException("Step and block size must be positive.");
+    }
+    this.step = step;
+    this.blockSize = blockSize;
+    this.threshold = threshold;
+    this.backgroundShift = backgroundShift;
+  }
+
+  private void resize(final int newWidth, final int newHeight) {
+    width = newWidth;
+    height = newHeight;
+    sampledWidth = (width + step - 1) / step;
+    sampledHeight = (height + step - 1) / step;
+    blockColumns = (sampledWidth + blockSize - 1) / blockSize;
+    blockRows = (sampledHeight + blockSize - 1) / blockSize;
+    background = new int[sampledWidth * sampledHeight];
+    columnToBlock = new int[sampledWidth];
+    for (int x = 0; x < sampledWidth; ++x) {
+      columnToBlock[x] = x / blockSize;
+    }
+    final int numBlocks = blockColumns * blockRows;
+    blockSums = new int[numBlocks];
+    blockSampleCounts = new int[numBlocks];
+    for (int y = 0; y < sampledHeight; ++y) {
+      for (int x = 0; x < sampledWidth; ++x) {
+        ++blockSampleCounts[(y / blockSize) * blockColumns + columnToBlock[x]];
+      }
+    }
+    changedBlocks = new boolean[numBlocks];
+    hasBackground = false;
+  }
+
+  /**
+   * Compares a frame with the background, then blends it into the background.
+   *
+   * @param luminance The Y plane, one byte per pixel.
+   * @return Whether any block changed. Always false for the first frame, or after the frame size
+   *     changed.
+   */
+  public boolean update(
+      final byte[] luminance, final int width, final int height, final int rowStride) {
+    if (width != this.width || height != this.height) {
+      resize(width, height);
+    }
+
+    final int[] sums = blockSums;
+    for (int i = 0; i < sums.length; ++i) {
+      sums[i] = 0;
+    }
+    final int[] bg = background;
+    final int[] blocks = columnToBlock;
+    final int shift = backgroundShift;
+    int index = 0;
+    for (int y = 0; y < sampledHeight; ++y) {
+      final int rowStart = y * step * rowStride;
+      final int blockRowStart = (y / blockSize) * blockColumns;
+      for (int x = 0; x < sampledWidth; ++x, ++index) {
+        final int value = (luminance[rowStart + x * step] & 0xFF) << BACKGROUND_FRACTION_BITS;
+        final int previous = hasBackground ? bg[index] : value;
+        final int difference = value - previous;
+        sums[blockRowStart + blocks[x]] += difference < 0 ? -difference : difference;
+        bg[index] = previous + (difference >> shift);
+      }
+    }
+
+    changedBlockCount = 0;
+    for (int i = 0; i < sums.length; ++i) {
+      final boolean changed =
+          sums[i] > (threshold * blockSampleCounts[i]) << BACKGROUND_FRACTION_BITS;
+      changedBlocks[i] = changed;
+      if (changed) {
+        ++changedBlockCount;
+      }
+    }
+    hasBackground = true;
+    return changedBlockCount > 0;
+  }
+
+  /** Returns the number of blocks that changed in the last update. */
+  public int getChangedBlockCount() {
+    return changedBlockCount;
+  }
+
+  /**
+   * Returns the changed-block mask of the last update, row by row, {@link #getBlockColumns} blocks
+   * per row. The array is reused by the next update.
+   */
+  public boolean[] getChangedBlocks() {
+    return changedBlocks;
+  }
+
+  public int getBlockColumns() {
+    return blockColumns;
+  }
+
+  public int getBlockRows() {
+    return blockRows;
+  }
+
+  /** Returns the side of a block in frame pixels. Blocks in the last row and column may be cut. */
+  public int getBlockSizePixels() {
+    return blockSize * step;
+  }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * Greedy non-maximum suppression over (left, top, right, bottom) boxes, for merging the detections
+ * of overlapping crops of the same frame.
+ */
+public final class NonMaxSuppression {
+  private NonMaxSuppression() {}
+
+  /**
+   * Selects the boxes to keep: in descending score order, each box is kept unless it overlaps an
+   * already kept box of the same class by more than the threshold.
+   *
+   * @param boxes {@code count} boxes as (left, top, right, bottom) runs.
+   * @param scores The score of each box.
+   * @param classes The class of each box, or null to suppress across classes.
+   * @param iouThreshold The intersection over union above which the lower scoring box is dropped.
+   * @param keep Receives the indices of the kept boxes, highest score first. Needs {@code count}
+   *     entries.
+   * @return The number of kept boxes.
+   */
+  public static int select(
+      final float[] boxes,
+      final float[] scores,
+      final int[] classes,
+      final int count,
+      final float iouThreshold,
+      final int[] keep) {
+    // Insertion sort by score; there are only ever a few dozen boxes.
+    final int[] order = keep;
+    for (int i = 0; i < count; ++i) {
+      int j = i;
+      while (j > 0 && scores[order[j - 1]] < scores[i]) {
+        order[j] = order[j - 1];
+        --j;
+      }
+      order[j] = i;
+    }
+
+    int kept = 0;
+    for (int i = 0; i < count; ++i) {
+      final int candidate = order[i];
+      boolean suppressed = false;
+      for (int k = 0; k < kept && !suppressed; ++k) {
+        final int other = keep[k];
+        suppressed =
+            (classes == null || classes[other] == classes[candidate])
+                && intersectionOverUnion(boxes, other, candidate) > iouThreshold;
+      }
+      if (!suppressed) {
+        // Never overtakes i, so the unvisited part of the order is intact.
+        keep[kept++] = candidate;
+      }
+    }
+    return kept;
+  }
+
+  /** Returns the intersection over union of boxes {@code a} and {@code b}. */
+  public static float intersectionOverUnion(final float[] boxes, final int a, final int b) {
+    return intersectionOverUnion(boxes, a, boxes, b);
+  }
+
+  /** Returns the intersection over union of box {@code a} of one array and {@code b} of another. */
+  public static float intersectionOverUnion(
+      final float[] boxesA, final int a, final float[] boxesB, final int b) {
+    final float left = Math.max(boxesA[4 * a], boxesB[4 * b]);
+    final float top = Math.max(boxesA[4 * a + 1], boxesB[4 * b + 1]);
+    final float right = Math.min(boxesA[4 * a + 2], boxesB[4 * b + 2]);
+    final float bottom = Math.min(boxesA[4 * a + 3], boxesB[4 * b + 3]);
+    if (right <= left || bottom <= top) {
+      return 0.0f;
+    }
+    final float intersection = (right - left) * (bottom - top);
+    final float union = area(boxesA, a) + area(boxesB, b) - intersection;
+    return union > 0 ? intersection / union : 0.0f;
+  }
+
+  private static float area(final float[] boxes, final int i) {
+    return (boxes[4 * i + 2] - boxes[4 * i]) * (boxes[4 * i + 3] - boxes[4 * i + 1]);
+  }
+}
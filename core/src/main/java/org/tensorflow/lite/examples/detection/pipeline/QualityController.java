@@ -0,0 +1,217 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A feedback controller that adjusts quality knobs to keep the measured cost of a frame within a
+ * target frame interval.
+ *
+ * <p>Each {@link Knob} has levels ordered from the preferred setting to the one that saves the
+ * most time, and knobs are given in the order they should be turned down. When the average cost
+ * over a full window of frames rises above the target by more than the degrade margin, the first
+ * knob that can still go down goes down one level. The controller remembers how much that saved,
+ * and only turns the most recently lowered knob back up once the cost it would have with the knob
+ * up again has stayed below the upgrade threshold for several windows. Samples from before a
+ * change are discarded, so every decision is based on frames measured with the current settings.
+ *
+ * <p>Not thread-safe; feed all samples from one thread. Listeners are called on that thread.
+ */
+public final class QualityController {
+  /** An adjustable setting with a fixed list of values. */
+  public static final class Knob {
+    private final String name;
+    private final int[] values;
+    private int level = 0;
+
+    /** @param values The values from the preferred one to the one that saves the most time. */
+    public Knob(final String name, final int... values) {
+      if (values.length == 0) {
+        throw new IllegalArgumentException("A knob needs at least one value.");
+      }
+      this.name = name;
+      this.values = values.clone();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getLevel() {
+      return level;
+    }
+
+    public int getValue() {
+      return values[level];
+    }
+
+    public int getLevelCount() {
+      return values.length;
+    }
+
+    @Override
+    public String toString() {
+      return name + "=" + getValue();
+    }
+  }
+
+  /** A knob that was turned down, and what it saved. */
+  private static final class Change {
+    final Knob knob;
+    final float loadBefore;
+    // Load before the change divided by the load after it, or 0 until measured.
+    float savings = 0;
+
+    Change(final Knob knob, final float loadBefore) {
+      this.knob = knob;
+      this.loadBefore = loadBefore;
+    }
+  }
+
+  /** Notified when a knob changes. */
+  public interface Listener {
+    void onKnobChanged(Knob knob);
+  }
+
+  private final long targetNanos;
+  private final List<Knob> knobs;
+  private final Listener listener;
+  private final float degradeThreshold;
+  private final float upgradeThreshold;
+  private final int upgradeWindows;
+
+  private final long[] window;
+  private int windowCount = 0;
+  private int windowIndex = 0;
+  private long windowSum = 0;
+  // Number of consecutive full windows that were below the upgrade threshold.
+  private int cheapWindows = 0;
+  // Knobs that were lowered, most recent last.
+  private final List<Change> lowered = new ArrayList<Change>();
+  private int changeCount = 0;
+
+  /**
+   * @param targetNanos The frame interval to hold.
+   * @param knobs The knobs, in the order in which they are turned down.
+   * @param windowSize The number of frames the average cost is taken over.
+   * @param degradeMargin How far above the target, as a fraction of it, the average may go before
+   *     a knob is turned down.
+   * @param upgradeMargin How far below the target the average must be, when scaled back up by what
+   *     the last lowered knob saved, before that knob is turned back up.
+   * @param upgradeWindows The number of consecutive windows the average must stay that low.
+   */
+  public QualityController(
+      final long targetNanos,
+      final List<Knob> knobs,
+      final Listener listener,
+      final int windowSize,
+      final float degradeMargin,
+      final float upgradeMargin,
+      final int upgradeWindows) {
+    if (windowSize <= 0 || upgradeWindows <= 0) {
+      throw new IllegalArgumentException("Window sizes must be positive.");
+    }
+    this.targetNanos = targetNanos;
+    this.knobs = new ArrayList<Knob>(knobs);
+    this.listener = listener;
+    this.degradeThreshold = 1.0f + degradeMargin;
+    this.upgradeThreshold = 1.0f - upgradeMargin;
+    this.upgradeWindows = upgradeWindows;
+    window = new long[windowSize];
+  }
+
+  /** Records the cost of one frame, possibly changing a knob. */
+  public void onFrame(final long costNanos) {
+    windowSum += costNanos - window[windowIndex];
+    window[windowIndex] = costNanos;
+    windowIndex = (windowIndex + 1) % window.length;
+    if (windowCount < window.length) {
+      ++windowCount;
+    }
+    if (windowCount < window.length || windowIndex != 0) {
+      return;
+    }
+
+    // Evaluate once per full window.
+    final float load = (float) windowSum / window.length / targetNanos;
+    final Change last = lowered.isEmpty() ? null : lowered.get(lowered.size() - 1);
+    if (last != null && last.savings == 0) {
+      last.savings = Math.max(1.0f, last.loadBefore / load);
+    }
+    if (load > degradeThreshold) {
+      cheapWindows = 0;
+      degrade(load);
+    } else if (last != null && load * last.savings < upgradeThreshold) {
+      if (++cheapWindows >= upgradeWindows) {
+        cheapWindows = 0;
+        upgrade();
+      }
+    } else {
+      cheapWindows = 0;
+    }
+  }
+
+  private void degrade(final float load) {
+    for (final Knob knob : knobs) {
+      if (knob.level < knob.values.length - 1) {
+        ++knob.level;
+        lowered.add(new Change(knob, load));
+        onChanged(knob);
+        return;
+      }
+    }
+  }
+
+  private void upgrade() {
+    final Knob knob = lowered.remove(lowered.size() - 1).knob;
+    --knob.level;
+    onChanged(knob);
+  }
+
+  private void onChanged(final Knob knob) {
+    ++changeCount;
+    // Start over with samples measured at the new setting.
+    windowCount = 0;
+    windowIndex = 0;
+    windowSum = 0;
+    for (int i = 0; i < window.length; ++i) {
+      window[i] = 0;
+    }
+    listener.onKnobChanged(knob);
+  }
+
+  /** Returns the average cost over the current window relative to the target, or 0 if empty. */
+  public float getLoad() {
+    return windowCount == 0 ? 0 : (float) windowSum / windowCount / targetNanos;
+  }
+
+  /** Returns the total number of knob changes made. */
+  public int getChangeCount() {
+    return changeCount;
+  }
+
+  public List<Knob> getKnobs() {
+    return knobs;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.US, "load=%.2f %s changes=%d", getLoad(), knobs, changeCount);
+  }
+}
@@ -0,0 +1,242 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * Turns a changed-block mask, as computed by {@link MotionDetector}, into a few square frame
+ * regions worth running detection on. Neighbouring changed blocks are grouped, padded by a block of
+ * context, and merged until there are few enough regions. Not thread-safe; the working arrays are
+ * reused across calls.
+ */
+public final class RegionPlanner {
+  // More groups than this means the change is noise or spread all over the frame.
+  private static final int MAX_GROUPS = 64;
+
+  private final int maxRegions;
+  private final int minSize;
+  private final float maxCoverage;
+
+  // Group of each block, 0 if not yet visited, and the flood fill stack.
+  private int[] groups = new int[0];
+  private int[] stack = new int[0];
+  // Group bounds in blocks, as inclusive (left, top, right, bottom) runs.
+  private final int[] bounds = new int[4 * MAX_GROUPS];
+
+  /**
+   * @param maxRegions The most regions to plan.
+   * @param minSize The smallest region side, in frame pixels. Regions smaller than the model input
+   *     are upscaled, which helps with small objects, but only up to a point.
+   * @param maxCoverage The fraction of the frame area above which the regions are not worth it,
+   *     compared with detecting on the whole frame.
+   */
+  public RegionPlanner(final int maxRegions, final int minSize, final float maxCoverage) {
+    if (maxRegions <= 0) {
+      throw new IllegalArgumentException("Need at least one region.");
+    }
+    this.maxRegions = maxRegions;
+    this.minSize = minSize;
+    this.maxCoverage = maxCoverage;
+  }
+
+  public int getMaxRegions() {
+    return maxRegions;
+  }
+
+  /**
+   * Plans the regions covering the changed blocks.
+   *
+   * @param changed The changed-block mask, row by row.
+   * @param columns The number of blocks per row.
+   * @param rows The number of block rows.
+   * @param blockSize The side of a block in frame pixels.
+   * @param width The frame width.
+   * @param height The frame height.
+   * @param regions Receives the square regions as (left, top, right, bottom) runs of frame pixels.
+   *     Needs 4 * maxRegions entries.
+   * @return The number of regions; 0 if nothing changed, or if the regions would not pay off and
+   *     the whole frame should be processed instead.
+   */
+  public int plan(
+      final boolean[] changed,
+      final int columns,
+      final int rows,
+      final int blockSize,
+      final int width,
+      final int height,
+      final int[] regions) {
+    final int count = group(changed, columns, rows);
+    if (count <= 0) {
+      return 0;
+    }
+
+    // Pad every group by a block for context.
+    for (int i = 0; i < count; ++i) {
+      bounds[4 * i] = Math.max(0, bounds[4 * i] - 1);
+      bounds[4 * i + 1] = Math.max(0, bounds[4 * i + 1] - 1);
+      bounds[4 * i + 2] = Math.min(columns - 1, bounds[4 * i + 2] + 1);
+      bounds[4 * i + 3] = Math.min(rows - 1, bounds[4 * i + 3] + 1);
+    }
+    final int merged = merge(count);
+
+    final int maxSide = Math.min(width, height);
+    long area = 0;
+    for (int i = 0; i < merged; ++i) {
+      final int left = bounds[4 * i] * blockSize;
+      final int top = bounds[4 * i + 1] * blockSize;
+      final int right = Math.min(width, (bounds[4 * i + 2] + 1) * blockSize);
+      final int bottom = Math.min(height, (bounds[4 * i + 3] + 1) * blockSize);
+      final int side = Math.max(Math.max(right - left, bottom - top), Math.min(minSize, maxSide));
+      if (side > maxSide) {
+        // Too wide or tall for a square region.
+        return 0;
+      }
+      // Center the square on the group, moved inside the frame.
+      final int x = clamp((left + right - side) / 2, 0, width - side);
+      final int y = clamp((top + bottom - side) / 2, 0, height - side);
+      regions[4 * i] = x;
+      regions[4 * i + 1] = y;
+      regions[4 * i + 2] = x + side;
+      regions[4 * i + 3] = y + side;
+      area += (long) side * side;
+    }
+    return area > maxCoverage * width * height ? 0 : merged;
+  }
+
+  /**
+   * Labels the 8-connected groups of changed blocks and computes their bounds.
+   *
+   * @return The number of groups, or -1 if there are too many.
+   */
+  private int group(final boolean[] changed, final int columns, final int rows) {
+    final int numBlocks = columns * rows;
+    if (groups.length < numBlocks) {
+      groups = new int[numBlocks];
+      stack = new int[numBlocks];
+    }
+    for (int i = 0; i < numBlocks; ++i) {
+      groups[i] = 0;
+    }
+
+    int count = 0;
+    for (int start = 0; start < numBlocks; ++start) {
+      if (!changed[start] || groups[start] != 0) {
+        continue;
+      }
+      if (count == MAX_GROUPS) {
+        return -1;
+      }
+      ++count;
+      int left = columns;
+      int top = rows;
+      int right = -1;
+      int bottom = -1;
+      int size = 0;
+      stack[size++] = start;
+      groups[start] = count;
+      while (size > 0) {
+        final int block = stack[--size];
+        final int x = block % columns;
+        final int y = block / columns;
+        left = Math.min(left, x);
+        top = Math.min(top, y);
+        right = Math.max(right, x);
+        bottom = Math.max(bottom, y);
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(rows - 1, y + 1); ++ny) {
+          for (int nx = Math.max(0, x - 1); nx <= Math.min(columns - 1, x + 1); ++nx) {
+            final int neighbour = ny * columns + nx;
+            if (changed[neighbour] && groups[neighbour] == 0) {
+              groups[neighbour] = count;
+              stack[size++] = neighbour;
+            }
+          }
+        }
+      }
+      final int i = count - 1;
+      bounds[4 * i] = left;
+      bounds[4 * i + 1] = top;
+      bounds[4 * i + 2] = right;
+      bounds[4 * i + 3] = bottom;
+    }
+    return count;
+  }
+
+  /**
+   * Merges overlapping groups, and then the pairs whose union wastes the least area, until there
+   * are at most maxRegions.
+   *
+   * @return The number of groups left, at the start of the bounds.
+   */
+  private int merge(int count) {
+    while (count > 1) {
+      int bestA = -1;
+      int bestB = -1;
+      long bestCost = Long.MAX_VALUE;
+      for (int a = 0; a < count; ++a) {
+        for (int b = a + 1; b < count; ++b) {
+          final long cost = mergeCost(a, b);
+          if (cost < bestCost) {
+            bestCost = cost;
+            bestA = a;
+            bestB = b;
+          }
+        }
+      }
+      if (bestCost > 0 && count <= maxRegions) {
+        break;
+      }
+      bounds[4 * bestA] = Math.min(bounds[4 * bestA], bounds[4 * bestB]);
+      bounds[4 * bestA + 1] = Math.min(bounds[4 * bestA + 1], bounds[4 * bestB + 1]);
+      bounds[4 * bestA + 2] = Math.max(bounds[4 * bestA + 2], bounds[4 * bestB + 2]);
+      bounds[4 * bestA + 3] = Math.max(bounds[4 * bestA + 3], bounds[4 * bestB + 3]);
+      // Move the last group into the freed slot.
+      --count;
+      System.arraycopy(bounds, 4 * count, bounds, 4 * bestB, 4);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the area the union of two groups adds beyond the groups themselves, or a negative
+   * value if they overlap, in which case merging them is always worth it.
+   */
+  private long mergeCost(final int a, final int b) {
+    final int left = Math.min(bounds[4 * a], bounds[4 * b]);
+    final int top = Math.min(bounds[4 * a + 1], bounds[4 * b + 1]);
+    final int right = Math.max(bounds[4 * a + 2], bounds[4 * b + 2]);
+    final int bottom = Math.max(bounds[4 * a + 3], bounds[4 * b + 3]);
+    final boolean overlap =
+        bounds[4 * a] <= bounds[4 * b + 2]
+            && bounds[4 * b] <= bounds[4 * a + 2]
+            && bounds[4 * a + 1] <= bounds[4 * b + 3]
+            && bounds[4 * b + 1] <= bounds[4 * a + 3];
+    if (overlap) {
+      return -1;
+    }
+    return area(left, top, right, bottom) - area(a) - area(b);
+  }
+
+  private long area(final int i) {
+    return area(bounds[4 * i], bounds[4 * i + 1], bounds[4 * i + 2], bounds[4 * i + 3]);
+  }
+
+  private static long area(final int left, final int top, final int right, final int bottom) {
+    return (long) (right - left + 1) * (bottom - top + 1);
+  }
+
+  private static int clamp(final int value, final int min, final int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
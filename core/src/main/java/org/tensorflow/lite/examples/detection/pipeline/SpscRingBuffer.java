@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one consumer thread. Neither
+ * {@link #offer} nor {@link #poll} allocate or block.
+ */
+public final class SpscRingBuffer<T> {
+  private final Object[] buffer;
+  private final int mask;
+  // Index of the next slot to read; only advanced by the consumer.
+  private final AtomicLong head = new AtomicLong();
+  // Index of the next slot to write; only advanced by the producer.
+  private final AtomicLong tail = new AtomicLong();
+
+  /** @param capacity The minimum capacity; rounded up to the next power of two. */
+  public SpscRingBuffer(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new Object[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Appends an item. Must only be called from the producer thread.
+   *
+   * @return False if the buffer is full.
+   */
+  public boolean offer(final T item) {
+    final long currentTail = tail.get();
+    if (currentTail - head.get() == buffer.length) {
+      return false;
+    }
+    buffer[(int) currentTail & mask] = item;
+    // Publishes the item to the consumer.
+    tail.lazySet(currentTail + 1);
+    return true;
+  }
+
+  /**
+   * Removes the oldest item. Must only be called from the consumer thread.
+   *
+   * @return The item, or null if the buffer is empty.
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    final long currentHead = head.get();
+    if (currentHead == tail.get()) {
+      return null;
+    }
+    final int index = (int) currentHead & mask;
+    final T item = (T) buffer[index];
+    buffer[index] = null;
+    // Hands the slot back to the producer.
+    head.lazySet(currentHead + 1);
+    return item;
+  }
+
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+}
@@ -0,0 +1,189 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The median and tail latency of each pipeline stage in microseconds, as a latency budget or as
+ * the baseline of an earlier run, read from and written to text like:
+ *
+ * <pre>{@code
+ * # stage p50_us p95_us
+ * convert 2500 4000
+ * detect 30000 45000
+ * }</pre>
+ */
+public final class StageLatencyTable {
+  private final Map<String, long[]> latencies = new LinkedHashMap<>();
+
+  /** Returns a table of the measured latencies. */
+  public static StageLatencyTable of(final StageProfiler.Result[] results) {
+    final StageLatencyTable table = new StageLatencyTable();
+    for (final StageProfiler.Result result : results) {
+      table.put(
+          result.getName(),
+          (result.getMedianNanos() + 500) / 1000,
+          (result.getTailNanos() + 500) / 1000);
+    }
+    return table;
+  }
+
+  /** Reads a table, ignoring blank lines and {@code #} comments. */
+  public static StageLatencyTable read(final Reader reader) throws IOException {
+    final StageLatencyTable table = new StageLatencyTable();
+    final BufferedReader lines = new BufferedReader(reader);
+    String line;
+    int number = 0;
+    while ((line = lines.readLine()) != null) {
+      ++number;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      final String[] fields = line.split("\\s+");
+      if (fields.length != 3) {
+        throw new IOException("Expected a stage and two latencies on line " + number + ": " + line);
+      }
+      try {
+        table.put(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+      } catch (final NumberFormatException e) {
+        throw new IOException("Bad latency on line " + number + ": " + line, e);
+      }
+    }
+    return table;
+  }
+
+  public void write(final Writer writer) throws IOException {
+    writer.write(
+        String.format(Locale.US, "# stage p50_us p%.0f_us\n", StageProfiler.TAIL_PERCENTILE));
+    for (final Map.Entry<String, long[]> entry : latencies.entrySet()) {
+      writer.write(
+          String.format(
+              Locale.US, "%s %d %d\n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+    }
+    writer.flush();
+  }
+
+  public void put(final String stage, final long medianMicros, final long tailMicros) {
+    latencies.put(stage, new long[] {medianMicros, tailMicros});
+  }
+
+  public Set<String> getStages() {
+    return latencies.keySet();
+  }
+
+  public boolean contains(final String stage) {
+    return latencies.containsKey(stage);
+  }
+
+  public long getMedianMicros(final String stage) {
+    return latencies.get(stage)[0];
+  }
+
+  public long getTailMicros(final String stage) {
+    return latencies.get(stage)[1];
+  }
+
+  /**
+   * Checks the results against this table as a budget.
+   *
+   * @return A description of each stage over its budget, and of each budgeted stage that was not
+   *     measured; empty if all are within budget.
+   */
+  public List<String> findOverBudget(final StageProfiler.Result[] results) {
+    final List<String> failures = new ArrayList<>();
+    final Set<String> measured = new HashSet<>();
+    for (final StageProfiler.Result result : results) {
+      measured.add(result.getName());
+      if (!contains(result.getName())) {
+        continue;
+      }
+      final long medianMicros = result.getMedianNanos() / 1000;
+      final long tailMicros = result.getTailNanos() / 1000;
+      if (medianMicros > getMedianMicros(result.getName())
+          || tailMicros > getTailMicros(result.getName())) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s over budget: p50 %dus (budget %dus), tail %dus (budget %dus)",
+                result.getName(),
+                medianMicros,
+                getMedianMicros(result.getName()),
+                tailMicros,
+                getTailMicros(result.getName())));
+      }
+    }
+    for (final String stage : latencies.keySet()) {
+      if (!measured.contains(stage)) {
+        failures.add(stage + " has a budget but was not measured");
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Checks the results against this table as the baseline of an earlier run. Stages missing from
+   * the baseline are new and not checked.
+   *
+   * @param maxPercent How much slower than the baseline a latency may be, in percent.
+   * @param slackMicros How much slower a latency may always be, so that the noise of stages that
+   *     take only microseconds is not taken for a regression.
+   * @return A description of each regressed stage; empty if none regressed.
+   */
+  public List<String> findRegressions(
+      final StageProfiler.Result[] results, final double maxPercent, final long slackMicros) {
+    final List<String> failures = new ArrayList<>();
+    for (final StageProfiler.Result result : results) {
+      final String stage = result.getName();
+      if (!contains(stage)) {
+        continue;
+      }
+      final long medianMicros = result.getMedianNanos() / 1000;
+      final long tailMicros = result.getTailNanos() / 1000;
+      if (regressed(medianMicros, getMedianMicros(stage), maxPercent, slackMicros)
+          || regressed(tailMicros, getTailMicros(stage), maxPercent, slackMicros)) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s regressed more than %.0f%%: p50 %dus (baseline %dus),"
+                    + " tail %dus (baseline %dus)",
+                stage,
+                maxPercent,
+                medianMicros,
+                getMedianMicros(stage),
+                tailMicros,
+                getTailMicros(stage)));
+      }
+    }
+    return failures;
+  }
+
+  private static boolean regressed(
+      final long micros, final long baselineMicros, final double maxPercent, final long slack) {
+    return micros > baselineMicros * (1 + maxPercent / 100) && micros - baselineMicros > slack;
+  }
+}
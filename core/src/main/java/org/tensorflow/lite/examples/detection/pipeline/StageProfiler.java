@@ -0,0 +1,135 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times the stages of the frame pipeline over a fixed set of frames, for latency regression
+ * tests. Every frame runs through the stages in the order they were added, so each stage sees
+ * the output of the one before. The first frames only warm up the JIT and the caches and are not
+ * measured.
+ */
+public final class StageProfiler {
+  /** The percentile reported as the tail latency. */
+  public static final double TAIL_PERCENTILE = 95;
+
+  /** One step of the pipeline. */
+  public interface Stage {
+    /** Processes the given frame, from 0 to the frame count exclusive. */
+    void run(int frame) throws Exception;
+  }
+
+  /** The measured latencies of one stage. */
+  public static final class Result {
+    private final String name;
+    private final long count;
+    private final long medianNanos;
+    private final long tailNanos;
+    private final long maxNanos;
+
+    Result(final String name, final LatencyStats stats) {
+      this.name = name;
+      count = stats.getCount();
+      medianNanos = stats.getPercentileNanos(50);
+      tailNanos = stats.getPercentileNanos(TAIL_PERCENTILE);
+      maxNanos = stats.getPercentileNanos(100);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMedianNanos() {
+      return medianNanos;
+    }
+
+    /** Returns the {@link #TAIL_PERCENTILE} latency. */
+    public long getTailNanos() {
+      return tailNanos;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s: n=%d p50=%.3fms p%.0f=%.3fms max=%.3fms",
+          name,
+          count,
+          medianNanos / 1e6,
+          TAIL_PERCENTILE,
+          tailNanos / 1e6,
+          maxNanos / 1e6);
+    }
+  }
+
+  private final List<String> names = new ArrayList<>();
+  private final List<Stage> stages = new ArrayList<>();
+
+  /** Appends a stage, returning this profiler. */
+  public StageProfiler addStage(final String name, final Stage stage) {
+    if (names.contains(name)) {
+      throw new IllegalArgumentException("Duplicate stage: " + name);
+    }
+    names.add(name);
+    stages.add(stage);
+    return this;
+  }
+
+  /**
+   * Runs the frames through the stages on the calling thread, cycling through them as often as
+   * needed.
+   *
+   * @param frameCount The number of distinct frames.
+   * @param warmupFrames The number of frames run before measuring.
+   * @param measuredFrames The number of frames measured.
+   * @return The results of the stages, in order.
+   */
+  public Result[] run(final int frameCount, final int warmupFrames, final int measuredFrames)
+      throws Exception {
+    final int stageCount = stages.size();
+    final LatencyStats[] stats = new LatencyStats[stageCount];
+    for (int s = 0; s < stageCount; ++s) {
+      stats[s] = new LatencyStats(Math.max(1, measuredFrames));
+    }
+    for (int i = 0; i < warmupFrames + measuredFrames; ++i) {
+      final int frame = i % frameCount;
+      for (int s = 0; s < stageCount; ++s) {
+        final long startNanos = System.nanoTime();
+        stages.get(s).run(frame);
+        final long endNanos = System.nanoTime();
+        if (i >= warmupFrames) {
+          stats[s].record(endNanos - startNanos, endNanos);
+        }
+      }
+    }
+    final Result[] results = new Result[stageCount];
+    for (int s = 0; s < stageCount; ++s) {
+      results[s] = new Result(names.get(s), stats[s]);
+    }
+    return results;
+  }
+}
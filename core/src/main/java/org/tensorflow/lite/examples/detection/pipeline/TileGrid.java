@@ -0,0 +1,78 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+/**
+ * Splits a frame into a grid of overlapping tiles, so that a high resolution frame can be detected
+ * on at close to its native scale instead of being downscaled to the model input as a whole.
+ */
+public final class TileGrid {
+  private TileGrid() {}
+
+  /**
+   * Returns the number of rows that, with the given number of columns, splits a frame into tiles
+   * closest to square. Square tiles on a frame with fewer rows than that would mostly overlap
+   * each other, each costing a full inference for little extra coverage.
+   */
+  public static int rowsFor(final int width, final int height, final int columns) {
+    return Math.max(1, Math.round(columns * height / (float) width));
+  }
+
+  /**
+   * Plans the tiles. They are as close to square as the frame allows, evenly spaced, and reach the
+   * frame edges, so neighbouring tiles overlap by at least the given fraction of a tile.
+   *
+   * @param width The frame width.
+   * @param height The frame height.
+   * @param columns The number of tiles across.
+   * @param rows The number of tiles down.
+   * @param overlap The fraction by which tiles are enlarged beyond an even split of the frame.
+   * @param tiles Receives the tiles as (left, top, right, bottom) runs, row by row. Needs 4 *
+   *     columns * rows entries.
+   * @return The number of tiles.
+   */
+  public static int plan(
+      final int width,
+      final int height,
+      final int columns,
+      final int rows,
+      final float overlap,
+      final int[] tiles) {
+    if (columns <= 0 || rows <= 0) {
+      throw new IllegalArgumentException("Need at least one tile.");
+    }
+    final float side = Math.max(width / (float) columns, height / (float) rows) * (1 + overlap);
+    final int tileWidth = Math.min(width, (int) Math.ceil(side));
+    final int tileHeight = Math.min(height, (int) Math.ceil(side));
+    int count = 0;
+    for (int y = 0; y < rows; ++y) {
+      final int top = offset(y, rows, height - tileHeight);
+      for (int x = 0; x < columns; ++x) {
+        final int left = offset(x, columns, width - tileWidth);
+        tiles[4 * count] = left;
+        tiles[4 * count + 1] = top;
+        tiles[4 * count + 2] = left + tileWidth;
+        tiles[4 * count + 3] = top + tileHeight;
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static int offset(final int i, final int count, final int range) {
+    return count == 1 ? range / 2 : Math.round(i * range / (float) (count - 1));
+  }
+}
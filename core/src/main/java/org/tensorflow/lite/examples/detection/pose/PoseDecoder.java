@@ -0,0 +1,79 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.pose;
+
+/** Decodes the keypoints of a single person from the PoseNet model outputs. */
+public final class PoseDecoder {
+  private PoseDecoder() {}
+
+  /**
+   * Finds the most likely location of each keypoint in the heatmaps, and refines it with the
+   * offsets.
+   *
+   * @param heatmaps Keypoint scores, before the sigmoid, as [row][column][keypoint].
+   * @param offsets Keypoint offsets in image pixels, as [row][column][keypoint], with the y offsets
+   *     of all keypoints followed by the x offsets.
+   * @param imageWidth The width of the model input image.
+   * @param imageHeight The height of the model input image.
+   * @param xs Receives the x coordinate of each keypoint in the image.
+   * @param ys Receives the y coordinate of each keypoint in the image.
+   * @param scores Receives the confidence of each keypoint, within [0,1].
+   * @return The mean keypoint confidence.
+   */
+  public static float decodeSinglePose(
+      final float[][][] heatmaps,
+      final float[][][] offsets,
+      final int imageWidth,
+      final int imageHeight,
+      final int[] xs,
+      final int[] ys,
+      final float[] scores) {
+    final int height = heatmaps.length;
+    final int width = heatmaps[0].length;
+    final int numKeypoints = heatmaps[0][0].length;
+
+    float totalScore = 0.0f;
+    for (int keypoint = 0; keypoint < numKeypoints; ++keypoint) {
+      float maxVal = heatmaps[0][0][keypoint];
+      int maxRow = 0;
+      int maxCol = 0;
+      for (int row = 0; row < height; ++row) {
+        for (int col = 0; col < width; ++col) {
+          if (heatmaps[row][col][keypoint] > maxVal) {
+            maxVal = heatmaps[row][col][keypoint];
+            maxRow = row;
+            maxCol = col;
+          }
+        }
+      }
+
+      ys[keypoint] =
+          (int) (maxRow / (float) (height - 1) * imageHeight + offsets[maxRow][maxCol][keypoint]);
+      xs[keypoint] =
+          (int)
+              (maxCol / (float) (width - 1) * imageWidth
+                  + offsets[maxRow][maxCol][keypoint + numKeypoints]);
+      scores[keypoint] = sigmoid(maxVal);
+      totalScore += scores[keypoint];
+    }
+    return totalScore / numKeypoints;
+  }
+
+  /** Returns value within [0,1]. */
+  private static float sigmoid(final float x) {
+    return 1.0f / (1.0f + (float) Math.exp(-x));
+  }
+}
@@ -0,0 +1,53 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Map;
+
+/**
+ * Runs a model. Lets the detector and pose estimator, and the pipeline around them, run on the
+ * TFLite runtime or on a stand-in without a model. Implementations need not be thread safe.
+ */
+public interface InferenceBackend extends AutoCloseable {
+  int getInputCount();
+
+  TensorSpec getInputSpec(int index);
+
+  int getOutputCount();
+
+  /** Returns the spec of an output, which may change when an input is resized. */
+  TensorSpec getOutputSpec(int index);
+
+  /** Changes the shape of an input. Takes effect on the next {@link #run}. */
+  void resizeInput(int index, int[] shape);
+
+  /**
+   * Runs the model.
+   *
+   * @param inputs The inputs, as direct buffers or multidimensional arrays.
+   * @param outputs Buffers or multidimensional arrays that receive the outputs, by output index.
+   */
+  void run(Object[] inputs, Map<Integer, Object> outputs);
+
+  /** Sets the number of threads the backend may use, if it supports it. */
+  void setNumThreads(int numThreads);
+
+  /** Enables or disables NNAPI acceleration, if the backend supports it. */
+  void setUseNNAPI(boolean useNNAPI);
+
+  @Override
+  void close();
+}
@@ -0,0 +1,53 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+
+/** Packs ARGB pixels into model input buffers, as interleaved RGB channels. */
+public final class InputPacker {
+  private InputPacker() {}
+
+  /** Packs the first {@code count} pixels as one byte per channel, from the start of the buffer. */
+  public static void packQuantized(final int[] pixels, final int count, final ByteBuffer input) {
+    input.rewind();
+    for (int i = 0; i < count; ++i) {
+      final int pixelValue = pixels[i];
+      input.put((byte) ((pixelValue >> 16) & 0xFF));
+      input.put((byte) ((pixelValue >> 8) & 0xFF));
+      input.put((byte) (pixelValue & 0xFF));
+    }
+  }
+
+  /**
+   * Packs the first {@code count} pixels as one float per channel, normalized to (value - mean) /
+   * std, from the start of the buffer.
+   */
+  public static void packFloat(
+      final int[] pixels,
+      final int count,
+      final float mean,
+      final float std,
+      final ByteBuffer input) {
+    input.rewind();
+    for (int i = 0; i < count; ++i) {
+      final int pixelValue = pixels[i];
+      input.putFloat((((pixelValue >> 16) & 0xFF) - mean) / std);
+      input.putFloat((((pixelValue >> 8) & 0xFF) - mean) / std);
+      input.putFloat(((pixelValue & 0xFF) - mean) / std);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The outputs of an SSD model with TFLite post-processing: boxes, classes, scores and the number
+ * of detections. The buffers are allocated once and reused by every run, so that inference does
+ * not allocate per frame. Not thread safe; each interpreter has its own.
+ */
+public final class SsdOutputs {
+  private final float[][][] locations;
+  private final float[][] classes;
+  private final float[][] scores;
+  private final float[] numDetections = new float[1];
+  private final Object[] inputs = new Object[1];
+  private final Map<Integer, Object> outputs = new HashMap<>();
+  private int count;
+
+  /** @param maxDetections The number of detections the model has room for. */
+  public SsdOutputs(final int maxDetections) {
+    locations = new float[1][maxDetections][4];
+    classes = new float[1][maxDetections];
+    scores = new float[1][maxDetections];
+    outputs.put(0, locations);
+    outputs.put(1, classes);
+    outputs.put(2, scores);
+    outputs.put(3, numDetections);
+  }
+
+  /**
+   * Runs the model on a packed input into these outputs.
+   *
+   * @return The number of detections.
+   */
+  public int run(final InferenceBackend backend, final ByteBuffer input) {
+    inputs[0] = input;
+    backend.run(inputs, outputs);
+    inputs[0] = null;
+    // Some models output fewer detections than they have room for, and the count is only
+    // meaningful as reported by the model.
+    count = Math.max(0, Math.min(scores[0].length, (int) numDetections[0]));
+    return count;
+  }
+
+  /** Returns the number of detections of the last run. */
+  public int getCount() {
+    return count;
+  }
+
+  public float getScore(final int i) {
+    return scores[0][i];
+  }
+
+  /** Returns the class of a detection, counted without the background class. */
+  public int getClassIndex(final int i) {
+    return (int) classes[0][i];
+  }
+
+  /** Returns the left edge of a detection's box, relative to the input width. */
+  public float getLeft(final int i) {
+    return locations[0][i][1];
+  }
+
+  public float getTop(final int i) {
+    return locations[0][i][0];
+  }
+
+  public float getRight(final int i) {
+    return locations[0][i][3];
+  }
+
+  public float getBottom(final int i) {
+    return locations[0][i][2];
+  }
+}
@@ -0,0 +1,320 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in backend for measuring and testing everything around the model, anywhere. Outputs
+ * are generated by a pattern from a random source seeded with a hash of the inputs, so the same
+ * inputs always yield the same outputs, and each run takes a configurable latency with
+ * repeatable jitter.
+ */
+public final class SyntheticBackend implements InferenceBackend {
+  /** Generates the values of the outputs. */
+  public interface OutputPattern {
+    /**
+     * Fills the values of one output.
+     *
+     * @param index The output index. Outputs are filled in index order from the same source.
+     * @param random Seeded from the inputs of the run.
+     * @param values Receives the values in row-major order, sized for the output.
+     */
+    void fill(int index, TensorSpec spec, Random random, float[] values);
+  }
+
+  // Hash every this many input bytes, which is enough to tell frames apart.
+  private static final int HASH_STRIDE = 61;
+
+  private final TensorSpec[] inputs;
+  private final TensorSpec[] outputs;
+  private final OutputPattern pattern;
+  private final long latencyNanos;
+  private final long jitterNanos;
+  private final Random random = new Random();
+  private final float[][] values;
+  private long runs = 0;
+
+  /**
+   * @param latencyMicros The least time each run takes.
+   * @param jitterMicros The most time each run takes beyond the latency.
+   */
+  public SyntheticBackend(
+      final TensorSpec[] inputs,
+      final TensorSpec[] outputs,
+      final OutputPattern pattern,
+      final long latencyMicros,
+      final long jitterMicros) {
+    this.inputs = inputs.clone();
+    this.outputs = outputs.clone();
+    this.pattern = pattern;
+    this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    this.jitterNanos = TimeUnit.MICROSECONDS.toNanos(jitterMicros);
+    values = new float[outputs.length][];
+    for (int i = 0; i < outputs.length; ++i) {
+      values[i] = new float[outputs[i].getNumElements()];
+    }
+  }
+
+  /** Returns a pattern that leaves every output zero. */
+  public static OutputPattern zeros() {
+    return (index, spec, random, values) -> Arrays.fill(values, 0.0f);
+  }
+
+  /** Returns a pattern that fills every output with uniformly distributed values. */
+  public static OutputPattern uniform(final float min, final float max) {
+    return (index, spec, random, values) -> {
+      for (int i = 0; i < values.length; ++i) {
+        values[i] = min + random.nextFloat() * (max - min);
+      }
+    };
+  }
+
+  /**
+   * Returns a pattern of valid SSD post-processing outputs: boxes as [top, left, bottom, right]
+   * within [0,1], class indices, scores in decreasing order, and the number of detections.
+   */
+  public static OutputPattern detections(final int numDetections, final int numClasses) {
+    return (index, spec, random, values) -> {
+      switch (index) {
+        case 0:
+          for (int i = 0; i + 3 < values.length; i += 4) {
+            final float top = random.nextFloat() * 0.8f;
+            final float left = random.nextFloat() * 0.8f;
+            values[i] = top;
+            values[i + 1] = left;
+            values[i + 2] = top + 0.05f + random.nextFloat() * (0.95f - top);
+            values[i + 3] = left + 0.05f + random.nextFloat() * (0.95f - left);
+          }
+          break;
+        case 1:
+          for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextInt(numClasses);
+          }
+          break;
+        case 2:
+          float score = 1.0f;
+          for (int i = 0; i < values.length; ++i) {
+            score *= random.nextFloat();
+            values[i] = score;
+          }
+          break;
+        default:
+          Arrays.fill(values, random.nextInt(numDetections + 1));
+          break;
+      }
+    };
+  }
+
+  private static OutputPattern poseOutputs(final int outputStride) {
+    final OutputPattern heatmaps = uniform(-8.0f, 2.0f);
+    final OutputPattern offsets = uniform(-outputStride / 2.0f, outputStride / 2.0f);
+    return (index, spec, random, values) ->
+        (index == 0 ? heatmaps : offsets).fill(index, spec, random, values);
+  }
+
+  /**
+   * Returns a backend shaped like the app's SSD detection model, with {@link #detections}
+   * outputs.
+   */
+  public static SyntheticBackend ssd(
+      final int inputSize,
+      final boolean quantized,
+      final int numDetections,
+      final int numClasses,
+      final long latencyMicros,
+      final long jitterMicros) {
+    final TensorSpec.DataType inputType =
+        quantized ? TensorSpec.DataType.UINT8 : TensorSpec.DataType.FLOAT32;
+    final TensorSpec.DataType f = TensorSpec.DataType.FLOAT32;
+    return new SyntheticBackend(
+        new TensorSpec[] {new TensorSpec("image", inputType, 1, inputSize, inputSize, 3)},
+        new TensorSpec[] {
+          new TensorSpec("boxes", f, 1, numDetections, 4),
+          new TensorSpec("classes", f, 1, numDetections),
+          new TensorSpec("scores", f, 1, numDetections),
+          new TensorSpec("count", f, 1),
+        },
+        detections(numDetections, numClasses),
+        latencyMicros,
+        jitterMicros);
+  }
+
+  /**
+   * Returns a backend shaped like PoseNet with the given output stride, with uniform heatmap
+   * logits that are mostly low, and offsets within a stride.
+   */
+  public static SyntheticBackend poseNet(
+      final int inputSize,
+      final int outputStride,
+      final int numKeypoints,
+      final long latencyMicros,
+      final long jitterMicros) {
+    final int grid = (inputSize - 1) / outputStride + 1;
+    final int numEdges = 2 * (numKeypoints - 1);
+    final TensorSpec.DataType f = TensorSpec.DataType.FLOAT32;
+    return new SyntheticBackend(
+        new TensorSpec[] {new TensorSpec("image", f, 1, inputSize, inputSize, 3)},
+        new TensorSpec[] {
+          new TensorSpec("heatmaps", f, 1, grid, grid, numKeypoints),
+          new TensorSpec("offsets", f, 1, grid, grid, 2 * numKeypoints),
+          new TensorSpec("displacements_fwd", f, 1, grid, grid, numEdges),
+          new TensorSpec("displacements_bwd", f, 1, grid, grid, numEdges),
+        },
+        poseOutputs(outputStride),
+        latencyMicros,
+        jitterMicros);
+  }
+
+  @Override
+  public int getInputCount() {
+    return inputs.length;
+  }
+
+  @Override
+  public TensorSpec getInputSpec(final int index) {
+    return inputs[index];
+  }
+
+  @Override
+  public int getOutputCount() {
+    return outputs.length;
+  }
+
+  @Override
+  public TensorSpec getOutputSpec(final int index) {
+    return outputs[index];
+  }
+
+  @Override
+  public void resizeInput(final int index, final int[] shape) {
+    inputs[index] = new TensorSpec(inputs[index].getName(), inputs[index].getDataType(), shape);
+  }
+
+  /** Returns the number of completed runs. */
+  public long getRunCount() {
+    return runs;
+  }
+
+  @Override
+  public void run(final Object[] inputValues, final Map<Integer, Object> outputValues) {
+    final long startNanos = System.nanoTime();
+    long seed = 1125899906842597L;
+    for (final Object input : inputValues) {
+      seed = 31 * seed + hash(input);
+    }
+    random.setSeed(seed);
+    final long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+    for (int i = 0; i < outputs.length; ++i) {
+      pattern.fill(i, outputs[i], random, values[i]);
+      final Object output = outputValues.get(i);
+      if (output != null) {
+        copy(values[i], outputs[i].getDataType(), output);
+      }
+    }
+
+    final long deadlineNanos = startNanos + latencyNanos + jitter;
+    long remainingNanos;
+    while ((remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remainingNanos);
+    }
+    ++runs;
+  }
+
+  private static long hash(final Object input) {
+    if (input instanceof ByteBuffer) {
+      final ByteBuffer buffer = (ByteBuffer) input;
+      long hash = 0;
+      for (int i = 0; i < buffer.limit(); i += HASH_STRIDE) {
+        hash = 31 * hash + buffer.get(i);
+      }
+      return hash;
+    }
+    return Arrays.deepHashCode(new Object[] {input});
+  }
+
+  private static void copy(
+      final float[] values, final TensorSpec.DataType dataType, final Object output) {
+    if (output instanceof ByteBuffer) {
+      final ByteBuffer buffer = (ByteBuffer) output;
+      buffer.rewind();
+      for (final float value : values) {
+        switch (dataType) {
+          case FLOAT32:
+            buffer.putFloat(value);
+            break;
+          case INT32:
+            buffer.putInt((int) value);
+            break;
+          case INT64:
+            buffer.putLong((long) value);
+            break;
+          default:
+            buffer.put((byte) value);
+            break;
+        }
+      }
+    } else {
+      copy(values, 0, output);
+    }
+  }
+
+  /** Copies values into a multidimensional array in row-major order, returning the next value. */
+  private static int copy(final float[] values, int offset, final Object array) {
+    if (array instanceof float[]) {
+      final float[] leaf = (float[]) array;
+      System.arraycopy(values, offset, leaf, 0, leaf.length);
+      return offset + leaf.length;
+    } else if (array instanceof int[]) {
+      final int[] leaf = (int[]) array;
+      for (int i = 0; i < leaf.length; ++i) {
+        leaf[i] = (int) values[offset++];
+      }
+      return offset;
+    } else if (array instanceof long[]) {
+      final long[] leaf = (long[]) array;
+      for (int i = 0; i < leaf.length; ++i) {
+        leaf[i] = (long) values[offset++];
+      }
+      return offset;
+    } else if (array instanceof byte[]) {
+      final byte[] leaf = (byte[]) array;
+      for (int i = 0; i < leaf.length; ++i) {
+        leaf[i] = (byte) values[offset++];
+      }
+      return offset;
+    }
+    for (int i = 0; i < Array.getLength(array); ++i) {
+      offset = copy(values, offset, Array.get(array, i));
+    }
+    return offset;
+  }
+
+  @Override
+  public void setNumThreads(final int numThreads) {}
+
+  @Override
+  public void setUseNNAPI(final boolean useNNAPI) {}
+
+  @Override
+  public void close() {}
+}
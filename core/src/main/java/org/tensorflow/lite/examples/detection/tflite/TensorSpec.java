@@ -0,0 +1,80 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Arrays;
+
+/** The name, element type and shape of a model input or output. */
+public final class TensorSpec {
+  /** Element types of tensors. */
+  public enum DataType {
+    FLOAT32(4),
+    INT32(4),
+    UINT8(1),
+    INT64(8),
+    INT8(1);
+
+    private final int byteSize;
+
+    DataType(final int byteSize) {
+      this.byteSize = byteSize;
+    }
+
+    public int byteSize() {
+      return byteSize;
+    }
+  }
+
+  private final String name;
+  private final DataType dataType;
+  private final int[] shape;
+
+  public TensorSpec(final String name, final DataType dataType, final int... shape) {
+    this.name = name;
+    this.dataType = dataType;
+    this.shape = shape.clone();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public DataType getDataType() {
+    return dataType;
+  }
+
+  /** Returns a copy of the shape. */
+  public int[] getShape() {
+    return shape.clone();
+  }
+
+  public int getNumElements() {
+    int count = 1;
+    for (final int dimension : shape) {
+      count *= dimension;
+    }
+    return count;
+  }
+
+  public int getNumBytes() {
+    return getNumElements() * dataType.byteSize();
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + dataType + Arrays.toString(shape);
+  }
+}
@@ -0,0 +1,105 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+/** Runs a model with the TFLite interpreter. */
+public final class TfLiteBackend implements InferenceBackend {
+  private final Interpreter interpreter;
+
+  /** @param model A direct buffer, usually a memory mapped model file. */
+  public TfLiteBackend(final ByteBuffer model, final Interpreter.Options options) {
+    interpreter = new Interpreter(model, options);
+  }
+
+  public TfLiteBackend(final File model, final Interpreter.Options options) {
+    interpreter = new Interpreter(model, options);
+  }
+
+  private static TensorSpec toSpec(final Tensor tensor) {
+    final TensorSpec.DataType dataType;
+    switch (tensor.dataType()) {
+      case FLOAT32:
+        dataType = TensorSpec.DataType.FLOAT32;
+        break;
+      case INT32:
+        dataType = TensorSpec.DataType.INT32;
+        break;
+      case UINT8:
+        dataType = TensorSpec.DataType.UINT8;
+        break;
+      case INT64:
+        dataType = TensorSpec.DataType.INT64;
+        break;
+      case INT8:
+        dataType = TensorSpec.DataType.INT8;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported tensor type " + tensor.dataType());
+    }
+    return new TensorSpec(tensor.name(), dataType, tensor.shape());
+  }
+
+  @Override
+  public int getInputCount() {
+    return interpreter.getInputTensorCount();
+  }
+
+  @Override
+  public TensorSpec getInputSpec(final int index) {
+    return toSpec(interpreter.getInputTensor(index));
+  }
+
+  @Override
+  public int getOutputCount() {
+    return interpreter.getOutputTensorCount();
+  }
+
+  @Override
+  public TensorSpec getOutputSpec(final int index) {
+    return toSpec(interpreter.getOutputTensor(index));
+  }
+
+  @Override
+  public void resizeInput(final int index, final int[] shape) {
+    interpreter.resizeInput(index, shape);
+  }
+
+  @Override
+  public void run(final Object[] inputs, final Map<Integer, Object> outputs) {
+    interpreter.runForMultipleInputsOutputs(inputs, outputs);
+  }
+
+  @Override
+  public void setNumThreads(final int numThreads) {
+    interpreter.setNumThreads(numThreads);
+  }
+
+  @Override
+  public void setUseNNAPI(final boolean useNNAPI) {
+    interpreter.setUseNNAPI(useNNAPI);
+  }
+
+  @Override
+  public void close() {
+    interpreter.close();
+  }
+}
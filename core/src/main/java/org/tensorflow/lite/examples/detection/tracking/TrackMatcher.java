@@ -0,0 +1,117 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import org.tensorflow.lite.examples.detection.pipeline.NonMaxSuppression;
+
+/**
+ * Matches a new batch of detections against the previous batch of tracks, so that each continued
+ * track can be animated from where it was. A detection continues the unmatched previous track with
+ * the same title that it overlaps the most. Not thread-safe.
+ */
+public final class TrackMatcher {
+  private final float minIou;
+  // Previous tracks: boxes as (left, top, right, bottom) runs, detection times and titles.
+  private final float[] boxes;
+  private final long[] timesMs;
+  private final String[] titles;
+  private final boolean[] matched;
+  private int count = 0;
+  private final float[] candidate = new float[4];
+
+  /**
+   * @param capacity The most previous tracks.
+   * @param minIou The smallest overlap for a detection to continue a track.
+   */
+  public TrackMatcher(final int capacity, final float minIou) {
+    this.minIou = minIou;
+    boxes = new float[4 * capacity];
+    timesMs = new long[capacity];
+    titles = new String[capacity];
+    matched = new boolean[capacity];
+  }
+
+  /** Forgets the previous tracks. */
+  public void clear() {
+    count = 0;
+  }
+
+  /** Adds a previous track, until the capacity is reached. */
+  public void addPrevious(
+      final String title,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom,
+      final long timeMs) {
+    if (count == timesMs.length) {
+      return;
+    }
+    boxes[4 * count] = left;
+    boxes[4 * count + 1] = top;
+    boxes[4 * count + 2] = right;
+    boxes[4 * count + 3] = bottom;
+    timesMs[count] = timeMs;
+    titles[count] = title;
+    matched[count] = false;
+    ++count;
+  }
+
+  /**
+   * Returns the index of the unmatched previous track with the same title that overlaps the given
+   * box the most, marking it matched, or -1 if none overlaps by at least the minimum.
+   */
+  public int match(
+      final String title,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    candidate[0] = left;
+    candidate[1] = top;
+    candidate[2] = right;
+    candidate[3] = bottom;
+    int bestIndex = -1;
+    float bestIou = minIou;
+    for (int i = 0; i < count; ++i) {
+      if (matched[i] || !(title == null ? titles[i] == null : title.equals(titles[i]))) {
+        continue;
+      }
+      final float iou = NonMaxSuppression.intersectionOverUnion(candidate, 0, boxes, i);
+      if (iou >= bestIou) {
+        bestIou = iou;
+        bestIndex = i;
+      }
+    }
+    if (bestIndex >= 0) {
+      matched[bestIndex] = true;
+    }
+    return bestIndex;
+  }
+
+  public int getPreviousCount() {
+    return count;
+  }
+
+  /** Returns the previous tracks' boxes as (left, top, right, bottom) runs. */
+  public float[] getPreviousBoxes() {
+    return boxes;
+  }
+
+  public long getPreviousTimeMs(final int i) {
+    return timesMs[i];
+  }
+}
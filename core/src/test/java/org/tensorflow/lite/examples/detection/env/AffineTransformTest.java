@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the frame coordinate transforms. */
+public class AffineTransformTest {
+  private static final float EPSILON = 1e-3f;
+
+  @Test
+  public void scalesWithoutRotation() {
+    final AffineTransform transform =
+        AffineTransform.getTransformation(640, 480, 300, 300, 0, false);
+    final float[] rect = {0, 0, 640, 480};
+    transform.mapRects(rect, 0, 1);
+    assertArrayEquals(new float[] {0, 0, 300, 300}, rect, EPSILON);
+  }
+
+  @Test
+  public void rotatesAboutFrameCenter() {
+    // A 640x480 sensor frame rotated by 90 degrees into a 480x640 portrait frame.
+    final AffineTransform transform =
+        AffineTransform.getTransformation(640, 480, 480, 640, 90, false);
+    final float[] points = {0, 0, 640, 0, 640, 480};
+    transform.mapPoints(points, 0, 3);
+    assertArrayEquals(new float[] {480, 0, 480, 640, 0, 640}, points, EPSILON);
+  }
+
+  @Test
+  public void mapsRectsToSortedBounds() {
+    final AffineTransform transform =
+        AffineTransform.getTransformation(640, 480, 480, 640, 90, false);
+    final float[] rects = {10, 20, 110, 220, 0, 0, 640, 480};
+    transform.mapRects(rects, 0, 2);
+    assertArrayEquals(new float[] {260, 10, 460, 110, 0, 0, 480, 640}, rects, EPSILON);
+  }
+
+  @Test
+  public void mapsBetweenArrays() {
+    final AffineTransform transform = new AffineTransform();
+    transform.postScale(2, 3);
+    transform.postTranslate(1, 1);
+    final float[] src = {1, 1, 2, 2};
+    final float[] dst = new float[6];
+    transform.mapRects(dst, 2, src, 0, 1);
+    assertArrayEquals(new float[] {0, 0, 3, 4, 5, 7}, dst, EPSILON);
+  }
+
+  @Test
+  public void invertRoundTrips() {
+    final AffineTransform frameToCrop =
+        AffineTransform.getTransformation(640, 480, 300, 300, 270, true);
+    final AffineTransform cropToFrame = new AffineTransform();
+    assertTrue(frameToCrop.invert(cropToFrame));
+
+    final float[] rect = {12, 34, 256, 300};
+    frameToCrop.mapRects(rect, 0, 1);
+    cropToFrame.mapRects(rect, 0, 1);
+    assertArrayEquals(new float[] {12, 34, 256, 300}, rect, EPSILON);
+  }
+
+  @Test
+  public void singularTransformDoesNotInvert() {
+    final AffineTransform transform = new AffineTransform();
+    transform.postScale(0, 1);
+    assertFalse(transform.invert(new AffineTransform()));
+  }
+
+  @Test
+  public void concatenationOrder() {
+    final AffineTransform scale = new AffineTransform();
+    scale.postScale(2, 2);
+    final AffineTransform translate = new AffineTransform();
+    translate.postTranslate(10, 0);
+
+    final AffineTransform scaleThenTranslate = new AffineTransform(scale);
+    scaleThenTranslate.postConcat(translate);
+    final AffineTransform translateThenScale = new AffineTransform(scale);
+    translateThenScale.preConcat(translate);
+
+    final float[] points = {1, 1, 1, 1};
+    scaleThenTranslate.mapPoints(points, 0, 1);
+    translateThenScale.mapPoints(points, 2, 1);
+    assertArrayEquals(new float[] {12, 2, 22, 2}, points, EPSILON);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/** Tests for scaling ARGB images. */
+public class ImageScalerTest {
+  private final int[] image = {
+    1, 2, 3, 4,
+    5, 6, 7, 8,
+  };
+
+  @Test
+  public void downscalesBySampling() {
+    final int[] scaled = new int[2];
+    ImageScaler.scaleNearest(image, 4, 2, scaled, 2, 1, null);
+    // Pixel centers at 1 and 3 in x, 1 in y.
+    assertArrayEquals(new int[] {6, 8}, scaled);
+  }
+
+  @Test
+  public void upscalesByRepeating() {
+    final int[] scaled = new int[8 * 2];
+    ImageScaler.scaleNearest(image, 4, 2, scaled, 8, 2, new int[8]);
+    assertArrayEquals(
+        new int[] {
+          1, 1, 2, 2, 3, 3, 4, 4,
+          5, 5, 6, 6, 7, 7, 8, 8,
+        },
+        scaled);
+  }
+
+  @Test
+  public void scalesARegion() {
+    final int[] scaled = new int[2 * 2];
+    // The right half as is, then the middle of the bottom row doubled in x.
+    ImageScaler.scaleNearest(image, 4, 2, 0, 2, 2, scaled, 2, 2, null);
+    assertArrayEquals(new int[] {3, 4, 7, 8}, scaled);
+    ImageScaler.scaleNearest(image, 4, 1, 1, 2, 1, scaled, 4, 1, null);
+    assertArrayEquals(new int[] {6, 6, 7, 7}, scaled);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests for the YUV to ARGB conversions. */
+public class YuvConversionsTest {
+  private static final int WIDTH = 4;
+  private static final int HEIGHT = 2;
+
+  @Test
+  public void computesTheNv21Size() {
+    assertEquals(640 * 480 * 3 / 2, YuvConversions.getYUVByteSize(640, 480));
+    // Odd dimensions round the chroma plane up.
+    assertEquals(9 + 8, YuvConversions.getYUVByteSize(3, 3));
+  }
+
+  @Test
+  public void convertsGrayAndBlack() {
+    final byte[] nv21 = new byte[YuvConversions.getYUVByteSize(WIDTH, HEIGHT)];
+    for (int i = 0; i < nv21.length; ++i) {
+      nv21[i] = (byte) (i < WIDTH ? 16 : 128);
+    }
+    final int[] argb = new int[WIDTH * HEIGHT];
+    YuvConversions.convertYUV420SPToARGB8888(nv21, WIDTH, HEIGHT, argb);
+    // Y 16 is black; the second row is mid gray, with equal channels.
+    assertEquals(0xff000000, argb[0]);
+    final int gray = argb[WIDTH];
+    assertEquals(gray & 0xff, (gray >> 8) & 0xff);
+    assertEquals(gray & 0xff, (gray >> 16) & 0xff);
+  }
+
+  @Test
+  public void planarAndSemiPlanarAgree() {
+    // NV21 interleaves V and U after the luminance.
+    final byte[] nv21 = {10, 60, 110, (byte) 160, 35, 85, (byte) 135, (byte) 185, 70, 90, 20, 40};
+    final byte[] y = {10, 60, 110, (byte) 160, 0, 35, 85, (byte) 135, (byte) 185, 0};
+    // Padded rows, and chroma samples two bytes apart.
+    final byte[] u = {90, 0, 40, 0};
+    final byte[] v = {70, 0, 20, 0};
+    final int[] expected = new int[WIDTH * HEIGHT];
+    final int[] actual = new int[WIDTH * HEIGHT];
+    YuvConversions.convertYUV420SPToARGB8888(nv21, WIDTH, HEIGHT, expected);
+    YuvConversions.convertYUV420ToARGB8888(y, u, v, WIDTH, HEIGHT, 5, 4, 2, actual);
+    assertArrayEquals(expected, actual);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Allocation budget suite: replays a fixed recording through each stage of the pipeline, see
+ * {@link ReplayedPipeline}, and fails when a stage allocates more bytes per frame in steady state
+ * than its budget in {@code /perf/allocation_budgets.txt}. Every byte the frame loop allocates is
+ * garbage the collector has to reclaim at some point, in a pause that can drop a frame. Its report
+ * lists the stages that allocate, the worst first, then the app's allocation sites that need the
+ * Android framework and so are not measured here; it is part of the failure message, and printed
+ * on success with the {@code perf.verbose} system property. The detect stage runs the model output
+ * buffers and decoding the app shares, {@link
+ * org.tensorflow.lite.examples.detection.tflite.SsdOutputs}. Needs a JVM that counts the
+ * allocations of each thread, like HotSpot; skipped on others. Run by the {@code perfTest} task.
+ */
+public class AllocationBudgetTest {
+  private static final int WARMUP_FRAMES = 200;
+  private static final int MEASURED_FRAMES = 300;
+  private static final double FRAMES_PER_SECOND = 30;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private ReplayedPipeline pipeline;
+
+  @Before
+  public void setUp() throws IOException {
+    pipeline = new ReplayedPipeline(folder.newFolder());
+  }
+
+  @After
+  public void tearDown() {
+    pipeline.close();
+  }
+
+  /** Returns a counter of the calling thread's allocations, or null if the JVM has none. */
+  private static AllocationProfiler.AllocationCounter createCounter() {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      return null;
+    }
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+    threads.setThreadAllocatedMemoryEnabled(true);
+    return () -> threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static Map<String, Long> loadBudgets() throws IOException {
+    try (Reader reader =
+        new InputStreamReader(
+            AllocationBudgetTest.class.getResourceAsStream("/perf/allocation_budgets.txt"),
+            StandardCharsets.UTF_8)) {
+      return AllocationProfiler.readBudgets(reader);
+    }
+  }
+
+  @Test
+  public void stagesStayWithinAllocationBudget() throws Exception {
+    final AllocationProfiler.AllocationCounter counter = createCounter();
+    assumeTrue("The JVM does not count allocations per thread", counter != null);
+    final AllocationProfiler profiler =
+        new AllocationProfiler(counter)
+            .addUnmeasured(
+                "recognize results",
+                "TFLiteObjectDetectionAPIModel.recognize builds a list with a Recognition and"
+                    + " RectF per detection")
+            .addUnmeasured(
+                "track results",
+                "MultiBoxTracker.processResults maps the results to RectFs and pairs in a"
+                    + " LinkedList")
+            .addUnmeasured(
+                "crop copy",
+                "DetectorActivity.track copies the cropped bitmap and makes a Canvas and Paint");
+    for (final Map.Entry<String, StageProfiler.Stage> stage : pipeline.getStages().entrySet()) {
+      profiler.addStage(stage.getKey(), stage.getValue());
+    }
+    final AllocationProfiler.Result[] results =
+        profiler.run(ReplayedPipeline.FRAMES, WARMUP_FRAMES, MEASURED_FRAMES);
+    final StringBuilder report = new StringBuilder();
+    for (final AllocationProfiler.Result result : results) {
+      report.append(result).append('\n');
+    }
+    report.append(profiler.rank(results, FRAMES_PER_SECOND));
+    if (Boolean.getBoolean("perf.verbose")) {
+      System.out.print(report);
+    }
+
+    final List<String> failures = AllocationProfiler.findOverBudget(loadBudgets(), results);
+    assertTrue(report + String.join("\n", failures), failures.isEmpty());
+  }
+}
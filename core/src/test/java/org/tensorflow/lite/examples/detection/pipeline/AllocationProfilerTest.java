@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests for measuring stage allocations against budgets, with a counter the stages advance. */
+public class AllocationProfilerTest {
+  // What reading the counter allocates, like a JVM that boxes the result.
+  private static final long READ_BYTES = 16;
+
+  private long allocated;
+  private int warmupCalls;
+
+  private long read() {
+    final long value = allocated;
+    allocated += READ_BYTES;
+    return value;
+  }
+
+  private final AllocationProfiler profiler = new AllocationProfiler(this::read);
+
+  private AllocationProfiler.Result[] measure() throws Exception {
+    return profiler
+        .addStage("none", frame -> {})
+        .addStage("steady", frame -> allocated += 100)
+        // Allocates 3000 bytes on every tenth frame only.
+        .addStage("spiky", frame -> allocated += frame % 10 == 0 ? 3000 : 0)
+        // Allocates its buffers on the first frames only.
+        .addStage("warmup", frame -> allocated += ++warmupCalls <= 5 ? 1 << 20 : 0)
+        .run(50, 10, 100);
+  }
+
+  @Test
+  public void measuresBytesPerFrameWithoutTheCounter() throws Exception {
+    final AllocationProfiler.Result[] results = measure();
+    assertEquals(0, results[0].getBytesPerFrame());
+    assertEquals(100, results[1].getBytesPerFrame());
+    assertEquals(100, results[1].getMaxBytes());
+    assertEquals(300, results[2].getBytesPerFrame());
+    assertEquals(3000, results[2].getMaxBytes());
+    assertEquals(100, results[2].getFrames());
+    assertEquals(0, results[3].getTotalBytes());
+  }
+
+  @Test
+  public void findsStagesOverBudget() throws Exception {
+    final Map<String, Long> budgets =
+        AllocationProfiler.readBudgets(
+            new StringReader(
+                "# stage bytes_per_frame\n\nnone 0\nsteady 128\nspiky 256\nmissing 0\n"));
+    final List<String> failures = AllocationProfiler.findOverBudget(budgets, measure());
+    assertEquals(2, failures.size());
+    assertTrue(failures.get(0), failures.get(0).startsWith("spiky over budget: 300 bytes/frame"));
+    assertTrue(failures.get(1), failures.get(1).startsWith("missing"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsMalformedBudgets() throws IOException {
+    AllocationProfiler.readBudgets(new StringReader("convert\n"));
+  }
+
+  @Test
+  public void ranksTheWorstStagesFirst() throws Exception {
+    profiler.addUnmeasured("render", "needs the Android framework");
+    final String[] lines = profiler.rank(measure(), 30).split("\n");
+    assertEquals(5, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("400 bytes/frame, 11.7 KB/s at 30 fps"));
+    assertTrue(lines[1], lines[1].contains("spiky") && lines[1].contains("75.0%"));
+    assertTrue(lines[2], lines[2].contains("steady") && lines[2].contains("25.0%"));
+    // Sites that were not measured are listed rather than shown as not allocating.
+    assertEquals("Not measured:", lines[3]);
+    assertEquals("    render: needs the Android framework", lines[4]);
+  }
+}
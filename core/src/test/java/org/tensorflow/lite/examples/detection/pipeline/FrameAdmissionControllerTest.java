@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.pipeline.FrameAdmissionController.DropReason;
+import org.tensorflow.lite.examples.detection.pipeline.FrameAdmissionController.Policy;
+
+/** Tests for the frame admission policies, driven by a simulated camera and clock. */
+public class FrameAdmissionControllerTest {
+  private static final long MS = 1000000L;
+  // A 30 fps camera.
+  private static final long FRAME_INTERVAL_NANOS = 33333333L;
+
+  /** A clock that only moves when told to. */
+  private static class FakeClock implements FrameAdmissionController.Clock {
+    long nowNanos = 0;
+
+    @Override
+    public long nanoTime() {
+      return nowNanos;
+    }
+  }
+
+  /**
+   * A camera producing frames at a fixed rate into a single worker that takes a fixed time per
+   * frame, in simulated time.
+   */
+  private static class Simulation implements FrameAdmissionController.Recycler<Long> {
+    final FakeClock clock = new FakeClock();
+    final FrameAdmissionController<Long> controller;
+    final List<Long> processed = new ArrayList<Long>();
+    final List<Long> droppedFrames = new ArrayList<Long>();
+    final long processingNanos;
+    final long jitterNanos;
+    // Frames admitted but not yet started, and the time the current frame finishes.
+    final ArrayDeque<Long> queue = new ArrayDeque<Long>();
+    long busyUntilNanos = -1;
+
+    Simulation(final Policy policy, final long processingNanos, final long jitterNanos) {
+      this.processingNanos = processingNanos;
+      this.jitterNanos = jitterNanos;
+      controller = new FrameAdmissionController<Long>(policy, 1, clock, this);
+    }
+
+    @Override
+    public void recycle(final Long frame, final DropReason reason) {
+      droppedFrames.add(frame);
+    }
+
+    void run(final int numFrames) {
+      for (long frame = 0; frame < numFrames; ++frame) {
+        // Alternate early and late frames to model capture jitter.
+        final long captureNanos =
+            frame * FRAME_INTERVAL_NANOS + (frame % 2 == 0 ? jitterNanos : -jitterNanos);
+        advanceTo(captureNanos);
+        final Long admitted = controller.onFrameCaptured(frame, captureNanos);
+        if (admitted != null) {
+          start(admitted);
+        }
+      }
+      advanceTo(Long.MAX_VALUE / 2);
+    }
+
+    private void advanceTo(final long nanos) {
+      while (busyUntilNanos >= 0 && busyUntilNanos <= nanos) {
+        clock.nowNanos = busyUntilNanos;
+        busyUntilNanos = -1;
+        final Long next = controller.onFrameCompleted(processingNanos);
+        if (next != null) {
+          start(next);
+        }
+      }
+      clock.nowNanos = Math.max(clock.nowNanos, nanos);
+    }
+
+    private void start(final Long frame) {
+      processed.add(frame);
+      busyUntilNanos = clock.nowNanos + processingNanos;
+    }
+  }
+
+  @Test
+  public void latestWinsProcessesNewestWaitingFrame() {
+    final Simulation simulation = new Simulation(Policy.latestWins(), 80 * MS, 0);
+    simulation.run(10);
+
+    // Frame 0 at t=0, then the newest frame waiting when the previous one is done: frame 2 at
+    // t=80, frame 4 at t=160 and frame 7 at t=240.
+    assertEquals(0L, (long) simulation.processed.get(0));
+    assertEquals(2L, (long) simulation.processed.get(1));
+    assertEquals(4L, (long) simulation.processed.get(2));
+    assertEquals(7L, (long) simulation.processed.get(3));
+    final FrameAdmissionController<Long> controller = simulation.controller;
+    assertEquals(10, controller.getCapturedCount());
+    assertEquals(simulation.processed.size(), controller.getAdmittedCount());
+    assertEquals(controller.getAdmittedCount(), controller.getCompletedCount());
+    assertEquals(10 - controller.getAdmittedCount(), controller.getDroppedCount());
+    assertEquals(controller.getDroppedCount(), controller.getDroppedCount(DropReason.SUPERSEDED));
+    assertEquals(0, controller.getInFlightCount());
+  }
+
+  @Test
+  public void everyNthConsidersOnlyEveryNthFrame() {
+    final Simulation simulation = new Simulation(Policy.everyNth(3), 10 * MS, 0);
+    simulation.run(9);
+
+    assertEquals(3, simulation.processed.size());
+    assertEquals(6L, (long) simulation.processed.get(2));
+    assertEquals(6, simulation.controller.getDroppedCount(DropReason.SKIPPED));
+  }
+
+  @Test
+  public void everyNthDropsBusyFrames() {
+    final Simulation simulation = new Simulation(Policy.everyNth(2), 50 * MS, 0);
+    simulation.run(8);
+
+    // Frame 2 arrives at t=67 while frame 0 is done at t=50; no frame is ever busy here.
+    assertEquals(4, simulation.processed.size());
+    final Simulation slow = new Simulation(Policy.everyNth(2), 100 * MS, 0);
+    slow.run(8);
+    // Frames 0, 4 are processed; 2 and 6 arrive while busy.
+    assertEquals(2, slow.processed.size());
+    assertEquals(2, slow.controller.getDroppedCount(DropReason.BUSY));
+  }
+
+  @Test
+  public void targetFpsToleratesCaptureJitter() {
+    final Simulation simulation = new Simulation(Policy.targetFps(15), 10 * MS, 2 * MS);
+    simulation.run(300);
+
+    // Every other frame of a jittery 30 fps camera.
+    assertEquals(150, simulation.processed.size());
+    assertEquals(150, simulation.controller.getDroppedCount(DropReason.RATE_LIMITED));
+  }
+
+  @Test
+  public void targetFpsDoesNotBurstAfterBusyPeriod() {
+    final Simulation simulation = new Simulation(Policy.targetFps(20), 120 * MS, 0);
+    simulation.run(30);
+
+    // Processing is the bottleneck, so admitted frames are at least one period apart.
+    for (int i = 1; i < simulation.processed.size(); ++i) {
+      final long gap = simulation.processed.get(i) - simulation.processed.get(i - 1);
+      assertTrue(gap * FRAME_INTERVAL_NANOS >= 120 * MS);
+    }
+  }
+
+  @Test
+  public void deadlineDropsFramesThatWouldFinishLate() {
+    final FakeClock clock = new FakeClock();
+    final List<Long> dropped = new ArrayList<Long>();
+    final FrameAdmissionController<Long> controller =
+        new FrameAdmissionController<Long>(
+            Policy.deadline(100 * MS), 4, clock, (frame, reason) -> dropped.add(frame));
+
+    clock.nowNanos = 30 * MS;
+    assertEquals(Long.valueOf(1), controller.onFrameCaptured(1L, 0));
+    controller.onFrameCompleted(80 * MS);
+
+    // 10ms old plus 80ms of processing fits; 30ms old does not.
+    clock.nowNanos = 110 * MS;
+    assertEquals(Long.valueOf(2), controller.onFrameCaptured(2L, 100 * MS));
+    assertNull(controller.onFrameCaptured(3L, 80 * MS));
+    assertEquals(1, controller.getDroppedCount(DropReason.DEADLINE));
+    assertEquals(3L, (long) dropped.get(0));
+  }
+
+  @Test
+  public void closeDropsWaitingAndLaterFrames() {
+    final FakeClock clock = new FakeClock();
+    final List<DropReason> reasons = new ArrayList<DropReason>();
+    final FrameAdmissionController<Long> controller =
+        new FrameAdmissionController<Long>(
+            Policy.latestWins(), 1, clock, (frame, reason) -> reasons.add(reason));
+
+    assertEquals(Long.valueOf(1), controller.onFrameCaptured(1L, 0));
+    assertNull(controller.onFrameCaptured(2L, 0));
+    controller.close();
+    assertNull(controller.onFrameCaptured(3L, 0));
+    assertNull(controller.onFrameCompleted(0));
+
+    assertEquals(2, reasons.size());
+    assertEquals(DropReason.STOPPED, reasons.get(0));
+    assertEquals(2, controller.getDroppedCount(DropReason.STOPPED));
+  }
+
+  @Test
+  public void framesDroppedBeforeCaptureAreCounted() {
+    final List<Long> dropped = new ArrayList<Long>();
+    final FrameAdmissionController<Long> controller =
+        new FrameAdmissionController<Long>(
+            Policy.latestWins(), 1, new FakeClock(), (frame, reason) -> dropped.add(frame));
+
+    controller.onFrameDropped(DropReason.NO_BUFFER);
+    assertEquals(Long.valueOf(1), controller.onFrameCaptured(1L, 0));
+
+    assertEquals(2, controller.getCapturedCount());
+    assertEquals(1, controller.getDroppedCount());
+    assertEquals(1, controller.getDroppedCount(DropReason.NO_BUFFER));
+    assertEquals(0, dropped.size());
+  }
+}
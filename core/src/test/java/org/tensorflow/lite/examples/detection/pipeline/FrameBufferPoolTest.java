@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/** Tests for the reference counted frame buffer pool. */
+public class FrameBufferPoolTest {
+  @Test
+  public void dropsFramesWhenAllSlotsAreHeld() {
+    final FrameBufferPool pool = new FrameBufferPool(3);
+    final FrameBuffer first = pool.acquire();
+    final FrameBuffer second = pool.acquire();
+    final FrameBuffer third = pool.acquire();
+    assertNotNull(third);
+    assertNull(pool.acquire());
+    assertEquals(0, pool.getFreeCount());
+
+    second.release();
+    assertSame(second, pool.acquire());
+    first.release();
+    second.release();
+    third.release();
+    assertEquals(3, pool.getFreeCount());
+  }
+
+  @Test
+  public void recyclesOnlyAfterEveryConsumerReleases() {
+    final FrameBufferPool pool = new FrameBufferPool(1);
+    final FrameBuffer buffer = pool.acquire();
+    buffer.retain();
+    assertEquals(2, buffer.getRefCount());
+
+    buffer.release();
+    assertNull(pool.acquire());
+    buffer.release();
+    assertSame(buffer, pool.acquire());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsRetainAfterRecycle() {
+    final FrameBuffer buffer = new FrameBufferPool(1).acquire();
+    buffer.release();
+    buffer.retain();
+  }
+
+  @Test
+  public void supportsFullSizedPool() {
+    final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.MAX_SIZE);
+    for (int i = 0; i < FrameBufferPool.MAX_SIZE; ++i) {
+      assertNotNull(pool.acquire());
+    }
+    assertNull(pool.acquire());
+  }
+}
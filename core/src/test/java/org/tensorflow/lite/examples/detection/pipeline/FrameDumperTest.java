@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for dumping debug images in the background. */
+public class FrameDumperTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  /** Writes the first pixel only, once released. */
+  private static final class BlockingWriter implements FrameDumper.ImageWriter {
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public String getExtension() {
+      return "txt";
+    }
+
+    @Override
+    public void write(
+        final int[] argb, final int width, final int height, final OutputStream output)
+        throws IOException {
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        throw new IOException(e);
+      }
+      output.write(Integer.toString(argb[0]).getBytes("UTF-8"));
+    }
+  }
+
+  @Test
+  public void writesRawImages() throws IOException {
+    final File directory = folder.newFolder();
+    final FrameDumper dumper = new FrameDumper(directory, FrameDumper.RAW, 2);
+    dumper.dump("input", new int[] {0xff010203, 0xff040506, 7, 8}, 2, 1);
+    dumper.close();
+    assertEquals(1, dumper.getWrittenCount());
+
+    try (DataInputStream input =
+        new DataInputStream(new FileInputStream(new File(directory, "input-000000.argb")))) {
+      assertEquals(2, input.readInt());
+      assertEquals(1, input.readInt());
+      assertEquals(0xff010203, input.readInt());
+      assertEquals(0xff040506, input.readInt());
+      assertEquals(-1, input.read());
+    }
+  }
+
+  @Test
+  public void dropsTheOldestWhenTheWriterFallsBehind() throws Exception {
+    final File directory = folder.newFolder();
+    final BlockingWriter writer = new BlockingWriter();
+    final FrameDumper dumper = new FrameDumper(directory, writer, 2);
+    dumper.dump("frame", new int[] {0}, 1, 1);
+    // Wait for the writer to take the first image.
+    while (dumper.getPendingCount() > 0) {
+      Thread.sleep(1);
+    }
+    for (int i = 1; i <= 4; ++i) {
+      dumper.dump("frame", new int[] {i}, 1, 1);
+    }
+    assertEquals(2, dumper.getPendingCount());
+    assertEquals(2, dumper.getDroppedCount());
+    writer.release.countDown();
+    dumper.close();
+    assertFalse(dumper.dump("frame", new int[] {5}, 1, 1));
+
+    assertEquals(5, dumper.getQueuedCount());
+    assertEquals(3, dumper.getWrittenCount());
+    final String[] files = directory.list();
+    Arrays.sort(files);
+    assertArrayEquals(
+        new String[] {"frame-000000.txt", "frame-000003.txt", "frame-000004.txt"}, files);
+  }
+}
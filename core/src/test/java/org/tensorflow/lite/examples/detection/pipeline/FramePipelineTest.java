@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/** Tests for the staged frame pipeline. */
+public class FramePipelineTest {
+  private static final int NUM_FRAMES = 1000;
+
+  @Test
+  public void processesFramesInOrderThroughEveryStage() throws InterruptedException {
+    final List<int[]> published = Collections.synchronizedList(new ArrayList<int[]>());
+    final CountDownLatch done = new CountDownLatch(NUM_FRAMES);
+    final FramePipeline<int[]> pipeline = new FramePipeline<int[]>("test", 4);
+    pipeline
+        .addStage("first", frame -> frame[1] += 1)
+        .addStage("second", frame -> frame[1] *= 10)
+        .addStage(
+            "last",
+            frame -> {
+              published.add(frame);
+              done.countDown();
+            });
+    pipeline.start();
+
+    for (int i = 0; i < NUM_FRAMES; ++i) {
+      final int[] frame = new int[] {i, i};
+      while (!pipeline.submit(frame)) {
+        Thread.yield();
+      }
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    pipeline.stop(frame -> {});
+
+    assertEquals(NUM_FRAMES, published.size());
+    for (int i = 0; i < NUM_FRAMES; ++i) {
+      assertEquals(i, published.get(i)[0]);
+      assertEquals((i + 1) * 10, published.get(i)[1]);
+    }
+    assertEquals(NUM_FRAMES, pipeline.getStageStats(1).getCount());
+  }
+
+  @Test
+  public void stopDiscardsFramesInFlight() throws InterruptedException {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> discarded = new ArrayList<Integer>();
+    final FramePipeline<Integer> pipeline = new FramePipeline<Integer>("test", 2);
+    pipeline
+        .addStage(
+            "slow",
+            frame -> {
+              blocked.countDown();
+              try {
+                release.await();
+              } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            })
+        .addStage("last", frame -> {});
+    pipeline.start();
+
+    assertTrue(pipeline.submit(0));
+    assertTrue(blocked.await(10, TimeUnit.SECONDS));
+    assertTrue(pipeline.submit(1));
+    assertTrue(pipeline.submit(2));
+    assertFalse(pipeline.submit(3));
+
+    final Thread stopper = new Thread(() -> pipeline.stop(discarded::add));
+    stopper.start();
+    while (pipeline.isRunning()) {
+      Thread.yield();
+    }
+    release.countDown();
+    stopper.join();
+
+    assertFalse(pipeline.submit(4));
+    // Frame 0 finished the slow stage after the pipeline stopped, so it is discarded too.
+    assertEquals(3, discarded.size());
+    assertTrue(discarded.contains(0));
+    assertTrue(discarded.contains(1));
+    assertTrue(discarded.contains(2));
+  }
+}
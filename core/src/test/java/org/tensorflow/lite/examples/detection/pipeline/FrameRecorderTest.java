@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for recording frames and replaying the recording. */
+public class FrameRecorderTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final FrameBufferPool pool = new FrameBufferPool(1);
+
+  private FrameBuffer nv21Frame(final int seed) {
+    final FrameBuffer frame = pool.acquire();
+    final byte[] bytes = new byte[WIDTH * HEIGHT * 3 / 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) (seed + i);
+    }
+    frame.getPlanes()[0] = bytes;
+    frame.setFormat(FrameBuffer.FORMAT_NV21, WIDTH, HEIGHT, WIDTH, 0, 0);
+    frame.setTimestampNanos(1000L * seed);
+    return frame;
+  }
+
+  private static byte[] bytes(final FrameReplaySource source, final int index, final int plane) {
+    final ByteBuffer buffer = source.getPlane(index, plane);
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void replaysWhatWasRecordedAcrossSegments() throws IOException {
+    final File directory = folder.newFolder();
+    final Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("rotation", "90");
+    metadata.put("device", "test");
+    // Room for two of the 104 byte records per segment.
+    final FrameRecorder recorder = new FrameRecorder(directory, "run", metadata, 64, 256);
+    for (int i = 0; i < 5; ++i) {
+      final FrameBuffer frame = nv21Frame(i);
+      assertTrue(recorder.record(frame));
+      frame.release();
+    }
+    recorder.close();
+    assertEquals(5, recorder.getRecordedCount());
+    assertEquals(0, recorder.getDroppedCount());
+    assertEquals(3, recorder.getSegmentCount());
+
+    final FrameReplaySource source = FrameReplaySource.open(directory, "run");
+    assertEquals(5, source.getFrameCount());
+    assertEquals(metadata, source.getMetadata());
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(i, source.getSequence(i));
+      assertEquals(1000L * i, source.getTimestampNanos(i));
+      assertEquals(FrameBuffer.FORMAT_NV21, source.getFormat(i));
+      assertEquals(WIDTH, source.getWidth(i));
+      assertEquals(HEIGHT, source.getHeight(i));
+      assertEquals(1, source.getPlaneCount(i));
+      final FrameBuffer expected = nv21Frame(i);
+      assertArrayEquals(expected.getPlanes()[0], bytes(source, i, 0));
+      expected.release();
+    }
+
+    final FrameBuffer replayed = pool.acquire();
+    source.read(3, replayed);
+    assertEquals(3000L, replayed.getTimestampNanos());
+    assertEquals(WIDTH, replayed.getYRowStride());
+    replayed.release();
+    source.close();
+  }
+
+  @Test
+  public void recordsAllPlanesOfCamera2Frames() throws IOException {
+    final File directory = folder.newFolder();
+    final FrameRecorder recorder =
+        new FrameRecorder(directory, "run", Collections.emptyMap(), 4, 1 << 20);
+    final FrameBuffer frame = pool.acquire();
+    frame.getPlanes()[0] = new byte[] {1, 2, 3, 4};
+    frame.getPlanes()[1] = new byte[] {5, 6};
+    frame.getPlanes()[2] = new byte[] {7};
+    frame.setFormat(FrameBuffer.FORMAT_YUV_420_888, 2, 2, 2, 2, 2);
+    recorder.record(frame);
+    frame.release();
+    recorder.close();
+
+    final FrameReplaySource source = FrameReplaySource.open(directory, "run");
+    assertEquals(3, source.getPlaneCount(0));
+    assertArrayEquals(new byte[] {5, 6}, bytes(source, 0, 1));
+    assertArrayEquals(new byte[] {7}, bytes(source, 0, 2));
+    assertEquals(2, source.getUvPixelStride(0));
+  }
+
+  @Test
+  public void ignoresATruncatedLastRecord() throws IOException {
+    final File directory = folder.newFolder();
+    final FrameRecorder recorder =
+        new FrameRecorder(directory, "run", Collections.emptyMap(), 4, 1 << 20);
+    for (int i = 0; i < 2; ++i) {
+      final FrameBuffer frame = nv21Frame(i);
+      recorder.record(frame);
+      frame.release();
+    }
+    recorder.close();
+
+    final File segment = FrameRecorder.listSegments(directory, "run")[0];
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 10);
+    }
+    assertEquals(1, FrameReplaySource.open(directory, "run").getFrameCount());
+  }
+}
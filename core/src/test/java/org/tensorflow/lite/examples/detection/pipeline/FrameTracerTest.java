@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+/** Tests for the per-frame event tracer. */
+public class FrameTracerTest {
+  private static final long MS = 1000000L;
+  private static final String[] EVENTS = {"capture", "infer", "draw"};
+
+  @Test
+  public void keepsOnlyCompletedRecentFrames() {
+    final FrameTracer tracer = new FrameTracer(EVENTS, 4);
+    for (long frame = 0; frame < 6; ++frame) {
+      tracer.begin(frame, frame * 10 * MS);
+      tracer.mark(frame, 1, frame * 10 * MS + 5 * MS);
+      // The newest frame has not been drawn yet.
+      if (frame < 5) {
+        tracer.mark(frame, 2, frame * 10 * MS + (frame + 1) * 10 * MS);
+      }
+    }
+    // A late mark for an overwritten frame is ignored.
+    tracer.mark(0, 2, 0);
+
+    final long[] ids = new long[4];
+    final long[] times = new long[4 * EVENTS.length];
+    assertEquals(3, tracer.snapshot(ids, times));
+    assertTrue(tracer.getSummary().startsWith("capture to draw: n=3 p50=40.0ms"));
+  }
+
+  @Test
+  public void exportsSlicesBetweenEvents() throws IOException {
+    final FrameTracer tracer = new FrameTracer(EVENTS, 4);
+    tracer.begin(7, 1000 * MS);
+    tracer.mark(7, 2, 1016 * MS);
+
+    final StringWriter writer = new StringWriter();
+    tracer.writeChromeTrace(writer);
+    final String json = writer.toString();
+    assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+    assertTrue(json.contains("\"args\":{\"name\":\"infer\"}"));
+    // Events that were not crossed are skipped, so the draw slice starts at capture.
+    assertTrue(
+        json.contains(
+            "{\"name\":\"draw\",\"ph\":\"X\",\"pid\":1,\"tid\":2,\"ts\":1000000.000,"
+                + "\"dur\":16000.000,\"args\":{\"frame\":7}}"));
+    assertEquals(1, json.split("\"ph\":\"X\"").length - 1);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.pipeline.IdleController.Mode;
+
+/** Tests for idle duty-cycling. */
+public class IdleControllerTest {
+  private static final long FRAME_NANOS = 33333333L;
+
+  private long nowNanos = 0;
+  private final IdleController controller = new IdleController(3, 10, () -> nowNanos);
+
+  /** Runs one frame, with a detection pass reporting the given count if one is run. */
+  private boolean frame(final boolean motion, final int detections) {
+    nowNanos += FRAME_NANOS;
+    final boolean detect = controller.onFrame(motion);
+    if (detect) {
+      controller.onDetections(detections);
+    }
+    return detect;
+  }
+
+  @Test
+  public void goesIdleAfterEmptyPassesAndSamplesSparsely() {
+    assertTrue(frame(false, 1));
+    assertTrue(frame(false, 0));
+    assertTrue(frame(false, 0));
+    assertEquals(Mode.ACTIVE, controller.getMode());
+    assertTrue(frame(false, 0));
+    assertEquals(Mode.IDLE, controller.getMode());
+
+    int detected = 0;
+    for (int i = 0; i < 100; ++i) {
+      if (frame(false, 0)) {
+        ++detected;
+      }
+    }
+    assertEquals(10, detected);
+    assertEquals(Mode.IDLE, controller.getMode());
+    assertEquals(100 * FRAME_NANOS, controller.getTimeInModeNanos(Mode.IDLE));
+    assertEquals(4 * FRAME_NANOS, controller.getTimeInModeNanos(Mode.ACTIVE));
+  }
+
+  @Test
+  public void wakesUpOnMotionOrDetection() {
+    for (int i = 0; i < 3; ++i) {
+      frame(false, 0);
+    }
+    assertTrue(controller.isIdle());
+    assertTrue(frame(true, 0));
+    assertFalse(controller.isIdle());
+
+    for (int i = 0; i < 3; ++i) {
+      frame(false, 0);
+    }
+    assertTrue(controller.isIdle());
+    // The periodic idle pass finds something.
+    for (int i = 0; i < 10; ++i) {
+      frame(false, 1);
+    }
+    assertFalse(controller.isIdle());
+  }
+}
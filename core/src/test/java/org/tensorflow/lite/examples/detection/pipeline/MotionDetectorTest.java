@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the block-wise luminance motion detector. */
+public class MotionDetectorTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int ROW_STRIDE = 80;
+
+  private final byte[] luminance = new byte[ROW_STRIDE * HEIGHT];
+  // Step 4 and 4x4 sample blocks, so 16x16 pixel blocks, 4 by 3 of them.
+  private final MotionDetector detector = new MotionDetector(4, 4, 12, 2);
+
+  private boolean update() {
+    return detector.update(luminance, WIDTH, HEIGHT, ROW_STRIDE);
+  }
+
+  private void fill(
+      final int left, final int top, final int right, final int bottom, final int value) {
+    for (int y = top; y < bottom; ++y) {
+      for (int x = left; x < right; ++x) {
+        luminance[y * ROW_STRIDE + x] = (byte) value;
+      }
+    }
+  }
+
+  @Test
+  public void marksChangedBlocks() {
+    assertFalse(update());
+    assertFalse(update());
+    assertEquals(4, detector.getBlockColumns());
+    assertEquals(3, detector.getBlockRows());
+    assertEquals(16, detector.getBlockSizePixels());
+
+    // Brighten the top left quarter; the padding beyond the width does not count.
+    fill(0, 0, WIDTH / 2, HEIGHT / 2, 200);
+    fill(WIDTH, 0, ROW_STRIDE, HEIGHT, 200);
+    assertTrue(update());
+    // The quarter covers two full blocks and half of the two below them.
+    assertArrayEquals(
+        new boolean[] {
+          true, true, false, false,
+          true, true, false, false,
+          false, false, false, false
+        },
+        detector.getChangedBlocks());
+    assertEquals(4, detector.getChangedBlockCount());
+  }
+
+  @Test
+  public void backgroundAbsorbsStaticChanges() {
+    update();
+    fill(0, 0, WIDTH, HEIGHT, 100);
+    assertTrue(update());
+    int frames = 1;
+    while (update()) {
+      ++frames;
+    }
+    // The difference shrinks by a quarter per frame, from 100 to below 12.
+    assertEquals(8, frames);
+    assertEquals(0, detector.getChangedBlockCount());
+  }
+
+  @Test
+  public void ignoresSmallChanges() {
+    update();
+    fill(0, 0, WIDTH, HEIGHT, 10);
+    assertFalse(update());
+  }
+
+  @Test
+  public void restartsOnSizeChange() {
+    update();
+    fill(0, 0, WIDTH, HEIGHT, 200);
+    assertFalse(detector.update(luminance, WIDTH / 2, HEIGHT, ROW_STRIDE));
+    assertEquals(2, detector.getBlockColumns());
+    assertEquals(6, detector.getChangedBlocks().length);
+  }
+
+  @Test
+  public void staysUnderOneMillisecondAt480p() {
+    final int width = 640;
+    final int height = 480;
+    final byte[] frame = new byte[width * height];
+    final MotionDetector detector = new MotionDetector(4, 8, 12, 3);
+    for (int i = 0; i < 200; ++i) {
+      frame[i * 1000] = (byte) i;
+      detector.update(frame, width, height, width);
+    }
+    final int iterations = 200;
+    final long startNanos = System.nanoTime();
+    for (int i = 0; i < iterations; ++i) {
+      frame[i * 1000] = (byte) i;
+      detector.update(frame, width, height, width);
+    }
+    final long meanNanos = (System.nanoTime() - startNanos) / iterations;
+    assertTrue("Mean update took " + meanNanos + " ns", meanNanos < 1000000L);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Tests for merging the detections of overlapping crops. */
+public class NonMaxSuppressionTest {
+  private final float[] boxes = {
+    0, 0, 10, 10,
+    1, 1, 11, 11,
+    20, 20, 30, 30,
+    0, 0, 10, 10,
+  };
+  private final float[] scores = {0.6f, 0.9f, 0.5f, 0.7f};
+  private final int[] keep = new int[4];
+
+  @Test
+  public void computesIntersectionOverUnion() {
+    assertEquals(81.0f / 119.0f, NonMaxSuppression.intersectionOverUnion(boxes, 0, 1), 1e-6f);
+    assertEquals(0.0f, NonMaxSuppression.intersectionOverUnion(boxes, 0, 2), 0.0f);
+    assertEquals(1.0f, NonMaxSuppression.intersectionOverUnion(boxes, 0, 3), 0.0f);
+  }
+
+  @Test
+  public void suppressesAcrossClasses() {
+    assertEquals(2, NonMaxSuppression.select(boxes, scores, null, 4, 0.5f, keep));
+    assertArrayEquals(new int[] {1, 2}, Arrays.copyOf(keep, 2));
+  }
+
+  @Test
+  public void suppressesWithinClasses() {
+    final int[] classes = {1, 2, 1, 1};
+    assertEquals(3, NonMaxSuppression.select(boxes, scores, classes, 4, 0.5f, keep));
+    assertArrayEquals(new int[] {1, 3, 2}, Arrays.copyOf(keep, 3));
+  }
+
+  @Test
+  public void keepsEverythingBelowTheThreshold() {
+    assertEquals(4, NonMaxSuppression.select(boxes, scores, null, 4, 1.0f, keep));
+    assertArrayEquals(new int[] {1, 3, 0, 2}, keep);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.pipeline.QualityController.Knob;
+
+/**
+ * Tests for the quality controller, replaying generated profiles of per-frame detector costs,
+ * shaped after a steady device, thermal throttling and GC pauses, through a model of how much each
+ * knob saves.
+ */
+public class QualityControllerTest {
+  private static final long MS = 1000000L;
+  // 30 fps.
+  private static final long TARGET_NANOS = 33333333L;
+  // The generated cost profiles: 50s at 30 fps, of frame costs at full quality in milliseconds.
+  private static final long SEED = 1;
+  private static final int PROFILE_FRAMES = 1500;
+  private static final double BASE_COST_MS = 24;
+  private static final double NOISE_MS = 1.5;
+  private static final double THROTTLED_COST_MS = 55;
+
+  private final Knob threads = new Knob("threads", 2, 4);
+  private final Knob cadence = new Knob("cadence", 1, 2, 3);
+  private final Knob previewHeight = new Knob("preview", 480, 360, 240);
+  private final Knob poseNetInput = new Knob("posenet", 257, 193, 129);
+  private final List<Knob> changes = new ArrayList<Knob>();
+  private final QualityController controller =
+      new QualityController(
+          TARGET_NANOS,
+          Arrays.asList(threads, cadence, previewHeight, poseNetInput),
+          changes::add,
+          30,
+          0.1f,
+          0.2f,
+          3);
+
+  /** Scales a cost at full quality by what the current knob settings save. */
+  private long cost(final double fullQualityMs) {
+    final double threadFactor = threads.getValue() == 4 ? 0.7 : 1.0;
+    // Conversion and cropping are about a fifth of the cost and scale with the preview area.
+    final double previewScale = previewHeight.getValue() / 480.0;
+    final double previewFactor = 0.8 + 0.2 * previewScale * previewScale;
+    final double poseScale = poseNetInput.getValue() / 257.0;
+    final double poseFactor = 0.5 + 0.5 * poseScale * poseScale;
+    final double perFrameMs =
+        fullQualityMs * threadFactor * previewFactor * poseFactor / cadence.getValue();
+    return Math.round(perFrameMs * MS);
+  }
+
+  /** A steady cost of about 24ms per frame, with some noise. */
+  private static double[] steadyProfile(final Random random) {
+    final double[] profile = new double[PROFILE_FRAMES];
+    for (int i = 0; i < profile.length; ++i) {
+      profile[i] = BASE_COST_MS + NOISE_MS * random.nextGaussian();
+    }
+    return profile;
+  }
+
+  /**
+   * Thermal throttling raises the cost to about 55ms between frames 300 and 450, and it recovers
+   * between frames 900 and 1000.
+   */
+  private static double[] throttlingProfile(final long seed) {
+    final double[] profile = steadyProfile(new Random(seed));
+    for (int i = 0; i < profile.length; ++i) {
+      final double throttled;
+      if (i < 300 || i >= 1000) {
+        throttled = 0;
+      } else if (i < 450) {
+        throttled = (i - 300) / 150.0;
+      } else if (i < 900) {
+        throttled = 1;
+      } else {
+        throttled = (1000 - i) / 100.0;
+      }
+      profile[i] += throttled * (THROTTLED_COST_MS - BASE_COST_MS);
+    }
+    return profile;
+  }
+
+  /**
+   * Isolated spikes of 80-120ms on about 3% of frames, at least 10 frames apart, like garbage
+   * collection pauses.
+   */
+  private static double[] gcSpikeProfile(final long seed) {
+    final Random random = new Random(seed);
+    final double[] profile = steadyProfile(random);
+    int lastSpike = -10;
+    for (int i = 0; i < profile.length; ++i) {
+      if (i - lastSpike >= 10 && random.nextDouble() < 0.03) {
+        profile[i] = 80 + 40 * random.nextDouble();
+        lastSpike = i;
+      }
+    }
+    return profile;
+  }
+
+  @Test
+  public void holdsTargetUnderThrottlingAndRecovers() {
+    final double[] trace = throttlingProfile(SEED);
+    double throttledCostMs = 0;
+    int throttledFrames = 0;
+    for (int i = 0; i < trace.length; ++i) {
+      final long cost = cost(trace[i]);
+      controller.onFrame(cost);
+      // Frames in the middle of the throttled period, after the controller had time to react.
+      if (i >= 600 && i < 900) {
+        throttledCostMs += cost / (double) MS;
+        ++throttledFrames;
+      }
+    }
+
+    assertTrue(throttledCostMs / throttledFrames <= 1.1 * TARGET_NANOS / MS);
+    // The original cost is at about 0.7 of the target, so everything goes back up.
+    assertEquals(0, threads.getLevel());
+    assertEquals(0, cadence.getLevel());
+    assertEquals(0, previewHeight.getLevel());
+    assertEquals(0, poseNetInput.getLevel());
+    // Turning down and back up again without oscillating in between.
+    assertEquals(0, changes.size() % 2);
+    assertTrue(changes.size() <= 6);
+  }
+
+  @Test
+  public void ignoresIsolatedSpikes() {
+    for (final double fullQualityMs : gcSpikeProfile(SEED)) {
+      controller.onFrame(cost(fullQualityMs));
+    }
+    assertEquals(0, controller.getChangeCount());
+  }
+
+  @Test
+  public void doesNotReactWithinDegradeMargin() {
+    for (int i = 0; i < 1000; ++i) {
+      controller.onFrame(TARGET_NANOS * 105 / 100);
+    }
+    assertEquals(0, controller.getChangeCount());
+  }
+
+  @Test
+  public void turnsKnobsDownInOrderAndBackUpInReverse() {
+    // A hugely expensive load exhausts every knob.
+    for (int i = 0; i < 30 * 20; ++i) {
+      controller.onFrame(100 * TARGET_NANOS);
+    }
+    assertEquals(7, changes.size());
+    assertEquals("threads", changes.get(0).getName());
+    assertEquals("cadence", changes.get(1).getName());
+    assertEquals("posenet", changes.get(6).getName());
+
+    // Once cheap, the most recently lowered knob goes back up first.
+    for (int i = 0; i < 30 * 3; ++i) {
+      controller.onFrame(TARGET_NANOS / 10);
+    }
+    assertEquals(8, changes.size());
+    assertEquals(1, poseNetInput.getLevel());
+  }
+}
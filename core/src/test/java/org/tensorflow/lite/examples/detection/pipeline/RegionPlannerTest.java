@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Tests for merging changed blocks into detection regions. */
+public class RegionPlannerTest {
+  // 640x480 in 32 pixel blocks.
+  private static final int COLUMNS = 20;
+  private static final int ROWS = 15;
+  private static final int BLOCK = 32;
+
+  private final boolean[] changed = new boolean[COLUMNS * ROWS];
+  private final int[] regions = new int[4 * 3];
+
+  private void change(final int left, final int top, final int right, final int bottom) {
+    for (int y = top; y <= bottom; ++y) {
+      for (int x = left; x <= right; ++x) {
+        changed[y * COLUMNS + x] = true;
+      }
+    }
+  }
+
+  private int plan(final RegionPlanner planner) {
+    return planner.plan(changed, COLUMNS, ROWS, BLOCK, 640, 480, regions);
+  }
+
+  @Test
+  public void nothingChanged() {
+    assertEquals(0, plan(new RegionPlanner(3, 128, 0.5f)));
+  }
+
+  @Test
+  public void padsAndSquaresASmallChange() {
+    change(5, 5, 5, 5);
+    assertEquals(1, plan(new RegionPlanner(3, 128, 0.5f)));
+    // Blocks 4 to 6 are 96 pixels, widened to the minimum size around their center.
+    assertArrayEquals(new int[] {112, 112, 240, 240}, Arrays.copyOf(regions, 4));
+  }
+
+  @Test
+  public void keepsApartDistantChanges() {
+    change(1, 1, 2, 2);
+    change(16, 11, 17, 12);
+    assertEquals(2, plan(new RegionPlanner(3, 64, 0.5f)));
+    assertArrayEquals(new int[] {0, 0, 128, 128}, Arrays.copyOf(regions, 4));
+    assertArrayEquals(new int[] {480, 320, 608, 448}, Arrays.copyOfRange(regions, 4, 8));
+  }
+
+  @Test
+  public void mergesOverlappingAndSurplusGroups() {
+    // The padding makes the first two overlap.
+    change(1, 1, 1, 1);
+    change(3, 1, 3, 1);
+    change(10, 1, 10, 1);
+    change(18, 1, 18, 1);
+    // Three groups left, the closest two of which are merged to fit in two regions.
+    assertEquals(2, plan(new RegionPlanner(2, 0, 1.0f)));
+    assertArrayEquals(new int[] {0, 0, 384, 384}, Arrays.copyOf(regions, 4));
+    assertArrayEquals(new int[] {544, 0, 640, 96}, Arrays.copyOfRange(regions, 4, 8));
+  }
+
+  @Test
+  public void fallsBackToTheWholeFrame() {
+    // Too large a share of the frame.
+    change(2, 0, 13, 11);
+    assertEquals(0, plan(new RegionPlanner(3, 0, 0.5f)));
+    // Too wide for a square.
+    Arrays.fill(changed, false);
+    change(0, 7, 19, 7);
+    assertEquals(0, plan(new RegionPlanner(3, 0, 1.0f)));
+    // Noise all over.
+    Arrays.fill(changed, false);
+    for (int i = 0; i < changed.length; i += 3) {
+      changed[i] = (i / COLUMNS) % 2 == 0;
+    }
+    assertEquals(0, plan(new RegionPlanner(3, 0, 1.0f)));
+  }
+}
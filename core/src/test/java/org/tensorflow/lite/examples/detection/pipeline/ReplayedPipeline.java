@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.tensorflow.lite.examples.detection.env.ImageScaler;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+import org.tensorflow.lite.examples.detection.pose.PoseDecoder;
+import org.tensorflow.lite.examples.detection.tflite.InputPacker;
+import org.tensorflow.lite.examples.detection.tflite.SsdOutputs;
+import org.tensorflow.lite.examples.detection.tflite.SyntheticBackend;
+import org.tensorflow.lite.examples.detection.tracking.TrackMatcher;
+
+/**
+ * The stages of the frame pipeline over a fixed recording, from reading the frame to decoding the
+ * pose, with the synthetic backend in place of the models. Shared by the performance suites so
+ * that they measure the same work.
+ */
+final class ReplayedPipeline implements Closeable {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  /** The number of distinct frames. */
+  static final int FRAMES = 16;
+  private static final int DETECTOR_SIZE = 300;
+  private static final int POSE_SIZE = 257;
+  private static final int NUM_DETECTIONS = 10;
+  private static final String[] LABELS = {"person", "car", "dog", "bicycle"};
+
+  private final FrameReplaySource source;
+  private final FrameBuffer frame = new FrameBufferPool(1).acquire();
+  private final MotionDetector motionDetector = new MotionDetector(4, 8, 12, 3);
+  private final int[] argb = new int[WIDTH * HEIGHT];
+  private final int[] crop = new int[DETECTOR_SIZE * DETECTOR_SIZE];
+  private final int[] cropColumns = new int[DETECTOR_SIZE];
+  private final ByteBuffer input =
+      ByteBuffer.allocateDirect(3 * crop.length).order(ByteOrder.nativeOrder());
+  private final SyntheticBackend detector =
+      SyntheticBackend.ssd(DETECTOR_SIZE, true, NUM_DETECTIONS, LABELS.length, 0, 0);
+  // Decoded like the app's detector does, so that its allocations are measured too.
+  private final SsdOutputs detectorOutputs = new SsdOutputs(NUM_DETECTIONS);
+  private final float[] boxes = new float[4 * NUM_DETECTIONS];
+  private final float[] scores = new float[NUM_DETECTIONS];
+  private final int[] classes = new int[NUM_DETECTIONS];
+  private final int[] keep = new int[NUM_DETECTIONS];
+  private int kept;
+  private final TrackMatcher matcher = new TrackMatcher(NUM_DETECTIONS, 0.3f);
+  private final float[] previousBoxes = new float[4 * NUM_DETECTIONS];
+  private final int[] previousClasses = new int[NUM_DETECTIONS];
+  private int previousCount;
+  private final int[] poseCrop = new int[POSE_SIZE * POSE_SIZE];
+  private final int[] poseColumns = new int[POSE_SIZE];
+  private final ByteBuffer poseInput =
+      ByteBuffer.allocateDirect(4 * 3 * poseCrop.length).order(ByteOrder.nativeOrder());
+  private final SyntheticBackend poseNet = SyntheticBackend.poseNet(POSE_SIZE, 32, 17, 0, 0);
+  private final float[][][][] heatmaps = new float[1][9][9][17];
+  private final float[][][][] offsets = new float[1][9][9][34];
+  private final Map<Integer, Object> poseOutputs = new HashMap<>();
+  private final int[] xs = new int[17];
+  private final int[] ys = new int[17];
+  private final float[] keypointScores = new float[17];
+
+  /**
+   * Records a repeatable scene, a square moving over a gradient with sensor noise, into the given
+   * directory and opens it for replay.
+   */
+  ReplayedPipeline(final File directory) throws IOException {
+    final FrameRecorder recorder =
+        new FrameRecorder(directory, "suite", Collections.emptyMap(), FRAMES, 1 << 30);
+    final FrameBufferPool pool = new FrameBufferPool(FRAMES);
+    final Random random = new Random(0);
+    for (int i = 0; i < FRAMES; ++i) {
+      final FrameBuffer recorded = pool.acquire();
+      final byte[] nv21 = new byte[YuvConversions.getYUVByteSize(WIDTH, HEIGHT)];
+      random.nextBytes(nv21);
+      for (int y = 0; y < HEIGHT; ++y) {
+        for (int x = 0; x < WIDTH; ++x) {
+          final boolean square = Math.abs(x - 100 - 24 * i) < 40 && Math.abs(y - 240) < 40;
+          nv21[y * WIDTH + x] = (byte) (square ? 235 : x * 200 / WIDTH + (nv21[y * WIDTH + x] & 7));
+        }
+      }
+      recorded.getPlanes()[0] = nv21;
+      recorded.setFormat(FrameBuffer.FORMAT_NV21, WIDTH, HEIGHT, WIDTH, 0, 0);
+      recorded.setTimestampNanos(33_333_333L * i);
+      recorder.record(recorded);
+      recorded.release();
+    }
+    recorder.close();
+    source = FrameReplaySource.open(directory, "suite");
+
+    poseOutputs.put(0, heatmaps);
+    poseOutputs.put(1, offsets);
+  }
+
+  @Override
+  public void close() {
+    source.close();
+  }
+
+  /** Returns the stages in pipeline order, each taking the output of the one before. */
+  Map<String, StageProfiler.Stage> getStages() {
+    final Object[] poseInputs = {poseInput};
+    final Map<String, StageProfiler.Stage> stages = new LinkedHashMap<>();
+    stages.put("read", frameIndex -> source.read(frameIndex, frame));
+    stages.put(
+        "motion",
+        frameIndex -> motionDetector.update(frame.getPlanes()[0], WIDTH, HEIGHT, WIDTH));
+    stages.put(
+        "convert",
+        frameIndex ->
+            YuvConversions.convertYUV420SPToARGB8888(frame.getPlanes()[0], WIDTH, HEIGHT, argb));
+    stages.put(
+        "scale",
+        frameIndex ->
+            ImageScaler.scaleNearest(
+                argb, WIDTH, HEIGHT, crop, DETECTOR_SIZE, DETECTOR_SIZE, cropColumns));
+    stages.put("pack", frameIndex -> InputPacker.packQuantized(crop, crop.length, input));
+    stages.put("detect", frameIndex -> detectorOutputs.run(detector, input));
+    stages.put("nms", frameIndex -> suppress());
+    stages.put("track", frameIndex -> track());
+    stages.put(
+        "pose",
+        frameIndex -> {
+          ImageScaler.scaleNearest(
+              argb, WIDTH, HEIGHT, poseCrop, POSE_SIZE, POSE_SIZE, poseColumns);
+          InputPacker.packFloat(poseCrop, poseCrop.length, 127.5f, 127.5f, poseInput);
+          poseNet.run(poseInputs, poseOutputs);
+          PoseDecoder.decodeSinglePose(
+              heatmaps[0], offsets[0], POSE_SIZE, POSE_SIZE, xs, ys, keypointScores);
+        });
+    return stages;
+  }
+
+  private void suppress() {
+    final int count = detectorOutputs.getCount();
+    for (int i = 0; i < count; ++i) {
+      boxes[4 * i] = detectorOutputs.getLeft(i) * WIDTH;
+      boxes[4 * i + 1] = detectorOutputs.getTop(i) * HEIGHT;
+      boxes[4 * i + 2] = detectorOutputs.getRight(i) * WIDTH;
+      boxes[4 * i + 3] = detectorOutputs.getBottom(i) * HEIGHT;
+      scores[i] = detectorOutputs.getScore(i);
+      classes[i] = detectorOutputs.getClassIndex(i);
+    }
+    kept = NonMaxSuppression.select(boxes, scores, classes, count, 0.5f, keep);
+  }
+
+  private void track() {
+    matcher.clear();
+    for (int i = 0; i < previousCount; ++i) {
+      matcher.addPrevious(
+          LABELS[previousClasses[i] % LABELS.length],
+          previousBoxes[4 * i],
+          previousBoxes[4 * i + 1],
+          previousBoxes[4 * i + 2],
+          previousBoxes[4 * i + 3],
+          i);
+    }
+    for (int k = 0; k < kept; ++k) {
+      final int i = keep[k];
+      matcher.match(
+          LABELS[classes[i] % LABELS.length],
+          boxes[4 * i],
+          boxes[4 * i + 1],
+          boxes[4 * i + 2],
+          boxes[4 * i + 3]);
+      System.arraycopy(boxes, 4 * i, previousBoxes, 4 * k, 4);
+      previousClasses[k] = classes[i];
+    }
+    previousCount = kept;
+  }
+}
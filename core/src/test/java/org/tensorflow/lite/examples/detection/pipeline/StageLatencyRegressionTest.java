@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Latency regression suite: replays a fixed recording through each stage of the pipeline, see
+ * {@link ReplayedPipeline}, and fails when the median or tail latency of a stage is over the
+ * budget in {@code /perf/budgets.txt}, or regressed from a baseline. The budgets only catch gross
+ * regressions on any machine; the baseline catches smaller ones on the same machine. Settings, as
+ * system properties:
+ *
+ * <ul>
+ *   <li>{@code perf.baseline}: the baseline file. Written when missing; not checked when unset.
+ *   <li>{@code perf.updateBaseline}: overwrite the baseline with this run.
+ *   <li>{@code perf.maxRegressionPercent}: how much slower than the baseline a stage may be.
+ *   <li>{@code perf.verbose}: print the latencies of every stage even when the suite passes.
+ * </ul>
+ *
+ * <p>Timing sensitive, so only run by the {@code perfTest} task rather than with the other tests.
+ */
+public class StageLatencyRegressionTest {
+  private static final int WARMUP_FRAMES = 200;
+  private static final int MEASURED_FRAMES = 300;
+  private static final double DEFAULT_MAX_REGRESSION_PERCENT = 25;
+  // Stages taking only microseconds are mostly timer and scheduling noise.
+  private static final long REGRESSION_SLACK_MICROS = 200;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private ReplayedPipeline pipeline;
+
+  @Before
+  public void setUp() throws IOException {
+    pipeline = new ReplayedPipeline(folder.newFolder());
+  }
+
+  @After
+  public void tearDown() {
+    pipeline.close();
+  }
+
+  private static StageLatencyTable loadBudgets() throws IOException {
+    try (Reader reader =
+        new InputStreamReader(
+            StageLatencyRegressionTest.class.getResourceAsStream("/perf/budgets.txt"),
+            StandardCharsets.UTF_8)) {
+      return StageLatencyTable.read(reader);
+    }
+  }
+
+  @Test
+  public void stagesStayWithinBudgetAndBaseline() throws Exception {
+    final StageProfiler profiler = new StageProfiler();
+    for (final Map.Entry<String, StageProfiler.Stage> stage : pipeline.getStages().entrySet()) {
+      profiler.addStage(stage.getKey(), stage.getValue());
+    }
+    final StageProfiler.Result[] results =
+        profiler.run(ReplayedPipeline.FRAMES, WARMUP_FRAMES, MEASURED_FRAMES);
+    final StringBuilder report = new StringBuilder();
+    for (final StageProfiler.Result result : results) {
+      report.append(result).append('\n');
+    }
+    if (Boolean.getBoolean("perf.verbose")) {
+      System.out.print(report);
+    }
+    final List<String> failures = new ArrayList<>(loadBudgets().findOverBudget(results));
+
+    final String baselinePath = System.getProperty("perf.baseline");
+    if (baselinePath != null) {
+      final File baselineFile = new File(baselinePath);
+      if (baselineFile.exists() && !Boolean.getBoolean("perf.updateBaseline")) {
+        final StageLatencyTable baseline;
+        try (Reader reader =
+            new InputStreamReader(new FileInputStream(baselineFile), StandardCharsets.UTF_8)) {
+          baseline = StageLatencyTable.read(reader);
+        }
+        final double maxPercent =
+            Double.parseDouble(
+                System.getProperty(
+                    "perf.maxRegressionPercent", String.valueOf(DEFAULT_MAX_REGRESSION_PERCENT)));
+        failures.addAll(baseline.findRegressions(results, maxPercent, REGRESSION_SLACK_MICROS));
+      } else {
+        final File parent = baselineFile.getAbsoluteFile().getParentFile();
+        assertTrue("Cannot create " + parent, parent.isDirectory() || parent.mkdirs());
+        try (Writer writer =
+            new OutputStreamWriter(new FileOutputStream(baselineFile), StandardCharsets.UTF_8)) {
+          StageLatencyTable.of(results).write(writer);
+        }
+      }
+    }
+    assertTrue(report + String.join("\n", failures), failures.isEmpty());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests for checking stage latencies against budgets and baselines. */
+public class StageLatencyTableTest {
+  private static StageProfiler.Result[] measure(final long... sleepMicros) throws Exception {
+    final StageProfiler profiler = new StageProfiler();
+    for (int i = 0; i < sleepMicros.length; ++i) {
+      final long nanos = sleepMicros[i] * 1000;
+      profiler.addStage(
+          "stage" + i,
+          frame -> {
+            final long end = System.nanoTime() + nanos;
+            while (System.nanoTime() < end) {}
+          });
+    }
+    return profiler.run(2, 2, 100);
+  }
+
+  @Test
+  public void roundTripsThroughText() throws IOException {
+    final StageLatencyTable table =
+        StageLatencyTable.read(new StringReader("# comment\n\nconvert 2500 4000\ndetect 30 45\n"));
+    assertEquals(2500, table.getMedianMicros("convert"));
+    assertEquals(45, table.getTailMicros("detect"));
+
+    final StringWriter text = new StringWriter();
+    table.write(text);
+    final StageLatencyTable copy = StageLatencyTable.read(new StringReader(text.toString()));
+    assertEquals(table.getStages(), copy.getStages());
+    assertEquals(4000, copy.getTailMicros("convert"));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsMalformedLines() throws IOException {
+    StageLatencyTable.read(new StringReader("convert 2500\n"));
+  }
+
+  @Test
+  public void findsStagesOverBudgetOrNotMeasured() throws Exception {
+    final StageProfiler.Result[] results = measure(0, 2000);
+    final StageLatencyTable budgets = new StageLatencyTable();
+    budgets.put("stage0", 1000, 1000);
+    budgets.put("stage1", 500, 100000);
+    budgets.put("missing", 1, 1);
+    final List<String> failures = budgets.findOverBudget(results);
+    assertEquals(2, failures.size());
+    assertTrue(failures.get(0), failures.get(0).startsWith("stage1 over budget"));
+    assertTrue(failures.get(1), failures.get(1).startsWith("missing"));
+  }
+
+  @Test
+  public void findsRegressionsBeyondThePercentageAndSlack() throws Exception {
+    final StageProfiler.Result[] results = measure(2000, 0);
+    final StageLatencyTable baseline = new StageLatencyTable();
+    // A slowdown far beyond the percentage, and one beyond it but within the slack.
+    baseline.put("stage0", 500, 500);
+    baseline.put("stage1", 0, 0);
+    List<String> failures = baseline.findRegressions(results, 25, 1000);
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(0), failures.get(0).startsWith("stage0 regressed"));
+
+    failures = StageLatencyTable.of(results).findRegressions(results, 0, 0);
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+}
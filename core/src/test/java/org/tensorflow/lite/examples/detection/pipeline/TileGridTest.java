@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for splitting high resolution frames into tiles. */
+public class TileGridTest {
+  @Test
+  public void coversTheFrameWithOverlappingTiles() {
+    final int[] tiles = new int[4 * 6];
+    assertEquals(6, TileGrid.plan(1280, 720, 3, 2, 0.1f, tiles));
+    // An even split would be 427 wide, enlarged to 470 by the overlap.
+    assertArrayEquals(
+        new int[] {
+          0, 0, 470, 470,
+          405, 0, 875, 470,
+          810, 0, 1280, 470,
+          0, 250, 470, 720,
+          405, 250, 875, 720,
+          810, 250, 1280, 720
+        },
+        tiles);
+    for (int i = 0; i < 6; ++i) {
+      assertTrue(tiles[4 * i + 2] - tiles[4 * i] >= 470);
+    }
+  }
+
+  @Test
+  public void keepsTilesInsideTheFrame() {
+    final int[] tiles = new int[4 * 2];
+    assertEquals(2, TileGrid.plan(1280, 720, 2, 1, 0.1f, tiles));
+    // Square tiles would be 792 high, more than the frame, so they are cut to its height.
+    assertArrayEquals(new int[] {0, 0, 792, 720, 488, 0, 1280, 720}, tiles);
+  }
+
+  @Test
+  public void singleTileIsTheWholeFrame() {
+    final int[] tiles = new int[4];
+    assertEquals(1, TileGrid.plan(640, 480, 1, 1, 0.0f, tiles));
+    // Scaled to the longer side, like detecting on the whole frame.
+    assertArrayEquals(new int[] {0, 0, 640, 480}, tiles);
+  }
+
+  @Test
+  public void rowsForAWideFrameDoNotDuplicateTiles() {
+    assertEquals(2, TileGrid.rowsFor(1280, 720, 3));
+    assertEquals(1, TileGrid.rowsFor(1280, 720, 2));
+    assertEquals(2, TileGrid.rowsFor(640, 480, 3));
+    for (int columns = 1; columns <= 4; ++columns) {
+      final int rows = TileGrid.rowsFor(1280, 720, columns);
+      final int[] tiles = new int[4 * columns * rows];
+      final int count = TileGrid.plan(1280, 720, columns, rows, 0.1f, tiles);
+      for (int i = 0; i < count; ++i) {
+        for (int j = i + 1; j < count; ++j) {
+          final int width =
+              Math.min(tiles[4 * i + 2], tiles[4 * j + 2]) - Math.max(tiles[4 * i], tiles[4 * j]);
+          final int height =
+              Math.min(tiles[4 * i + 3], tiles[4 * j + 3])
+                  - Math.max(tiles[4 * i + 1], tiles[4 * j + 1]);
+          final int area =
+              (tiles[4 * i + 2] - tiles[4 * i]) * (tiles[4 * i + 3] - tiles[4 * i + 1]);
+          // Neighbours share the overlap margin, never most of a tile.
+          assertTrue(
+              columns + "x" + rows + " tiles " + i + " and " + j,
+              Math.max(0, width) * Math.max(0, height) < area / 2);
+        }
+      }
+    }
+  }
+}
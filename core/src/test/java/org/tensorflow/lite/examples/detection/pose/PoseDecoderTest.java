@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.pose;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests for decoding PoseNet outputs. */
+public class PoseDecoderTest {
+  @Test
+  public void decodesTheStrongestLocationOfEachKeypoint() {
+    // A 3x3 grid over a 257x257 image, with two keypoints.
+    final float[][][] heatmaps = new float[3][3][2];
+    final float[][][] offsets = new float[3][3][4];
+    for (final float[][] row : heatmaps) {
+      for (final float[] cell : row) {
+        cell[0] = -5;
+        cell[1] = -5;
+      }
+    }
+    heatmaps[1][2][0] = 0;
+    offsets[1][2][0] = 3;
+    offsets[1][2][2] = -2;
+    heatmaps[2][0][1] = 5;
+    offsets[2][0][1] = -1;
+    offsets[2][0][3] = 4;
+
+    final int[] xs = new int[2];
+    final int[] ys = new int[2];
+    final float[] scores = new float[2];
+    final float meanScore =
+        PoseDecoder.decodeSinglePose(heatmaps, offsets, 257, 257, xs, ys, scores);
+
+    // Cell centers are spread over the image, half of it apart, then offset.
+    assertArrayEquals(new int[] {255, 4}, xs);
+    assertArrayEquals(new int[] {131, 256}, ys);
+    assertEquals(0.5f, scores[0], 1e-6f);
+    assertEquals(1.0f / (1.0f + (float) Math.exp(-5)), scores[1], 1e-6f);
+    assertEquals((scores[0] + scores[1]) / 2, meanScore, 1e-6f);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+/** Tests for packing pixels into model inputs. */
+public class InputPackerTest {
+  private final int[] pixels = {0xff102030, 0x80ff0080};
+
+  @Test
+  public void packsBytes() {
+    final ByteBuffer input = ByteBuffer.allocate(6);
+    input.put((byte) 1);
+    InputPacker.packQuantized(pixels, 2, input);
+    final byte[] expected = {0x10, 0x20, 0x30, (byte) 0xff, 0x00, (byte) 0x80};
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], input.get(i));
+    }
+  }
+
+  @Test
+  public void packsNormalizedFloats() {
+    final ByteBuffer input = ByteBuffer.allocateDirect(4 * 6).order(ByteOrder.nativeOrder());
+    InputPacker.packFloat(pixels, 2, 127.5f, 127.5f, input);
+    assertEquals((16 - 127.5f) / 127.5f, input.getFloat(0), 1e-6f);
+    assertEquals(1.0f, input.getFloat(4 * 3), 1e-6f);
+    assertEquals(-1.0f, input.getFloat(4 * 4), 1e-6f);
+    assertEquals(24, input.position());
+  }
+}
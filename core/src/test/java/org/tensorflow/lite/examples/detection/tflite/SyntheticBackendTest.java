@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/** Tests for the synthetic inference backend. */
+public class SyntheticBackendTest {
+  private static final int NUM_DETECTIONS = 10;
+
+  private final float[][][] boxes = new float[1][NUM_DETECTIONS][4];
+  private final float[][] classes = new float[1][NUM_DETECTIONS];
+  private final float[][] scores = new float[1][NUM_DETECTIONS];
+  private final float[] count = new float[1];
+
+  private Map<Integer, Object> outputs() {
+    final Map<Integer, Object> outputs = new HashMap<>();
+    outputs.put(0, boxes);
+    outputs.put(1, classes);
+    outputs.put(2, scores);
+    outputs.put(3, count);
+    return outputs;
+  }
+
+  private static ByteBuffer image(final int seed) {
+    final ByteBuffer image = ByteBuffer.allocateDirect(8 * 8 * 3);
+    for (int i = 0; i < image.capacity(); ++i) {
+      image.put(i, (byte) (i * seed));
+    }
+    return image;
+  }
+
+  private String run(final InferenceBackend backend, final ByteBuffer input) {
+    backend.run(new Object[] {input}, outputs());
+    return Arrays.deepToString(boxes)
+        + Arrays.deepToString(classes)
+        + Arrays.deepToString(scores)
+        + Arrays.toString(count);
+  }
+
+  @Test
+  public void outputsDependOnlyOnTheInputs() {
+    final SyntheticBackend backend = SyntheticBackend.ssd(8, true, NUM_DETECTIONS, 4, 0, 0);
+    final String first = run(backend, image(1));
+    final String second = run(backend, image(2));
+    assertFalse(first.equals(second));
+    assertEquals(first, run(backend, image(1)));
+    assertEquals(first, run(SyntheticBackend.ssd(8, true, NUM_DETECTIONS, 4, 0, 0), image(1)));
+    assertEquals(3, backend.getRunCount());
+  }
+
+  @Test
+  public void detectionsAreValid() {
+    final SyntheticBackend backend = SyntheticBackend.ssd(8, true, NUM_DETECTIONS, 4, 0, 0);
+    for (int seed = 0; seed < 20; ++seed) {
+      run(backend, image(seed));
+      assertTrue(count[0] >= 0 && count[0] <= NUM_DETECTIONS);
+      for (int i = 0; i < NUM_DETECTIONS; ++i) {
+        final float[] box = boxes[0][i];
+        assertTrue(0 <= box[0] && box[0] < box[2] && box[2] <= 1);
+        assertTrue(0 <= box[1] && box[1] < box[3] && box[3] <= 1);
+        assertTrue(classes[0][i] >= 0 && classes[0][i] < 4);
+        assertTrue(i == 0 || scores[0][i] <= scores[0][i - 1]);
+      }
+    }
+  }
+
+  @Test
+  public void runTakesTheConfiguredLatency() {
+    final SyntheticBackend backend = SyntheticBackend.ssd(8, true, NUM_DETECTIONS, 4, 20000, 0);
+    final long startNanos = System.nanoTime();
+    run(backend, image(1));
+    assertTrue(System.nanoTime() - startNanos >= 20_000_000L);
+  }
+
+  @Test
+  public void fillsBuffersByDataType() {
+    final TensorSpec[] inputs = {new TensorSpec("in", TensorSpec.DataType.UINT8, 1, 4)};
+    final TensorSpec[] outputs = {new TensorSpec("out", TensorSpec.DataType.INT32, 1, 3)};
+    final SyntheticBackend backend =
+        new SyntheticBackend(
+            inputs,
+            outputs,
+            (index, spec, random, values) -> {
+              for (int i = 0; i < values.length; ++i) {
+                values[i] = i + 1;
+              }
+            },
+            0,
+            0);
+    final ByteBuffer output = ByteBuffer.allocateDirect(12).order(ByteOrder.nativeOrder());
+    final Map<Integer, Object> outputMap = new HashMap<>();
+    outputMap.put(0, output);
+    backend.run(new Object[] {new byte[4]}, outputMap);
+    assertEquals(1, output.getInt(0));
+    assertEquals(2, output.getInt(4));
+    assertEquals(3, output.getInt(8));
+  }
+
+  @Test
+  public void resizesInputs() {
+    final SyntheticBackend backend = SyntheticBackend.ssd(8, false, NUM_DETECTIONS, 4, 0, 0);
+    backend.resizeInput(0, new int[] {2, 8, 8, 3});
+    assertArrayEquals(new int[] {2, 8, 8, 3}, backend.getInputSpec(0).getShape());
+    assertEquals(2 * 8 * 8 * 3 * 4, backend.getInputSpec(0).getNumBytes());
+  }
+}
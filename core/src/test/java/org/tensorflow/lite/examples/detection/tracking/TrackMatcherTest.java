@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests for matching new detections to previous tracks. */
+public class TrackMatcherTest {
+  private final TrackMatcher matcher = new TrackMatcher(3, 0.3f);
+
+  @Test
+  public void matchesTheMostOverlappingTrackWithTheSameTitle() {
+    matcher.addPrevious("person", 0, 0, 10, 10, 100);
+    matcher.addPrevious("person", 2, 0, 12, 10, 200);
+    matcher.addPrevious("dog", 1, 0, 11, 10, 300);
+    assertEquals(1, matcher.match("person", 1.5f, 0, 11.5f, 10));
+    assertEquals(200, matcher.getPreviousTimeMs(1));
+    // Each track continues at most once.
+    assertEquals(0, matcher.match("person", 1.5f, 0, 11.5f, 10));
+    assertEquals(-1, matcher.match("person", 1.5f, 0, 11.5f, 10));
+    assertEquals(2, matcher.match("dog", 1, 0, 11, 10));
+  }
+
+  @Test
+  public void needsTheMinimumOverlap() {
+    matcher.addPrevious("person", 0, 0, 10, 10, 100);
+    assertEquals(-1, matcher.match("person", 6, 0, 16, 10));
+    assertEquals(0, matcher.match("person", 4, 0, 14, 10));
+  }
+
+  @Test
+  public void dropsTracksBeyondTheCapacity() {
+    for (int i = 0; i < 4; ++i) {
+      matcher.addPrevious("person", 20 * i, 0, 20 * i + 10, 10, i);
+    }
+    assertEquals(3, matcher.getPreviousCount());
+    assertEquals(-1, matcher.match("person", 60, 0, 70, 10));
+    matcher.clear();
+    assertEquals(0, matcher.getPreviousCount());
+  }
+}
@@ -0,0 +1,201 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ground truth boxes of a labeled dataset, by image name, in pixels. Reads either a COCO
+ * style JSON file, whose crowd annotations are regions where detections are ignored, or a
+ * directory with a text file per image in the format of the golden detector test, named after
+ * the image with a {@code .txt} extension:
+ *
+ * <pre>{@code
+ * <label> <left> <top> <right> <bottom> [<score>]
+ * }</pre>
+ *
+ * Underscores in labels stand for spaces. Text files are read as their images are evaluated, so
+ * that large datasets are streamed.
+ */
+public final class Annotations {
+  /** A labeled box. */
+  public static final class Box {
+    public final String label;
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+    /** Whether the box is a crowd region, where detections count neither way. */
+    public final boolean ignored;
+
+    public Box(
+        final String label,
+        final float left,
+        final float top,
+        final float right,
+        final float bottom,
+        final boolean ignored) {
+      this.label = normalizeLabel(label);
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+      this.ignored = ignored;
+    }
+  }
+
+  private final File directory;
+  private final Map<String, List<Box>> boxes;
+
+  private Annotations(final File directory, final Map<String, List<Box>> boxes) {
+    this.directory = directory;
+    this.boxes = boxes;
+  }
+
+  /** Opens a COCO style JSON file or a directory of text files. */
+  public static Annotations open(final File file) throws IOException {
+    if (file.isDirectory()) {
+      return new Annotations(file, null);
+    }
+    try (Reader reader =
+        new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+      return new Annotations(null, readCoco(Json.parse(reader)));
+    }
+  }
+
+  /** Labels are compared with spaces for underscores, and without surrounding whitespace. */
+  public static String normalizeLabel(final String label) {
+    return label.replace('_', ' ').trim();
+  }
+
+  /** Returns the boxes of an image, or null if the image is not labeled. */
+  public List<Box> get(final String imageName) throws IOException {
+    if (boxes != null) {
+      return boxes.get(imageName);
+    }
+    final int extension = imageName.lastIndexOf('.');
+    final File file =
+        new File(
+            directory, (extension > 0 ? imageName.substring(0, extension) : imageName) + ".txt");
+    if (!file.isFile()) {
+      return null;
+    }
+    final List<Box> result = new ArrayList<>();
+    int number = 0;
+    for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      ++number;
+      final String[] fields = line.trim().split("\\s+");
+      if (fields.length == 1 && fields[0].isEmpty()) {
+        continue;
+      }
+      if (fields.length < 5) {
+        throw new IOException(file + ":" + number + ": expected a label and a box: " + line);
+      }
+      try {
+        result.add(
+            new Box(
+                fields[0],
+                Float.parseFloat(fields[1]),
+                Float.parseFloat(fields[2]),
+                Float.parseFloat(fields[3]),
+                Float.parseFloat(fields[4]),
+                false));
+      } catch (final NumberFormatException e) {
+        throw new IOException(file + ":" + number + ": bad box: " + line, e);
+      }
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, List<Box>> readCoco(final Object json) throws IOException {
+    if (!(json instanceof Map)) {
+      throw new IOException("Expected a COCO annotation object");
+    }
+    final Map<String, Object> root = (Map<String, Object>) json;
+    final Map<Long, String> categories = new HashMap<>();
+    for (final Object value : list(root, "categories")) {
+      final Map<String, Object> category = (Map<String, Object>) value;
+      categories.put(number(category, "id").longValue(), (String) category.get("name"));
+    }
+    final Map<Long, String> imageNames = new HashMap<>();
+    final Map<String, List<Box>> boxes = new HashMap<>();
+    for (final Object value : list(root, "images")) {
+      final Map<String, Object> image = (Map<String, Object>) value;
+      final String name = new File((String) image.get("file_name")).getName();
+      imageNames.put(number(image, "id").longValue(), name);
+      // Images without annotations are labeled as empty.
+      boxes.put(name, new ArrayList<>());
+    }
+    for (final Object value : list(root, "annotations")) {
+      final Map<String, Object> annotation = (Map<String, Object>) value;
+      final String name = imageNames.get(number(annotation, "image_id").longValue());
+      final String label = categories.get(number(annotation, "category_id").longValue());
+      if (name == null || label == null) {
+        throw new IOException("Annotation of an unknown image or category: " + annotation);
+      }
+      final List<Object> box = (List<Object>) annotation.get("bbox");
+      final float left = ((Number) box.get(0)).floatValue();
+      final float top = ((Number) box.get(1)).floatValue();
+      final float width = ((Number) box.get(2)).floatValue();
+      final float height = ((Number) box.get(3)).floatValue();
+      final Object crowd = annotation.get("iscrowd");
+      boxes
+          .get(name)
+          .add(
+              new Box(
+                  label,
+                  left,
+                  top,
+                  left + width,
+                  top + height,
+                  crowd instanceof Number && ((Number) crowd).intValue() != 0));
+    }
+    return boxes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> list(final Map<String, Object> object, final String key)
+      throws IOException {
+    final Object value = object.get(key);
+    if (value == null) {
+      return Collections.emptyList();
+    }
+    if (!(value instanceof List)) {
+      throw new IOException("Expected an array for " + key);
+    }
+    return (List<Object>) value;
+  }
+
+  private static Number number(final Map<String, Object> object, final String key)
+      throws IOException {
+    final Object value = object.get(key);
+    if (!(value instanceof Number)) {
+      throw new IOException("Expected a number for " + key + ": " + object);
+    }
+    return (Number) value;
+  }
+}
@@ -0,0 +1,32 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+/** A decoded frame as ARGB_8888 pixels, reused from frame to frame by a worker. */
+public final class ArgbFrame {
+  public int width;
+  public int height;
+  public int[] pixels = new int[0];
+
+  /** Sets the frame size, growing the pixel array if needed. */
+  public void resize(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+    if (pixels.length < width * height) {
+      pixels = new int[width * height];
+    }
+  }
+}
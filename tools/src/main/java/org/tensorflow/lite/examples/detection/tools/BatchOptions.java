@@ -0,0 +1,381 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.tflite.SyntheticBackend;
+import org.tensorflow.lite.examples.detection.tflite.TfLiteBackend;
+
+/** The command line of the {@link BatchRunner}. Every option takes a value. */
+final class BatchOptions {
+  static final String USAGE =
+      String.join(
+          "\n",
+          "Usage: BatchRunner --input <images, manifest, raw frames or recording> [options]",
+          "  --format images|manifest|nv21|yuv420|recording",
+          "                               Input format (default: images for a directory,"
+              + " manifest for a .txt file listing images, recording for a .frames file,"
+              + " else nv21)",
+          "  --size <W>x<H>               Frame size of a raw frame file",
+          "  --frames <n>                 Process at most n frames",
+          "  --workers <n>                Worker threads (default: available processors)",
+          "  --backend tflite|synthetic   Inference backend (default: tflite if --model is"
+              + " given)",
+          "  --model <file>               Detection model, for the tflite backend",
+          "  --labels <file>              Label file of the detection model",
+          "  --input-size <n>             Synthetic detection model input size (default: 300)",
+          "  --quantized true|false       Whether the synthetic detection model is quantized"
+              + " (default: true)",
+          "  --threads <n>                Interpreter threads per worker (default: 1)",
+          "  --pose true|false            Run the pose stage (default: true if --pose-model is"
+              + " given)",
+          "  --pose-model <file>          PoseNet model, for the tflite backend",
+          "  --pose-input-size <n>        Synthetic pose model input size (default: 257)",
+          "  --latency-us <n>             Synthetic detection latency (default: 0)",
+          "  --jitter-us <n>              Synthetic detection latency jitter (default: 0)",
+          "  --pose-latency-us <n>        Synthetic pose latency (default: 0)",
+          "  --pose-jitter-us <n>         Synthetic pose latency jitter (default: 0)",
+          "  --tiles <C>x<R>              Detect on a grid of overlapping tiles, merged like"
+              + " the app's tiled mode",
+          "  --tile-overlap <fraction>    Tile enlargement beyond an even split (default: 0.1)",
+          "  --threshold <score>          Minimum detection score written and counted for"
+              + " precision and recall (default: 0.5)",
+          "  --annotations <file or dir>  Evaluate against a COCO JSON file, or a directory of"
+              + " <image name>.txt files with <label> <left> <top> <right> <bottom> lines",
+          "  --iou <t1,t2,...>            IoU thresholds of the evaluation (default: 0.5 to"
+              + " 0.95 in steps of 0.05)",
+          "  --shard <i>/<n>              Process only the i-th of n equal parts of the input",
+          "  --stats <file>               Also write the frame counts and latency histograms",
+          "  --output <file>              Results file, - for stdout (default: -)");
+
+  // The shape of the synthetic models, like the app's.
+  private static final int SYNTHETIC_DETECTIONS = 10;
+  private static final int SYNTHETIC_CLASSES = 4;
+  private static final int POSE_OUTPUT_STRIDE = 32;
+  private static final int POSE_KEYPOINTS = 17;
+
+  File input;
+  String format;
+  int width;
+  int height;
+  int maxFrames = Integer.MAX_VALUE;
+  int workers = Runtime.getRuntime().availableProcessors();
+  String backend;
+  File model;
+  File labels;
+  int inputSize = 300;
+  boolean quantized = true;
+  int threads = 1;
+  boolean pose;
+  File poseModel;
+  int poseInputSize = 257;
+  long latencyMicros;
+  long jitterMicros;
+  long poseLatencyMicros;
+  long poseJitterMicros;
+  int tileColumns;
+  int tileRows;
+  float tileOverlap = 0.1f;
+  float threshold = 0.5f;
+  File annotations;
+  float[] iouThresholds = Evaluation.cocoIouThresholds();
+  int shardIndex = 0;
+  int shardCount = 1;
+  File stats;
+  String output = "-";
+
+  /** @throws IllegalArgumentException If the command line is invalid. */
+  static BatchOptions parse(final String[] args) {
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+    }
+    final Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < args.length; i += 2) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+      }
+      values.put(args[i].substring(2), args[i + 1]);
+    }
+
+    final BatchOptions options = new BatchOptions();
+    final String input = values.remove("input");
+    if (input == null) {
+      throw new IllegalArgumentException("--input is required");
+    }
+    options.input = new File(input);
+    options.format = values.remove("format");
+    if (options.format == null) {
+      if (options.input.isDirectory()) {
+        options.format = "images";
+      } else if (options.input.getName().endsWith(".frames")) {
+        options.format = "recording";
+      } else if (options.input.getName().endsWith(".txt")) {
+        options.format = "manifest";
+      } else {
+        options.format = "nv21";
+      }
+    }
+    final String size = values.remove("size");
+    if (size != null) {
+      final String[] parts = size.split("x");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("--size must be <W>x<H>: " + size);
+      }
+      options.width = parseInt("size", parts[0]);
+      options.height = parseInt("size", parts[1]);
+    }
+    final boolean raw = options.format.equals("nv21") || options.format.equals("yuv420");
+    if (raw && size == null) {
+      throw new IllegalArgumentException("--size is required for raw frames");
+    }
+
+    String value;
+    if ((value = values.remove("frames")) != null) {
+      options.maxFrames = parseInt("frames", value);
+    }
+    if ((value = values.remove("workers")) != null) {
+      options.workers = parseInt("workers", value);
+    }
+    if ((value = values.remove("model")) != null) {
+      options.model = new File(value);
+    }
+    if ((value = values.remove("labels")) != null) {
+      options.labels = new File(value);
+    }
+    options.backend = values.remove("backend");
+    if (options.backend == null) {
+      options.backend = options.model != null ? "tflite" : "synthetic";
+    }
+    if ((value = values.remove("input-size")) != null) {
+      options.inputSize = parseInt("input-size", value);
+    }
+    if ((value = values.remove("quantized")) != null) {
+      options.quantized = Boolean.parseBoolean(value);
+    }
+    if ((value = values.remove("threads")) != null) {
+      options.threads = parseInt("threads", value);
+    }
+    if ((value = values.remove("pose-model")) != null) {
+      options.poseModel = new File(value);
+    }
+    options.pose = options.poseModel != null;
+    if ((value = values.remove("pose")) != null) {
+      options.pose = Boolean.parseBoolean(value);
+    }
+    if ((value = values.remove("pose-input-size")) != null) {
+      options.poseInputSize = parseInt("pose-input-size", value);
+    }
+    if ((value = values.remove("latency-us")) != null) {
+      options.latencyMicros = parseInt("latency-us", value);
+    }
+    if ((value = values.remove("jitter-us")) != null) {
+      options.jitterMicros = parseInt("jitter-us", value);
+    }
+    if ((value = values.remove("pose-latency-us")) != null) {
+      options.poseLatencyMicros = parseInt("pose-latency-us", value);
+    }
+    if ((value = values.remove("pose-jitter-us")) != null) {
+      options.poseJitterMicros = parseInt("pose-jitter-us", value);
+    }
+    if ((value = values.remove("tiles")) != null) {
+      final String[] parts = value.split("x");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("--tiles must be <C>x<R>: " + value);
+      }
+      options.tileColumns = parseInt("tiles", parts[0]);
+      options.tileRows = parseInt("tiles", parts[1]);
+      if (options.tileColumns < 1 || options.tileRows < 1) {
+        throw new IllegalArgumentException("--tiles must be positive: " + value);
+      }
+    }
+    if ((value = values.remove("tile-overlap")) != null) {
+      options.tileOverlap = parseFloat("tile-overlap", value);
+    }
+    if ((value = values.remove("threshold")) != null) {
+      options.threshold = parseFloat("threshold", value);
+    }
+    if ((value = values.remove("annotations")) != null) {
+      options.annotations = new File(value);
+    }
+    if ((value = values.remove("iou")) != null) {
+      final String[] parts = value.split(",");
+      options.iouThresholds = new float[parts.length];
+      for (int i = 0; i < parts.length; ++i) {
+        options.iouThresholds[i] = parseFloat("iou", parts[i]);
+      }
+    }
+    if ((value = values.remove("shard")) != null) {
+      final String[] parts = value.split("/");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("--shard must be <i>/<n>: " + value);
+      }
+      options.shardIndex = parseInt("shard", parts[0]);
+      options.shardCount = parseInt("shard", parts[1]);
+      if (options.shardIndex < 0 || options.shardIndex >= options.shardCount) {
+        throw new IllegalArgumentException("--shard must have 0 <= i < n: " + value);
+      }
+    }
+    if ((value = values.remove("stats")) != null) {
+      options.stats = new File(value);
+    }
+    if ((value = values.remove("output")) != null) {
+      options.output = value;
+    }
+    if (!values.isEmpty()) {
+      throw new IllegalArgumentException("Unknown option --" + values.keySet().iterator().next());
+    }
+
+    if (options.backend.equals("tflite")) {
+      if (options.model == null || options.labels == null) {
+        throw new IllegalArgumentException("The tflite backend needs --model and --labels");
+      }
+      if (options.pose && options.poseModel == null) {
+        throw new IllegalArgumentException("The tflite backend needs --pose-model for poses");
+      }
+    } else if (!options.backend.equals("synthetic")) {
+      throw new IllegalArgumentException("Unknown backend " + options.backend);
+    }
+    if (options.workers < 1) {
+      throw new IllegalArgumentException("--workers must be positive");
+    }
+    return options;
+  }
+
+  private static int parseInt(final String name, final String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("--" + name + " must be an integer: " + value);
+    }
+  }
+
+  private static float parseFloat(final String name, final String value) {
+    try {
+      return Float.parseFloat(value);
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("--" + name + " must be a number: " + value);
+    }
+  }
+
+  /** Returns whether frames are detected on in tiles. */
+  boolean isTiled() {
+    return tileColumns > 0;
+  }
+
+  /** Describes the settings that trade accuracy for speed, to label the results of a run. */
+  String describe() {
+    final StringBuilder builder = new StringBuilder();
+    if (backend.equals("tflite")) {
+      builder.append("model=").append(model.getName());
+    } else {
+      builder.append("model=synthetic input-size=").append(inputSize);
+      builder.append(" quantized=").append(quantized);
+    }
+    builder.append(" tiles=");
+    if (isTiled()) {
+      builder.append(tileColumns).append('x').append(tileRows);
+    } else {
+      builder.append("none");
+    }
+    builder.append(" workers=").append(workers).append(" threads=").append(threads);
+    return builder.toString();
+  }
+
+  /** Opens the ground truth, or returns null if the run is not evaluated. */
+  Annotations openAnnotations() throws IOException {
+    return annotations != null ? Annotations.open(annotations) : null;
+  }
+
+  FrameSource openSource() throws IOException {
+    switch (format) {
+      case "images":
+        return new ImageDirectorySource(input);
+      case "manifest":
+        return ImageDirectorySource.fromManifest(input);
+      case "nv21":
+        return new RawFrameSource(input, RawFrameSource.Format.NV21, width, height);
+      case "yuv420":
+        return new RawFrameSource(input, RawFrameSource.Format.YUV420, width, height);
+      case "recording":
+        return new RecordingFrameSource(input);
+      default:
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+  }
+
+  private List<String> labelList;
+
+  /** Returns the detection labels, starting with the background class. */
+  synchronized List<String> getLabels() throws IOException {
+    if (labelList == null) {
+      if (backend.equals("tflite")) {
+        labelList = Files.readAllLines(labels.toPath(), StandardCharsets.UTF_8);
+      } else {
+        final List<String> synthetic = new ArrayList<>();
+        synthetic.add("???");
+        for (int i = 0; i < SYNTHETIC_CLASSES; ++i) {
+          synthetic.add("object" + i);
+        }
+        labelList = Collections.unmodifiableList(synthetic);
+      }
+    }
+    return labelList;
+  }
+
+  /** Creates a detector for one worker. */
+  SsdDetector createDetector() throws IOException {
+    if (backend.equals("tflite")) {
+      return new SsdDetector(
+          new TfLiteBackend(model, new Interpreter.Options().setNumThreads(threads)), getLabels());
+    }
+    return new SsdDetector(
+        SyntheticBackend.ssd(
+            inputSize,
+            quantized,
+            SYNTHETIC_DETECTIONS,
+            SYNTHETIC_CLASSES,
+            latencyMicros,
+            jitterMicros),
+        getLabels());
+  }
+
+  /** Creates a pose estimator for one worker, or returns null if poses are not estimated. */
+  PoseNetEstimator createPoseEstimator() {
+    if (!pose) {
+      return null;
+    }
+    if (backend.equals("tflite")) {
+      return new PoseNetEstimator(
+          new TfLiteBackend(poseModel, new Interpreter.Options().setNumThreads(threads)));
+    }
+    return new PoseNetEstimator(
+        SyntheticBackend.poseNet(
+            poseInputSize,
+            POSE_OUTPUT_STRIDE,
+            POSE_KEYPOINTS,
+            poseLatencyMicros,
+            poseJitterMicros));
+  }
+}
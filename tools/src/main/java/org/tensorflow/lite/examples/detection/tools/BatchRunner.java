@@ -0,0 +1,567 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.examples.detection.env.ImageScaler;
+import org.tensorflow.lite.examples.detection.pipeline.NonMaxSuppression;
+import org.tensorflow.lite.examples.detection.pipeline.TileGrid;
+import org.tensorflow.lite.examples.detection.tflite.InputPacker;
+
+/**
+ * Runs the app's preprocessing, detection and pose stages over an offline input on a pool of
+ * workers, without Android. Each worker owns its backends and buffers and takes the next frame
+ * from a shared counter, so frames complete, and are written, out of order.
+ *
+ * <p>Results are written one per line, with coordinates in frame pixels:
+ *
+ * <pre>{@code
+ * <frame> <name> D <label> <score> <left> <top> <right> <bottom>
+ * <frame> <name> P <score> [<x> <y> <score>]...
+ * }</pre>
+ *
+ * Whitespace in names and labels is replaced by underscores. Given annotations, every frame's
+ * detections are also evaluated as it completes, and the report has the accuracy next to the
+ * latencies.
+ */
+public final class BatchRunner {
+  /** The stages timed for each frame, in order. */
+  public static final String[] STAGES = {
+    "load", "preprocess", "detect", "pose", "evaluate", "write", "frame",
+  };
+
+  private static final int LOAD = 0;
+  private static final int PREPROCESS = 1;
+  private static final int DETECT = 2;
+  private static final int POSE = 3;
+  private static final int EVALUATE = 4;
+  private static final int WRITE = 5;
+  private static final int FRAME = 6;
+
+  // The detection model is fed 0-255 values scaled like the app does.
+  private static final float IMAGE_MEAN = 127.5f;
+  private static final float IMAGE_STD = 127.5f;
+  // PoseNet input values are scaled to [-1,1].
+  private static final float POSE_MEAN = 128.0f;
+  private static final float POSE_STD = 128.0f;
+  private static final int MAX_DETECTIONS = 100;
+  // Like the app's merging of tiles.
+  private static final float TILE_NMS_THRESHOLD = 0.5f;
+
+  private final BatchOptions options;
+
+  BatchRunner(final BatchOptions options) {
+    this.options = options;
+  }
+
+  /** The throughput, per stage latencies and, for labeled inputs, the accuracy of a run. */
+  public static final class Report {
+    public final int frames;
+    public final int workers;
+    public final long elapsedNanos;
+    public final LatencyHistogram[] stages;
+    /** The accuracy, or null if the run was not evaluated. */
+    public final Evaluation evaluation;
+
+    Report(
+        final int frames,
+        final int workers,
+        final long elapsedNanos,
+        final LatencyHistogram[] stages,
+        final Evaluation evaluation) {
+      this.frames = frames;
+      this.workers = workers;
+      this.elapsedNanos = elapsedNanos;
+      this.stages = stages;
+      this.evaluation = evaluation;
+    }
+
+    /**
+     * Adds up the reports of runs over parts of an input.
+     *
+     * @param elapsedNanos The time all the parts took.
+     */
+    static Report merge(
+        final List<Report> reports, final long elapsedNanos, final Evaluation evaluation) {
+      final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+      for (int i = 0; i < stages.length; ++i) {
+        stages[i] = new LatencyHistogram();
+      }
+      int frames = 0;
+      int workers = 0;
+      for (final Report report : reports) {
+        frames += report.frames;
+        workers += report.workers;
+        for (int i = 0; i < stages.length; ++i) {
+          stages[i].add(report.stages[i]);
+        }
+      }
+      return new Report(frames, workers, elapsedNanos, stages, evaluation);
+    }
+
+    /**
+     * Writes the counts and latency histograms, but not the accuracy, for {@link #read}:
+     *
+     * <pre>{@code
+     * frames <n>
+     * workers <n>
+     * elapsed_ns <n>
+     * stage <name> <histogram>
+     * }</pre>
+     */
+    void write(final Writer writer) throws IOException {
+      writer.write("frames " + frames + "\n");
+      writer.write("workers " + workers + "\n");
+      writer.write("elapsed_ns " + elapsedNanos + "\n");
+      for (int i = 0; i < STAGES.length; ++i) {
+        writer.write("stage " + STAGES[i] + " " + stages[i].encode() + "\n");
+      }
+      writer.flush();
+    }
+
+    static Report read(final Reader reader) throws IOException {
+      final Map<String, String> values = new HashMap<>();
+      final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+      final BufferedReader lines = new BufferedReader(reader);
+      String line;
+      while ((line = lines.readLine()) != null) {
+        final String[] fields = line.split(" ", 3);
+        if (fields[0].equals("stage") && fields.length == 3) {
+          final int stage = Arrays.asList(STAGES).indexOf(fields[1]);
+          if (stage < 0) {
+            throw new IOException("Unknown stage: " + line);
+          }
+          stages[stage] = LatencyHistogram.decode(fields[2]);
+        } else if (fields.length == 2) {
+          values.put(fields[0], fields[1]);
+        }
+      }
+      for (int i = 0; i < stages.length; ++i) {
+        if (stages[i] == null) {
+          throw new IOException("Missing stage " + STAGES[i]);
+        }
+      }
+      try {
+        return new Report(
+            Integer.parseInt(values.get("frames")),
+            Integer.parseInt(values.get("workers")),
+            Long.parseLong(values.get("elapsed_ns")),
+            stages,
+            null);
+      } catch (final NumberFormatException e) {
+        throw new IOException("Bad stats: " + values, e);
+      }
+    }
+
+    public double getFramesPerSecond() {
+      return elapsedNanos > 0 ? frames * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder builder = new StringBuilder();
+      builder.append(
+          String.format(
+              Locale.US,
+              "frames=%d workers=%d elapsed=%.2fs fps=%.1f%n",
+              frames,
+              workers,
+              elapsedNanos / 1e9,
+              getFramesPerSecond()));
+      for (int i = 0; i < STAGES.length; ++i) {
+        final LatencyHistogram stats = stages[i];
+        if (stats.getCount() == 0) {
+          continue;
+        }
+        builder.append(
+            String.format(
+                Locale.US,
+                "%-10s mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms%n",
+                STAGES[i],
+                stats.getMeanNanos() / 1e6,
+                stats.getPercentileNanos(50) / 1e6,
+                stats.getPercentileNanos(90) / 1e6,
+                stats.getPercentileNanos(99) / 1e6));
+      }
+      if (evaluation != null) {
+        builder.append(evaluation);
+      }
+      return builder.toString();
+    }
+  }
+
+  /** Processes the frames of a source, writing the results as they complete. */
+  Report run(final FrameSource source, final Writer output)
+      throws IOException, InterruptedException {
+    // A shard takes its share of the frames, keeping their indices in the whole input.
+    final int total = Math.min(source.getFrameCount(), options.maxFrames);
+    final int first = (int) ((long) total * options.shardIndex / options.shardCount);
+    final int end = (int) ((long) total * (options.shardIndex + 1) / options.shardCount);
+    final int frames = end - first;
+    final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    for (int i = 0; i < stages.length; ++i) {
+      stages[i] = new LatencyHistogram();
+    }
+    final AtomicInteger nextFrame = new AtomicInteger(first);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Annotations annotations = options.openAnnotations();
+    final Evaluation evaluation =
+        annotations != null ? new Evaluation(options.iouThresholds, options.threshold) : null;
+
+    final Thread[] workers = new Thread[Math.min(options.workers, Math.max(1, frames))];
+    final long startNanos = System.nanoTime();
+    for (int i = 0; i < workers.length; ++i) {
+      workers[i] =
+          new Thread(
+              () -> {
+                try {
+                  work(source, end, nextFrame, failure, stages, annotations, evaluation, output);
+                } catch (final Throwable t) {
+                  failure.compareAndSet(null, t);
+                }
+              },
+              "batch-worker-" + i);
+      workers[i].start();
+    }
+    for (final Thread worker : workers) {
+      worker.join();
+    }
+    final long elapsedNanos = System.nanoTime() - startNanos;
+    output.flush();
+
+    final Throwable t = failure.get();
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+    return new Report(frames, workers.length, elapsedNanos, stages, evaluation);
+  }
+
+  private void work(
+      final FrameSource source,
+      final int end,
+      final AtomicInteger nextFrame,
+      final AtomicReference<Throwable> failure,
+      final LatencyHistogram[] stages,
+      final Annotations annotations,
+      final Evaluation evaluation,
+      final Writer output)
+      throws IOException {
+    try (SsdDetector detector = options.createDetector();
+        PoseNetEstimator poseEstimator = options.createPoseEstimator()) {
+      final ArgbFrame frame = new ArgbFrame();
+      final FrameSource.Scratch scratch = new FrameSource.Scratch();
+      final int inputSize = detector.getInputSize();
+      final int[] inputPixels = new int[inputSize * inputSize];
+      final ByteBuffer input = allocateInput(inputSize, detector.isQuantized() ? 1 : 4);
+      final Detections detections = new Detections(MAX_DETECTIONS);
+      // Without tiles, the whole frame is the only region.
+      final int maxRegions = options.isTiled() ? options.tileColumns * options.tileRows : 1;
+      final int[] regions = new int[4 * maxRegions];
+      final Detections regionDetections =
+          options.isTiled() ? new Detections(MAX_DETECTIONS) : detections;
+      final Detections candidates =
+          options.isTiled() ? new Detections(MAX_DETECTIONS * maxRegions) : null;
+      final TileMerger merger = options.isTiled() ? new TileMerger(candidates) : null;
+
+      final int poseSize = poseEstimator != null ? poseEstimator.getInputSize() : 0;
+      final int[] columns = new int[Math.max(inputSize, poseSize)];
+      final int[] posePixels = new int[poseSize * poseSize];
+      final ByteBuffer poseInput = poseEstimator != null ? allocateInput(poseSize, 4) : null;
+      final int numKeypoints = poseEstimator != null ? poseEstimator.getNumKeypoints() : 0;
+      final int[] xs = new int[numKeypoints];
+      final int[] ys = new int[numKeypoints];
+      final float[] scores = new float[numKeypoints];
+      final StringBuilder line = new StringBuilder();
+
+      int index;
+      while (failure.get() == null && (index = nextFrame.getAndIncrement()) < end) {
+        final long startNanos = System.nanoTime();
+        source.read(index, frame, scratch);
+        final long loadedNanos = System.nanoTime();
+        stages[LOAD].record(loadedNanos - startNanos);
+
+        final int regionCount;
+        if (options.isTiled()) {
+          regionCount =
+              TileGrid.plan(
+                  frame.width,
+                  frame.height,
+                  options.tileColumns,
+                  options.tileRows,
+                  options.tileOverlap,
+                  regions);
+          candidates.count = 0;
+        } else {
+          regionCount = 1;
+          regions[2] = frame.width;
+          regions[3] = frame.height;
+        }
+        long preprocessNanos = 0;
+        long detectNanos = 0;
+        long regionStartNanos = loadedNanos;
+        for (int r = 0; r < regionCount; ++r) {
+          final int left = regions[4 * r];
+          final int top = regions[4 * r + 1];
+          final int regionWidth = regions[4 * r + 2] - left;
+          final int regionHeight = regions[4 * r + 3] - top;
+          ImageScaler.scaleNearest(
+              frame.pixels,
+              frame.width,
+              left,
+              top,
+              regionWidth,
+              regionHeight,
+              inputPixels,
+              inputSize,
+              inputSize,
+              columns);
+          if (detector.isQuantized()) {
+            InputPacker.packQuantized(inputPixels, inputPixels.length, input);
+          } else {
+            InputPacker.packFloat(inputPixels, inputPixels.length, IMAGE_MEAN, IMAGE_STD, input);
+          }
+          final long packedNanos = System.nanoTime();
+          preprocessNanos += packedNanos - regionStartNanos;
+
+          detector.detect(input, regionDetections);
+          if (options.isTiled()) {
+            // Boxes relative to the tile, to relative to the frame.
+            final float scaleX = regionWidth / (float) frame.width;
+            final float scaleY = regionHeight / (float) frame.height;
+            final float offsetX = left / (float) frame.width;
+            final float offsetY = top / (float) frame.height;
+            for (int i = 0; i < regionDetections.count; ++i) {
+              final float[] box = regionDetections.boxes;
+              candidates.add(
+                  regionDetections.labels[i],
+                  regionDetections.scores[i],
+                  offsetX + box[4 * i] * scaleX,
+                  offsetY + box[4 * i + 1] * scaleY,
+                  offsetX + box[4 * i + 2] * scaleX,
+                  offsetY + box[4 * i + 3] * scaleY);
+            }
+          }
+          regionStartNanos = System.nanoTime();
+          detectNanos += regionStartNanos - packedNanos;
+        }
+        if (options.isTiled()) {
+          merger.merge(TILE_NMS_THRESHOLD, detections);
+        }
+        final long detectedNanos = System.nanoTime();
+        detectNanos += detectedNanos - regionStartNanos;
+        stages[PREPROCESS].record(preprocessNanos);
+        stages[DETECT].record(detectNanos);
+
+        float poseScore = 0;
+        long posedNanos = detectedNanos;
+        if (poseEstimator != null) {
+          ImageScaler.scaleNearest(
+              frame.pixels, frame.width, frame.height, posePixels, poseSize, poseSize, columns);
+          InputPacker.packFloat(posePixels, posePixels.length, POSE_MEAN, POSE_STD, poseInput);
+          poseScore = poseEstimator.estimate(poseInput, xs, ys, scores);
+          posedNanos = System.nanoTime();
+          stages[POSE].record(posedNanos - detectedNanos);
+        }
+
+        long evaluatedNanos = posedNanos;
+        if (evaluation != null) {
+          final List<Annotations.Box> truth = annotations.get(source.getName(index));
+          if (truth != null) {
+            evaluation.add(truth, detections, frame.width, frame.height);
+          } else {
+            evaluation.addUnlabeled();
+          }
+          evaluatedNanos = System.nanoTime();
+          stages[EVALUATE].record(evaluatedNanos - posedNanos);
+        }
+
+        line.setLength(0);
+        final String name = sanitize(source.getName(index));
+        for (int i = 0; i < detections.count; ++i) {
+          if (detections.scores[i] < options.threshold) {
+            continue;
+          }
+          line.append(index).append(' ').append(name).append(" D ");
+          line.append(sanitize(detections.labels[i])).append(' ');
+          appendFixed(line, detections.scores[i]).append(' ');
+          appendFixed(line, detections.boxes[4 * i] * frame.width).append(' ');
+          appendFixed(line, detections.boxes[4 * i + 1] * frame.height).append(' ');
+          appendFixed(line, detections.boxes[4 * i + 2] * frame.width).append(' ');
+          appendFixed(line, detections.boxes[4 * i + 3] * frame.height).append('\n');
+        }
+        if (poseEstimator != null) {
+          line.append(index).append(' ').append(name).append(" P ");
+          appendFixed(line, poseScore);
+          for (int k = 0; k < numKeypoints; ++k) {
+            line.append(' ').append(xs[k] * frame.width / poseSize);
+            line.append(' ').append(ys[k] * frame.height / poseSize);
+            line.append(' ');
+            appendFixed(line, scores[k]);
+          }
+          line.append('\n');
+        }
+        synchronized (output) {
+          output.append(line);
+        }
+        final long writtenNanos = System.nanoTime();
+        stages[WRITE].record(writtenNanos - evaluatedNanos);
+        stages[FRAME].record(writtenNanos - startNanos);
+      }
+    }
+  }
+
+  /**
+   * Merges the detections of overlapping tiles like the app does: of overlapping boxes of a
+   * class, only the highest scoring one is kept. Each worker owns one.
+   */
+  private static final class TileMerger {
+    private final Detections candidates;
+    private final int[] classes;
+    private final int[] keep;
+    private final Map<String, Integer> classIds = new HashMap<>();
+
+    TileMerger(final Detections candidates) {
+      this.candidates = candidates;
+      classes = new int[candidates.getCapacity()];
+      keep = new int[candidates.getCapacity()];
+    }
+
+    /** Replaces the detections with the merged candidates, highest score first. */
+    void merge(final float iouThreshold, final Detections detections) {
+      for (int i = 0; i < candidates.count; ++i) {
+        Integer classId = classIds.get(candidates.labels[i]);
+        if (classId == null) {
+          classId = classIds.size();
+          classIds.put(candidates.labels[i], classId);
+        }
+        classes[i] = classId;
+      }
+      final int kept =
+          NonMaxSuppression.select(
+              candidates.boxes, candidates.scores, classes, candidates.count, iouThreshold, keep);
+      detections.count = 0;
+      for (int k = 0; k < Math.min(kept, detections.getCapacity()); ++k) {
+        final int i = keep[k];
+        detections.add(
+            candidates.labels[i],
+            candidates.scores[i],
+            candidates.boxes[4 * i],
+            candidates.boxes[4 * i + 1],
+            candidates.boxes[4 * i + 2],
+            candidates.boxes[4 * i + 3]);
+      }
+    }
+  }
+
+  private static ByteBuffer allocateInput(final int size, final int bytesPerChannel) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size * size * 3 * bytesPerChannel);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  private static String sanitize(final String text) {
+    return text.replaceAll("\\s", "_");
+  }
+
+  /** Appends a value with 3 decimals, without the allocations of String.format. */
+  private static StringBuilder appendFixed(final StringBuilder builder, final float value) {
+    int thousandths = Math.round(value * 1000);
+    if (thousandths < 0) {
+      builder.append('-');
+      thousandths = -thousandths;
+    }
+    builder.append(thousandths / 1000).append('.');
+    final int fraction = thousandths % 1000;
+    if (fraction < 100) {
+      builder.append('0');
+    }
+    if (fraction < 10) {
+      builder.append('0');
+    }
+    return builder.append(fraction);
+  }
+
+  /** Returns a line with the settings, speed and accuracy of a run, for comparing runs. */
+  static String summarize(final BatchOptions options, final Report report) {
+    final StringBuilder builder = new StringBuilder(options.describe());
+    builder.append(
+        String.format(
+            Locale.US,
+            " fps=%.1f detect_p50=%.2fms detect_p90=%.2fms",
+            report.getFramesPerSecond(),
+            report.stages[DETECT].getPercentileNanos(50) / 1e6,
+            report.stages[DETECT].getPercentileNanos(90) / 1e6));
+    if (report.evaluation != null) {
+      builder.append(
+          String.format(
+              Locale.US,
+              " mAP%.0f=%.4f mAP=%.4f",
+              options.iouThresholds[0] * 100,
+              report.evaluation.getMeanAveragePrecision(0),
+              report.evaluation.getMeanAveragePrecision()));
+    }
+    return builder.toString();
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final BatchOptions options;
+    try {
+      options = BatchOptions.parse(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(BatchOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+
+    final OutputStream stream =
+        options.output.equals("-") ? System.out : new FileOutputStream(options.output);
+    try (FrameSource source = options.openSource();
+        Writer output =
+            new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+      final Report report = new BatchRunner(options).run(source, output);
+      System.err.print(report);
+      System.err.println(summarize(options, report));
+      if (options.stats != null) {
+        try (Writer stats =
+            new OutputStreamWriter(new FileOutputStream(options.stats), StandardCharsets.UTF_8)) {
+          report.write(stats);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+/** The detections of one frame, reused from frame to frame by a worker. */
+public final class Detections {
+  public final float[] boxes;
+  public final float[] scores;
+  public final String[] labels;
+  public int count;
+
+  /** @param capacity The most detections a frame can have. */
+  public Detections(final int capacity) {
+    boxes = new float[4 * capacity];
+    scores = new float[capacity];
+    labels = new String[capacity];
+  }
+
+  public int getCapacity() {
+    return scores.length;
+  }
+
+  /** Appends a detection, with its box as [left, top, right, bottom] within [0,1]. */
+  public void add(
+      final String label,
+      final float score,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    final int i = count++;
+    labels[i] = label;
+    scores[i] = score;
+    boxes[4 * i] = left;
+    boxes[4 * i + 1] = top;
+    boxes[4 * i + 2] = right;
+    boxes[4 * i + 3] = bottom;
+  }
+}
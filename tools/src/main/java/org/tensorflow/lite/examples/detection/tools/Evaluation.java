@@ -0,0 +1,395 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.tensorflow.lite.examples.detection.pipeline.NonMaxSuppression;
+
+/**
+ * Accumulates the detection accuracy of a labeled dataset as images are evaluated, from any
+ * number of workers: per class precision and recall at a score threshold, and average precision
+ * at each of several IoU thresholds.
+ *
+ * <p>Detections are matched to ground truth like COCO does: in descending score order, each
+ * detection matches the unmatched box of its class it overlaps the most, if by at least the IoU
+ * threshold. Detections mostly within a crowd region, by the same threshold applied to the
+ * fraction of the detection inside it, are ignored. Average precision is the area under the
+ * precision envelope over all recall points.
+ */
+public final class Evaluation {
+  private static final byte FALSE_POSITIVE = 0;
+  private static final byte TRUE_POSITIVE = 1;
+  private static final byte IGNORED = 2;
+
+  /** The IoU thresholds of the COCO mAP, 0.5 to 0.95 in steps of 0.05. */
+  public static float[] cocoIouThresholds() {
+    final float[] thresholds = new float[10];
+    for (int i = 0; i < thresholds.length; ++i) {
+      thresholds[i] = 0.5f + 0.05f * i;
+    }
+    return thresholds;
+  }
+
+  /** The detections and ground truth of one class. */
+  private static final class ClassStats {
+    int truthCount;
+    int detectionCount;
+    float[] scores = new float[16];
+    // The outcome of each detection at each IoU threshold.
+    byte[][] outcomes;
+
+    ClassStats(final int thresholdCount) {
+      outcomes = new byte[thresholdCount][16];
+    }
+
+    void add(final float score, final byte[] outcome) {
+      if (detectionCount == scores.length) {
+        scores = Arrays.copyOf(scores, 2 * detectionCount);
+        for (int t = 0; t < outcomes.length; ++t) {
+          outcomes[t] = Arrays.copyOf(outcomes[t], 2 * detectionCount);
+        }
+      }
+      scores[detectionCount] = score;
+      for (int t = 0; t < outcomes.length; ++t) {
+        outcomes[t][detectionCount] = outcome[t];
+      }
+      ++detectionCount;
+    }
+  }
+
+  private final float[] iouThresholds;
+  private final float scoreThreshold;
+  private final Map<String, ClassStats> classes = new TreeMap<>();
+  private int imageCount;
+  private int unlabeledCount;
+
+  /**
+   * @param iouThresholds The IoU thresholds to match detections at. Precision and recall are
+   *     reported at the first.
+   * @param scoreThreshold The score from which detections count for precision and recall.
+   */
+  public Evaluation(final float[] iouThresholds, final float scoreThreshold) {
+    this.iouThresholds = iouThresholds.clone();
+    this.scoreThreshold = scoreThreshold;
+  }
+
+  /**
+   * Evaluates the detections of an image.
+   *
+   * @param truth The ground truth boxes, in pixels.
+   * @param detections The detections, with boxes relative to the image.
+   */
+  public void add(
+      final List<Annotations.Box> truth,
+      final Detections detections,
+      final int width,
+      final int height) {
+    // Regular boxes first, so that crowd regions only match detections nothing else does.
+    final List<Annotations.Box> boxes = new ArrayList<>(truth.size());
+    for (final Annotations.Box box : truth) {
+      if (!box.ignored) {
+        boxes.add(box);
+      }
+    }
+    for (final Annotations.Box box : truth) {
+      if (box.ignored) {
+        boxes.add(box);
+      }
+    }
+    final float[] truthBoxes = new float[4 * boxes.size()];
+    for (int g = 0; g < boxes.size(); ++g) {
+      final Annotations.Box box = boxes.get(g);
+      truthBoxes[4 * g] = box.left;
+      truthBoxes[4 * g + 1] = box.top;
+      truthBoxes[4 * g + 2] = box.right;
+      truthBoxes[4 * g + 3] = box.bottom;
+    }
+    final Integer[] order = new Integer[detections.count];
+    final String[] labels = new String[detections.count];
+    final float[] detectionBoxes = new float[4 * detections.count];
+    for (int d = 0; d < detections.count; ++d) {
+      order[d] = d;
+      labels[d] = Annotations.normalizeLabel(detections.labels[d]);
+      detectionBoxes[4 * d] = detections.boxes[4 * d] * width;
+      detectionBoxes[4 * d + 1] = detections.boxes[4 * d + 1] * height;
+      detectionBoxes[4 * d + 2] = detections.boxes[4 * d + 2] * width;
+      detectionBoxes[4 * d + 3] = detections.boxes[4 * d + 3] * height;
+    }
+    Arrays.sort(order, (a, b) -> Float.compare(detections.scores[b], detections.scores[a]));
+
+    final byte[][] outcomes = new byte[detections.count][iouThresholds.length];
+    final boolean[] matched = new boolean[boxes.size()];
+    for (int t = 0; t < iouThresholds.length; ++t) {
+      Arrays.fill(matched, false);
+      for (final int d : order) {
+        int best = -1;
+        float bestIou = iouThresholds[t];
+        for (int g = 0; g < boxes.size(); ++g) {
+          final Annotations.Box box = boxes.get(g);
+          if (!box.label.equals(labels[d]) || (matched[g] && !box.ignored)) {
+            continue;
+          }
+          if (best >= 0 && !boxes.get(best).ignored && box.ignored) {
+            break;
+          }
+          final float iou =
+              box.ignored
+                  ? intersectionOverArea(detectionBoxes, d, truthBoxes, g)
+                  : NonMaxSuppression.intersectionOverUnion(detectionBoxes, d, truthBoxes, g);
+          if (iou >= bestIou) {
+            bestIou = iou;
+            best = g;
+          }
+        }
+        if (best < 0) {
+          outcomes[d][t] = FALSE_POSITIVE;
+        } else if (boxes.get(best).ignored) {
+          outcomes[d][t] = IGNORED;
+        } else {
+          matched[best] = true;
+          outcomes[d][t] = TRUE_POSITIVE;
+        }
+      }
+    }
+
+    synchronized (this) {
+      ++imageCount;
+      for (final Annotations.Box box : boxes) {
+        if (!box.ignored) {
+          ++stats(box.label).truthCount;
+        }
+      }
+      for (int d = 0; d < detections.count; ++d) {
+        stats(labels[d]).add(detections.scores[d], outcomes[d]);
+      }
+    }
+  }
+
+  /** Returns the fraction of box {@code a} that lies within box {@code b}. */
+  private static float intersectionOverArea(
+      final float[] aBoxes, final int a, final float[] bBoxes, final int b) {
+    final float width =
+        Math.min(aBoxes[4 * a + 2], bBoxes[4 * b + 2]) - Math.max(aBoxes[4 * a], bBoxes[4 * b]);
+    final float height =
+        Math.min(aBoxes[4 * a + 3], bBoxes[4 * b + 3])
+            - Math.max(aBoxes[4 * a + 1], bBoxes[4 * b + 1]);
+    final float area =
+        (aBoxes[4 * a + 2] - aBoxes[4 * a]) * (aBoxes[4 * a + 3] - aBoxes[4 * a + 1]);
+    return width > 0 && height > 0 && area > 0 ? width * height / area : 0;
+  }
+
+  /** Counts an image that was processed but has no ground truth. */
+  public synchronized void addUnlabeled() {
+    ++unlabeledCount;
+  }
+
+  private ClassStats stats(final String label) {
+    ClassStats stats = classes.get(label);
+    if (stats == null) {
+      stats = new ClassStats(iouThresholds.length);
+      classes.put(label, stats);
+    }
+    return stats;
+  }
+
+  public synchronized int getImageCount() {
+    return imageCount;
+  }
+
+  public synchronized int getUnlabeledCount() {
+    return unlabeledCount;
+  }
+
+  /** Returns the labels that have ground truth or detections, in order. */
+  public synchronized List<String> getLabels() {
+    return new ArrayList<>(classes.keySet());
+  }
+
+  public synchronized int getTruthCount(final String label) {
+    final ClassStats stats = classes.get(label);
+    return stats != null ? stats.truthCount : 0;
+  }
+
+  public synchronized int getDetectionCount(final String label) {
+    final ClassStats stats = classes.get(label);
+    return stats != null ? stats.detectionCount : 0;
+  }
+
+  /** Returns the true and false positives from the score threshold, at the first IoU. */
+  private int[] countPositives(final ClassStats stats) {
+    final int[] counts = new int[2];
+    for (int d = 0; d < stats.detectionCount; ++d) {
+      final byte outcome = stats.outcomes[0][d];
+      if (stats.scores[d] >= scoreThreshold && outcome != IGNORED) {
+        ++counts[outcome];
+      }
+    }
+    return counts;
+  }
+
+  /** Returns the precision of a class from the score threshold, or 1 if it has no detections. */
+  public synchronized float getPrecision(final String label) {
+    final ClassStats stats = classes.get(label);
+    if (stats == null) {
+      return 1;
+    }
+    final int[] counts = countPositives(stats);
+    final int positives = counts[TRUE_POSITIVE] + counts[FALSE_POSITIVE];
+    return positives > 0 ? counts[TRUE_POSITIVE] / (float) positives : 1;
+  }
+
+  /** Returns the recall of a class from the score threshold, or 1 if it has no ground truth. */
+  public synchronized float getRecall(final String label) {
+    final ClassStats stats = classes.get(label);
+    if (stats == null || stats.truthCount == 0) {
+      return 1;
+    }
+    return countPositives(stats)[TRUE_POSITIVE] / (float) stats.truthCount;
+  }
+
+  /** Returns the average precision of a class at the given IoU threshold. */
+  public synchronized float getAveragePrecision(final String label, final int threshold) {
+    final ClassStats stats = classes.get(label);
+    if (stats == null || stats.truthCount == 0) {
+      return 0;
+    }
+    final Integer[] order = new Integer[stats.detectionCount];
+    for (int d = 0; d < order.length; ++d) {
+      order[d] = d;
+    }
+    final float[] scores = stats.scores;
+    Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+
+    final float[] precisions = new float[order.length];
+    final float[] recalls = new float[order.length];
+    int points = 0;
+    int truePositives = 0;
+    int falsePositives = 0;
+    for (final int d : order) {
+      final byte outcome = stats.outcomes[threshold][d];
+      if (outcome == IGNORED) {
+        continue;
+      }
+      if (outcome == TRUE_POSITIVE) {
+        ++truePositives;
+      } else {
+        ++falsePositives;
+      }
+      precisions[points] = truePositives / (float) (truePositives + falsePositives);
+      recalls[points] = truePositives / (float) stats.truthCount;
+      ++points;
+    }
+    // The envelope: the best precision at this recall or any higher one.
+    for (int i = points - 2; i >= 0; --i) {
+      precisions[i] = Math.max(precisions[i], precisions[i + 1]);
+    }
+    float averagePrecision = 0;
+    float previousRecall = 0;
+    for (int i = 0; i < points; ++i) {
+      averagePrecision += (recalls[i] - previousRecall) * precisions[i];
+      previousRecall = recalls[i];
+    }
+    return averagePrecision;
+  }
+
+  /** Returns the mean average precision at the given IoU threshold, over classes with truth. */
+  public synchronized float getMeanAveragePrecision(final int threshold) {
+    float sum = 0;
+    int count = 0;
+    for (final Map.Entry<String, ClassStats> entry : classes.entrySet()) {
+      if (entry.getValue().truthCount > 0) {
+        sum += getAveragePrecision(entry.getKey(), threshold);
+        ++count;
+      }
+    }
+    return count > 0 ? sum / count : 0;
+  }
+
+  /** Returns the mean average precision averaged over all IoU thresholds. */
+  public synchronized float getMeanAveragePrecision() {
+    float sum = 0;
+    for (int t = 0; t < iouThresholds.length; ++t) {
+      sum += getMeanAveragePrecision(t);
+    }
+    return sum / iouThresholds.length;
+  }
+
+  private float getAveragePrecision(final String label) {
+    float sum = 0;
+    for (int t = 0; t < iouThresholds.length; ++t) {
+      sum += getAveragePrecision(label, t);
+    }
+    return sum / iouThresholds.length;
+  }
+
+  @Override
+  public synchronized String toString() {
+    final StringBuilder builder = new StringBuilder();
+    final String range =
+        String.format(
+            Locale.US,
+            iouThresholds.length > 1 ? "%.2f:%.2f" : "%.2f",
+            iouThresholds[0],
+            iouThresholds[iouThresholds.length - 1]);
+    builder.append(
+        String.format(
+            Locale.US,
+            "images=%d unlabeled=%d iou=%s score>=%.2f%n",
+            imageCount,
+            unlabeledCount,
+            range,
+            scoreThreshold));
+    builder.append(
+        String.format(
+            Locale.US,
+            "%-20s %6s %6s %9s %6s %6s %6s%n",
+            "label",
+            "truth",
+            "dets",
+            "precision",
+            "recall",
+            String.format(Locale.US, "AP%.0f", iouThresholds[0] * 100),
+            "AP"));
+    for (final Map.Entry<String, ClassStats> entry : classes.entrySet()) {
+      final String label = entry.getKey();
+      builder.append(
+          String.format(
+              Locale.US,
+              "%-20s %6d %6d %9.3f %6.3f %6.3f %6.3f%n",
+              label.replace(' ', '_'),
+              entry.getValue().truthCount,
+              entry.getValue().detectionCount,
+              getPrecision(label),
+              getRecall(label),
+              getAveragePrecision(label, 0),
+              getAveragePrecision(label)));
+    }
+    builder.append(
+        String.format(
+            Locale.US,
+            "mAP@%.2f=%.4f mAP@%s=%.4f%n",
+            iouThresholds[0],
+            getMeanAveragePrecision(0),
+            range,
+            getMeanAveragePrecision()));
+    return builder.toString();
+  }
+}
@@ -0,0 +1,44 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Random access to the frames of an offline input. Implementations must allow concurrent calls
+ * to {@link #read} from several workers.
+ */
+public interface FrameSource extends Closeable {
+  int getFrameCount();
+
+  /** Returns a short name for the frame, used to label its results. */
+  String getName(int index);
+
+  /**
+   * Decodes a frame.
+   *
+   * @param index The frame, in [0, {@link #getFrameCount()}).
+   * @param frame Receives the pixels.
+   * @param scratch Per worker scratch space the source may keep between calls.
+   */
+  void read(int index, ArgbFrame frame, Scratch scratch) throws IOException;
+
+  /** Holds buffers a source reuses across the frames read by one worker. */
+  final class Scratch {
+    public Object value;
+  }
+}
@@ -0,0 +1,99 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads the images in a directory, in file name order, or the images listed in a manifest, one
+ * path per line, relative to the manifest.
+ */
+public final class ImageDirectorySource implements FrameSource {
+  private static final String[] EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+
+  private final File[] files;
+
+  public ImageDirectorySource(final File directory) throws IOException {
+    final File[] listed =
+        directory.listFiles(
+            file -> {
+              final String name = file.getName().toLowerCase(Locale.US);
+              for (final String extension : EXTENSIONS) {
+                if (name.endsWith(extension)) {
+                  return file.isFile();
+                }
+              }
+              return false;
+            });
+    if (listed == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    Arrays.sort(listed);
+    files = listed;
+  }
+
+  private ImageDirectorySource(final File[] files) {
+    this.files = files;
+  }
+
+  /** Reads the images listed in a manifest, in order, skipping blank and {@code #} lines. */
+  public static ImageDirectorySource fromManifest(final File manifest) throws IOException {
+    final List<File> files = new ArrayList<>();
+    final File directory = manifest.getAbsoluteFile().getParentFile();
+    for (final String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+      final String path = line.trim();
+      if (path.isEmpty() || path.startsWith("#")) {
+        continue;
+      }
+      final File file = new File(path);
+      files.add(file.isAbsolute() ? file : new File(directory, path));
+    }
+    return new ImageDirectorySource(files.toArray(new File[0]));
+  }
+
+  @Override
+  public int getFrameCount() {
+    return files.length;
+  }
+
+  @Override
+  public String getName(final int index) {
+    return files[index].getName();
+  }
+
+  @Override
+  public void read(final int index, final ArgbFrame frame, final Scratch scratch)
+      throws IOException {
+    final BufferedImage image = ImageIO.read(files[index]);
+    if (image == null) {
+      throw new IOException("Unsupported image: " + files[index]);
+    }
+    frame.resize(image.getWidth(), image.getHeight());
+    image.getRGB(0, 0, frame.width, frame.height, frame.pixels, 0, frame.width);
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,213 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON reader for annotation files. Objects are read as maps, arrays as lists, numbers
+ * as doubles, and the rest as strings, booleans and null.
+ */
+final class Json {
+  private final Reader reader;
+  private int next;
+  private long position;
+
+  private Json(final Reader reader) throws IOException {
+    this.reader = reader;
+    advance();
+  }
+
+  /** Reads a single JSON value. */
+  static Object parse(final Reader reader) throws IOException {
+    final Json json = new Json(reader);
+    final Object value = json.readValue();
+    json.skipWhitespace();
+    if (json.next != -1) {
+      throw json.error("Trailing data");
+    }
+    return value;
+  }
+
+  private void advance() throws IOException {
+    next = reader.read();
+    ++position;
+  }
+
+  private IOException error(final String message) {
+    return new IOException(message + " at character " + position);
+  }
+
+  private void skipWhitespace() throws IOException {
+    while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+      advance();
+    }
+  }
+
+  private void expect(final char c) throws IOException {
+    skipWhitespace();
+    if (next != c) {
+      throw error("Expected '" + c + "'");
+    }
+    advance();
+  }
+
+  private Object readValue() throws IOException {
+    skipWhitespace();
+    switch (next) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        readLiteral("true");
+        return Boolean.TRUE;
+      case 'f':
+        readLiteral("false");
+        return Boolean.FALSE;
+      case 'n':
+        readLiteral("null");
+        return null;
+      default:
+        return readNumber();
+    }
+  }
+
+  private Map<String, Object> readObject() throws IOException {
+    final Map<String, Object> object = new LinkedHashMap<>();
+    advance();
+    skipWhitespace();
+    if (next == '}') {
+      advance();
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      if (next != '"') {
+        throw error("Expected a key");
+      }
+      final String key = readString();
+      expect(':');
+      object.put(key, readValue());
+      skipWhitespace();
+      if (next == '}') {
+        advance();
+        return object;
+      }
+      expect(',');
+    }
+  }
+
+  private List<Object> readArray() throws IOException {
+    final List<Object> array = new ArrayList<>();
+    advance();
+    skipWhitespace();
+    if (next == ']') {
+      advance();
+      return array;
+    }
+    while (true) {
+      array.add(readValue());
+      skipWhitespace();
+      if (next == ']') {
+        advance();
+        return array;
+      }
+      expect(',');
+    }
+  }
+
+  private String readString() throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    advance();
+    while (next != '"') {
+      if (next == -1) {
+        throw error("Unterminated string");
+      }
+      if (next == '\\') {
+        advance();
+        switch (next) {
+          case 'b':
+            builder.append('\b');
+            break;
+          case 'f':
+            builder.append('\f');
+            break;
+          case 'n':
+            builder.append('\n');
+            break;
+          case 'r':
+            builder.append('\r');
+            break;
+          case 't':
+            builder.append('\t');
+            break;
+          case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; ++i) {
+              advance();
+              final int digit = Character.digit(next, 16);
+              if (digit < 0) {
+                throw error("Bad unicode escape");
+              }
+              code = 16 * code + digit;
+            }
+            builder.append((char) code);
+            break;
+          default:
+            // Quotes, backslashes and slashes stand for themselves.
+            builder.append((char) next);
+            break;
+        }
+      } else {
+        builder.append((char) next);
+      }
+      advance();
+    }
+    advance();
+    return builder.toString();
+  }
+
+  private void readLiteral(final String literal) throws IOException {
+    for (int i = 0; i < literal.length(); ++i) {
+      if (next != literal.charAt(i)) {
+        throw error("Expected " + literal);
+      }
+      advance();
+    }
+  }
+
+  private Double readNumber() throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    while (next == '-' || next == '+' || next == '.' || next == 'e' || next == 'E'
+        || (next >= '0' && next <= '9')) {
+      builder.append((char) next);
+      advance();
+    }
+    try {
+      return Double.valueOf(builder.toString());
+    } catch (final NumberFormatException e) {
+      throw error("Expected a value");
+    }
+  }
+}
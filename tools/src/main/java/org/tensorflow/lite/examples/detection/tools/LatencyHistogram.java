@@ -0,0 +1,155 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.IOException;
+
+/**
+ * Counts latencies in logarithmic buckets, so that runs of any length take the same space and the
+ * histograms of several workers or processes can be added up. Latencies under 32us are counted
+ * exactly, longer ones to within about 3%.
+ */
+public final class LatencyHistogram {
+  // 32 buckets per power of two of microseconds.
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+  private long count;
+  private long sumNanos;
+  private long maxNanos;
+
+  private static int bucket(final long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Returns the smallest latency, in microseconds, counted in the given bucket. */
+  private static long lowerBoundMicros(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+  }
+
+  public synchronized void record(final long latencyNanos) {
+    final long nanos = Math.max(0, latencyNanos);
+    ++counts[bucket(nanos / 1000)];
+    ++count;
+    sumNanos += nanos;
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  /** Adds the counts of another histogram to this one. */
+  public void add(final LatencyHistogram other) {
+    final long[] otherCounts;
+    final long otherCount;
+    final long otherSumNanos;
+    final long otherMaxNanos;
+    synchronized (other) {
+      otherCounts = other.counts.clone();
+      otherCount = other.count;
+      otherSumNanos = other.sumNanos;
+      otherMaxNanos = other.maxNanos;
+    }
+    synchronized (this) {
+      for (int i = 0; i < counts.length; ++i) {
+        counts[i] += otherCounts[i];
+      }
+      count += otherCount;
+      sumNanos += otherSumNanos;
+      maxNanos = Math.max(maxNanos, otherMaxNanos);
+    }
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized double getMeanNanos() {
+    return count > 0 ? sumNanos / (double) count : 0;
+  }
+
+  public synchronized long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Returns the given percentile, in [0, 100], as the middle of the bucket it falls in, and never
+   * more than the maximum.
+   */
+  public synchronized long getPercentileNanos(final double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; ++i) {
+      seen += counts[i];
+      if (seen >= rank) {
+        final long lower = lowerBoundMicros(i);
+        final long upper = lowerBoundMicros(i + 1);
+        return Math.min(maxNanos, (lower + upper) * 1000 / 2);
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * Returns the histogram as a line of text: the count, sum and maximum in nanoseconds, then
+   * {@code <bucket>:<count>} for each non-empty bucket.
+   */
+  public synchronized String encode() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(count).append(' ').append(sumNanos).append(' ').append(maxNanos);
+    for (int i = 0; i < counts.length; ++i) {
+      if (counts[i] > 0) {
+        builder.append(' ').append(i).append(':').append(counts[i]);
+      }
+    }
+    return builder.toString();
+  }
+
+  /** Parses a histogram {@link #encode encoded} as text. */
+  public static LatencyHistogram decode(final String text) throws IOException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final String[] fields = text.trim().split(" ");
+    try {
+      histogram.count = Long.parseLong(fields[0]);
+      histogram.sumNanos = Long.parseLong(fields[1]);
+      histogram.maxNanos = Long.parseLong(fields[2]);
+      long total = 0;
+      for (int i = 3; i < fields.length; ++i) {
+        final int colon = fields[i].indexOf(':');
+        final long bucketCount = Long.parseLong(fields[i].substring(colon + 1));
+        histogram.counts[Integer.parseInt(fields[i].substring(0, colon))] = bucketCount;
+        total += bucketCount;
+      }
+      if (total != histogram.count) {
+        throw new IOException("Histogram buckets do not add up to its count: " + text);
+      }
+    } catch (final NumberFormatException | IndexOutOfBoundsException e) {
+      throw new IOException("Bad histogram: " + text, e);
+    }
+    return histogram;
+  }
+}
@@ -0,0 +1,83 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.pose.PoseDecoder;
+import org.tensorflow.lite.examples.detection.tflite.InferenceBackend;
+
+/**
+ * Runs a PoseNet model on a backend, decoding a single pose like the app does. Each worker owns
+ * its own instance.
+ */
+public final class PoseNetEstimator implements AutoCloseable {
+  private final InferenceBackend backend;
+  private final int inputSize;
+  private final float[][][][] heatmaps;
+  private final float[][][][] offsets;
+  private final Object[] inputArray = new Object[1];
+  private final Map<Integer, Object> outputMap = new HashMap<>();
+
+  public PoseNetEstimator(final InferenceBackend backend) {
+    this.backend = backend;
+    inputSize = backend.getInputSpec(0).getShape()[1];
+    // Heatmaps, offsets, and the forward and backward displacements the single pose decoder
+    // does not use.
+    heatmaps = allocate(backend.getOutputSpec(0).getShape());
+    offsets = allocate(backend.getOutputSpec(1).getShape());
+    outputMap.put(0, heatmaps);
+    outputMap.put(1, offsets);
+    for (int i = 2; i < backend.getOutputCount(); ++i) {
+      outputMap.put(i, allocate(backend.getOutputSpec(i).getShape()));
+    }
+  }
+
+  private static float[][][][] allocate(final int[] shape) {
+    return new float[shape[0]][shape[1]][shape[2]][shape[3]];
+  }
+
+  /** Returns the width and height of the square model input. */
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public int getNumKeypoints() {
+    return heatmaps[0][0][0].length;
+  }
+
+  /**
+   * Estimates the pose in a model input packed as floats in [-1,1].
+   *
+   * @param xs Receives the x coordinate of each keypoint in the model input.
+   * @param ys Receives the y coordinate of each keypoint in the model input.
+   * @param scores Receives the confidence of each keypoint.
+   * @return The mean keypoint confidence.
+   */
+  public float estimate(
+      final ByteBuffer input, final int[] xs, final int[] ys, final float[] scores) {
+    inputArray[0] = input;
+    backend.run(inputArray, outputMap);
+    return PoseDecoder.decodeSinglePose(
+        heatmaps[0], offsets[0], inputSize, inputSize, xs, ys, scores);
+  }
+
+  @Override
+  public void close() {
+    backend.close();
+  }
+}
@@ -0,0 +1,116 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+
+/**
+ * Reads fixed size YUV 4:2:0 frames stored back to back in one file, as NV21 (a Y plane followed
+ * by interleaved V and U samples) or I420 (Y, U and V planes). Frames are read with positional
+ * reads, so workers do not contend for a file position.
+ */
+public final class RawFrameSource implements FrameSource {
+  /** The layout of each frame. */
+  public enum Format {
+    NV21,
+    YUV420
+  }
+
+  private final FileChannel channel;
+  private final Format format;
+  private final int width;
+  private final int height;
+  private final int frameBytes;
+  private final int frameCount;
+
+  public RawFrameSource(final File file, final Format format, final int width, final int height)
+      throws IOException {
+    if (width % 2 != 0 || height % 2 != 0) {
+      throw new IllegalArgumentException("YUV 4:2:0 frames need an even size");
+    }
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    frameBytes = YuvConversions.getYUVByteSize(width, height);
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    frameCount = (int) (channel.size() / frameBytes);
+  }
+
+  @Override
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  @Override
+  public String getName(final int index) {
+    return "frame" + index;
+  }
+
+  @Override
+  public void read(final int index, final ArgbFrame frame, final Scratch scratch)
+      throws IOException {
+    Buffers buffers = (Buffers) scratch.value;
+    if (buffers == null) {
+      buffers = new Buffers(frameBytes, width * height);
+      scratch.value = buffers;
+    }
+    final ByteBuffer target = buffers.wrapped;
+    target.clear();
+    long position = (long) index * frameBytes;
+    while (target.hasRemaining()) {
+      if (channel.read(target, position + target.position()) < 0) {
+        throw new IOException("Truncated frame " + index);
+      }
+    }
+
+    frame.resize(width, height);
+    final byte[] bytes = buffers.frame;
+    if (format == Format.NV21) {
+      YuvConversions.convertYUV420SPToARGB8888(bytes, width, height, frame.pixels);
+    } else {
+      final int lumaSize = width * height;
+      final int chromaSize = lumaSize / 4;
+      System.arraycopy(bytes, lumaSize, buffers.u, 0, chromaSize);
+      System.arraycopy(bytes, lumaSize + chromaSize, buffers.v, 0, chromaSize);
+      YuvConversions.convertYUV420ToARGB8888(
+          bytes, buffers.u, buffers.v, width, height, width, width / 2, 1, frame.pixels);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static final class Buffers {
+    final byte[] frame;
+    final ByteBuffer wrapped;
+    final byte[] u;
+    final byte[] v;
+
+    Buffers(final int frameBytes, final int lumaSize) {
+      frame = new byte[frameBytes];
+      wrapped = ByteBuffer.wrap(frame);
+      u = new byte[lumaSize / 4];
+      v = new byte[lumaSize / 4];
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.detection.env.YuvConversions;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBuffer;
+import org.tensorflow.lite.examples.detection.pipeline.FrameReplaySource;
+
+/** Reads the frames of a recording made by the app, converting them like the app does. */
+public final class RecordingFrameSource implements FrameSource {
+  private final FrameReplaySource replay;
+
+  /**
+   * @param recording Any segment of the recording, or its directory and name as {@code
+   *     <directory>/<name>}.
+   */
+  public RecordingFrameSource(final File recording) throws IOException {
+    // Strip the segment number and suffix from a segment file name.
+    final String name = recording.getName().replaceFirst("-\\d+\\.frames$", "");
+    final File directory = recording.getAbsoluteFile().getParentFile();
+    replay = FrameReplaySource.open(directory, name);
+  }
+
+  @Override
+  public int getFrameCount() {
+    return replay.getFrameCount();
+  }
+
+  @Override
+  public String getName(final int index) {
+    return "frame" + replay.getSequence(index);
+  }
+
+  @Override
+  public void read(final int index, final ArgbFrame frame, final Scratch scratch) {
+    byte[][] planes = (byte[][]) scratch.value;
+    if (planes == null) {
+      planes = new byte[3][];
+      scratch.value = planes;
+    }
+    for (int i = 0; i < replay.getPlaneCount(index); ++i) {
+      final ByteBuffer plane = replay.getPlane(index, i);
+      if (planes[i] == null || planes[i].length < plane.remaining()) {
+        planes[i] = new byte[plane.remaining()];
+      }
+      plane.get(planes[i], 0, plane.remaining());
+    }
+
+    frame.resize(replay.getWidth(index), replay.getHeight(index));
+    if (replay.getFormat(index) == FrameBuffer.FORMAT_NV21) {
+      YuvConversions.convertYUV420SPToARGB8888(planes[0], frame.width, frame.height, frame.pixels);
+    } else {
+      YuvConversions.convertYUV420ToARGB8888(
+          planes[0],
+          planes[1],
+          planes[2],
+          frame.width,
+          frame.height,
+          replay.getYRowStride(index),
+          replay.getUvRowStride(index),
+          replay.getUvPixelStride(index),
+          frame.pixels);
+    }
+  }
+
+  @Override
+  public void close() {
+    replay.close();
+  }
+}
@@ -0,0 +1,430 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link BatchRunner} over an input in shards, on several local worker processes, for
+ * inputs too large for one JVM. Each process loads its own models and has its own worker and
+ * interpreter threads. The coordinator then merges the results of the shards, in frame order, and
+ * their latency histograms.
+ *
+ * <p>Everything is kept in a work directory: the job's options in {@code job.txt}, and for each
+ * shard its results, stats and log. A shard only counts as done once its process succeeded and
+ * its files were moved into place, so running the same job on the same directory again, after a
+ * crash or a failed shard, only runs the shards that are not done yet.
+ */
+public final class ShardCoordinator {
+  static final String USAGE =
+      String.join(
+          "\n",
+          "Usage: ShardCoordinator --work-dir <dir> --processes <n> [options] <batch runner"
+              + " options>",
+          "  --work-dir <dir>             Holds the shards; reuse it to resume the job",
+          "  --processes <n>              Worker processes run at a time",
+          "  --shards <n>                 Parts the input is split into (default: processes)",
+          "  --jvm-options <options>      Options of the worker JVMs, e.g. \"-Xmx2g\"",
+          "  --output <file>              Merged results, - for stdout (default:"
+              + " <work-dir>/results.txt)",
+          "The batch runner's --workers defaults to the available processors divided by the"
+              + " processes.");
+
+  private static final String JOB_FILE = "job.txt";
+  private static final String ELAPSED_FILE = "elapsed.txt";
+
+  private final File workDirectory;
+  private final int processes;
+  private final int shards;
+  private final List<String> jvmOptions;
+  private final List<String> runnerArgs;
+  private final BatchOptions runnerOptions;
+  /** The merged results, or null to write them to stdout. */
+  File output;
+
+  ShardCoordinator(
+      final File workDirectory,
+      final int processes,
+      final int shards,
+      final List<String> jvmOptions,
+      final List<String> runnerArgs) {
+    this.workDirectory = workDirectory;
+    this.processes = processes;
+    this.shards = shards;
+    this.jvmOptions = jvmOptions;
+    this.runnerArgs = runnerArgs;
+    runnerOptions = BatchOptions.parse(runnerArgs.toArray(new String[0]));
+    if (runnerOptions.shardCount != 1 || runnerOptions.stats != null) {
+      throw new IllegalArgumentException("The coordinator sets --shard and --stats itself");
+    }
+    if (!runnerOptions.output.equals("-")) {
+      throw new IllegalArgumentException("The coordinator sets the --output of the shards");
+    }
+  }
+
+  /** Parses the command line. @throws IllegalArgumentException If it is invalid. */
+  static ShardCoordinator parse(final String[] args) {
+    final List<String> runnerArgs = new ArrayList<>();
+    File workDirectory = null;
+    int processes = 0;
+    int shards = 0;
+    List<String> jvmOptions = Collections.emptyList();
+    String output = null;
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+    }
+    for (int i = 0; i < args.length; i += 2) {
+      final String value = args[i + 1];
+      switch (args[i]) {
+        case "--work-dir":
+          workDirectory = new File(value);
+          break;
+        case "--processes":
+          processes = parsePositive("processes", value);
+          break;
+        case "--shards":
+          shards = parsePositive("shards", value);
+          break;
+        case "--output":
+          output = value;
+          break;
+        case "--jvm-options":
+          jvmOptions = Arrays.asList(value.trim().split("\\s+"));
+          break;
+        default:
+          runnerArgs.add(args[i]);
+          runnerArgs.add(value);
+          break;
+      }
+    }
+    if (workDirectory == null || processes == 0) {
+      throw new IllegalArgumentException("--work-dir and --processes are required");
+    }
+    if (!runnerArgs.contains("--workers")) {
+      runnerArgs.add("--workers");
+      runnerArgs.add(
+          Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() / processes)));
+    }
+    final ShardCoordinator coordinator =
+        new ShardCoordinator(
+            workDirectory, processes, shards > 0 ? shards : processes, jvmOptions, runnerArgs);
+    if (output == null) {
+      coordinator.output = new File(workDirectory, "results.txt");
+    } else if (!output.equals("-")) {
+      coordinator.output = new File(output);
+    }
+    return coordinator;
+  }
+
+  private static int parsePositive(final String name, final String value) {
+    try {
+      final int result = Integer.parseInt(value);
+      if (result > 0) {
+        return result;
+      }
+    } catch (final NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("--" + name + " must be a positive integer: " + value);
+  }
+
+  private File shardFile(final int shard, final String extension) {
+    return new File(workDirectory, String.format(Locale.US, "shard-%05d.%s", shard, extension));
+  }
+
+  /** Returns whether a shard completed, in this or an earlier run. */
+  boolean isDone(final int shard) {
+    return shardFile(shard, "stats").isFile() && shardFile(shard, "results").isFile();
+  }
+
+  /**
+   * Checks that the work directory is new or belongs to this job, and records the job in it.
+   *
+   * @throws IllegalStateException If the directory was used for a different job.
+   */
+  private void claimWorkDirectory() throws IOException {
+    if (!workDirectory.isDirectory() && !workDirectory.mkdirs()) {
+      throw new IOException("Cannot create " + workDirectory);
+    }
+    final List<String> job = new ArrayList<>();
+    job.add("shards " + shards);
+    for (int i = 0; i < runnerArgs.size(); i += 2) {
+      // The thread counts do not change the results, so a job may resume with others.
+      if (!runnerArgs.get(i).equals("--workers") && !runnerArgs.get(i).equals("--threads")) {
+        job.add(runnerArgs.get(i) + " " + runnerArgs.get(i + 1));
+      }
+    }
+    final File jobFile = new File(workDirectory, JOB_FILE);
+    if (jobFile.exists()) {
+      final List<String> existing = Files.readAllLines(jobFile.toPath(), StandardCharsets.UTF_8);
+      if (!existing.equals(job)) {
+        throw new IllegalStateException(
+            workDirectory + " holds a different job: " + existing + "; use another directory");
+      }
+    } else {
+      Files.write(jobFile.toPath(), job, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Runs the shards that are not done yet, at most {@link #processes} at a time.
+   *
+   * @return The shards that were run, in order.
+   * @throws IOException If a shard failed; the others still ran, and a later run retries it.
+   */
+  List<Integer> runShards() throws IOException, InterruptedException {
+    claimWorkDirectory();
+    final List<Integer> pending = new ArrayList<>();
+    for (int shard = 0; shard < shards; ++shard) {
+      if (!isDone(shard)) {
+        pending.add(shard);
+      }
+    }
+    final AtomicInteger next = new AtomicInteger();
+    final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    final Thread[] launchers = new Thread[Math.min(processes, pending.size())];
+    for (int i = 0; i < launchers.length; ++i) {
+      launchers[i] =
+          new Thread(
+              () -> {
+                int index;
+                while ((index = next.getAndIncrement()) < pending.size()) {
+                  final int shard = pending.get(index);
+                  try {
+                    runShard(shard);
+                  } catch (final IOException | InterruptedException e) {
+                    failures.add("shard " + shard + ": " + e.getMessage());
+                  }
+                }
+              },
+              "shard-launcher-" + i);
+      launchers[i].start();
+    }
+    for (final Thread launcher : launchers) {
+      launcher.join();
+    }
+    if (!failures.isEmpty()) {
+      Collections.sort(failures);
+      throw new IOException("Failed shards, rerun to retry them:\n" + String.join("\n", failures));
+    }
+    return pending;
+  }
+
+  private void runShard(final int shard) throws IOException, InterruptedException {
+    final File results = shardFile(shard, "results.tmp");
+    final File stats = shardFile(shard, "stats.tmp");
+    final File log = shardFile(shard, "log");
+    final List<String> command = new ArrayList<>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    command.addAll(jvmOptions);
+    final String libraryPath = System.getProperty("java.library.path");
+    if (libraryPath != null) {
+      command.add("-Djava.library.path=" + libraryPath);
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(BatchRunner.class.getName());
+    command.addAll(runnerArgs);
+    command.addAll(
+        Arrays.asList(
+            "--shard", shard + "/" + shards,
+            "--stats", stats.getPath(),
+            "--output", results.getPath()));
+    final Process process =
+        new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.to(log))
+            .start();
+    final int exitCode = process.waitFor();
+    if (exitCode != 0) {
+      throw new IOException("exited with " + exitCode + ", see " + log);
+    }
+    // The stats file marks the shard done, so it is moved last.
+    Files.move(
+        results.toPath(), shardFile(shard, "results").toPath(), StandardCopyOption.ATOMIC_MOVE);
+    Files.move(stats.toPath(), shardFile(shard, "stats").toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static Reader open(final File file) throws IOException {
+    return new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /** Returns the frame index a result line starts with. */
+  private static int frameOf(final String line) {
+    return Integer.parseInt(line.substring(0, line.indexOf(' ')));
+  }
+
+  /**
+   * Writes the results of all shards in frame order. The shards cover consecutive frames, so only
+   * one shard at a time is sorted in memory.
+   */
+  void mergeResults(final Writer output) throws IOException {
+    for (int shard = 0; shard < shards; ++shard) {
+      final List<String> lines =
+          Files.readAllLines(shardFile(shard, "results").toPath(), StandardCharsets.UTF_8);
+      // Stable, so the lines of a frame keep their order.
+      lines.sort(Comparator.comparingInt(ShardCoordinator::frameOf));
+      for (final String line : lines) {
+        output.write(line);
+        output.write('\n');
+      }
+    }
+    output.flush();
+  }
+
+  /** Adds up the stats of all shards, over the time all runs of the job took. */
+  BatchRunner.Report mergeStats(final Evaluation evaluation) throws IOException {
+    final List<BatchRunner.Report> reports = new ArrayList<>();
+    for (int shard = 0; shard < shards; ++shard) {
+      try (Reader reader = open(shardFile(shard, "stats"))) {
+        reports.add(BatchRunner.Report.read(reader));
+      }
+    }
+    return BatchRunner.Report.merge(reports, readElapsed(), evaluation);
+  }
+
+  /** Returns the time all runs of the job took so far. */
+  private long readElapsed() throws IOException {
+    final File file = new File(workDirectory, ELAPSED_FILE);
+    if (!file.exists()) {
+      return 0;
+    }
+    return Long.parseLong(
+        new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+  }
+
+  /** Adds the time a run of the job took to the time of the earlier runs. */
+  private void addElapsed(final long elapsedNanos) throws IOException {
+    final String total = Long.toString(readElapsed() + elapsedNanos);
+    Files.write(
+        new File(workDirectory, ELAPSED_FILE).toPath(), total.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Evaluates the merged results against the job's annotations, or returns null if it has none.
+   * Only detections above the job's --threshold were written, so the average precision is over
+   * those.
+   */
+  Evaluation evaluate(final File mergedResults) throws IOException {
+    final Annotations annotations = runnerOptions.openAnnotations();
+    if (annotations == null) {
+      return null;
+    }
+    final Evaluation evaluation =
+        new Evaluation(runnerOptions.iouThresholds, runnerOptions.threshold);
+    final Map<Integer, List<String[]>> detectionsByFrame = new HashMap<>();
+    try (BufferedReader reader = new BufferedReader(open(mergedResults))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.split(" ");
+        if (fields.length == 9 && fields[2].equals("D")) {
+          detectionsByFrame
+              .computeIfAbsent(Integer.parseInt(fields[0]), frame -> new ArrayList<>())
+              .add(fields);
+        }
+      }
+    }
+    try (FrameSource source = runnerOptions.openSource()) {
+      final int frames = Math.min(source.getFrameCount(), runnerOptions.maxFrames);
+      for (int frame = 0; frame < frames; ++frame) {
+        final List<Annotations.Box> truth = annotations.get(source.getName(frame));
+        if (truth == null) {
+          evaluation.addUnlabeled();
+          continue;
+        }
+        final List<String[]> lines =
+            detectionsByFrame.getOrDefault(frame, Collections.<String[]>emptyList());
+        final Detections detections = new Detections(lines.size());
+        for (final String[] fields : lines) {
+          detections.add(
+              fields[3],
+              Float.parseFloat(fields[4]),
+              Float.parseFloat(fields[5]),
+              Float.parseFloat(fields[6]),
+              Float.parseFloat(fields[7]),
+              Float.parseFloat(fields[8]));
+        }
+        // The boxes are in pixels already.
+        evaluation.add(truth, detections, 1, 1);
+      }
+    }
+    return evaluation;
+  }
+
+  /** Runs the remaining shards, then merges all of them into the output and a report. */
+  BatchRunner.Report run() throws IOException, InterruptedException {
+    final long startNanos = System.nanoTime();
+    try {
+      runShards();
+    } finally {
+      addElapsed(System.nanoTime() - startNanos);
+    }
+    final File merged = output != null ? output : new File(workDirectory, "results.txt");
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(merged), StandardCharsets.UTF_8),
+            1 << 16)) {
+      mergeResults(writer);
+    }
+    if (output == null) {
+      Files.copy(merged.toPath(), System.out);
+      System.out.flush();
+    }
+    return mergeStats(evaluate(merged));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final ShardCoordinator coordinator;
+    try {
+      coordinator = parse(args);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    final BatchRunner.Report report;
+    try {
+      report = coordinator.run();
+    } catch (final IllegalStateException | IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    System.err.print(report);
+    System.err.println(BatchRunner.summarize(coordinator.runnerOptions, report));
+  }
+}
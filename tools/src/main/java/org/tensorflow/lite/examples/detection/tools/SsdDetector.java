@@ -0,0 +1,85 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.tflite.InferenceBackend;
+import org.tensorflow.lite.examples.detection.tflite.SsdOutputs;
+import org.tensorflow.lite.examples.detection.tflite.TensorSpec;
+
+/**
+ * Runs an SSD detection model with TFLite post-processing on a backend, decoding it like the app
+ * does. Each worker owns its own instance.
+ */
+public final class SsdDetector implements AutoCloseable {
+  private final InferenceBackend backend;
+  private final List<String> labels;
+  private final int inputSize;
+  private final boolean quantized;
+  private final SsdOutputs outputs;
+
+  /**
+   * @param labels The class labels, starting with the background class.
+   */
+  public SsdDetector(final InferenceBackend backend, final List<String> labels) {
+    this.backend = backend;
+    this.labels = labels;
+    final TensorSpec input = backend.getInputSpec(0);
+    inputSize = input.getShape()[1];
+    quantized = input.getDataType() == TensorSpec.DataType.UINT8;
+    outputs = new SsdOutputs(backend.getOutputSpec(1).getShape()[1]);
+  }
+
+  /** Returns the width and height of the square model input. */
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  /** Returns whether the input is packed as bytes rather than normalized floats. */
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  /**
+   * Detects objects in a packed model input.
+   *
+   * @param input The input, packed by {@link
+   *     org.tensorflow.lite.examples.detection.tflite.InputPacker}.
+   * @param detections Cleared, then receives the detections with boxes relative to the input.
+   */
+  public void detect(final ByteBuffer input, final Detections detections) {
+    final int count = Math.min(outputs.run(backend, input), detections.getCapacity());
+    detections.count = 0;
+    for (int i = 0; i < count; ++i) {
+      // Class 0 is the background class in the label file.
+      final int labelIndex = outputs.getClassIndex(i) + 1;
+      final String label = labelIndex < labels.size() ? labels.get(labelIndex) : "???";
+      detections.add(
+          label,
+          outputs.getScore(i),
+          outputs.getLeft(i),
+          outputs.getTop(i),
+          outputs.getRight(i),
+          outputs.getBottom(i));
+    }
+  }
+
+  @Override
+  public void close() {
+    backend.close();
+  }
+}
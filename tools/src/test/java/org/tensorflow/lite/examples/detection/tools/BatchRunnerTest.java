@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBuffer;
+import org.tensorflow.lite.examples.detection.pipeline.FrameBufferPool;
+import org.tensorflow.lite.examples.detection.pipeline.FrameRecorder;
+
+/** Tests for running the pipeline over raw frames with the synthetic backend. */
+public class BatchRunnerTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int FRAMES = 12;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeFrames() throws IOException {
+    final File file = folder.newFile("frames.nv21");
+    final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+    final Random random = new Random(42);
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      for (int i = 0; i < FRAMES; ++i) {
+        random.nextBytes(frame);
+        output.write(frame);
+      }
+    }
+    return file;
+  }
+
+  private File writeRecording() throws IOException {
+    final File directory = folder.newFolder();
+    final FrameBufferPool pool = new FrameBufferPool(1);
+    final Random random = new Random(42);
+    try (FrameRecorder recorder =
+        new FrameRecorder(directory, "run", Collections.emptyMap(), FRAMES, 1 << 20)) {
+      for (int i = 0; i < FRAMES; ++i) {
+        final FrameBuffer frame = pool.acquire();
+        frame.getPlanes()[0] = new byte[WIDTH * HEIGHT * 3 / 2];
+        random.nextBytes(frame.getPlanes()[0]);
+        frame.setFormat(FrameBuffer.FORMAT_NV21, WIDTH, HEIGHT, WIDTH, 0, 0);
+        recorder.record(frame);
+        frame.release();
+      }
+    }
+    return FrameRecorder.listSegments(directory, "run")[0];
+  }
+
+  private BatchRunner.Report report;
+
+  private String[] run(final File frames, final int workers, final String... extraArgs)
+      throws Exception {
+    final List<String> args =
+        new ArrayList<>(
+            Arrays.asList(
+                "--input", frames.getPath(),
+                "--size", WIDTH + "x" + HEIGHT,
+                "--workers", Integer.toString(workers),
+                "--pose", "true",
+                "--threshold", "0"));
+    args.addAll(Arrays.asList(extraArgs));
+    final BatchOptions options = BatchOptions.parse(args.toArray(new String[0]));
+    final StringWriter output = new StringWriter();
+    try (FrameSource source = options.openSource()) {
+      report = new BatchRunner(options).run(source, output);
+    }
+    assertEquals(FRAMES, report.frames);
+    assertEquals(FRAMES, report.stages[stage("frame")].getCount());
+    final String[] lines = output.toString().split("\n");
+    Arrays.sort(lines);
+    return lines;
+  }
+
+  private static int stage(final String name) {
+    return Arrays.asList(BatchRunner.STAGES).indexOf(name);
+  }
+
+  @Test
+  public void resultsDoNotDependOnTheWorkerCount() throws Exception {
+    final File frames = writeFrames();
+    final String[] serial = run(frames, 1);
+    // One pose line per frame, plus the detections.
+    assertTrue(serial.length >= FRAMES);
+    assertEquals(Arrays.asList(serial), Arrays.asList(run(frames, 3)));
+  }
+
+  @Test
+  public void recordingsGiveTheSameResultsAsRawFrames() throws Exception {
+    assertEquals(Arrays.asList(run(writeFrames(), 2)), Arrays.asList(run(writeRecording(), 2)));
+  }
+
+  @Test
+  public void evaluatesAgainstAnnotations() throws Exception {
+    final File frames = writeFrames();
+    // Label every frame but the first with its own detections.
+    final File annotations = folder.newFolder();
+    for (int i = 1; i < FRAMES; ++i) {
+      assertTrue(new File(annotations, "frame" + i + ".txt").createNewFile());
+    }
+    for (final String line : run(frames, 1)) {
+      final String[] fields = line.split(" ");
+      if (fields[2].equals("D") && !fields[1].equals("frame0")) {
+        // The label and the box, without the score.
+        final String box = fields[3] + " " + String.join(" ", Arrays.asList(fields).subList(5, 9));
+        Files.write(
+            new File(annotations, fields[1] + ".txt").toPath(),
+            Collections.singletonList(box),
+            StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+      }
+    }
+
+    run(frames, 3, "--annotations", annotations.getPath());
+    final Evaluation evaluation = report.evaluation;
+    assertEquals(1, evaluation.getUnlabeledCount());
+    assertEquals(FRAMES - 1, evaluation.getImageCount());
+    assertEquals(FRAMES, report.stages[stage("evaluate")].getCount());
+    assertEquals(1, evaluation.getMeanAveragePrecision(), 1e-3);
+  }
+
+  @Test
+  public void detectsOnTiles() throws Exception {
+    final File frames = writeFrames();
+    final String[] tiled = run(frames, 1, "--tiles", "2x2", "--tile-overlap", "0.2");
+    assertEquals(
+        Arrays.asList(tiled),
+        Arrays.asList(run(frames, 3, "--tiles", "2x2", "--tile-overlap", "0.2")));
+    for (final String line : tiled) {
+      final String[] fields = line.split(" ");
+      if (fields[2].equals("D")) {
+        assertTrue(line, Float.parseFloat(fields[5]) >= 0);
+        assertTrue(line, Float.parseFloat(fields[8]) <= HEIGHT);
+      }
+    }
+    assertTrue(
+        BatchRunner.summarize(
+                BatchOptions.parse(
+                    new String[] {"--input", frames.getPath(), "--size", "1x1", "--tiles", "2x2"}),
+                report)
+            .contains("tiles=2x2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rawFramesNeedASize() {
+    BatchOptions.parse(new String[] {"--input", "frames.nv21"});
+  }
+}
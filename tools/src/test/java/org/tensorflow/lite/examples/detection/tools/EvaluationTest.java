@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for evaluating detections against labeled datasets. */
+public class EvaluationTest {
+  private static final float EPSILON = 1e-4f;
+  private static final int SIZE = 100;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static Annotations.Box box(
+      final String label,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    return new Annotations.Box(label, left, top, right, bottom, false);
+  }
+
+  /** Detections with (label, score, left, top, right, bottom) in pixels of a SIZE image. */
+  private static Detections detections(final Object[]... rows) {
+    final Detections detections = new Detections(rows.length);
+    for (final Object[] row : rows) {
+      detections.add(
+          (String) row[0],
+          ((Number) row[1]).floatValue(),
+          ((Number) row[2]).floatValue() / SIZE,
+          ((Number) row[3]).floatValue() / SIZE,
+          ((Number) row[4]).floatValue() / SIZE,
+          ((Number) row[5]).floatValue() / SIZE);
+    }
+    return detections;
+  }
+
+  @Test
+  public void computesPrecisionRecallAndAveragePrecision() {
+    final Evaluation evaluation = new Evaluation(new float[] {0.5f}, 0.75f);
+    evaluation.add(
+        Arrays.asList(box("cat", 0, 0, 10, 10), box("cat", 50, 50, 60, 60)),
+        detections(
+            new Object[] {"cat", 0.9f, 0, 0, 10, 10},
+            new Object[] {"cat", 0.8f, 20, 20, 30, 30},
+            new Object[] {"cat", 0.7f, 51, 50, 61, 60}),
+        SIZE,
+        SIZE);
+    assertEquals(1, evaluation.getImageCount());
+    assertEquals(2, evaluation.getTruthCount("cat"));
+    assertEquals(3, evaluation.getDetectionCount("cat"));
+    // From a score of 0.75, one of two detections is right, and one of two cats found.
+    assertEquals(0.5f, evaluation.getPrecision("cat"), EPSILON);
+    assertEquals(0.5f, evaluation.getRecall("cat"), EPSILON);
+    // Half the recall at precision 1, the other half at 2/3.
+    assertEquals(0.5f + 0.5f * 2 / 3, evaluation.getAveragePrecision("cat", 0), EPSILON);
+    assertEquals(0.5f + 0.5f * 2 / 3, evaluation.getMeanAveragePrecision(), EPSILON);
+  }
+
+  @Test
+  public void matchesEachBoxOnceAndOnlyWithinItsClass() {
+    final Evaluation evaluation = new Evaluation(new float[] {0.5f}, 0);
+    evaluation.add(
+        Collections.singletonList(box("dining_table", 0, 0, 10, 10)),
+        detections(
+            new Object[] {"dining table", 0.9f, 0, 0, 10, 10},
+            new Object[] {"dining table", 0.8f, 0, 0, 10, 10},
+            new Object[] {"dog", 0.7f, 0, 0, 10, 10}),
+        SIZE,
+        SIZE);
+    assertEquals(Arrays.asList("dining table", "dog"), evaluation.getLabels());
+    assertEquals(0.5f, evaluation.getPrecision("dining table"), EPSILON);
+    assertEquals(1, evaluation.getAveragePrecision("dining table", 0), EPSILON);
+    // Classes without ground truth do not count towards the mean.
+    assertEquals(0, evaluation.getPrecision("dog"), EPSILON);
+    assertEquals(1, evaluation.getMeanAveragePrecision(0), EPSILON);
+  }
+
+  @Test
+  public void appliesEachIouThreshold() {
+    final Evaluation evaluation = new Evaluation(new float[] {0.5f, 0.75f}, 0);
+    // An IoU of 60 / 140 matches at neither threshold.
+    evaluation.add(
+        Collections.singletonList(box("cat", 0, 0, 10, 10)),
+        detections(new Object[] {"cat", 0.9f, 4, 0, 14, 10}),
+        SIZE,
+        SIZE);
+    assertEquals(0, evaluation.getAveragePrecision("cat", 0), EPSILON);
+    evaluation.add(
+        Collections.singletonList(box("cat", 0, 0, 10, 10)),
+        detections(new Object[] {"cat", 0.8f, 2, 0, 12, 10}),
+        SIZE,
+        SIZE);
+    // An IoU of 80 / 120 matches at 0.5 only: the second of two detections finds one of two cats.
+    assertEquals(0.5f * 0.5f, evaluation.getAveragePrecision("cat", 0), EPSILON);
+    assertEquals(0, evaluation.getAveragePrecision("cat", 1), EPSILON);
+  }
+
+  @Test
+  public void ignoresDetectionsOfCrowds() {
+    final Evaluation evaluation = new Evaluation(new float[] {0.5f}, 0);
+    evaluation.add(
+        Arrays.asList(
+            box("person", 0, 0, 10, 10), new Annotations.Box("person", 50, 0, 100, 50, true)),
+        detections(
+            new Object[] {"person", 0.9f, 60, 10, 70, 20},
+            new Object[] {"person", 0.8f, 0, 0, 10, 10}),
+        SIZE,
+        SIZE);
+    assertEquals(1, evaluation.getTruthCount("person"));
+    assertEquals(1, evaluation.getPrecision("person"), EPSILON);
+    assertEquals(1, evaluation.getAveragePrecision("person", 0), EPSILON);
+  }
+
+  @Test
+  public void readsCocoAnnotations() throws IOException {
+    final File file = folder.newFile("instances.json");
+    Files.write(
+        file.toPath(),
+        ("{\"images\": [{\"id\": 1, \"file_name\": \"val/a.jpg\", \"width\": 640},"
+                + " {\"id\": 2, \"file_name\": \"b.jpg\"}],"
+                + " \"annotations\": ["
+                + "  {\"image_id\": 1, \"category_id\": 18, \"bbox\": [10, 20, 30.5, 40],"
+                + "   \"iscrowd\": 0},"
+                + "  {\"image_id\": 1, \"category_id\": 18, \"bbox\": [0, 0, 5, 5],"
+                + "   \"iscrowd\": 1}],"
+                + " \"categories\": [{\"id\": 18, \"name\": \"dog\","
+                + "   \"supercategory\": \"an\\\"imal\"}]}")
+            .getBytes(StandardCharsets.UTF_8));
+    final Annotations annotations = Annotations.open(file);
+    final List<Annotations.Box> boxes = annotations.get("a.jpg");
+    assertEquals(2, boxes.size());
+    assertEquals("dog", boxes.get(0).label);
+    assertEquals(40.5f, boxes.get(0).right, EPSILON);
+    assertEquals(60, boxes.get(0).bottom, EPSILON);
+    assertTrue(boxes.get(1).ignored);
+    assertTrue(annotations.get("b.jpg").isEmpty());
+    assertNull(annotations.get("c.jpg"));
+  }
+
+  @Test
+  public void readsTextAnnotations() throws IOException {
+    final File directory = folder.newFolder();
+    Files.write(
+        new File(directory, "table.txt").toPath(),
+        "dining_table 27.5 97.9 623.1 444.9 0.49\n\nknife 342 243 583 416\n"
+            .getBytes(StandardCharsets.UTF_8));
+    final Annotations annotations = Annotations.open(directory);
+    final List<Annotations.Box> boxes = annotations.get("table.jpg");
+    assertEquals(2, boxes.size());
+    assertEquals("dining table", boxes.get(0).label);
+    assertEquals(416, boxes.get(1).bottom, EPSILON);
+    assertNull(annotations.get("chair.jpg"));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests for running shards of an input in worker processes and merging them. */
+public class ShardCoordinatorTest {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int FRAMES = 10;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeFrames() throws IOException {
+    final File file = folder.newFile("frames.nv21");
+    final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+    final Random random = new Random(42);
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      for (int i = 0; i < FRAMES; ++i) {
+        random.nextBytes(frame);
+        output.write(frame);
+      }
+    }
+    return file;
+  }
+
+  private static String[] runnerArgs(final File frames) {
+    return new String[] {
+      "--input", frames.getPath(),
+      "--size", WIDTH + "x" + HEIGHT,
+      "--workers", "1",
+      "--pose", "true",
+      "--threshold", "0"
+    };
+  }
+
+  private static ShardCoordinator coordinator(
+      final File workDirectory, final File frames, final int shards) {
+    final List<String> args =
+        new ArrayList<>(
+            Arrays.asList(
+                "--work-dir", workDirectory.getPath(),
+                "--processes", "2",
+                "--shards", Integer.toString(shards)));
+    args.addAll(Arrays.asList(runnerArgs(frames)));
+    return ShardCoordinator.parse(args.toArray(new String[0]));
+  }
+
+  private static List<String> sortedLines(final File file) throws IOException {
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    lines.sort(null);
+    return lines;
+  }
+
+  private List<String> runInProcess(final File frames) throws Exception {
+    final BatchOptions options = BatchOptions.parse(runnerArgs(frames));
+    final StringWriter output = new StringWriter();
+    try (FrameSource source = options.openSource()) {
+      new BatchRunner(options).run(source, output);
+    }
+    final List<String> lines = Arrays.asList(output.toString().split("\n"));
+    lines.sort(null);
+    return lines;
+  }
+
+  @Test
+  public void mergesShardsLikeASingleRun() throws Exception {
+    final File frames = writeFrames();
+    final File workDirectory = new File(folder.getRoot(), "job");
+    final ShardCoordinator coordinator = coordinator(workDirectory, frames, 3);
+    final BatchRunner.Report report = coordinator.run();
+
+    assertEquals(FRAMES, report.frames);
+    for (int i = 0; i < BatchRunner.STAGES.length; ++i) {
+      if (!BatchRunner.STAGES[i].equals("evaluate")) {
+        assertEquals(BatchRunner.STAGES[i], FRAMES, report.stages[i].getCount());
+      }
+    }
+    assertEquals(runInProcess(frames), sortedLines(coordinator.output));
+    // The merged results are in frame order.
+    int previous = -1;
+    for (final String line :
+        Files.readAllLines(coordinator.output.toPath(), StandardCharsets.UTF_8)) {
+      final int frame = Integer.parseInt(line.substring(0, line.indexOf(' ')));
+      assertTrue(frame >= previous);
+      previous = frame;
+    }
+  }
+
+  @Test
+  public void resumesFromCompletedShards() throws Exception {
+    final File frames = writeFrames();
+    final File workDirectory = new File(folder.getRoot(), "job");
+    final ShardCoordinator first = coordinator(workDirectory, frames, 3);
+    assertEquals(Arrays.asList(0, 1, 2), first.runShards());
+    assertEquals(FRAMES, first.run().frames);
+    final List<String> expected = sortedLines(first.output);
+
+    // As if the coordinator crashed before shard 1 was moved into place.
+    assertTrue(new File(workDirectory, "shard-00001.stats").delete());
+    final ShardCoordinator second = coordinator(workDirectory, frames, 3);
+    assertEquals(Arrays.asList(1), second.runShards());
+    assertEquals(FRAMES, second.run().frames);
+    assertEquals(expected, sortedLines(second.output));
+  }
+
+  @Test
+  public void rejectsAWorkDirectoryOfAnotherJob() throws Exception {
+    final File frames = writeFrames();
+    final File workDirectory = new File(folder.getRoot(), "job");
+    coordinator(workDirectory, frames, 2).runShards();
+    try {
+      coordinator(workDirectory, frames, 3).runShards();
+      fail();
+    } catch (final IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("different job"));
+    }
+  }
+
+  @Test
+  public void statsSurviveAWriteAndRead() throws Exception {
+    final LatencyHistogram[] stages = new LatencyHistogram[BatchRunner.STAGES.length];
+    final Random random = new Random(7);
+    for (int i = 0; i < stages.length; ++i) {
+      stages[i] = new LatencyHistogram();
+      for (int j = 0; j < 1000; ++j) {
+        stages[i].record((long) (random.nextDouble() * 50_000_000));
+      }
+    }
+    final BatchRunner.Report report = new BatchRunner.Report(1000, 4, 123456789, stages, null);
+    final StringWriter writer = new StringWriter();
+    report.write(writer);
+    final BatchRunner.Report read = BatchRunner.Report.read(new StringReader(writer.toString()));
+
+    assertEquals(report.frames, read.frames);
+    assertEquals(report.workers, read.workers);
+    assertEquals(report.elapsedNanos, read.elapsedNanos);
+    for (int i = 0; i < stages.length; ++i) {
+      assertEquals(stages[i].encode(), read.stages[i].encode());
+    }
+    final BatchRunner.Report merged =
+        BatchRunner.Report.merge(Arrays.asList(report, read), 1, null);
+    assertEquals(2000, merged.frames);
+    assertEquals(2000, merged.stages[0].getCount());
+    assertEquals(stages[0].getMaxNanos(), merged.stages[0].getMaxNanos());
+    // Uniform over 50ms, within the histogram's resolution.
+    assertEquals(25e6, merged.stages[0].getPercentileNanos(50), 25e6 * 0.05);
+  }
+}